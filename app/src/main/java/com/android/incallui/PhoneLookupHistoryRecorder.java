@@ -15,10 +15,10 @@
  */
 package com.android.incallui;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.telecom.Call;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -28,14 +28,13 @@ import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.DialerExecutorComponent;
 import com.fissy.dialer.phonelookup.PhoneLookupComponent;
 import com.fissy.dialer.phonelookup.PhoneLookupInfo;
-import com.fissy.dialer.phonelookup.database.contract.PhoneLookupHistoryContract.PhoneLookupHistory;
+import com.fissy.dialer.phonelookup.database.PhoneLookupDatabaseComponent;
 import com.fissy.dialer.telecom.TelecomCallUtil;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-
-import java.util.Objects;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * Fetches the current {@link PhoneLookupInfo} for the provided call and writes it to the
@@ -46,37 +45,49 @@ final class PhoneLookupHistoryRecorder {
     /**
      * If the call log framework is enabled, fetches the current {@link PhoneLookupInfo} for the
      * provided call and writes it to the PhoneLookupHistory. Otherwise does nothing.
+     *
+     * <p>The info is written as it is refined, so that the caller is identified in the history as
+     * soon as a high priority lookup completes rather than once the slowest one does.
      */
     static void recordPhoneLookupInfo(Context appContext, Call call) {
         if (!CallLogConfigComponent.get(appContext).callLogConfig().isCallLogFrameworkEnabled()) {
             return;
         }
 
-        ListenableFuture<PhoneLookupInfo> infoFuture =
-                PhoneLookupComponent.get(appContext).compositePhoneLookup().lookup(call);
+        ListenableFuture<Optional<String>> normalizedNumberFuture =
+                DialerExecutorComponent.get(appContext)
+                        .backgroundExecutor()
+                        .submit(() -> TelecomCallUtil.getNormalizedNumber(appContext, call));
+
+        PhoneLookupComponent.get(appContext)
+                .compositePhoneLookup()
+                .lookup(
+                        call,
+                        (phoneLookupInfo, isComplete) ->
+                                writePhoneLookupInfo(
+                                        appContext, normalizedNumberFuture, phoneLookupInfo));
+    }
 
+    @MainThread
+    private static void writePhoneLookupInfo(
+            Context appContext,
+            ListenableFuture<Optional<String>> normalizedNumberFuture,
+            PhoneLookupInfo phoneLookupInfo) {
+        // Callbacks added to the same future run in the order they were added, so a refined info is
+        // never overwritten by an older one.
         Futures.addCallback(
-                infoFuture,
-                new FutureCallback<PhoneLookupInfo>() {
+                normalizedNumberFuture,
+                new FutureCallback<Optional<String>>() {
                     @Override
-                    public void onSuccess(@Nullable PhoneLookupInfo result) {
-                        Assert.checkArgument(result != null);
-                        Optional<String> normalizedNumber =
-                                TelecomCallUtil.getNormalizedNumber(appContext, call);
+                    public void onSuccess(@Nullable Optional<String> normalizedNumber) {
+                        Assert.checkArgument(normalizedNumber != null);
                         if (!normalizedNumber.isPresent()) {
                             LogUtil.w("PhoneLookupHistoryRecorder.onSuccess", "couldn't get a number");
                             return;
                         }
-                        ContentValues contentValues = new ContentValues();
-                        contentValues.put(PhoneLookupHistory.PHONE_LOOKUP_INFO, Objects.requireNonNull(result).toByteArray());
-                        contentValues.put(PhoneLookupHistory.LAST_MODIFIED, System.currentTimeMillis());
-                        appContext
-                                .getContentResolver()
-                                .update(
-                                        PhoneLookupHistory.contentUriForNumber(normalizedNumber.get()),
-                                        contentValues,
-                                        null,
-                                        null);
+                        PhoneLookupDatabaseComponent.get(appContext)
+                                .phoneLookupHistoryCache()
+                                .put(normalizedNumber.get(), phoneLookupInfo);
                     }
 
                     @Override
@@ -86,6 +97,6 @@ final class PhoneLookupHistoryRecorder {
                                 "PhoneLookupHistoryRecorder.onFailure", "could not write PhoneLookupHistory", t);
                     }
                 },
-                DialerExecutorComponent.get(appContext).backgroundExecutor());
+                MoreExecutors.directExecutor());
     }
 }
@@ -29,6 +29,10 @@ import java.util.concurrent.TimeUnit;
 class ClassifierData {
     private final SparseArray<Stroke> currentStrokes = new SparseArray<>();
     private final ArrayList<Stroke> endingStrokes = new ArrayList<>();
+    /**
+     * Strokes which ended, to be reused for the next ones rather than allocated.
+     */
+    private final ArrayList<Stroke> recycledStrokes = new ArrayList<>();
     private final float dpi;
     private final float screenHeight;
 
@@ -41,25 +45,34 @@ class ClassifierData {
         endingStrokes.clear();
         int action = event.getActionMasked();
         if (action == MotionEvent.ACTION_DOWN) {
+            for (int i = 0; i < currentStrokes.size(); i++) {
+                recycledStrokes.add(currentStrokes.valueAt(i));
+            }
             currentStrokes.clear();
         }
 
+        // TODO (keyboardr): See if there's a way to use event.getEventTimeNanos() instead
+        long eventTimeNano = TimeUnit.MILLISECONDS.toNanos(event.getEventTime());
         for (int i = 0; i < event.getPointerCount(); i++) {
             int id = event.getPointerId(i);
-            if (currentStrokes.get(id) == null) {
-                // TODO (keyboardr): See if there's a way to use event.getEventTimeNanos() instead
-                currentStrokes.put(
-                        id, new Stroke(TimeUnit.MILLISECONDS.toNanos(event.getEventTime()), dpi));
+            Stroke stroke = currentStrokes.get(id);
+            if (stroke == null) {
+                stroke =
+                        recycledStrokes.isEmpty()
+                                ? new Stroke()
+                                : recycledStrokes.remove(recycledStrokes.size() - 1);
+                stroke.reset(eventTimeNano, dpi);
+                currentStrokes.put(id, stroke);
             }
-            currentStrokes
-                    .get(id)
-                    .addPoint(
-                            event.getX(i), event.getY(i), TimeUnit.MILLISECONDS.toNanos(event.getEventTime()));
 
-            if (action == MotionEvent.ACTION_UP
-                    || action == MotionEvent.ACTION_CANCEL
-                    || (action == MotionEvent.ACTION_POINTER_UP && i == event.getActionIndex())) {
-                endingStrokes.add(getStroke(id));
+            boolean isEnding =
+                    action == MotionEvent.ACTION_UP
+                            || action == MotionEvent.ACTION_CANCEL
+                            || (action == MotionEvent.ACTION_POINTER_UP
+                                    && i == event.getActionIndex());
+            stroke.addPoint(event.getX(i), event.getY(i), eventTimeNano, isEnding);
+            if (isEnding) {
+                endingStrokes.add(stroke);
             }
         }
     }
@@ -72,7 +85,11 @@ class ClassifierData {
             if (action == MotionEvent.ACTION_UP
                     || action == MotionEvent.ACTION_CANCEL
                     || (action == MotionEvent.ACTION_POINTER_UP && i == event.getActionIndex())) {
-                currentStrokes.remove(id);
+                Stroke stroke = currentStrokes.get(id);
+                if (stroke != null) {
+                    currentStrokes.remove(id);
+                    recycledStrokes.add(stroke);
+                }
             }
         }
     }
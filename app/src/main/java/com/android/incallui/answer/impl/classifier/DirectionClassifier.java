@@ -31,8 +31,6 @@ public class DirectionClassifier extends StrokeClassifier {
 
     @Override
     public float getFalseTouchEvaluation(Stroke stroke) {
-        Point firstPoint = stroke.getPoints().get(0);
-        Point lastPoint = stroke.getPoints().get(stroke.getPoints().size() - 1);
-        return DirectionEvaluator.evaluate(lastPoint.x - firstPoint.x, lastPoint.y - firstPoint.y);
+        return DirectionEvaluator.evaluate(stroke.getEndPointDeltaX(), stroke.getEndPointDeltaY());
     }
 }
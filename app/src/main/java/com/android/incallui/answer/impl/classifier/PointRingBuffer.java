@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.incallui.answer.impl.classifier;
+
+/**
+ * The last few points added to it, kept in primitive arrays so that adding a point doesn't
+ * allocate. When it is full, adding a point drops the oldest one.
+ */
+final class PointRingBuffer {
+    private final float[] xs;
+    private final float[] ys;
+    private int start;
+    private int size;
+
+    PointRingBuffer(int capacity) {
+        xs = new float[capacity];
+        ys = new float[capacity];
+    }
+
+    void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    void add(float x, float y) {
+        int end = (start + size) % xs.length;
+        xs[end] = x;
+        ys[end] = y;
+        if (size == xs.length) {
+            start = (start + 1) % xs.length;
+        } else {
+            size++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == xs.length;
+    }
+
+    /**
+     * @param index 0 for the oldest point
+     */
+    float getX(int index) {
+        return xs[(start + index) % xs.length];
+    }
+
+    /**
+     * @param index 0 for the oldest point
+     */
+    float getY(int index) {
+        return ys[(start + index) % xs.length];
+    }
+
+    float getLastX() {
+        return getX(size - 1);
+    }
+
+    float getLastY() {
+        return getY(size - 1);
+    }
+
+    /**
+     * Calculates the angle in radians created by the points (a, vertex, b). If any two of these
+     * points are the same, the method will return 0.0f
+     *
+     * @return the angle in radians
+     */
+    float getAngle(int a, int vertex, int b) {
+        float x = getX(vertex);
+        float y = getY(vertex);
+        float ax = getX(a) - x;
+        float ay = getY(a) - y;
+        float bx = getX(b) - x;
+        float by = getY(b) - y;
+        float dist1 = (float) Math.hypot(ax, ay);
+        float dist2 = (float) Math.hypot(bx, by);
+
+        if (dist1 == 0.0f || dist2 == 0.0f) {
+            return 0.0f;
+        }
+
+        float crossProduct = ax * by - ay * bx;
+        float dotProduct = ax * bx + ay * by;
+        float cos = Math.min(1.0f, Math.max(-1.0f, dotProduct / dist1 / dist2));
+        float angle = (float) Math.acos(cos);
+        if (crossProduct < 0.0) {
+            angle = 2.0f * (float) Math.PI - angle;
+        }
+        return angle;
+    }
+}
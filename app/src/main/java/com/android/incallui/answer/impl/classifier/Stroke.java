@@ -16,38 +16,60 @@
 
 package com.android.incallui.answer.impl.classifier;
 
-import java.util.ArrayList;
-
 /**
  * Contains data about a stroke (a single trace, all the events from a given id from the
  * DOWN/POINTER_DOWN event till the UP/POINTER_UP/CANCEL event.)
+ *
+ * <p>The points themselves aren't kept: the features of the stroke are updated as each point is
+ * added, and strokes are recycled by {@link ClassifierData}, so adding a point doesn't allocate.
  */
 class Stroke {
 
     private static final float NANOS_TO_SECONDS = 1e9f;
 
-    private final ArrayList<Point> points = new ArrayList<>();
-    private final long startTimeNano;
-    private final float dpi;
+    private final StrokeFeatures features = new StrokeFeatures();
+    private long startTimeNano;
+    private float dpi;
     private long endTimeNano;
     private float length;
+    private int count;
+    private float firstX;
+    private float firstY;
+    private float lastX;
+    private float lastY;
 
-    public Stroke(long eventTimeNano, float dpi) {
+    /**
+     * Prepares this stroke to be used for a new trace, discarding its points.
+     */
+    public void reset(long eventTimeNano, float dpi) {
         this.dpi = dpi;
         startTimeNano = endTimeNano = eventTimeNano;
+        length = 0.0f;
+        count = 0;
+        features.reset();
     }
 
-    public void addPoint(float x, float y, long eventTimeNano) {
+    /**
+     * @param isLastPoint whether this point comes from the event which ends the stroke
+     */
+    public void addPoint(float x, float y, long eventTimeNano, boolean isLastPoint) {
         endTimeNano = eventTimeNano;
-        Point point = new Point(x / dpi, y / dpi, eventTimeNano - startTimeNano);
-        if (!points.isEmpty()) {
-            length += points.get(points.size() - 1).dist(point);
+        x /= dpi;
+        y /= dpi;
+        if (count == 0) {
+            firstX = x;
+            firstY = y;
+        } else {
+            length += (float) Math.hypot(x - lastX, y - lastY);
         }
-        points.add(point);
+        lastX = x;
+        lastY = y;
+        count++;
+        features.addPoint(x, y, eventTimeNano - startTimeNano, length, isLastPoint);
     }
 
     public int getCount() {
-        return points.size();
+        return count;
     }
 
     public float getTotalLength() {
@@ -55,7 +77,21 @@ class Stroke {
     }
 
     public float getEndPointLength() {
-        return points.get(0).dist(points.get(points.size() - 1));
+        return (float) Math.hypot(lastX - firstX, lastY - firstY);
+    }
+
+    /**
+     * @return the horizontal distance from the first to the last point, in inches
+     */
+    public float getEndPointDeltaX() {
+        return lastX - firstX;
+    }
+
+    /**
+     * @return the vertical distance from the first to the last point, in inches
+     */
+    public float getEndPointDeltaY() {
+        return lastY - firstY;
     }
 
     public long getDurationNanos() {
@@ -66,7 +102,7 @@ class Stroke {
         return (float) getDurationNanos() / NANOS_TO_SECONDS;
     }
 
-    public ArrayList<Point> getPoints() {
-        return points;
+    public StrokeFeatures getFeatures() {
+        return features;
     }
 }
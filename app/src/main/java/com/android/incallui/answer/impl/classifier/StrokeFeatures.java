@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.incallui.answer.impl.classifier;
+
+/**
+ * Extracts the features of a {@link Stroke} which need more than its end points, updating all of
+ * them in a single pass as each point is added. The {@link StrokeClassifier}s only evaluate these
+ * features, so no point needs to be kept beyond the last three of each angle calculation.
+ *
+ * <p>Instances are reused with their stroke, so adding a point never allocates.
+ */
+final class StrokeFeatures {
+
+    private static final float MILLIS_TO_NANOS = 1e6f;
+
+    private static final float ANGLE_DEVIATION = (float) Math.PI / 20.0f;
+    private static final float MIN_MOVE_DIST_DP = .01f;
+
+    private static final float SPEED_DURATION_SCALE = 1e8f;
+    private static final float SPEED_LENGTH_SCALE = 1.0f;
+    private static final float SPEED_ANGLE_DEVIATION = (float) Math.PI / 10.0f;
+
+    // See AccelerationClassifier.
+    private boolean hasPreviousPoint;
+    private float previousX;
+    private float previousY;
+    private long previousTimeOffsetNano;
+    private float previousSpeed;
+    private float maxSpeedRatio;
+
+    // See AnglesClassifier.
+    private final PointRingBuffer anglePoints = new PointRingBuffer(3);
+    private float firstAngleVariance;
+    private float previousAngle;
+    private float biggestAngle;
+    private float sumSquares;
+    private float secondSumSquares;
+    private float sum;
+    private float secondSum;
+    private float count;
+    private float secondCount;
+    private float firstLength;
+    private float length;
+    private float anglesCount;
+    private float leftAngles;
+    private float rightAngles;
+    private float straightAngles;
+
+    // See SpeedAnglesClassifier.
+    private final PointRingBuffer speedPoints = new PointRingBuffer(3);
+    private float speedPreviousAngle;
+    private float speedSumSquares;
+    private float speedSum;
+    private float speedCount;
+    private float speedAnglesCount;
+    private float acceleratingAngles;
+
+    StrokeFeatures() {
+        reset();
+    }
+
+    private static float getAnglesVariance(float sumSquares, float sum, float count) {
+        return sumSquares / count - (sum / count) * (sum / count);
+    }
+
+    void reset() {
+        hasPreviousPoint = false;
+        previousSpeed = 0.0f;
+        maxSpeedRatio = 0.0f;
+
+        anglePoints.clear();
+        firstAngleVariance = 0.0f;
+        previousAngle = (float) Math.PI;
+        biggestAngle = 0.0f;
+        sumSquares = secondSumSquares = 0.0f;
+        sum = secondSum = 0.0f;
+        count = secondCount = 1.0f;
+        length = firstLength = 0.0f;
+        anglesCount = leftAngles = rightAngles = straightAngles = 0.0f;
+
+        speedPoints.clear();
+        speedPreviousAngle = (float) Math.PI;
+        speedSumSquares = 0.0f;
+        speedSum = 0.0f;
+        speedCount = 1.0f;
+        speedAnglesCount = acceleratingAngles = 0.0f;
+    }
+
+    /**
+     * @param x the x coordinate of the point in inches
+     * @param y the y coordinate of the point in inches
+     * @param timeOffsetNano the time of the point since the start of the stroke
+     * @param strokeLength the length of the stroke up to and including this point
+     * @param isLastPoint whether this point ends the stroke
+     */
+    void addPoint(
+            float x, float y, long timeOffsetNano, float strokeLength, boolean isLastPoint) {
+        addAccelerationPoint(x, y, timeOffsetNano);
+        addAnglePoint(x, y);
+        // The UP event comes in with some delay, which would ruin the smoothness of the speed
+        // curve.
+        if (!isLastPoint) {
+            addSpeedPoint(timeOffsetNano, strokeLength);
+        }
+    }
+
+    /**
+     * The maximum ratio between the speeds of two consecutive parts of the stroke.
+     */
+    float getMaxSpeedRatio() {
+        return maxSpeedRatio;
+    }
+
+    float getAnglesVariance() {
+        float anglesVariance = getAnglesVariance(sumSquares, sum, count);
+        if (firstLength < length / 2f) {
+            anglesVariance =
+                    Math.min(
+                            anglesVariance,
+                            firstAngleVariance
+                                    + getAnglesVariance(secondSumSquares, secondSum, secondCount));
+        }
+        return anglesVariance;
+    }
+
+    float getAnglesPercentage() {
+        if (anglesCount == 0.0f) {
+            return 1.0f;
+        }
+        return (Math.max(leftAngles, rightAngles) + straightAngles) / anglesCount;
+    }
+
+    float getSpeedAnglesVariance() {
+        return getAnglesVariance(speedSumSquares, speedSum, speedCount);
+    }
+
+    float getSpeedAnglesPercentage() {
+        if (speedAnglesCount == 0.0f) {
+            return 1.0f;
+        }
+        return acceleratingAngles / speedAnglesCount;
+    }
+
+    private void addAccelerationPoint(float x, float y, long timeOffsetNano) {
+        if (!hasPreviousPoint) {
+            hasPreviousPoint = true;
+            previousX = x;
+            previousY = y;
+            previousTimeOffsetNano = timeOffsetNano;
+            return;
+        }
+
+        float distance = (float) Math.hypot(x - previousX, y - previousY);
+        float duration = (float) (timeOffsetNano - previousTimeOffsetNano + 1);
+        float speed = distance / duration;
+        previousX = x;
+        previousY = y;
+        previousTimeOffsetNano = timeOffsetNano;
+
+        if (duration > 20 * MILLIS_TO_NANOS || duration < 5 * MILLIS_TO_NANOS) {
+            // reject this segment and ensure we won't use data about it in the next round.
+            previousSpeed = 0;
+            return;
+        }
+        if (previousSpeed != 0.0f) {
+            maxSpeedRatio = Math.max(maxSpeedRatio, speed / previousSpeed);
+        }
+        previousSpeed = speed;
+    }
+
+    private void addAnglePoint(float x, float y) {
+        float dist = 0.0f;
+        if (anglePoints.size() > 0) {
+            dist = (float) Math.hypot(x - anglePoints.getLastX(), y - anglePoints.getLastY());
+            // Repetitions and short distances are being ignored so that proper angles are
+            // calculated.
+            if (!(dist > MIN_MOVE_DIST_DP)) {
+                return;
+            }
+        }
+        length += dist;
+        boolean hadThreePoints = anglePoints.isFull();
+        anglePoints.add(x, y);
+        if (!hadThreePoints) {
+            return;
+        }
+
+        float angle = anglePoints.getAngle(0, 1, 2);
+
+        anglesCount++;
+        if (angle < Math.PI - ANGLE_DEVIATION) {
+            leftAngles++;
+        } else if (angle <= Math.PI + ANGLE_DEVIATION) {
+            straightAngles++;
+        } else {
+            rightAngles++;
+        }
+
+        float difference = angle - previousAngle;
+
+        // If this is the biggest angle of the stroke so then we save the value of
+        // the angle variance so far and start to count the values for the angle
+        // variance of the second part.
+        if (biggestAngle < angle) {
+            biggestAngle = angle;
+            firstLength = length;
+            firstAngleVariance = getAnglesVariance(sumSquares, sum, count);
+            secondSumSquares = 0.0f;
+            secondSum = 0.0f;
+            secondCount = 1.0f;
+        } else {
+            secondSum += difference;
+            secondSumSquares += difference * difference;
+            secondCount += 1.0f;
+        }
+
+        sum += difference;
+        sumSquares += difference * difference;
+        count += 1.0f;
+        previousAngle = angle;
+    }
+
+    private void addSpeedPoint(long timeOffsetNano, float strokeLength) {
+        float x = (float) timeOffsetNano / SPEED_DURATION_SCALE;
+        float y = strokeLength / SPEED_LENGTH_SCALE;
+
+        // Repetitions are being ignored so that proper angles are calculated.
+        if (speedPoints.size() > 0
+                && speedPoints.getLastX() == x
+                && speedPoints.getLastY() == y) {
+            return;
+        }
+        boolean hadThreePoints = speedPoints.isFull();
+        speedPoints.add(x, y);
+        if (!hadThreePoints) {
+            return;
+        }
+
+        float angle = speedPoints.getAngle(0, 1, 2);
+
+        speedAnglesCount++;
+        if (angle >= (float) Math.PI - SPEED_ANGLE_DEVIATION) {
+            acceleratingAngles++;
+        }
+
+        float difference = angle - speedPreviousAngle;
+        speedSum += difference;
+        speedSumSquares += difference * difference;
+        speedCount += 1.0f;
+        speedPreviousAngle = angle;
+    }
+}
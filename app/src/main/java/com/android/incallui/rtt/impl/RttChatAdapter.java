@@ -155,9 +155,20 @@ public class RttChatAdapter extends RecyclerView.Adapter<ViewHolder> {
     }
 
     private void updateCurrentRemoteMessage(String newMessage) {
-        RttChatMessage.updateRemoteRttChatMessage(rttMessages, newMessage);
+        int oldCount = rttMessages.size();
+        int firstChangedIndex = RttChatMessage.updateRemoteRttChatMessage(rttMessages, newMessage);
+        int newCount = rttMessages.size();
         lastIndexOfLocalMessage = RttChatMessage.getLastIndexLocalMessage(rttMessages);
-        notifyDataSetChanged();
+        // Only the messages at the end of the list change, so don't rebind the others.
+        int changedCount = Math.min(oldCount, newCount) - firstChangedIndex;
+        if (changedCount > 0) {
+            notifyItemRangeChanged(toItemPosition(firstChangedIndex), changedCount);
+        }
+        if (newCount > oldCount) {
+            notifyItemRangeInserted(toItemPosition(oldCount), newCount - oldCount);
+        } else if (newCount < oldCount) {
+            notifyItemRangeRemoved(toItemPosition(newCount), oldCount - newCount);
+        }
     }
 
     void addLocalMessage(String message) {
@@ -33,7 +33,16 @@ import java.util.List;
 public final class RttChatMessage {
 
     private static final Splitter SPLITTER = Splitter.on(Constants.BUBBLE_BREAKER);
+    /**
+     * The characters of the message, without its leading backspaces. Backspaces are applied as
+     * they are appended, so this only ever changes at its end.
+     */
     private final StringBuilder content = new StringBuilder();
+    /**
+     * The backspaces appended while the message had no characters left to delete, which delete
+     * the characters of the previous remote message.
+     */
+    private int leadingBackspaces;
     public boolean isRemote;
     private long timstamp;
     private boolean isFinished;
@@ -70,25 +79,55 @@ public final class RttChatMessage {
         return modify.toString();
     }
 
+    /**
+     * Returns {@code rttTranscript} updated with the given remote text.
+     *
+     * <p>Only the messages the text can change are converted and rebuilt, the others are copied
+     * as they are.
+     */
     public static RttTranscript getRttTranscriptWithNewRemoteMessage(
             RttTranscript rttTranscript, @NonNull String text) {
-        List<RttChatMessage> messageList = fromTranscript(rttTranscript);
+        List<RttTranscriptMessage> transcriptMessages = rttTranscript.getMessagesList();
+        // Each backspace deletes at most one break between remote messages, so the text can only
+        // change the messages from the last (backspaces + 1) remote messages on.
+        int remoteMessagesToUpdate = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\b') {
+                remoteMessagesToUpdate++;
+            }
+        }
+        int start = transcriptMessages.size();
+        while (start > 0 && remoteMessagesToUpdate > 0) {
+            start--;
+            if (transcriptMessages.get(start).getIsRemote()) {
+                remoteMessagesToUpdate--;
+            }
+        }
+        List<RttChatMessage> messageList =
+                fromTranscriptMessages(transcriptMessages.subList(start, transcriptMessages.size()));
         updateRemoteRttChatMessage(messageList, text);
-        return RttTranscript.newBuilder()
-                .setId(rttTranscript.getId())
-                .setNumber(rttTranscript.getNumber())
-                .setTimestamp(rttTranscript.getTimestamp())
+        return rttTranscript
+                .toBuilder()
+                .clearMessages()
+                .addAllMessages(transcriptMessages.subList(0, start))
                 .addAllMessages(toTranscriptMessageList(messageList))
                 .build();
     }
 
     /**
      * Update list of {@code RttChatMessage} based on given remote text.
+     *
+     * <p>This only touches the messages at the end of the list, so it takes time proportional to
+     * the text rather than to the whole conversation.
+     *
+     * @return the index of the first message that was changed, added or removed, or the size of
+     * the list if none was.
      */
-    public static void updateRemoteRttChatMessage(
+    public static int updateRemoteRttChatMessage(
             List<RttChatMessage> messageList, @NonNull String text) {
         Assert.isNotNull(messageList);
         Iterator<String> splitText = SPLITTER.split(text).iterator();
+        int firstChangedIndex = messageList.size();
 
         while (splitText.hasNext()) {
             String singleMessageContent = splitText.next();
@@ -101,58 +140,66 @@ public final class RttChatMessage {
                 if (splitText.hasNext()) {
                     message.finish();
                 }
-                if (message.content.length() != 0) {
-                    messageList.add(message);
+                if (message.isEmpty()) {
+                    continue;
                 }
+                messageList.add(message);
+                index = messageList.size() - 1;
             } else {
                 message = messageList.get(index);
                 message.append(singleMessageContent);
                 if (splitText.hasNext()) {
                     message.finish();
                 }
-                if (message.content.length() == 0) {
+                if (message.isEmpty()) {
                     messageList.remove(index);
                 }
             }
-            StringBuilder content = message.content;
-            // Delete previous messages.
-            while (content.length() > 0 && content.charAt(0) == '\b') {
-                messageList.remove(message);
-                content.delete(0, 1);
+            firstChangedIndex = Math.min(firstChangedIndex, index);
+            // Delete previous messages. The first backspace deletes the break before the message,
+            // the others the characters of the previous remote message.
+            while (message.leadingBackspaces > 0) {
+                messageList.remove(index);
+                message.leadingBackspaces--;
                 int previous = getLastIndexRemoteMessage(messageList);
                 // There are more backspaces than existing characters.
                 if (previous < 0) {
-                    while (content.length() > 0 && content.charAt(0) == '\b') {
-                        content.deleteCharAt(0);
-                    }
                     // Add message if there are still characters after backspaces.
-                    if (content.length() > 0) {
-                        message = new RttChatMessage();
-                        message.append(content.toString());
-                        message.isRemote = true;
+                    if (message.content.length() > 0) {
+                        RttChatMessage remainingMessage = new RttChatMessage();
+                        remainingMessage.content.append(message.content);
+                        remainingMessage.isRemote = true;
                         if (splitText.hasNext()) {
-                            message.finish();
+                            remainingMessage.finish();
                         }
-                        messageList.add(message);
+                        messageList.add(remainingMessage);
                     }
                     break;
                 }
-                message = messageList.get(previous);
-                message.unfinish();
-                message.append(content.toString());
-                content = message.content;
+                RttChatMessage previousMessage = messageList.get(previous);
+                previousMessage.unfinish();
+                previousMessage.append(message);
+                message = previousMessage;
+                index = previous;
+                firstChangedIndex = Math.min(firstChangedIndex, index);
             }
         }
         if (text.endsWith(Constants.BUBBLE_BREAKER)) {
             int lastIndexRemoteMessage = getLastIndexRemoteMessage(messageList);
             messageList.get(lastIndexRemoteMessage).finish();
+            firstChangedIndex = Math.min(firstChangedIndex, lastIndexRemoteMessage);
         }
+        return firstChangedIndex;
     }
 
+    /**
+     * Only the last remote message can be unfinished, as a new one is only started once all the
+     * others are finished, so this doesn't need to look at the earlier messages.
+     */
     private static int getLastIndexUnfinishedRemoteMessage(List<RttChatMessage> messageList) {
-        int i = messageList.size() - 1;
-        while (i >= 0 && (!messageList.get(i).isRemote || messageList.get(i).isFinished)) {
-            i--;
+        int i = getLastIndexRemoteMessage(messageList);
+        if (i >= 0 && messageList.get(i).isFinished) {
+            return -1;
         }
         return i;
     }
@@ -189,11 +236,16 @@ public final class RttChatMessage {
     }
 
     public static List<RttChatMessage> fromTranscript(RttTranscript rttTranscript) {
-        List<RttChatMessage> messageList = new ArrayList<>();
         if (rttTranscript == null) {
-            return messageList;
+            return new ArrayList<>();
         }
-        for (RttTranscriptMessage message : rttTranscript.getMessagesList()) {
+        return fromTranscriptMessages(rttTranscript.getMessagesList());
+    }
+
+    private static List<RttChatMessage> fromTranscriptMessages(
+            List<RttTranscriptMessage> transcriptMessages) {
+        List<RttChatMessage> messageList = new ArrayList<>(transcriptMessages.size());
+        for (RttTranscriptMessage message : transcriptMessages) {
             RttChatMessage chatMessage = new RttChatMessage();
             chatMessage.append(message.getContent());
             chatMessage.timstamp = message.getTimestamp();
@@ -221,15 +273,39 @@ public final class RttChatMessage {
     public void append(String text) {
         for (int i = 0; i < text.length(); i++) {
             char c = text.charAt(i);
-            if (c == '\b' && content.length() > 0 && content.charAt(content.length() - 1) != '\b') {
-                content.deleteCharAt(content.length() - 1);
-            } else {
+            if (c != '\b') {
                 content.append(c);
+            } else if (content.length() > 0) {
+                content.setLength(content.length() - 1);
+            } else {
+                leadingBackspaces++;
             }
         }
     }
 
+    /**
+     * Appends the content of {@code message}, whose leading backspaces delete characters of this
+     * message first.
+     */
+    private void append(RttChatMessage message) {
+        int deleted = Math.min(message.leadingBackspaces, content.length());
+        content.setLength(content.length() - deleted);
+        leadingBackspaces += message.leadingBackspaces - deleted;
+        content.append(message.content);
+    }
+
+    private boolean isEmpty() {
+        return leadingBackspaces == 0 && content.length() == 0;
+    }
+
     public String getContent() {
-        return content.toString();
+        if (leadingBackspaces == 0) {
+            return content.toString();
+        }
+        StringBuilder builder = new StringBuilder(leadingBackspaces + content.length());
+        for (int i = 0; i < leadingBackspaces; i++) {
+            builder.append('\b');
+        }
+        return builder.append(content).toString();
     }
 }
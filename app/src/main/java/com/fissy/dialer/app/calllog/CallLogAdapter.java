@@ -713,6 +713,8 @@ public class CallLogAdapter extends GroupingListAdapter
             if (views.asyncTask != null) {
                 views.asyncTask.cancel(true);
             }
+            // The row is no longer shown, so don't look up its contact before the visible ones.
+            contactInfoCache.cancelRequests(views.number + views.postDialDigits, views.countryIso);
         }
     }
 
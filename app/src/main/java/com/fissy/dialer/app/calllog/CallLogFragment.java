@@ -65,6 +65,7 @@ import com.fissy.dialer.blocking.FilteredNumberAsyncQueryHandler;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.FragmentUtils;
 import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.common.concurrent.DialerExecutorComponent;
 import com.fissy.dialer.configprovider.ConfigProviderComponent;
 import com.fissy.dialer.database.CallLogQueryHandler;
 import com.fissy.dialer.database.CallLogQueryHandler.Listener;
@@ -384,7 +385,8 @@ public class CallLogFragment extends Fragment
         contactInfoCache =
                 new ContactInfoCache(attach(getChildFragmentManager()).getRetainedCache(),
                         new ContactInfoHelper(getActivity(), currentCountryIso),
-                        onContactInfoChangedListener);
+                        onContactInfoChangedListener,
+                        DialerExecutorComponent.get(getActivity()).lowPriorityThreadPool());
         adapter =
                 Bindings.getLegacy(getActivity())
                         .newCallLogAdapter(
@@ -17,13 +17,19 @@
 package com.fissy.dialer.app.contactinfo;
 
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.os.SystemClock;
 import android.text.TextUtils;
+import android.view.Choreographer;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
+import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.logging.ContactSource.Type;
 import com.fissy.dialer.oem.CequintCallerIdManager;
@@ -32,45 +38,82 @@ import com.fissy.dialer.phonenumbercache.ContactInfoHelper;
 import com.fissy.dialer.util.ExpirableCache;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This is a cache of contact details for the phone numbers in the call log. The key is the phone
  * number with the country in which the call was placed or received. The content of the cache is
  * expired (but not purged) whenever the application comes to the foreground.
  *
- * <p>This cache queues request for information and queries for information on a background thread,
- * so {@code start()} and {@code stop()} must be called to initiate or halt that thread's exeuction
- * as needed.
+ * <p>This cache queues request for information and looks them up in batches on a background
+ * executor, so {@code start()} and {@code stop()} must be called to initiate or halt processing as
+ * needed.
+ *
+ * <p>The most recent requests are looked up first, since they are for the rows on screen, and the
+ * requests of rows scrolled off screen are cancelled with {@link #cancelRequests(String, String)}.
+ * The local requests of a batch are looked up with a single query, and the view is redrawn at most
+ * once per frame.
  *
  * <p>TODO: Explore whether there is a pattern to remove external dependencies for starting and
- * stopping the query thread.
+ * stopping the processing.
  */
 public class ContactInfoCache {
 
     private static final int REDRAW = 1;
-    private static final int START_THREAD = 2;
+    private static final int START_PROCESSING = 2;
     private static final int START_PROCESSING_REQUESTS_DELAY_MS = 1000;
+    /**
+     * The most requests looked up together, which keeps the query well below SQLite's limit on
+     * arguments and lets requests for newly visible rows overtake older ones.
+     */
+    private static final int MAX_BATCH_SIZE = 32;
 
     private final ExpirableCache<NumberWithCountryIso, ContactInfo> cache;
     private final ContactInfoHelper contactInfoHelper;
     private final OnContactInfoChangedListener onContactInfoChangedListener;
-    private final BlockingQueue<ContactInfoRequest> updateRequests;
+    private final Executor lookupExecutor;
+    /**
+     * Requests not yet looked up, most recent first. Also guards {@link #cancelledNumbers}, {@link
+     * #processingStarted} and {@link #processingScheduled}.
+     */
+    private final PriorityQueue<ContactInfoRequest> updateRequests = new PriorityQueue<>();
+    /**
+     * Numbers whose requests were cancelled before their lookup, so that they are requested again
+     * when their row is shown.
+     */
+    private final Set<NumberWithCountryIso> cancelledNumbers = new HashSet<>();
     private final Handler handler;
+    private final AtomicBoolean redrawScheduled = new AtomicBoolean();
+    private final Choreographer.FrameCallback redrawCallback =
+            frameTimeNanos -> {
+                redrawScheduled.set(false);
+                onContactInfoChangedListener.onContactInfoChanged();
+            };
+    private boolean processingStarted;
+    private boolean processingScheduled;
     private CequintCallerIdManager cequintCallerIdManager;
-    private QueryThread contactInfoQueryThread;
     private volatile boolean requestProcessingDisabled = false;
 
+    /**
+     * @param lookupExecutor the executor on which requests are looked up
+     */
     public ContactInfoCache(
             @NonNull ExpirableCache<NumberWithCountryIso, ContactInfo> internalCache,
             @NonNull ContactInfoHelper contactInfoHelper,
-            @NonNull OnContactInfoChangedListener listener) {
+            @NonNull OnContactInfoChangedListener listener,
+            @NonNull Executor lookupExecutor) {
         cache = internalCache;
         this.contactInfoHelper = contactInfoHelper;
         onContactInfoChangedListener = listener;
-        updateRequests = new PriorityBlockingQueue<>();
+        this.lookupExecutor = lookupExecutor;
         handler = new InnerHandler(new WeakReference<>(this));
     }
 
@@ -90,7 +133,8 @@ public class ContactInfoCache {
                 remoteLookupIfNotFoundLocally
                         ? ContactInfoRequest.TYPE_LOCAL_AND_REMOTE
                         : ContactInfoRequest.TYPE_LOCAL;
-        if (cachedInfo == null) {
+        boolean wasCancelled = wasCancelled(numberCountryIso);
+        if (cachedInfo == null || (wasCancelled && Objects.equals(info, ContactInfo.EMPTY))) {
             cache.put(numberCountryIso, ContactInfo.EMPTY);
             // Use the cached contact info from the call log.
             info = callLogContactInfo;
@@ -119,6 +163,60 @@ public class ContactInfoCache {
         return info;
     }
 
+    /**
+     * Cancels the pending requests for a number, whose row was scrolled off screen. The number is
+     * requested again the next time it is shown.
+     */
+    public void cancelRequests(String number, String countryIso) {
+        synchronized (updateRequests) {
+            boolean cancelled = false;
+            for (Iterator<ContactInfoRequest> it = updateRequests.iterator(); it.hasNext(); ) {
+                ContactInfoRequest request = it.next();
+                if (TextUtils.equals(request.number, number)
+                        && TextUtils.equals(request.countryIso, countryIso)) {
+                    it.remove();
+                    cancelled = true;
+                }
+            }
+            if (cancelled) {
+                cancelledNumbers.add(new NumberWithCountryIso(number, countryIso));
+            }
+        }
+    }
+
+    private boolean wasCancelled(NumberWithCountryIso numberCountryIso) {
+        synchronized (updateRequests) {
+            return cancelledNumbers.remove(numberCountryIso);
+        }
+    }
+
+    /**
+     * Looks up the local requests of a batch with a single query, and the numbers it doesn't find
+     * one by one.
+     *
+     * <p>It returns true if it updated the content of the cache and we should therefore tell the
+     * view to update its content.
+     */
+    @WorkerThread
+    private boolean queryContactInfo(List<ContactInfoRequest> batch) {
+        ContactInfo[] batchInfos = null;
+        if (batch.get(0).isLocalRequest()) {
+            List<String> numbers = new ArrayList<>(batch.size());
+            List<String> countryIsos = new ArrayList<>(batch.size());
+            for (ContactInfoRequest request : batch) {
+                numbers.add(request.number);
+                countryIsos.add(request.countryIso);
+            }
+            batchInfos = contactInfoHelper.lookupNumbersByE164(numbers, countryIsos);
+        }
+
+        boolean updated = false;
+        for (int i = 0; i < batch.size(); i++) {
+            updated |= queryContactInfo(batch.get(i), batchInfos == null ? null : batchInfos[i]);
+        }
+        return updated;
+    }
+
     /**
      * Queries the appropriate content provider for the contact associated with the number.
      *
@@ -129,8 +227,11 @@ public class ContactInfoCache {
      *
      * <p>It returns true if it updated the content of the cache and we should therefore tell the view
      * to update its content.
+     *
+     * @param batchInfo the contact of a local request found by the lookup of its batch, if any
      */
-    private boolean queryContactInfo(ContactInfoRequest request) {
+    @WorkerThread
+    private boolean queryContactInfo(ContactInfoRequest request, @Nullable ContactInfo batchInfo) {
         LogUtil.d(
                 "ContactInfoCache.queryContactInfo",
                 "request number: %s, type: %d",
@@ -138,7 +239,10 @@ public class ContactInfoCache {
                 request.type);
         ContactInfo info;
         if (request.isLocalRequest()) {
-            info = contactInfoHelper.lookupNumber(request.number, request.countryIso);
+            info =
+                    batchInfo != null
+                            ? batchInfo
+                            : contactInfoHelper.lookupNumber(request.number, request.countryIso);
             if (info != null && !info.contactExists) {
                 // TODO(wangqi): Maybe skip look up if it's already available in cached number lookup
                 // service.
@@ -162,7 +266,6 @@ public class ContactInfoCache {
         } else {
             info = contactInfoHelper.lookupNumberInRemoteDirectory(request.number, request.countryIso);
         }
-
         if (info == null) {
             // The lookup failed, just return without requesting to update the view.
             return false;
@@ -200,44 +303,41 @@ public class ContactInfoCache {
     }
 
     /**
-     * After a delay, start the thread to begin processing requests. We perform lookups on a
-     * background thread, but this must be called to indicate the thread should be running.
+     * After a delay, start processing requests. We perform lookups on a background executor, but
+     * this must be called to indicate requests should be processed.
      */
     public void start() {
-        // Schedule a thread-creation message if the thread hasn't been created yet, as an
-        // optimization to queue fewer messages.
-        if (contactInfoQueryThread == null) {
-            // TODO: Check whether this delay before starting to process is necessary.
-            handler.sendEmptyMessageDelayed(START_THREAD, START_PROCESSING_REQUESTS_DELAY_MS);
+        // Schedule a start message if processing hasn't started yet, as an optimization to queue
+        // fewer messages.
+        synchronized (updateRequests) {
+            if (processingStarted) {
+                return;
+            }
         }
+        // TODO: Check whether this delay before starting to process is necessary.
+        handler.sendEmptyMessageDelayed(START_PROCESSING, START_PROCESSING_REQUESTS_DELAY_MS);
     }
 
     /**
-     * Stops the thread and clears the queue of messages to process. This cleans up the thread for
-     * lookups so that it is not perpetually running.
+     * Stops processing requests. Pending requests are kept and looked up once processing starts
+     * again.
      */
     public void stop() {
         stopRequestProcessing();
     }
 
     /**
-     * Starts a background thread to process contact-lookup requests, unless one has already been
-     * started.
+     * Starts processing contact-lookup requests, unless it has already been started.
      */
-    private synchronized void startRequestProcessing() {
+    private void startRequestProcessing() {
         // For unit-testing.
         if (requestProcessingDisabled) {
             return;
         }
-
-        // If a thread is already started, don't start another.
-        if (contactInfoQueryThread != null) {
-            return;
+        synchronized (updateRequests) {
+            processingStarted = true;
+            scheduleProcessing();
         }
-
-        contactInfoQueryThread = new QueryThread();
-        contactInfoQueryThread.setPriority(Thread.MIN_PRIORITY);
-        contactInfoQueryThread.start();
     }
 
     public void invalidate() {
@@ -246,17 +346,14 @@ public class ContactInfoCache {
     }
 
     /**
-     * Stops the background thread that processes updates and cancels any pending requests to start
-     * it.
+     * Stops processing requests and cancels any pending requests to start it. A batch being looked
+     * up is finished.
      */
-    private synchronized void stopRequestProcessing() {
-        // Remove any pending requests to start the processing thread.
-        handler.removeMessages(START_THREAD);
-        if (contactInfoQueryThread != null) {
-            // Stop the thread; we are finished with it.
-            contactInfoQueryThread.stopProcessing();
-            contactInfoQueryThread.interrupt();
-            contactInfoQueryThread = null;
+    private void stopRequestProcessing() {
+        // Remove any pending requests to start processing.
+        handler.removeMessages(START_PROCESSING);
+        synchronized (updateRequests) {
+            processingStarted = false;
         }
     }
 
@@ -265,9 +362,9 @@ public class ContactInfoCache {
      *
      * <p>It also provides the current contact info stored in the call log for this number.
      *
-     * <p>If the {@code immediate} parameter is true, it will start immediately the thread that looks
-     * up the contact information (if it has not been already started). Otherwise, it will be started
-     * with a delay. See {@link #START_PROCESSING_REQUESTS_DELAY_MS}.
+     * <p>If the {@code immediate} parameter is true, it will start processing requests immediately
+     * (if it has not been already started). Otherwise, it will be started with a delay. See {@link
+     * #START_PROCESSING_REQUESTS_DELAY_MS}.
      */
     private void enqueueRequest(
             String number,
@@ -276,8 +373,13 @@ public class ContactInfoCache {
             boolean immediate,
             @ContactInfoRequest.TYPE int type) {
         ContactInfoRequest request = new ContactInfoRequest(number, countryIso, callLogInfo, type);
-        if (!updateRequests.contains(request)) {
+        synchronized (updateRequests) {
+            // Replace an equal pending request, so that it gets the priority of the new one.
+            updateRequests.remove(request);
             updateRequests.offer(request);
+            if (processingStarted) {
+                scheduleProcessing();
+            }
         }
 
         if (immediate) {
@@ -285,6 +387,54 @@ public class ContactInfoCache {
         }
     }
 
+    /**
+     * Schedules {@link #processRequests()}, unless it is already scheduled or running.
+     */
+    private void scheduleProcessing() {
+        Assert.checkState(Thread.holdsLock(updateRequests));
+        if (!processingScheduled && !updateRequests.isEmpty()) {
+            processingScheduled = true;
+            lookupExecutor.execute(this::processRequests);
+        }
+    }
+
+    /**
+     * Looks up the pending requests in batches until there are none left or processing is stopped.
+     */
+    @WorkerThread
+    private void processRequests() {
+        while (true) {
+            List<ContactInfoRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            synchronized (updateRequests) {
+                if (!processingStarted || updateRequests.isEmpty()) {
+                    processingScheduled = false;
+                    return;
+                }
+                // Local and remote requests are never mixed, so that slow remote lookups don't
+                // delay local ones.
+                boolean isLocalBatch = updateRequests.peek().isLocalRequest();
+                while (batch.size() < MAX_BATCH_SIZE
+                        && !updateRequests.isEmpty()
+                        && updateRequests.peek().isLocalRequest() == isLocalBatch) {
+                    batch.add(updateRequests.poll());
+                }
+            }
+            if (queryContactInfo(batch)) {
+                scheduleRedraw();
+            }
+        }
+    }
+
+    /**
+     * Redraws the view at the next frame, so that the batches looked up during a frame only redraw
+     * it once.
+     */
+    private void scheduleRedraw() {
+        if (redrawScheduled.compareAndSet(false, true)) {
+            handler.sendEmptyMessage(REDRAW);
+        }
+    }
+
     /**
      * Checks whether the contact info from the call log matches the one from the contacts db.
      */
@@ -318,9 +468,11 @@ public class ContactInfoCache {
         private final WeakReference<ContactInfoCache> contactInfoCacheWeakReference;
 
         public InnerHandler(WeakReference<ContactInfoCache> contactInfoCacheWeakReference) {
+            super(Looper.getMainLooper());
             this.contactInfoCacheWeakReference = contactInfoCacheWeakReference;
         }
 
+        @MainThread
         @Override
         public void handleMessage(Message msg) {
             ContactInfoCache reference = contactInfoCacheWeakReference.get();
@@ -329,53 +481,13 @@ public class ContactInfoCache {
             }
             switch (msg.what) {
                 case REDRAW:
-                    reference.onContactInfoChangedListener.onContactInfoChanged();
+                    Choreographer.getInstance().postFrameCallback(reference.redrawCallback);
                     break;
-                case START_THREAD:
+                case START_PROCESSING:
                     reference.startRequestProcessing();
                     break;
                 default: // fall out
             }
         }
     }
-
-    /*
-     * Handles requests for contact name and number type.
-     */
-    private class QueryThread extends Thread {
-
-        private volatile boolean done = false;
-
-        public QueryThread() {
-            super("ContactInfoCache.QueryThread");
-        }
-
-        public void stopProcessing() {
-            done = true;
-        }
-
-        @Override
-        public void run() {
-            boolean shouldRedraw = false;
-            while (true) {
-                // Check if thread is finished, and if so return immediately.
-                if (done) {
-                    return;
-                }
-
-                try {
-                    ContactInfoRequest request = updateRequests.take();
-                    shouldRedraw |= queryContactInfo(request);
-                    if (shouldRedraw
-                            && (updateRequests.isEmpty()
-                            || (request.isLocalRequest() && !Objects.requireNonNull(updateRequests.peek()).isLocalRequest()))) {
-                        shouldRedraw = false;
-                        handler.sendEmptyMessage(REDRAW);
-                    }
-                } catch (InterruptedException e) {
-                    // Ignore and attempt to continue processing requests
-                }
-            }
-        }
-    }
 }
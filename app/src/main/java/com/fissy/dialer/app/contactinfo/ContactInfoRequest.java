@@ -100,7 +100,8 @@ public final class ContactInfoRequest implements Comparable<ContactInfoRequest>
 
     @Override
     public int hashCode() {
-        return Objects.hash(sequenceNumber, number, countryIso, callLogInfo, type);
+        // Consistent with equals(), so that a request made again replaces the pending one.
+        return Objects.hash(number, countryIso, callLogInfo, type);
     }
 
     @Override
@@ -112,8 +113,8 @@ public final class ContactInfoRequest implements Comparable<ContactInfoRequest>
         if (!isLocalRequest() && other.isLocalRequest()) {
             return 1;
         }
-        // First come first served.
-        return sequenceNumber < other.sequenceNumber ? -1 : 1;
+        // The most recent request is most likely for a row which is still on screen.
+        return sequenceNumber > other.sequenceNumber ? -1 : 1;
     }
 
     /**
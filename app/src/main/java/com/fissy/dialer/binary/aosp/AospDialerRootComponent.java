@@ -33,14 +33,14 @@ import com.fissy.dialer.enrichedcall.stub.StubEnrichedCallModule;
 import com.fissy.dialer.feedback.stub.StubFeedbackModule;
 import com.fissy.dialer.glidephotomanager.GlidePhotoManagerModule;
 import com.fissy.dialer.inject.ContextModule;
-import com.fissy.dialer.metrics.StubMetricsModule;
+import com.fissy.dialer.metrics.local.LocalMetricsModule;
 import com.fissy.dialer.phonelookup.PhoneLookupModule;
 import com.fissy.dialer.phonenumbergeoutil.impl.PhoneNumberGeoUtilModule;
 import com.fissy.dialer.precall.impl.PreCallModule;
 import com.fissy.dialer.preferredsim.PreferredSimModule;
 import com.fissy.dialer.preferredsim.suggestion.stub.StubSimSuggestionModule;
 import com.fissy.dialer.promotion.impl.PromotionModule;
-import com.fissy.dialer.spam.stub.StubSpamModule;
+import com.fissy.dialer.spam.local.LocalSpamModule;
 import com.fissy.dialer.storage.StorageModule;
 import com.fissy.dialer.strictmode.impl.SystemStrictModeModule;
 
@@ -62,6 +62,8 @@ import dagger.Component;
                 ContextModule.class,
                 DialerExecutorModule.class,
                 GlidePhotoManagerModule.class,
+                LocalMetricsModule.class,
+                LocalSpamModule.class,
                 PhoneLookupModule.class,
                 PhoneNumberGeoUtilModule.class,
                 PreCallModule.class,
@@ -73,11 +75,9 @@ import dagger.Component;
                 StubDuoModule.class,
                 StubEnrichedCallModule.class,
                 StubBubbleModule.class,
-                StubMetricsModule.class,
                 StubFeedbackModule.class,
                 StubMapsModule.class,
                 StubSimSuggestionModule.class,
-                StubSpamModule.class,
                 StubSpeakEasyModule.class,
                 SystemStrictModeModule.class,
         })
@@ -49,6 +49,10 @@ import com.fissy.dialer.calllog.database.AnnotatedCallLogDatabaseHelper_Factory;
 import com.fissy.dialer.calllog.database.CallLogDatabaseComponent;
 import com.fissy.dialer.calllog.database.CallLogDatabaseModule;
 import com.fissy.dialer.calllog.database.CallLogDatabaseModule_ProvideMaxRowsFactory;
+import com.fissy.dialer.calllog.database.CoalescedAnnotatedCallLogReader;
+import com.fissy.dialer.calllog.database.CoalescedAnnotatedCallLogReader_Factory;
+import com.fissy.dialer.calllog.database.CoalescedAnnotatedCallLogUpdater;
+import com.fissy.dialer.calllog.database.CoalescedAnnotatedCallLogUpdater_Factory;
 import com.fissy.dialer.calllog.database.Coalescer;
 import com.fissy.dialer.calllog.database.Coalescer_Factory;
 import com.fissy.dialer.calllog.database.MutationApplier;
@@ -79,6 +83,8 @@ import com.fissy.dialer.commandline.impl.CallCommand_Factory;
 import com.fissy.dialer.commandline.impl.Echo_Factory;
 import com.fissy.dialer.commandline.impl.Help;
 import com.fissy.dialer.commandline.impl.Help_Factory;
+import com.fissy.dialer.commandline.impl.MetricsCommand;
+import com.fissy.dialer.commandline.impl.MetricsCommand_Factory;
 import com.fissy.dialer.commandline.impl.Version;
 import com.fissy.dialer.commandline.impl.Version_Factory;
 import com.fissy.dialer.common.concurrent.DefaultDialerExecutorFactory;
@@ -130,9 +136,9 @@ import com.fissy.dialer.metrics.FutureTimer;
 import com.fissy.dialer.metrics.FutureTimer_Factory;
 import com.fissy.dialer.metrics.Metrics;
 import com.fissy.dialer.metrics.MetricsComponent;
-import com.fissy.dialer.metrics.StubMetrics;
-import com.fissy.dialer.metrics.StubMetricsInitializer_Factory;
-import com.fissy.dialer.metrics.StubMetrics_Factory;
+import com.fissy.dialer.metrics.local.LocalMetrics;
+import com.fissy.dialer.metrics.local.LocalMetricsInitializer_Factory;
+import com.fissy.dialer.metrics.local.LocalMetrics_Factory;
 import com.fissy.dialer.phonelookup.PhoneLookup;
 import com.fissy.dialer.phonelookup.PhoneLookupComponent;
 import com.fissy.dialer.phonelookup.PhoneLookupModule_ProvidePhoneLookupListFactory;
@@ -150,6 +156,8 @@ import com.fissy.dialer.phonelookup.cp2.Cp2ExtendedDirectoryPhoneLookup;
 import com.fissy.dialer.phonelookup.cp2.Cp2ExtendedDirectoryPhoneLookup_Factory;
 import com.fissy.dialer.phonelookup.cp2.MissingPermissionsOperations_Factory;
 import com.fissy.dialer.phonelookup.database.PhoneLookupDatabaseComponent;
+import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryCache;
+import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryCache_Factory;
 import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryDatabaseHelper;
 import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryDatabaseHelper_Factory;
 import com.fissy.dialer.phonelookup.emergency.EmergencyPhoneLookup;
@@ -187,9 +195,9 @@ import com.fissy.dialer.promotion.impl.RttPromotion_Factory;
 import com.fissy.dialer.spam.Spam;
 import com.fissy.dialer.spam.SpamComponent;
 import com.fissy.dialer.spam.SpamSettings;
-import com.fissy.dialer.spam.stub.SpamSettingsStub_Factory;
-import com.fissy.dialer.spam.stub.SpamStub;
-import com.fissy.dialer.spam.stub.SpamStub_Factory;
+import com.fissy.dialer.spam.local.LocalSpam;
+import com.fissy.dialer.spam.local.LocalSpamSettings_Factory;
+import com.fissy.dialer.spam.local.LocalSpam_Factory;
 import com.fissy.dialer.speeddial.loader.SpeedDialUiItemMutator;
 import com.fissy.dialer.speeddial.loader.SpeedDialUiItemMutator_Factory;
 import com.fissy.dialer.speeddial.loader.UiItemLoaderComponent;
@@ -264,7 +272,7 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
 
     private Provider<SystemBlockedNumberPhoneLookup> systemBlockedNumberPhoneLookupProvider;
 
-    private Provider<SpamStub> spamStubProvider;
+    private Provider<LocalSpam> localSpamProvider;
 
     private Provider<Spam> bindSpamProvider;
 
@@ -272,7 +280,7 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
 
     private Provider<ImmutableList<PhoneLookup>> providePhoneLookupListProvider;
 
-    private Provider<StubMetrics> stubMetricsProvider;
+    private Provider<LocalMetrics> localMetricsProvider;
 
     private Provider<Metrics> bindMetricsProvider;
 
@@ -283,11 +291,16 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
     private Provider<CompositePhoneLookup> compositePhoneLookupProvider;
 
     private Provider<PhoneLookupHistoryDatabaseHelper> phoneLookupHistoryDatabaseHelperProvider;
+    private Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider;
 
     private Provider<PhoneLookupDataSource> phoneLookupDataSourceProvider;
 
     private Provider<DataSources> provideCallLogDataSourcesProvider;
 
+    private Provider<Coalescer> coalescerProvider;
+
+    private Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider;
+
     private Provider<MutationApplier> mutationApplierProvider;
 
     private Provider<CallLogCacheUpdater> callLogCacheUpdaterProvider;
@@ -310,6 +323,8 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
 
     private Provider<ActiveCallsCommand> activeCallsCommandProvider;
 
+    private Provider<MetricsCommand> metricsCommandProvider;
+
     private Provider<CommandLineModule.AospCommandInjector> aospCommandInjectorProvider;
 
     private Provider<Supplier<ImmutableMap<String, Command>>> provideCommandSupplierProvider;
@@ -480,9 +495,14 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
                 SystemBlockedNumberPhoneLookup_Factory.create(
                         provideContextProvider, provideBackgroundExecutorProvider, markDirtyObserverProvider);
 
-        this.spamStubProvider = SpamStub_Factory.create(provideBackgroundExecutorProvider);
+        this.localSpamProvider =
+                DoubleCheck.provider(
+                        LocalSpam_Factory.create(
+                                provideContextProvider,
+                                provideBackgroundExecutorProvider,
+                                toProvider2));
 
-        this.bindSpamProvider = (Provider) spamStubProvider;
+        this.bindSpamProvider = (Provider) localSpamProvider;
 
         this.spamPhoneLookupProvider =
                 SpamPhoneLookup_Factory.create(
@@ -501,9 +521,12 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
                         systemBlockedNumberPhoneLookupProvider,
                         spamPhoneLookupProvider);
 
-        this.stubMetricsProvider = DoubleCheck.provider(StubMetrics_Factory.create());
+        this.localMetricsProvider =
+                DoubleCheck.provider(
+                        LocalMetrics_Factory.create(
+                                provideContextProvider, provideBackgroundExecutorProvider));
 
-        this.bindMetricsProvider = (Provider) stubMetricsProvider;
+        this.bindMetricsProvider = (Provider) localMetricsProvider;
 
         this.futureTimerProvider =
                 FutureTimer_Factory.create(bindMetricsProvider, provideLightweightExecutorProvider);
@@ -518,7 +541,9 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
                         providePhoneLookupListProvider,
                         futureTimerProvider,
                         callLogStateProvider,
-                        provideLightweightExecutorProvider);
+                        toProvider2,
+                        provideLightweightExecutorProvider,
+                        provideNonUiSerialExecutorServiceProvider);
 
         this.phoneLookupHistoryDatabaseHelperProvider =
                 DoubleCheck.provider(
@@ -527,21 +552,43 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
                                 provideContextProvider,
                                 provideBackgroundExecutorProvider));
 
+        this.phoneLookupHistoryCacheProvider =
+                DoubleCheck.provider(
+                        PhoneLookupHistoryCache_Factory.create(
+                                provideContextProvider,
+                                phoneLookupHistoryDatabaseHelperProvider,
+                                provideBackgroundExecutorProvider,
+                                provideNonUiSerialExecutorServiceProvider));
+
         this.phoneLookupDataSourceProvider =
                 PhoneLookupDataSource_Factory.create(
                         provideContextProvider,
                         compositePhoneLookupProvider,
                         provideBackgroundExecutorProvider,
                         provideLightweightExecutorProvider,
-                        phoneLookupHistoryDatabaseHelperProvider);
+                        phoneLookupHistoryDatabaseHelperProvider,
+                        phoneLookupHistoryCacheProvider);
 
         this.provideCallLogDataSourcesProvider =
                 CallLogModule_ProvideCallLogDataSourcesFactory.create(
                         systemCallLogDataSourceProvider,
                         phoneLookupDataSourceProvider);
 
+        this.coalescerProvider =
+                Coalescer_Factory.create(provideBackgroundExecutorProvider, futureTimerProvider);
+
+        this.coalescedAnnotatedCallLogUpdaterProvider =
+                DoubleCheck.provider(
+                        CoalescedAnnotatedCallLogUpdater_Factory.create(
+                                provideContextProvider,
+                                annotatedCallLogDatabaseHelperProvider,
+                                coalescerProvider));
+
         this.mutationApplierProvider =
-                MutationApplier_Factory.create(provideBackgroundExecutorProvider);
+                MutationApplier_Factory.create(
+                        provideBackgroundExecutorProvider,
+                        annotatedCallLogDatabaseHelperProvider,
+                        coalescedAnnotatedCallLogUpdaterProvider);
 
         this.callLogCacheUpdaterProvider =
                 CallLogCacheUpdater_Factory.create(
@@ -589,6 +636,10 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
 
         this.activeCallsCommandProvider = ActiveCallsCommand_Factory.create(provideContextProvider);
 
+        this.metricsCommandProvider =
+                MetricsCommand_Factory.create(
+                        localMetricsProvider, provideBackgroundExecutorProvider);
+
         this.aospCommandInjectorProvider =
                 CommandLineModule_AospCommandInjector_Factory.create(
                         helpProvider,
@@ -596,7 +647,8 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
                         Echo_Factory.create(),
                         blockingCommandProvider,
                         callCommandProvider,
-                        activeCallsCommandProvider);
+                        activeCallsCommandProvider,
+                        metricsCommandProvider);
 
         this.provideCommandSupplierProvider =
                 CommandLineModule_ProvideCommandSupplierFactory.create(aospCommandInjectorProvider);
@@ -1003,6 +1055,8 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
     private final class CallLogDatabaseComponentImpl extends CallLogDatabaseComponent {
         private Provider<Coalescer> coalescerProvider;
 
+        private Provider<CoalescedAnnotatedCallLogReader> coalescedAnnotatedCallLogReaderProvider;
+
         private CallLogDatabaseComponentImpl() {
             initialize();
         }
@@ -1014,6 +1068,12 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
                     Coalescer_Factory.create(
                             DaggerAospDialerRootComponent.this.provideBackgroundExecutorProvider,
                             DaggerAospDialerRootComponent.this.futureTimerProvider);
+
+            this.coalescedAnnotatedCallLogReaderProvider =
+                    CoalescedAnnotatedCallLogReader_Factory.create(
+                            DaggerAospDialerRootComponent.this.provideBackgroundExecutorProvider,
+                            DaggerAospDialerRootComponent.this.annotatedCallLogDatabaseHelperProvider,
+                            DaggerAospDialerRootComponent.this.coalescedAnnotatedCallLogUpdaterProvider);
         }
 
         @Override
@@ -1021,6 +1081,16 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
             return coalescerProvider.get();
         }
 
+        @Override
+        public CoalescedAnnotatedCallLogReader coalescedAnnotatedCallLogReader() {
+            return coalescedAnnotatedCallLogReaderProvider.get();
+        }
+
+        @Override
+        public CoalescedAnnotatedCallLogUpdater coalescedAnnotatedCallLogUpdater() {
+            return DaggerAospDialerRootComponent.this.coalescedAnnotatedCallLogUpdaterProvider.get();
+        }
+
         @Override
         public AnnotatedCallLogDatabaseHelper annotatedCallLogDatabaseHelper() {
             return DaggerAospDialerRootComponent.this.annotatedCallLogDatabaseHelperProvider.get();
@@ -1039,10 +1109,9 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
 
             this.realtimeRowProcessorProvider =
                     RealtimeRowProcessor_Factory.create(
-                            DaggerAospDialerRootComponent.this.provideContextProvider,
                             DaggerAospDialerRootComponent.this.provideUiThreadExecutorServiceProvider,
-                            DaggerAospDialerRootComponent.this.provideBackgroundExecutorProvider,
-                            DaggerAospDialerRootComponent.this.compositePhoneLookupProvider);
+                            DaggerAospDialerRootComponent.this.compositePhoneLookupProvider,
+                            DaggerAospDialerRootComponent.this.phoneLookupHistoryCacheProvider);
         }
 
         @Override
@@ -1227,7 +1296,10 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
         @SuppressWarnings("unchecked")
         private void initialize() {
 
-            this.bindMetricsInitializerProvider = (Provider) StubMetricsInitializer_Factory.create();
+            this.bindMetricsInitializerProvider =
+                    (Provider)
+                            LocalMetricsInitializer_Factory.create(
+                                    DaggerAospDialerRootComponent.this.localMetricsProvider);
         }
 
         @Override
@@ -1264,6 +1336,11 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
         public PhoneLookupHistoryDatabaseHelper phoneLookupHistoryDatabaseHelper() {
             return DaggerAospDialerRootComponent.this.phoneLookupHistoryDatabaseHelperProvider.get();
         }
+
+        @Override
+        public PhoneLookupHistoryCache phoneLookupHistoryCache() {
+            return DaggerAospDialerRootComponent.this.phoneLookupHistoryCacheProvider.get();
+        }
     }
 
     private final class PhoneNumberGeoUtilComponentImpl extends PhoneNumberGeoUtilComponent {
@@ -1359,7 +1436,10 @@ public final class DaggerAospDialerRootComponent implements AospDialerRootCompon
         @SuppressWarnings("unchecked")
         private void initialize() {
 
-            this.bindSpamSettingsProvider = (Provider) SpamSettingsStub_Factory.create();
+            this.bindSpamSettingsProvider =
+                    (Provider)
+                            LocalSpamSettings_Factory.create(
+                                    DaggerAospDialerRootComponent.this.toProvider2);
         }
 
         @Override
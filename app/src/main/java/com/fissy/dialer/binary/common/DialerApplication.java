@@ -32,8 +32,10 @@ import com.fissy.dialer.callrecord.CallRecordingAutoMigrator;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.DialerExecutorComponent;
 import com.fissy.dialer.inject.HasRootComponent;
+import com.fissy.dialer.metrics.MetricsComponent;
 import com.fissy.dialer.notification.NotificationChannelManager;
 import com.fissy.dialer.persistentlog.PersistentLogger;
+import com.fissy.dialer.searchfragment.cp2.Cp2SearchIndex;
 import com.fissy.dialer.strictmode.StrictModeComponent;
 
 /**
@@ -61,6 +63,8 @@ public abstract class DialerApplication extends Application implements HasRootCo
                 .asyncAutoMigrate();
         initializeAnnotatedCallLog();
         PersistentLogger.initialize(this);
+        MetricsComponent.get(this).metricsInitializer().initialize(this);
+        Cp2SearchIndex.get(this).preload();
 
         if (BuildCompat.isAtLeastO()) {
             NotificationChannelManager.initChannels(this);
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.blocking;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.os.UserManagerCompat;
+
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.common.concurrent.DialerExecutorComponent;
+import com.fissy.dialer.database.FilteredNumberContract.FilteredNumberTypes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory copy of the blocked numbers, so that checking whether a number is blocked doesn't
+ * query the database.
+ *
+ * <p>The whole table is read into an immutable {@link Snapshot}, which is replaced by a new one
+ * whenever the table changes. Readers only read a volatile field, so checks never wait for a load
+ * or take a lock; while a new snapshot is being read, the previous one keeps answering.
+ */
+final class BlockedNumberSet {
+
+    @SuppressLint("StaticFieldLeak") // Only holds the application context.
+    private static BlockedNumberSet instance;
+
+    private final Context appContext;
+    private final AtomicBoolean loadScheduled = new AtomicBoolean();
+    /**
+     * Incremented by {@link #invalidate()}, so that loads which started before aren't used.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ContentObserver observer =
+            new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    reload();
+                }
+            };
+    /**
+     * Set while the user is locked and {@link #unlockReceiver} is registered, so that checks made
+     * in the meantime don't each schedule a load which can't read the table.
+     */
+    private final AtomicBoolean waitingForUnlock = new AtomicBoolean();
+    private final BroadcastReceiver unlockReceiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    stopWaitingForUnlock();
+                }
+            };
+
+    @Nullable
+    private volatile Snapshot snapshot;
+
+    /**
+     * The table {@link #observer} is registered for, which changes with {@link
+     * FilteredNumberCompat#useNewFiltering(Context)}.
+     */
+    @Nullable
+    private Uri observedUri;
+
+    private BlockedNumberSet(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    static synchronized BlockedNumberSet get(Context context) {
+        if (instance == null) {
+            instance = new BlockedNumberSet(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts loading the blocked numbers if they haven't been loaded yet.
+     */
+    void preload() {
+        if (snapshot == null) {
+            reload();
+        }
+    }
+
+    /**
+     * Returns the current snapshot, or null if it hasn't been loaded yet, in which case it starts
+     * loading it.
+     */
+    @Nullable
+    Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null
+                || current.useNewFiltering != FilteredNumberCompat.useNewFiltering(appContext)) {
+            reload();
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the current snapshot, reading the table if it hasn't been loaded yet. Returns null if
+     * the table can't be read.
+     */
+    @WorkerThread
+    @Nullable
+    Snapshot getSnapshotSynchronous() {
+        Assert.isWorkerThread();
+        Snapshot current = getSnapshot();
+        return current != null ? current : load();
+    }
+
+    /**
+     * Reads the table into a new snapshot in the background. Calls made while a load is scheduled
+     * but hasn't started yet are coalesced into it.
+     */
+    void reload() {
+        if (waitingForUnlock.get()) {
+            // Loaded once the user is unlocked.
+            return;
+        }
+        if (loadScheduled.compareAndSet(false, true)) {
+            DialerExecutorComponent.get(appContext).backgroundExecutor().execute(this::load);
+        }
+    }
+
+    /**
+     * Drops the current snapshot and reloads it, for changes made by this app which must be seen by
+     * the next check. Until the new snapshot is loaded, numbers are looked up one by one.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+        reload();
+    }
+
+    @WorkerThread
+    @Nullable
+    private synchronized Snapshot load() {
+        // Changes made from now on schedule another load.
+        loadScheduled.set(false);
+        int loadGeneration = generation.get();
+        if (!UserManagerCompat.isUserUnlocked(appContext)) {
+            LogUtil.i("BlockedNumberSet.load", "user locked");
+            waitForUnlock();
+            return null;
+        }
+        if (!FilteredNumberCompat.canAttemptBlockOperations(appContext)) {
+            LogUtil.i("BlockedNumberSet.load", "can't read blocked numbers");
+            return null;
+        }
+
+        boolean useNewFiltering = FilteredNumberCompat.useNewFiltering(appContext);
+        Uri uri = FilteredNumberCompat.getContentUri(appContext, null);
+        if (!uri.equals(observedUri)) {
+            if (observedUri != null) {
+                appContext.getContentResolver().unregisterContentObserver(observer);
+            }
+            appContext.getContentResolver().registerContentObserver(uri, true, observer);
+            observedUri = uri;
+        }
+
+        String typeColumn = FilteredNumberCompat.getTypeColumnName(appContext);
+        String[] projection =
+                FilteredNumberCompat.filter(
+                        new String[]{
+                                FilteredNumberCompat.getIdColumnName(appContext), // 0
+                                FilteredNumberCompat.getE164NumberColumnName(appContext), // 1
+                                FilteredNumberCompat.getOriginalNumberColumnName(appContext), // 2
+                                typeColumn
+                        });
+        String selection =
+                typeColumn == null ? null : typeColumn + " = " + FilteredNumberTypes.BLOCKED_NUMBER;
+        Map<String, Integer> idsByE164Number = new HashMap<>();
+        Map<String, Integer> idsByOriginalNumber = new HashMap<>();
+        try (Cursor cursor =
+                     appContext
+                             .getContentResolver()
+                             .query(uri, projection, selection, null, null)) {
+            if (cursor == null) {
+                LogUtil.w("BlockedNumberSet.load", "null cursor");
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                int id = cursor.getInt(0);
+                // The first row wins when a number is blocked more than once, like the queries this
+                // replaces.
+                putIfAbsent(idsByE164Number, cursor.getString(1), id);
+                putIfAbsent(idsByOriginalNumber, cursor.getString(2), id);
+            }
+        } catch (SecurityException e) {
+            LogUtil.e("BlockedNumberSet.load", "failed to read blocked numbers", e);
+            return null;
+        }
+
+        Snapshot loaded = new Snapshot(useNewFiltering, idsByE164Number, idsByOriginalNumber);
+        if (generation.get() == loadGeneration) {
+            snapshot = loaded;
+        }
+        LogUtil.i("BlockedNumberSet.load", "loaded %d blocked numbers", idsByOriginalNumber.size());
+        return loaded;
+    }
+
+    /**
+     * Loads the blocked numbers again once the user is unlocked, instead of on every check.
+     */
+    private void waitForUnlock() {
+        if (!waitingForUnlock.compareAndSet(false, true)) {
+            return;
+        }
+        appContext.registerReceiver(unlockReceiver, new IntentFilter(Intent.ACTION_USER_UNLOCKED));
+        // The user may have been unlocked before the receiver was registered.
+        if (UserManagerCompat.isUserUnlocked(appContext)) {
+            stopWaitingForUnlock();
+        }
+    }
+
+    private void stopWaitingForUnlock() {
+        if (waitingForUnlock.compareAndSet(true, false)) {
+            appContext.unregisterReceiver(unlockReceiver);
+            reload();
+        }
+    }
+
+    private static void putIfAbsent(Map<String, Integer> map, @Nullable String key, int id) {
+        if (!TextUtils.isEmpty(key) && !map.containsKey(key)) {
+            map.put(key, id);
+        }
+    }
+
+    /**
+     * The blocked numbers at one point in time.
+     */
+    static final class Snapshot {
+        private final boolean useNewFiltering;
+        private final Map<String, Integer> idsByE164Number;
+        private final Map<String, Integer> idsByOriginalNumber;
+
+        private Snapshot(
+                boolean useNewFiltering,
+                Map<String, Integer> idsByE164Number,
+                Map<String, Integer> idsByOriginalNumber) {
+            this.useNewFiltering = useNewFiltering;
+            this.idsByE164Number = idsByE164Number;
+            this.idsByOriginalNumber = idsByOriginalNumber;
+        }
+
+        /**
+         * Returns the ID of the row blocking a number, or null if it isn't blocked.
+         *
+         * @param blockableNumber the number as returned by {@link
+         *     FilteredNumbersUtil#getBlockableNumber(Context, String, String)}
+         * @param isE164Number whether the number is in E.164 format. Only the framework blocking
+         *     blocks other numbers, which it finds by their original number.
+         */
+        @Nullable
+        Integer getBlockedId(String blockableNumber, boolean isE164Number) {
+            if (useNewFiltering && !isE164Number) {
+                return idsByOriginalNumber.get(blockableNumber);
+            }
+            return idsByE164Number.get(blockableNumber);
+        }
+    }
+}
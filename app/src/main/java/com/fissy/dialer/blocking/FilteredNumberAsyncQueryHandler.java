@@ -30,14 +30,12 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.core.os.UserManagerCompat;
 
+import com.fissy.dialer.blocking.BlockedNumberSet.Snapshot;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.database.FilteredNumberContract.FilteredNumberColumns;
 import com.fissy.dialer.database.FilteredNumberContract.FilteredNumberTypes;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * TODO(calderwoodra): documentation
  */
@@ -45,12 +43,6 @@ import java.util.concurrent.ConcurrentHashMap;
 public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
 
     public static final int INVALID_ID = -1;
-    // Id used to replace null for blocked id since ConcurrentHashMap doesn't allow null key/value.
-    @VisibleForTesting
-    static final int BLOCKED_NUMBER_CACHE_NULL_ID = -1;
-
-    @VisibleForTesting
-    static final Map<String, Integer> blockedNumberCache = new ConcurrentHashMap<>();
 
     private static final int NO_TOKEN = 0;
     private final Context context;
@@ -58,6 +50,7 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
     public FilteredNumberAsyncQueryHandler(Context context) {
         super(context.getContentResolver());
         this.context = context;
+        BlockedNumberSet.get(context).preload();
     }
 
     @Override
@@ -131,18 +124,6 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
             listener.onCheckComplete(null);
             return;
         }
-        Integer cachedId = blockedNumberCache.get(number);
-        if (cachedId != null) {
-            if (listener == null) {
-                return;
-            }
-            if (cachedId == BLOCKED_NUMBER_CACHE_NULL_ID) {
-                cachedId = null;
-            }
-            listener.onCheckComplete(cachedId);
-            return;
-        }
-
         if (!UserManagerCompat.isUserUnlocked(context)) {
             LogUtil.i(
                     "FilteredNumberAsyncQueryHandler.isBlockedNumber",
@@ -155,10 +136,16 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
         String formattedNumber = FilteredNumbersUtil.getBlockableNumber(context, e164Number, number);
         if (TextUtils.isEmpty(formattedNumber)) {
             listener.onCheckComplete(INVALID_ID);
-            blockedNumberCache.put(number, INVALID_ID);
             return;
         }
 
+        Snapshot snapshot = BlockedNumberSet.get(context).getSnapshot();
+        if (snapshot != null) {
+            listener.onCheckComplete(snapshot.getBlockedId(formattedNumber, e164Number != null));
+            return;
+        }
+
+        // The blocked numbers are still being loaded, so look up this one on its own.
         startQuery(
                 NO_TOKEN,
                 new Listener() {
@@ -171,7 +158,6 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
                          * and will be returned by this query.
                          */
                         if (cursor == null || cursor.getCount() == 0) {
-                            blockedNumberCache.put(number, BLOCKED_NUMBER_CACHE_NULL_ID);
                             listener.onCheckComplete(null);
                             return;
                         }
@@ -180,12 +166,10 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
                         if (!FilteredNumberCompat.useNewFiltering(context)
                                 && cursor.getInt(cursor.getColumnIndex(FilteredNumberColumns.TYPE))
                                 != FilteredNumberTypes.BLOCKED_NUMBER) {
-                            blockedNumberCache.put(number, BLOCKED_NUMBER_CACHE_NULL_ID);
                             listener.onCheckComplete(null);
                             return;
                         }
                         Integer blockedId = cursor.getInt(cursor.getColumnIndex(FilteredNumberColumns._ID));
-                        blockedNumberCache.put(number, blockedId);
                         listener.onCheckComplete(blockedId);
                     }
                 },
@@ -214,56 +198,25 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
         if (!FilteredNumberCompat.canAttemptBlockOperations(context)) {
             return null;
         }
-        Integer cachedId = blockedNumberCache.get(number);
-        if (cachedId != null) {
-            if (cachedId == BLOCKED_NUMBER_CACHE_NULL_ID) {
-                cachedId = null;
-            }
-            return cachedId;
-        }
-
         String e164Number = PhoneNumberUtils.formatNumberToE164(number, countryIso);
         String formattedNumber = FilteredNumbersUtil.getBlockableNumber(context, e164Number, number);
         if (TextUtils.isEmpty(formattedNumber)) {
             return null;
         }
 
-        try (Cursor cursor =
-                     context
-                             .getContentResolver()
-                             .query(
-                                     FilteredNumberCompat.getContentUri(context, null),
-                                     FilteredNumberCompat.filter(
-                                             new String[]{
-                                                     FilteredNumberCompat.getIdColumnName(context),
-                                                     FilteredNumberCompat.getTypeColumnName(context)
-                                             }),
-                                     getIsBlockedNumberSelection(e164Number != null) + " = ?",
-                                     new String[]{formattedNumber},
-                                     null)) {
-            /*
-             * In the frameworking blocking, numbers can be blocked in both e164 format
-             * and not, resulting in multiple rows being returned for this query. For
-             * example, both '16502530000' and '6502530000' can exist at the same time
-             * and will be returned by this query.
-             */
-            if (cursor == null || cursor.getCount() == 0) {
-                blockedNumberCache.put(number, BLOCKED_NUMBER_CACHE_NULL_ID);
-                return null;
-            }
-            cursor.moveToFirst();
-            int blockedId = cursor.getInt(cursor.getColumnIndex(FilteredNumberColumns._ID));
-            blockedNumberCache.put(number, blockedId);
-            return blockedId;
-        } catch (SecurityException e) {
-            LogUtil.e("FilteredNumberAsyncQueryHandler.getBlockedIdSynchronous", null, e);
+        Snapshot snapshot = BlockedNumberSet.get(context).getSnapshotSynchronous();
+        if (snapshot == null) {
             return null;
         }
+        return snapshot.getBlockedId(formattedNumber, e164Number != null);
     }
 
+    /**
+     * Reloads the blocked numbers, for changes which may not have been observed yet.
+     */
     @VisibleForTesting
     public void clearCache() {
-        blockedNumberCache.clear();
+        BlockedNumberSet.get(context).reload();
     }
 
     /*
@@ -302,7 +255,6 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
      * performing the 'undo' action after unblocking.
      */
     public void blockNumber(final OnBlockNumberListener listener, ContentValues values) {
-        blockedNumberCache.clear();
         if (!FilteredNumberCompat.canAttemptBlockOperations(context)) {
             if (listener != null) {
                 listener.onBlockComplete(null);
@@ -314,6 +266,7 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
                 new Listener() {
                     @Override
                     public void onInsertComplete(int token, Object cookie, Uri uri) {
+                        BlockedNumberSet.get(context).invalidate();
                         if (listener != null) {
                             listener.onBlockComplete(uri);
                         }
@@ -345,7 +298,6 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
      * @param uri      The uri of row to remove, from {@link FilteredNumberAsyncQueryHandler#blockNumber}.
      */
     public void unblock(@Nullable final OnUnblockNumberListener listener, final Uri uri) {
-        blockedNumberCache.clear();
         if (!FilteredNumberCompat.canAttemptBlockOperations(context)) {
             if (listener != null) {
                 listener.onUnblockComplete(0, null);
@@ -372,6 +324,7 @@ public class FilteredNumberAsyncQueryHandler extends AsyncQueryHandler {
                                 new Listener() {
                                     @Override
                                     public void onDeleteComplete(int token, Object cookie, int result) {
+                                        BlockedNumberSet.get(context).invalidate();
                                         if (listener != null) {
                                             listener.onUnblockComplete(result, values);
                                         }
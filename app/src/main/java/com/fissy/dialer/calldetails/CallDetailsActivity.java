@@ -29,7 +29,7 @@ import com.fissy.dialer.calldetails.CallDetailsFooterViewHolder.DeleteCallDetail
 import com.fissy.dialer.calldetails.CallDetailsFooterViewHolder.ReportCallIdListener;
 import com.fissy.dialer.calldetails.CallDetailsHeaderViewHolder.CallDetailsHeaderListener;
 import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.enrichedcall.EnrichedCallComponent;
 import com.fissy.dialer.protos.ProtoParsers;
@@ -102,7 +102,7 @@ public final class CallDetailsActivity extends CallDetailsActivityCommon {
             CallDetailsHeaderListener callDetailsHeaderListener,
             ReportCallIdListener reportCallIdListener,
             DeleteCallDetailsListener deleteCallDetailsListener,
-            CallRecordingDataStore callRecordingDataStore) {
+            CallRecordingCache callRecordingCache) {
         return new CallDetailsAdapter(
                 this,
                 headerInfo,
@@ -111,7 +111,7 @@ public final class CallDetailsActivity extends CallDetailsActivityCommon {
                 callDetailsHeaderListener,
                 reportCallIdListener,
                 deleteCallDetailsListener,
-                callRecordingDataStore);
+                callRecordingCache);
     }
 
     @Override
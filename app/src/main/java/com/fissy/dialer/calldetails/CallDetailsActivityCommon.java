@@ -43,7 +43,8 @@ import com.fissy.dialer.app.settings.DialerSettingsActivity;
 import com.fissy.dialer.calldetails.CallDetailsEntries.CallDetailsEntry;
 import com.fissy.dialer.callintent.CallInitiationType;
 import com.fissy.dialer.callintent.CallIntentBuilder;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
+import com.fissy.dialer.callrecord.impl.CallRecorderService;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.DialerExecutor.FailureListener;
@@ -103,7 +104,8 @@ abstract class CallDetailsActivityCommon extends AppCompatActivity {
     private CallDetailsAdapterCommon adapter;
     private CallDetailsEntries callDetailsEntries;
     private UiListener<ImmutableSet<String>> checkRttTranscriptAvailabilityListener;
-    private CallRecordingDataStore callRecordingDataStore;
+    private UiListener<Boolean> loadCallRecordingsListener;
+    private CallRecordingCache callRecordingCache;
 
     /**
      * Handles the intent that launches {@link OldCallDetailsActivity} or {@link CallDetailsActivity},
@@ -119,7 +121,7 @@ abstract class CallDetailsActivityCommon extends AppCompatActivity {
             CallDetailsHeaderViewHolder.CallDetailsHeaderListener callDetailsHeaderListener,
             CallDetailsFooterViewHolder.ReportCallIdListener reportCallIdListener,
             CallDetailsFooterViewHolder.DeleteCallDetailsListener deleteCallDetailsListener,
-            CallRecordingDataStore callRecordingDataStore);
+            CallRecordingCache callRecordingCache);
 
     /**
      * Returns the phone number of the call details.
@@ -149,19 +151,14 @@ abstract class CallDetailsActivityCommon extends AppCompatActivity {
         checkRttTranscriptAvailabilityListener =
                 DialerExecutorComponent.get(this)
                         .createUiListener(getSupportFragmentManager(), "Query RTT transcript availability");
-        callRecordingDataStore = new CallRecordingDataStore();
+        loadCallRecordingsListener =
+                DialerExecutorComponent.get(this)
+                        .createUiListener(getSupportFragmentManager(), "Load call recordings");
+        callRecordingCache = new CallRecordingCache();
         handleIntent(getIntent());
         setupRecyclerViewForEntries();
     }
 
-    @Override
-    @CallSuper
-    protected void onDestroy() {
-        super.onDestroy();
-        callRecordingDataStore.close();
-    }
-
-
     @Override
     @CallSuper
     protected void onResume() {
@@ -198,6 +195,27 @@ abstract class CallDetailsActivityCommon extends AppCompatActivity {
                 });
     }
 
+    private void loadCallRecordings() {
+        if (callDetailsEntries.getEntriesCount() == 0 || !CallRecorderService.isEnabled(this)) {
+            return;
+        }
+        List<Long> callCreationDates = new ArrayList<>(callDetailsEntries.getEntriesCount());
+        for (CallDetailsEntry entry : callDetailsEntries.getEntriesList()) {
+            callCreationDates.add(entry.getDate());
+        }
+        loadCallRecordingsListener.listen(
+                this,
+                callRecordingCache.load(this, getNumber(), callCreationDates),
+                loaded -> {
+                    if (loaded && adapter != null) {
+                        adapter.onCallRecordingsLoaded();
+                    }
+                },
+                throwable -> {
+                    throw new RuntimeException(throwable);
+                });
+    }
+
     private void updateCallDetailsEntriesWithRttTranscriptAvailability(
             ImmutableSet<String> availableTranscripIds) {
         CallDetailsEntries.Builder mutableCallDetailsEntries = CallDetailsEntries.newBuilder();
@@ -235,7 +253,7 @@ abstract class CallDetailsActivityCommon extends AppCompatActivity {
                         callDetailsHeaderListener,
                         reportCallIdListener,
                         deleteCallDetailsListener,
-                        callRecordingDataStore);
+                        callRecordingCache);
 
         RecyclerView recyclerView = findViewById(R.id.recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
@@ -261,6 +279,7 @@ abstract class CallDetailsActivityCommon extends AppCompatActivity {
         if (adapter != null) {
             adapter.updateCallDetailsEntries(entries);
         }
+        loadCallRecordings();
     }
 
     /**
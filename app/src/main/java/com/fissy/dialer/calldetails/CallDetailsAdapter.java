@@ -25,7 +25,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.fissy.dialer.calldetails.CallDetailsEntryViewHolder.CallDetailsEntryListener;
 import com.fissy.dialer.calldetails.CallDetailsFooterViewHolder.DeleteCallDetailsListener;
 import com.fissy.dialer.calldetails.CallDetailsHeaderViewHolder.CallDetailsHeaderListener;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
 import com.fissy.dialer.glidephotomanager.PhotoInfo;
 
 /**
@@ -49,7 +49,7 @@ final class CallDetailsAdapter extends CallDetailsAdapterCommon {
             CallDetailsHeaderListener callDetailsHeaderListener,
             CallDetailsFooterViewHolder.ReportCallIdListener reportCallIdListener,
             DeleteCallDetailsListener deleteCallDetailsListener,
-            CallRecordingDataStore callRecordingDataStore) {
+            CallRecordingCache callRecordingCache) {
         super(
                 context,
                 callDetailsEntries,
@@ -57,7 +57,7 @@ final class CallDetailsAdapter extends CallDetailsAdapterCommon {
                 callDetailsHeaderListener,
                 reportCallIdListener,
                 deleteCallDetailsListener,
-                callRecordingDataStore);
+                callRecordingCache);
         this.headerInfo = calldetailsHeaderInfo;
     }
 
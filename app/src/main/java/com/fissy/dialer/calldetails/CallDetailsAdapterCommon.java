@@ -36,7 +36,7 @@ import com.fissy.dialer.calldetails.CallDetailsHeaderViewHolder.CallDetailsHeade
 import com.fissy.dialer.calllogutils.CallTypeHelper;
 import com.fissy.dialer.calllogutils.CallbackActionHelper;
 import com.fissy.dialer.calllogutils.CallbackActionHelper.CallbackAction;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.duo.DuoComponent;
 import com.fissy.dialer.glidephotomanager.PhotoInfo;
@@ -56,7 +56,7 @@ abstract class CallDetailsAdapterCommon extends RecyclerView.Adapter<RecyclerVie
     private final ReportCallIdListener reportCallIdListener;
     private final DeleteCallDetailsListener deleteCallDetailsListener;
     private final CallTypeHelper callTypeHelper;
-    private final CallRecordingDataStore callRecordingDataStore;
+    private final CallRecordingCache callRecordingCache;
 
     private CallDetailsEntries callDetailsEntries;
 
@@ -67,13 +67,13 @@ abstract class CallDetailsAdapterCommon extends RecyclerView.Adapter<RecyclerVie
             CallDetailsHeaderListener callDetailsHeaderListener,
             ReportCallIdListener reportCallIdListener,
             DeleteCallDetailsListener deleteCallDetailsListener,
-            CallRecordingDataStore callRecordingDataStore) {
+            CallRecordingCache callRecordingCache) {
         this.callDetailsEntries = callDetailsEntries;
         this.callDetailsEntryListener = callDetailsEntryListener;
         this.callDetailsHeaderListener = callDetailsHeaderListener;
         this.reportCallIdListener = reportCallIdListener;
         this.deleteCallDetailsListener = deleteCallDetailsListener;
-        this.callRecordingDataStore = callRecordingDataStore;
+        this.callRecordingCache = callRecordingCache;
         this.callTypeHelper =
                 new CallTypeHelper(context.getResources(), DuoComponent.get(context).getDuo());
     }
@@ -139,7 +139,7 @@ abstract class CallDetailsAdapterCommon extends RecyclerView.Adapter<RecyclerVie
                     getPhotoInfo(),
                     entry,
                     callTypeHelper,
-                    callRecordingDataStore,
+                    callRecordingCache,
                     !entry.getHistoryResultsList().isEmpty() && position != getItemCount() - 2);
         }
     }
@@ -175,6 +175,17 @@ abstract class CallDetailsAdapterCommon extends RecyclerView.Adapter<RecyclerVie
         notifyDataSetChanged();
     }
 
+    /**
+     * Rebinds the call entries, to show the recordings loaded since they were bound.
+     */
+    @MainThread
+    final void onCallRecordingsLoaded() {
+        Assert.isMainThread();
+        if (callDetailsEntries.getEntriesCount() > 0) {
+            notifyItemRangeChanged(1, callDetailsEntries.getEntriesCount()); // after the header
+        }
+    }
+
     final @CallbackAction
     int getCallbackAction() {
         Assert.checkState(!callDetailsEntries.getEntriesList().isEmpty());
@@ -46,7 +46,7 @@ import com.fissy.dialer.calllogutils.CallLogDurations;
 import com.fissy.dialer.calllogutils.CallTypeHelper;
 import com.fissy.dialer.calllogutils.CallTypeIconsView;
 import com.fissy.dialer.callrecord.CallRecording;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
 import com.fissy.dialer.callrecord.impl.CallRecorderService;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.enrichedcall.historyquery.proto.HistoryResult;
@@ -133,7 +133,7 @@ public class CallDetailsEntryViewHolder extends ViewHolder {
             PhotoInfo photoInfo,
             CallDetailsEntry entry,
             CallTypeHelper callTypeHelper,
-            CallRecordingDataStore callRecordingDataStore,
+            CallRecordingCache callRecordingCache,
             boolean showMultimediaDivider) {
         int callType = entry.getCallType();
         boolean isVideoCall = (entry.getFeatures() & Calls.FEATURES_VIDEO) == Calls.FEATURES_VIDEO;
@@ -173,11 +173,10 @@ public class CallDetailsEntryViewHolder extends ViewHolder {
                             context, entry.getDuration(), entry.getDataUsage()));
         }
 
-        // do this synchronously to prevent recordings from "popping in" after detail item is displayed
+        // Recordings are loaded in batches by the activity, and shown when they are.
         final List<CallRecording> recordings;
         if (CallRecorderService.isEnabled(context)) {
-            callRecordingDataStore.open(context); // opens unless already open
-            recordings = callRecordingDataStore.getRecordings(number, entry.getDate());
+            recordings = callRecordingCache.get(number, entry.getDate());
         } else {
             recordings = null;
         }
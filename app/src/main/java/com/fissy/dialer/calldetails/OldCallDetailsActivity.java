@@ -23,7 +23,7 @@ import com.fissy.dialer.calldetails.CallDetailsEntryViewHolder.CallDetailsEntryL
 import com.fissy.dialer.calldetails.CallDetailsFooterViewHolder.DeleteCallDetailsListener;
 import com.fissy.dialer.calldetails.CallDetailsFooterViewHolder.ReportCallIdListener;
 import com.fissy.dialer.calldetails.CallDetailsHeaderViewHolder.CallDetailsHeaderListener;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.dialercontact.DialerContact;
 import com.fissy.dialer.protos.ProtoParsers;
@@ -87,7 +87,7 @@ public final class OldCallDetailsActivity extends CallDetailsActivityCommon {
             CallDetailsHeaderListener callDetailsHeaderListener,
             ReportCallIdListener reportCallIdListener,
             DeleteCallDetailsListener deleteCallDetailsListener,
-            CallRecordingDataStore callRecordingDataStore) {
+            CallRecordingCache callRecordingCache) {
         return new OldCallDetailsAdapter(
                 /* context = */ this,
                 contact,
@@ -96,7 +96,7 @@ public final class OldCallDetailsActivity extends CallDetailsActivityCommon {
                 callDetailsHeaderListener,
                 reportCallIdListener,
                 deleteCallDetailsListener,
-                callRecordingDataStore);
+                callRecordingCache);
     }
 
     @Override
@@ -25,7 +25,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.fissy.dialer.calldetails.CallDetailsEntryViewHolder.CallDetailsEntryListener;
 import com.fissy.dialer.calldetails.CallDetailsFooterViewHolder.DeleteCallDetailsListener;
 import com.fissy.dialer.calldetails.CallDetailsHeaderViewHolder.CallDetailsHeaderListener;
-import com.fissy.dialer.callrecord.CallRecordingDataStore;
+import com.fissy.dialer.callrecord.CallRecordingCache;
 import com.fissy.dialer.dialercontact.DialerContact;
 import com.fissy.dialer.glidephotomanager.PhotoInfo;
 import com.fissy.dialer.lettertile.LetterTileDrawable;
@@ -51,7 +51,7 @@ final class OldCallDetailsAdapter extends CallDetailsAdapterCommon {
             CallDetailsHeaderListener callDetailsHeaderListener,
             CallDetailsFooterViewHolder.ReportCallIdListener reportCallIdListener,
             DeleteCallDetailsListener deleteCallDetailsListener,
-            CallRecordingDataStore callRecordingDataStore) {
+            CallRecordingCache callRecordingCache) {
         super(
                 context,
                 callDetailsEntries,
@@ -59,7 +59,7 @@ final class OldCallDetailsAdapter extends CallDetailsAdapterCommon {
                 callDetailsHeaderListener,
                 reportCallIdListener,
                 deleteCallDetailsListener,
-                callRecordingDataStore);
+                callRecordingCache);
         this.contact = contact;
     }
 
@@ -38,6 +38,7 @@ import com.fissy.dialer.metrics.FutureTimer.LogCatMode;
 import com.fissy.dialer.metrics.Metrics;
 import com.fissy.dialer.storage.Unencrypted;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -207,38 +208,30 @@ public class RefreshAnnotatedCallLogWorker {
 
     @NonNull
     private ListenableFuture<RefreshResult> rebuild(boolean isBuilt) {
-        CallLogMutations mutations = new CallLogMutations();
+        CallLogMutations systemCallLogMutations = new CallLogMutations();
 
         // Start by filling the data sources--the system call log data source must go first!
         CallLogDataSource systemCallLogDataSource = dataSources.getSystemCallLogDataSource();
-        ListenableFuture<Void> fillFuture = systemCallLogDataSource.fill(mutations);
+        ListenableFuture<Void> systemFillFuture =
+                systemCallLogDataSource.fill(systemCallLogMutations);
         String systemEventName = eventNameForFill(systemCallLogDataSource, isBuilt);
-        futureTimer.applyTiming(fillFuture, systemEventName);
-
-        // After the system call log data source is filled, call fill sequentially on each remaining
-        // data source. This must be done sequentially because mutations are not threadsafe and are
-        // passed from source to source.
-        for (CallLogDataSource dataSource : dataSources.getDataSourcesExcludingSystemCallLog()) {
-            fillFuture =
-                    Futures.transformAsync(
-                            fillFuture,
-                            unused -> {
-                                ListenableFuture<Void> dataSourceFuture = dataSource.fill(mutations);
-                                String eventName = eventNameForFill(dataSource, isBuilt);
-                                futureTimer.applyTiming(dataSourceFuture, eventName);
-                                return dataSourceFuture;
-                            },
-                            lightweightExecutorService);
-        }
+        futureTimer.applyTiming(systemFillFuture, systemEventName);
+
+        // After the system call log data source is filled, fill the remaining data sources in
+        // parallel.
+        ListenableFuture<CallLogMutations> fillFuture =
+                Futures.transformAsync(
+                        systemFillFuture,
+                        unused -> fillRemainingDataSources(systemCallLogMutations, isBuilt),
+                        backgroundExecutorService);
 
         futureTimer.applyTiming(fillFuture, eventNameForOverallFill(isBuilt));
 
-        // After all data sources are filled, apply mutations (at this point "fillFuture" is the result
-        // of filling the last data source).
+        // After all data sources are filled, apply mutations.
         ListenableFuture<Void> applyMutationsFuture =
                 Futures.transformAsync(
                         fillFuture,
-                        unused -> {
+                        mutations -> {
                             ListenableFuture<Void> mutationApplierFuture =
                                     mutationApplier.applyToDatabase(mutations, appContext);
                             futureTimer.applyTiming(mutationApplierFuture, eventNameForApplyMutations(isBuilt));
@@ -249,7 +242,7 @@ public class RefreshAnnotatedCallLogWorker {
         Futures.addCallback(
                 Futures.transformAsync(
                         applyMutationsFuture,
-                        unused -> callLogCacheUpdater.updateCache(mutations),
+                        unused -> callLogCacheUpdater.updateCache(Futures.getDone(fillFuture)),
                         MoreExecutors.directExecutor()),
                 new DefaultFutureCallback<>(),
                 MoreExecutors.directExecutor());
@@ -279,13 +272,60 @@ public class RefreshAnnotatedCallLogWorker {
                 unused -> {
                     sharedPreferences.edit().putBoolean(SharedPrefKeys.FORCE_REBUILD, false).apply();
                     callLogState.markBuilt();
-                    return mutations.isEmpty()
+                    return Futures.getDone(fillFuture).isEmpty()
                             ? RefreshResult.REBUILT_BUT_NO_CHANGES_NEEDED
                             : RefreshResult.REBUILT_AND_CHANGES_NEEDED;
                 },
                 backgroundExecutorService);
     }
 
+    /**
+     * Fills the data sources other than the system call log data source.
+     *
+     * <p>{@link CallLogMutations} are not thread-safe, so each data source fills its own copy of the
+     * mutations of the system call log data source, and the copies are merged in the order of the
+     * data sources once all of them are filled. That way the data sources run in parallel and the
+     * result doesn't depend on which of them finishes first.
+     *
+     * @return a future of the mutations of all data sources.
+     */
+    private ListenableFuture<CallLogMutations> fillRemainingDataSources(
+            CallLogMutations systemCallLogMutations, boolean isBuilt) {
+        ImmutableList<CallLogDataSource> remainingDataSources =
+                dataSources.getDataSourcesExcludingSystemCallLog();
+
+        if (remainingDataSources.isEmpty()) {
+            return Futures.immediateFuture(systemCallLogMutations);
+        }
+        // A single data source has nothing to run in parallel with, so it fills the mutations
+        // directly instead of a copy.
+        if (remainingDataSources.size() == 1) {
+            return Futures.transform(
+                    fillDataSource(remainingDataSources.get(0), systemCallLogMutations, isBuilt),
+                    unused -> systemCallLogMutations,
+                    MoreExecutors.directExecutor());
+        }
+
+        List<CallLogMutations> dataSourceMutations = new ArrayList<>();
+        List<ListenableFuture<Void>> fillFutures = new ArrayList<>();
+        for (CallLogDataSource dataSource : remainingDataSources) {
+            CallLogMutations mutations = systemCallLogMutations.copy();
+            dataSourceMutations.add(mutations);
+            fillFutures.add(fillDataSource(dataSource, mutations, isBuilt));
+        }
+        return Futures.whenAllSucceed(fillFutures)
+                .call(
+                        () -> CallLogMutations.merge(systemCallLogMutations, dataSourceMutations),
+                        backgroundExecutorService);
+    }
+
+    private ListenableFuture<Void> fillDataSource(
+            CallLogDataSource dataSource, CallLogMutations mutations, boolean isBuilt) {
+        ListenableFuture<Void> dataSourceFuture = dataSource.fill(mutations);
+        futureTimer.applyTiming(dataSourceFuture, eventNameForFill(dataSource, isBuilt));
+        return dataSourceFuture;
+    }
+
     /**
      * Result of refreshing the annotated call log.
      */
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.fissy.dialer.calllog.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.calllog.database.AnnotatedCallLogConstraints.Operation;
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
+import com.fissy.dialer.calllog.datasources.CallLogMutations;
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes {@link CallLogMutations} straight to the {@link AnnotatedCallLog} table of the database
+ * owned by this process.
+ *
+ * <p>This is the in-process counterpart of {@link AnnotatedCallLogContentProvider#applyBatch}: the
+ * same constraints are checked, but rows are written with compiled statements which are reused for
+ * every row with the same set of columns, instead of building a {@code ContentProviderOperation}
+ * per row. Like the batch, all mutations are written in a single transaction, so that a failure
+ * leaves the annotated call log as it was. Notifying observers is left to the caller, once all
+ * mutations are written.
+ */
+final class AnnotatedCallLogBulkWriter implements Closeable {
+
+    private final SQLiteDatabase database;
+
+    /**
+     * Compiled statements, keyed by the sorted columns they write.
+     */
+    private final Map<Set<String>, SQLiteStatement> insertStatements = new HashMap<>();
+
+    private final Map<Set<String>, SQLiteStatement> updateStatements = new HashMap<>();
+    private SQLiteStatement deleteStatement;
+
+    AnnotatedCallLogBulkWriter(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Writes the provided mutations, in the same order as {@link AnnotatedCallLogContentProvider}
+     * batches used to apply them: inserts, updates and then deletes.
+     *
+     * <p>The mutations are written in a single transaction, so if writing fails, none of them is
+     * kept.
+     *
+     * @throws IllegalArgumentException if the values of a mutation don't meet {@link
+     *     AnnotatedCallLogConstraints}
+     * @throws android.database.SQLException if a row can't be written
+     */
+    @WorkerThread
+    void write(CallLogMutations mutations) {
+        Assert.isWorkerThread();
+        database.beginTransaction();
+        try {
+            for (Entry<Long, ContentValues> entry : mutations.getInserts().entrySet()) {
+                insert(entry.getKey(), entry.getValue());
+            }
+            for (Entry<Long, ContentValues> entry : mutations.getUpdates().entrySet()) {
+                if (update(entry.getKey(), entry.getValue()) == 0) {
+                    // The row may have been deleted by the trigger which keeps the table a
+                    // manageable size when rows were inserted above. See
+                    // AnnotatedCallLogContentProvider#applyBatch.
+                    LogUtil.w(
+                            "AnnotatedCallLogBulkWriter.write",
+                            "update failed, possibly because row got cleaned up");
+                }
+            }
+            for (long id : mutations.getDeletes()) {
+                delete(id);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (SQLiteStatement statement : insertStatements.values()) {
+            statement.close();
+        }
+        insertStatements.clear();
+        for (SQLiteStatement statement : updateStatements.values()) {
+            statement.close();
+        }
+        updateStatements.clear();
+        if (deleteStatement != null) {
+            deleteStatement.close();
+            deleteStatement = null;
+        }
+    }
+
+    private void insert(long id, ContentValues contentValues) {
+        AnnotatedCallLogConstraints.check(contentValues, Operation.INSERT);
+        Long idFromValues = contentValues.getAsLong(AnnotatedCallLog._ID);
+        Assert.checkArgument(
+                idFromValues == null || idFromValues == id,
+                "_ID from values %d does not match ID: %d",
+                idFromValues,
+                id);
+
+        Set<String> columns = new TreeSet<>(contentValues.keySet());
+        columns.remove(AnnotatedCallLog._ID);
+        SQLiteStatement statement = insertStatements.get(columns);
+        if (statement == null) {
+            StringBuilder sql =
+                    new StringBuilder("insert into ")
+                            .append(AnnotatedCallLog.TABLE)
+                            .append(" (")
+                            .append(AnnotatedCallLog._ID);
+            for (String column : columns) {
+                sql.append(", ").append(column);
+            }
+            sql.append(") values (?");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(", ?");
+            }
+            sql.append(")");
+            statement = database.compileStatement(sql.toString());
+            insertStatements.put(columns, statement);
+        }
+
+        statement.bindLong(1, id);
+        bindColumns(statement, 2, columns, contentValues);
+        statement.executeInsert();
+    }
+
+    private int update(long id, ContentValues contentValues) {
+        AnnotatedCallLogConstraints.check(contentValues, Operation.UPDATE);
+        Assert.checkArgument(
+                !contentValues.containsKey(AnnotatedCallLog._ID),
+                "Do not specify _ID when updating");
+        if (contentValues.size() == 0) {
+            return 1;
+        }
+
+        Set<String> columns = new TreeSet<>(contentValues.keySet());
+        SQLiteStatement statement = updateStatements.get(columns);
+        if (statement == null) {
+            StringBuilder sql =
+                    new StringBuilder("update ").append(AnnotatedCallLog.TABLE).append(" set ");
+            String separator = "";
+            for (String column : columns) {
+                sql.append(separator).append(column).append(" = ?");
+                separator = ", ";
+            }
+            sql.append(" where ").append(AnnotatedCallLog._ID).append(" = ?");
+            statement = database.compileStatement(sql.toString());
+            updateStatements.put(columns, statement);
+        }
+
+        bindColumns(statement, 1, columns, contentValues);
+        statement.bindLong(columns.size() + 1, id);
+        return statement.executeUpdateDelete();
+    }
+
+    private void delete(long id) {
+        if (deleteStatement == null) {
+            deleteStatement =
+                    database.compileStatement(
+                            "delete from "
+                                    + AnnotatedCallLog.TABLE
+                                    + " where "
+                                    + AnnotatedCallLog._ID
+                                    + " = ?");
+        }
+        deleteStatement.bindLong(1, id);
+        deleteStatement.executeUpdateDelete();
+    }
+
+    private static void bindColumns(
+            SQLiteStatement statement,
+            int firstIndex,
+            Set<String> columns,
+            ContentValues contentValues) {
+        int index = firstIndex;
+        for (String column : columns) {
+            bindValue(statement, index++, contentValues.get(column));
+        }
+    }
+
+    /**
+     * Binds a value the way {@link SQLiteDatabase#insert} binds the values of a {@link
+     * ContentValues}.
+     */
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else if (value instanceof Float || value instanceof Double) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+}
@@ -34,6 +34,7 @@ import androidx.annotation.Nullable;
 import com.fissy.dialer.calllog.database.AnnotatedCallLogConstraints.Operation;
 import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract;
 import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.CoalescedAnnotatedCallLog;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
 
@@ -49,6 +50,7 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
     private static final int ANNOTATED_CALL_LOG_TABLE_CODE = 1;
     private static final int ANNOTATED_CALL_LOG_TABLE_ID_CODE = 2;
     private static final int ANNOTATED_CALL_LOG_TABLE_DISTINCT_NUMBER_CODE = 3;
+    private static final int COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE = 4;
 
     private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
@@ -63,6 +65,10 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                 AnnotatedCallLogContract.AUTHORITY,
                 AnnotatedCallLog.DISTINCT_PHONE_NUMBERS,
                 ANNOTATED_CALL_LOG_TABLE_DISTINCT_NUMBER_CODE);
+        uriMatcher.addURI(
+                AnnotatedCallLogContract.AUTHORITY,
+                CoalescedAnnotatedCallLog.TABLE,
+                COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE);
     }
 
     private final ThreadLocal<Boolean> applyingBatch = new ThreadLocal<>();
@@ -136,6 +142,17 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                     LogUtil.w("AnnotatedCallLogContentProvider.query", "cursor was null");
                 }
                 return cursor;
+            case COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE:
+                queryBuilder.setTables(CoalescedAnnotatedCallLog.TABLE);
+                cursor =
+                        queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+                if (cursor != null) {
+                    cursor.setNotificationUri(
+                            getContext().getContentResolver(), CoalescedAnnotatedCallLog.CONTENT_URI);
+                } else {
+                    LogUtil.w("AnnotatedCallLogContentProvider.query", "cursor was null");
+                }
+                return cursor;
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
         }
@@ -144,6 +161,9 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
+        if (uriMatcher.match(uri) == COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE) {
+            return CoalescedAnnotatedCallLog.CONTENT_ITEM_TYPE;
+        }
         return AnnotatedCallLog.CONTENT_ITEM_TYPE;
     }
 
@@ -175,11 +195,22 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                 }
                 break;
             case ANNOTATED_CALL_LOG_TABLE_DISTINCT_NUMBER_CODE:
+            case COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE:
                 throw new UnsupportedOperationException();
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
         }
-        long id = database.insert(AnnotatedCallLog.TABLE, null, values);
+        long id;
+        database.beginTransaction();
+        try {
+            id = database.insert(AnnotatedCallLog.TABLE, null, values);
+            if (id >= 0) {
+                invalidateCoalescedAnnotatedCallLog(database);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
         if (id < 0) {
             LogUtil.w(
                     "AnnotatedCallLogContentProvider.insert",
@@ -211,11 +242,22 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                 selection = getSelectionWithId(id);
                 break;
             case ANNOTATED_CALL_LOG_TABLE_DISTINCT_NUMBER_CODE:
+            case COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE:
                 throw new UnsupportedOperationException();
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
         }
-        int rows = database.delete(AnnotatedCallLog.TABLE, selection, selectionArgs);
+        int rows;
+        database.beginTransaction();
+        try {
+            rows = database.delete(AnnotatedCallLog.TABLE, selection, selectionArgs);
+            if (rows > 0) {
+                invalidateCoalescedAnnotatedCallLog(database);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
         if (rows == 0) {
             LogUtil.w("AnnotatedCallLogContentProvider.delete", "no rows deleted");
             return rows;
@@ -241,7 +283,7 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
         int match = uriMatcher.match(uri);
         switch (match) {
             case ANNOTATED_CALL_LOG_TABLE_CODE:
-                int rows = database.update(AnnotatedCallLog.TABLE, values, selection, selectionArgs);
+                int rows = updateAnnotatedCallLog(database, values, selection, selectionArgs);
                 if (rows == 0) {
                     LogUtil.w("AnnotatedCallLogContentProvider.update", "no rows updated");
                     return rows;
@@ -257,7 +299,7 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                 Assert.checkArgument(
                         selectionArgs == null, "Do not specify selection args when updating by ID");
                 selection = getSelectionWithId(ContentUris.parseId(uri));
-                rows = database.update(AnnotatedCallLog.TABLE, values, selection, null);
+                rows = updateAnnotatedCallLog(database, values, selection, null);
                 if (rows == 0) {
                     LogUtil.w("AnnotatedCallLogContentProvider.update", "no rows updated");
                     return rows;
@@ -267,6 +309,7 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                 }
                 return rows;
             case ANNOTATED_CALL_LOG_TABLE_DISTINCT_NUMBER_CODE:
+            case COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE:
                 throw new UnsupportedOperationException();
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
@@ -301,6 +344,7 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
                         // These are allowed values, continue.
                         break;
                     case ANNOTATED_CALL_LOG_TABLE_DISTINCT_NUMBER_CODE:
+                    case COALESCED_ANNOTATED_CALL_LOG_TABLE_CODE:
                         throw new UnsupportedOperationException();
                     default:
                         throw new IllegalArgumentException("Unknown uri: " + operation.getUri());
@@ -338,11 +382,44 @@ public class AnnotatedCallLogContentProvider extends ContentProvider {
         return results;
     }
 
+    private int updateAnnotatedCallLog(
+            SQLiteDatabase database,
+            ContentValues values,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs) {
+        database.beginTransaction();
+        try {
+            int rows = database.update(AnnotatedCallLog.TABLE, values, selection, selectionArgs);
+            if (rows > 0) {
+                invalidateCoalescedAnnotatedCallLog(database);
+            }
+            database.setTransactionSuccessful();
+            return rows;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * {@link CoalescedAnnotatedCallLog} is only updated incrementally with the mutations applied by
+     * {@link MutationApplier}, so it is coalesced again from scratch after any other write, which
+     * this must be called in the transaction of.
+     */
+    private void invalidateCoalescedAnnotatedCallLog(SQLiteDatabase database) {
+        CallLogDatabaseComponent.get(getContext())
+                .coalescedAnnotatedCallLogUpdater()
+                .invalidate(database);
+    }
+
     private String getSelectionWithId(long id) {
         return AnnotatedCallLog._ID + "=" + id;
     }
 
     private void notifyChange(Uri uri) {
         getContext().getContentResolver().notifyChange(uri, /* observer = */ null);
+        // Every write to the annotated call log invalidates the coalesced annotated call log.
+        getContext()
+                .getContentResolver()
+                .notifyChange(CoalescedAnnotatedCallLog.CONTENT_URI, /* observer = */ null);
     }
 }
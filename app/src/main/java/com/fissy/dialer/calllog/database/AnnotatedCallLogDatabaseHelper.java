@@ -24,6 +24,7 @@ import android.provider.CallLog.Calls;
 import androidx.annotation.VisibleForTesting;
 
 import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.CoalescedAnnotatedCallLog;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
 import com.fissy.dialer.inject.ApplicationContext;
@@ -42,7 +43,7 @@ import javax.inject.Singleton;
 public class AnnotatedCallLogDatabaseHelper extends SQLiteOpenHelper {
 
     @VisibleForTesting
-    static final int VERSION = 4;
+    static final int VERSION = 5;
 
     private static final String FILENAME = "annotated_call_log.db";
     /**
@@ -124,6 +125,35 @@ public class AnnotatedCallLogDatabaseHelper extends SQLiteOpenHelper {
                     + " ("
                     + AnnotatedCallLog.NUMBER
                     + ");";
+    private static final String CREATE_INDEX_ON_TIMESTAMP_SQL =
+            "create index if not exists timestamp_index on "
+                    + AnnotatedCallLog.TABLE
+                    + " ("
+                    + AnnotatedCallLog.TIMESTAMP
+                    + ");";
+    private static final String CREATE_COALESCED_TABLE_SQL =
+            "create table if not exists "
+                    + CoalescedAnnotatedCallLog.TABLE
+                    + " ("
+                    + (CoalescedAnnotatedCallLog._ID + " integer primary key, ")
+                    + (CoalescedAnnotatedCallLog.TIMESTAMP + " integer, ")
+                    + (CoalescedAnnotatedCallLog.NEWEST_ROW_ID + " integer, ")
+                    + (CoalescedAnnotatedCallLog.COALESCED_ROW + " blob")
+                    + ");";
+    private static final String CREATE_COALESCED_INDEX_ON_TIMESTAMP_SQL =
+            "create index if not exists coalesced_timestamp_index on "
+                    + CoalescedAnnotatedCallLog.TABLE
+                    + " ("
+                    + CoalescedAnnotatedCallLog.TIMESTAMP
+                    + ", "
+                    + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                    + ");";
+    private static final String CREATE_COALESCED_INDEX_ON_NEWEST_ROW_ID_SQL =
+            "create unique index if not exists coalesced_newest_row_id_index on "
+                    + CoalescedAnnotatedCallLog.TABLE
+                    + " ("
+                    + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                    + ");";
     private final Context appContext;
     private final int maxRows;
     private final ListeningExecutorService backgroundExecutor;
@@ -156,6 +186,21 @@ public class AnnotatedCallLogDatabaseHelper extends SQLiteOpenHelper {
                         + AnnotatedCallLog.TIMESTAMP);
     }
 
+    /**
+     * Adds the {@link CoalescedAnnotatedCallLog} table. It is filled by {@link
+     * CoalescedAnnotatedCallLogUpdater} the next time the annotated call log is refreshed.
+     */
+    private static void upgradeToV5(SQLiteDatabase db) {
+        createCoalescedTable(db);
+    }
+
+    private static void createCoalescedTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX_ON_TIMESTAMP_SQL);
+        db.execSQL(CREATE_COALESCED_TABLE_SQL);
+        db.execSQL(CREATE_COALESCED_INDEX_ON_TIMESTAMP_SQL);
+        db.execSQL(CREATE_COALESCED_INDEX_ON_NEWEST_ROW_ID_SQL);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         LogUtil.enterBlock("AnnotatedCallLogDatabaseHelper.onCreate");
@@ -164,6 +209,7 @@ public class AnnotatedCallLogDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(String.format(Locale.US, CREATE_TRIGGER_SQL, maxRows, maxRows));
         db.execSQL(CREATE_INDEX_ON_CALL_TYPE_SQL);
         db.execSQL(CREATE_INDEX_ON_NUMBER_SQL);
+        createCoalescedTable(db);
         // TODO(zachh): Consider logging impression.
         LogUtil.i(
                 "AnnotatedCallLogDatabaseHelper.onCreate",
@@ -176,6 +222,9 @@ public class AnnotatedCallLogDatabaseHelper extends SQLiteOpenHelper {
         if (oldVersion < 2) {
             upgradeToV2(db);
         }
+        if (oldVersion < 5) {
+            upgradeToV5(db);
+        }
     }
 
     /**
@@ -35,6 +35,10 @@ public abstract class CallLogDatabaseComponent {
 
     public abstract Coalescer coalescer();
 
+    public abstract CoalescedAnnotatedCallLogReader coalescedAnnotatedCallLogReader();
+
+    public abstract CoalescedAnnotatedCallLogUpdater coalescedAnnotatedCallLogUpdater();
+
     public abstract AnnotatedCallLogDatabaseHelper annotatedCallLogDatabaseHelper();
 
     /**
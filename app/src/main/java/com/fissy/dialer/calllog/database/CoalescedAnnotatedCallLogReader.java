@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.fissy.dialer.calllog.database;
+
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.CoalescedAnnotatedCallLog;
+import com.fissy.dialer.calllog.model.CoalescedRow;
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.inject.Inject;
+
+/**
+ * Reads the coalesced call log from {@link CoalescedAnnotatedCallLog}, a page at a time.
+ *
+ * <p>The table is kept up to date by {@link CoalescedAnnotatedCallLogUpdater}, so reading a page
+ * only reads the rows of that page instead of coalescing the whole annotated call log.
+ */
+public class CoalescedAnnotatedCallLogReader {
+
+    private static final String SORT_ORDER =
+            CoalescedAnnotatedCallLog.TIMESTAMP
+                    + " DESC, "
+                    + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                    + " DESC";
+
+    private static final String AFTER_SELECTION =
+            CoalescedAnnotatedCallLog.TIMESTAMP
+                    + " < ? OR ("
+                    + CoalescedAnnotatedCallLog.TIMESTAMP
+                    + " = ? AND "
+                    + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                    + " < ?)";
+
+    private final ListeningExecutorService backgroundExecutorService;
+    private final AnnotatedCallLogDatabaseHelper databaseHelper;
+    private final CoalescedAnnotatedCallLogUpdater coalescedAnnotatedCallLogUpdater;
+
+    @Inject
+    CoalescedAnnotatedCallLogReader(
+            @BackgroundExecutor ListeningExecutorService backgroundExecutorService,
+            AnnotatedCallLogDatabaseHelper databaseHelper,
+            CoalescedAnnotatedCallLogUpdater coalescedAnnotatedCallLogUpdater) {
+        this.backgroundExecutorService = backgroundExecutorService;
+        this.databaseHelper = databaseHelper;
+        this.coalescedAnnotatedCallLogUpdater = coalescedAnnotatedCallLogUpdater;
+    }
+
+    /**
+     * Reads at most {@code maxCoalescedRows} {@link CoalescedRow coalesced rows}, in the order in
+     * which they are displayed, bringing {@link CoalescedAnnotatedCallLog} up to date first if it
+     * isn't known to be in sync with the annotated call log.
+     *
+     * <p>Listen to {@link CoalescedAnnotatedCallLog#CONTENT_URI} to know when pages that were
+     * already read have changed.
+     *
+     * @param previousRow the last row of the previous page, or null to read the first page.
+     * @return a future of the rows of the page, whose {@link CoalescedRow#getId() IDs} are stable
+     * until the groups they identify change.
+     */
+    public ListenableFuture<ImmutableList<CoalescedRow>> readPage(
+            @Nullable CoalescedRow previousRow, int maxCoalescedRows) {
+        Assert.checkArgument(maxCoalescedRows > 0);
+        return backgroundExecutorService.submit(
+                () -> readPageInternal(previousRow, maxCoalescedRows));
+    }
+
+    @WorkerThread
+    private ImmutableList<CoalescedRow> readPageInternal(
+            @Nullable CoalescedRow previousRow, int maxCoalescedRows)
+            throws Coalescer.ExpectedCoalescerException {
+        Assert.isWorkerThread();
+        coalescedAnnotatedCallLogUpdater.updateIfNeeded();
+
+        String selection = null;
+        String[] selectionArgs = null;
+        if (previousRow != null) {
+            // Rows are merged into a group starting with the most recent one.
+            long newestRowId = previousRow.getCoalescedIds().getCoalescedId(0);
+            selection = AFTER_SELECTION;
+            selectionArgs =
+                    new String[]{
+                            String.valueOf(previousRow.getTimestamp()),
+                            String.valueOf(previousRow.getTimestamp()),
+                            String.valueOf(newestRowId)
+                    };
+        }
+
+        ImmutableList.Builder<CoalescedRow> coalescedRows = ImmutableList.builder();
+        try (Cursor cursor =
+                     databaseHelper
+                             .getReadableDatabase()
+                             .query(
+                                     CoalescedAnnotatedCallLog.TABLE,
+                                     new String[]{
+                                             CoalescedAnnotatedCallLog._ID,
+                                             CoalescedAnnotatedCallLog.COALESCED_ROW
+                                     },
+                                     selection,
+                                     selectionArgs,
+                                     null,
+                                     null,
+                                     SORT_ORDER,
+                                     String.valueOf(maxCoalescedRows))) {
+            while (cursor.moveToNext()) {
+                try {
+                    coalescedRows.add(
+                            CoalescedRow.parseFrom(cursor.getBlob(1))
+                                    .toBuilder()
+                                    .setId(cursor.getLong(0))
+                                    .build());
+                } catch (InvalidProtocolBufferException e) {
+                    throw Assert.createAssertionFailException("Unable to parse CoalescedRow bytes", e);
+                }
+            }
+        }
+        return coalescedRows.build();
+    }
+}
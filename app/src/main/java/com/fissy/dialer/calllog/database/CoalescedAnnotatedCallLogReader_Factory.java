@@ -0,0 +1,51 @@
+package com.fissy.dialer.calllog.database;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class CoalescedAnnotatedCallLogReader_Factory
+        implements Factory<CoalescedAnnotatedCallLogReader> {
+    private final Provider<ListeningExecutorService> backgroundExecutorServiceProvider;
+
+    private final Provider<AnnotatedCallLogDatabaseHelper> databaseHelperProvider;
+
+    private final Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider;
+
+    public CoalescedAnnotatedCallLogReader_Factory(
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
+            Provider<AnnotatedCallLogDatabaseHelper> databaseHelperProvider,
+            Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider) {
+        assert backgroundExecutorServiceProvider != null;
+        this.backgroundExecutorServiceProvider = backgroundExecutorServiceProvider;
+        assert databaseHelperProvider != null;
+        this.databaseHelperProvider = databaseHelperProvider;
+        assert coalescedAnnotatedCallLogUpdaterProvider != null;
+        this.coalescedAnnotatedCallLogUpdaterProvider = coalescedAnnotatedCallLogUpdaterProvider;
+    }
+
+    public static Factory<CoalescedAnnotatedCallLogReader> create(
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
+            Provider<AnnotatedCallLogDatabaseHelper> databaseHelperProvider,
+            Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider) {
+        return new CoalescedAnnotatedCallLogReader_Factory(
+                backgroundExecutorServiceProvider,
+                databaseHelperProvider,
+                coalescedAnnotatedCallLogUpdaterProvider);
+    }
+
+    @Override
+    public CoalescedAnnotatedCallLogReader get() {
+        return new CoalescedAnnotatedCallLogReader(
+                backgroundExecutorServiceProvider.get(),
+                databaseHelperProvider.get(),
+                coalescedAnnotatedCallLogUpdaterProvider.get());
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.fissy.dialer.calllog.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.CallLog.Calls;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.CoalescedIds;
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.CoalescedAnnotatedCallLog;
+import com.fissy.dialer.calllog.datasources.CallLogMutations;
+import com.fissy.dialer.calllog.model.CoalescedRow;
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.inject.ApplicationContext;
+import com.google.common.collect.Iterables;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Keeps {@link CoalescedAnnotatedCallLog} up to date with {@link AnnotatedCallLog}.
+ *
+ * <p>Instead of coalescing the whole annotated call log again after mutations are applied, only
+ * the groups around the changed rows are coalesced again. Coalescing restarts at the first group
+ * more recent than all changed rows, whose boundary can't have moved, and stops at the first new
+ * group older than all changed rows which is identical to an existing group, as every group after
+ * it is then unchanged too.
+ */
+@Singleton
+public class CoalescedAnnotatedCallLogUpdater {
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final String NOT_VOICEMAIL_SELECTION =
+            AnnotatedCallLog.CALL_TYPE + " != " + Calls.VOICEMAIL_TYPE;
+
+    private static final String ANNOTATED_CALL_LOG_SORT_ORDER =
+            AnnotatedCallLog.TIMESTAMP + " DESC, " + AnnotatedCallLog._ID + " DESC";
+
+    private final Context appContext;
+    private final AnnotatedCallLogDatabaseHelper databaseHelper;
+    private final Coalescer coalescer;
+
+    // Whether the coalesced table has been checked to be in sync since the process started or it
+    // was last invalidated. Until then it has to be checked even when there are no mutations, as
+    // it is empty after an upgrade or an invalidation.
+    private volatile boolean isUpToDate;
+    // Whether the table couldn't be updated after mutations were applied, so that the rows they
+    // changed are unknown.
+    private volatile boolean isRebuildRequired;
+
+    @Inject
+    CoalescedAnnotatedCallLogUpdater(
+            @ApplicationContext Context appContext,
+            AnnotatedCallLogDatabaseHelper databaseHelper,
+            Coalescer coalescer) {
+        this.appContext = appContext;
+        this.databaseHelper = databaseHelper;
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Returns true if {@link CoalescedAnnotatedCallLog} is known to be in sync with {@link
+     * AnnotatedCallLog}, so that there is nothing to do when no mutations are applied.
+     */
+    boolean isUpToDate() {
+        return isUpToDate;
+    }
+
+    /**
+     * Makes the next {@link #update} coalesce the whole annotated call log again. Called when the
+     * table couldn't be updated after mutations were applied, as the rows they changed are then
+     * unknown.
+     *
+     * <p>The table is emptied as well, so that it is coalesced again even if the process dies
+     * before the next update.
+     */
+    void requireRebuild() {
+        isRebuildRequired = true;
+        isUpToDate = false;
+        try {
+            databaseHelper.getWritableDatabase().delete(CoalescedAnnotatedCallLog.TABLE, null, null);
+        } catch (RuntimeException e) {
+            LogUtil.e(
+                    "CoalescedAnnotatedCallLogUpdater.requireRebuild",
+                    "unable to empty the coalesced annotated call log",
+                    e);
+        }
+    }
+
+    /**
+     * Empties {@link CoalescedAnnotatedCallLog} after {@link AnnotatedCallLog} was written to
+     * without going through {@link MutationApplier}, so that the next {@link #update} coalesces the
+     * whole annotated call log again.
+     *
+     * <p>Must be called in the transaction of the write, so that the table is never left out of
+     * sync, even if the process dies before the next update.
+     */
+    void invalidate(SQLiteDatabase database) {
+        Assert.checkArgument(database.inTransaction());
+        database.delete(CoalescedAnnotatedCallLog.TABLE, null, null);
+        isUpToDate = false;
+    }
+
+    /**
+     * Returns the range of timestamps of the {@link AnnotatedCallLog} rows changed by the provided
+     * mutations. It must be called before the mutations are applied, as deleted rows are gone
+     * afterwards.
+     */
+    @WorkerThread
+    ChangedRange getChangedRange(CallLogMutations mutations) {
+        Assert.isWorkerThread();
+        ChangedRange changedRange = new ChangedRange();
+        if (isRebuildRequired) {
+            changedRange.requireRebuild();
+            return changedRange;
+        }
+
+        for (ContentValues contentValues : mutations.getInserts().values()) {
+            Long timestamp = contentValues.getAsLong(AnnotatedCallLog.TIMESTAMP);
+            if (timestamp == null) {
+                changedRange.requireRebuild();
+                return changedRange;
+            }
+            changedRange.add(timestamp);
+        }
+        for (ContentValues contentValues : mutations.getUpdates().values()) {
+            Long timestamp = contentValues.getAsLong(AnnotatedCallLog.TIMESTAMP);
+            if (timestamp != null) {
+                changedRange.add(timestamp);
+            }
+        }
+
+        // The timestamps of updated and deleted rows before the mutations are applied.
+        List<Long> ids = new ArrayList<>(mutations.getUpdates().keySet());
+        ids.addAll(mutations.getDeletes());
+        SQLiteDatabase database = databaseHelper.getReadableDatabase();
+        // Batch the IDs into chunks of 999, the maximum size for SQLite selection args.
+        for (List<Long> idsInBatch : Iterables.partition(ids, 999)) {
+            String[] questionMarks = new String[idsInBatch.size()];
+            Arrays.fill(questionMarks, "?");
+            String selection =
+                    AnnotatedCallLog._ID + " in (" + TextUtils.join(",", questionMarks) + ")";
+            String[] selectionArgs = new String[idsInBatch.size()];
+            for (int i = 0; i < idsInBatch.size(); i++) {
+                selectionArgs[i] = String.valueOf(idsInBatch.get(i));
+            }
+            try (Cursor cursor =
+                         database.query(
+                                 AnnotatedCallLog.TABLE,
+                                 new String[]{AnnotatedCallLog.TIMESTAMP},
+                                 selection,
+                                 selectionArgs,
+                                 null,
+                                 null,
+                                 null)) {
+                while (cursor.moveToNext()) {
+                    changedRange.add(cursor.getLong(0));
+                }
+            }
+        }
+        return changedRange;
+    }
+
+    /**
+     * Brings {@link CoalescedAnnotatedCallLog} up to date after mutations whose {@link
+     * ChangedRange} is provided have been applied to {@link AnnotatedCallLog}.
+     */
+    @WorkerThread
+    void update(ChangedRange changedRange) throws Coalescer.ExpectedCoalescerException {
+        Assert.isWorkerThread();
+        long startTime = System.currentTimeMillis();
+
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
+        boolean changed;
+        try {
+            database.beginTransaction();
+            try {
+                changed = updateInTransaction(database, changedRange);
+                // Set within the transaction, so that it can't overwrite an invalidate() made by a
+                // write committed after this update.
+                isUpToDate = true;
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (Coalescer.ExpectedCoalescerException | RuntimeException e) {
+            // The rows changed since the table was last in sync are unknown from now on.
+            requireRebuild();
+            throw e;
+        }
+        if (changedRange.isRebuildRequired()) {
+            isRebuildRequired = false;
+        }
+
+        if (changed) {
+            appContext
+                    .getContentResolver()
+                    .notifyChange(CoalescedAnnotatedCallLog.CONTENT_URI, /* observer = */ null);
+            LogUtil.i(
+                    "CoalescedAnnotatedCallLogUpdater.update",
+                    "took: %dms",
+                    System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Brings {@link CoalescedAnnotatedCallLog} up to date if it isn't known to be in sync with
+     * {@link AnnotatedCallLog}, e.g. after {@link #invalidate} or when the process started.
+     */
+    @WorkerThread
+    void updateIfNeeded() throws Coalescer.ExpectedCoalescerException {
+        Assert.isWorkerThread();
+        if (isUpToDate) {
+            return;
+        }
+        ChangedRange changedRange = new ChangedRange();
+        if (isRebuildRequired) {
+            changedRange.requireRebuild();
+        }
+        update(changedRange);
+    }
+
+    /**
+     * Returns true if {@link CoalescedAnnotatedCallLog} was changed.
+     */
+    private boolean updateInTransaction(SQLiteDatabase database, ChangedRange changedRange)
+            throws Coalescer.ExpectedCoalescerException {
+        Long oldestTimestamp = getOldestAnnotatedCallLogTimestamp(database);
+        if (oldestTimestamp == null) {
+            return database.delete(CoalescedAnnotatedCallLog.TABLE, null, null) > 0;
+        }
+
+        CoalescedRow oldestCoalescedRow = getOldestCoalescedRow(database);
+        if (oldestCoalescedRow == null || changedRange.isRebuildRequired()) {
+            database.delete(CoalescedAnnotatedCallLog.TABLE, null, null);
+            coalesce(database, /* startRow = */ null, ChangedRange.ALL);
+            return true;
+        }
+
+        // The oldest rows are deleted by a trigger when the table is full. They are not part of the
+        // mutations, so the groups they were in are coalesced again as if the oldest remaining row
+        // had changed.
+        List<Long> oldestCoalescedIds = oldestCoalescedRow.getCoalescedIds().getCoalescedIdList();
+        if (!annotatedCallLogRowExists(
+                database, Iterables.getLast(oldestCoalescedIds, /* defaultValue = */ -1L))) {
+            changedRange.add(oldestTimestamp);
+        }
+
+        if (changedRange.isEmpty()) {
+            return false;
+        }
+        coalesce(database, getStartRow(database, changedRange), changedRange);
+        return true;
+    }
+
+    /**
+     * Coalesces the {@link AnnotatedCallLog} rows from the most recent row of the group {@code
+     * startRow} (or from the most recent row if it is null) until the groups are unchanged,
+     * replacing the groups of {@link CoalescedAnnotatedCallLog} in between.
+     *
+     * @param startRow the {@link CoalescedAnnotatedCallLog#TIMESTAMP} and {@link
+     *                 CoalescedAnnotatedCallLog#NEWEST_ROW_ID} of the group to start at.
+     */
+    private void coalesce(
+            SQLiteDatabase database, @Nullable long[] startRow, ChangedRange changedRange)
+            throws Coalescer.ExpectedCoalescerException {
+        List<CoalescedRow> coalescedRows = new ArrayList<>();
+        CoalescedRow firstUnchangedRow = null;
+
+        String selection = NOT_VOICEMAIL_SELECTION;
+        String[] selectionArgs = null;
+        if (startRow != null) {
+            selection += " AND " + AnnotatedCallLog.TIMESTAMP + " <= ?";
+            selectionArgs = new String[]{String.valueOf(startRow[0])};
+        }
+        try (Cursor annotatedCallLogRows =
+                     database.query(
+                             AnnotatedCallLog.TABLE,
+                             null,
+                             selection,
+                             selectionArgs,
+                             null,
+                             null,
+                             ANNOTATED_CALL_LOG_SORT_ORDER)) {
+            Coalescer.Page page =
+                    coalescer.coalescePageInternal(
+                            annotatedCallLogRows,
+                            startRow == null ? Coalescer.MOST_RECENT_ROW_ID : startRow[1],
+                            /* resumeRowNumber = */ null,
+                            /* firstCoalescedRowId = */ 0,
+                            PAGE_SIZE);
+            while (true) {
+                for (CoalescedRow coalescedRow : page.getCoalescedRows()) {
+                    if (coalescedRow.getTimestamp() < changedRange.oldestTimestamp
+                            && isUnchanged(database, coalescedRow)) {
+                        firstUnchangedRow = coalescedRow;
+                        break;
+                    }
+                    coalescedRows.add(coalescedRow);
+                }
+                if (firstUnchangedRow != null || !page.hasNextPage()) {
+                    break;
+                }
+                page =
+                        coalescer.coalescePageInternal(
+                                annotatedCallLogRows,
+                                page.getNextRowId(),
+                                page.getNextRowNumber(),
+                                page.getNextCoalescedRowId(),
+                                PAGE_SIZE);
+            }
+        }
+
+        deleteGroups(database, startRow, firstUnchangedRow);
+        insertGroups(database, coalescedRows);
+    }
+
+    /**
+     * Deletes the groups of {@link CoalescedAnnotatedCallLog} from the group {@code startRow}
+     * (inclusive, or from the most recent group if null) to the group with the same most recent row
+     * as {@code firstUnchangedRow} (exclusive, or to the oldest group if null).
+     */
+    private static void deleteGroups(
+            SQLiteDatabase database,
+            @Nullable long[] startRow,
+            @Nullable CoalescedRow firstUnchangedRow) {
+        List<String> clauses = new ArrayList<>();
+        List<String> selectionArgs = new ArrayList<>();
+        if (startRow != null) {
+            clauses.add(
+                    "("
+                            + CoalescedAnnotatedCallLog.TIMESTAMP
+                            + " < ? OR ("
+                            + CoalescedAnnotatedCallLog.TIMESTAMP
+                            + " = ? AND "
+                            + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                            + " <= ?))");
+            selectionArgs.add(String.valueOf(startRow[0]));
+            selectionArgs.add(String.valueOf(startRow[0]));
+            selectionArgs.add(String.valueOf(startRow[1]));
+        }
+        if (firstUnchangedRow != null) {
+            clauses.add(
+                    "("
+                            + CoalescedAnnotatedCallLog.TIMESTAMP
+                            + " > ? OR ("
+                            + CoalescedAnnotatedCallLog.TIMESTAMP
+                            + " = ? AND "
+                            + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                            + " > ?))");
+            selectionArgs.add(String.valueOf(firstUnchangedRow.getTimestamp()));
+            selectionArgs.add(String.valueOf(firstUnchangedRow.getTimestamp()));
+            selectionArgs.add(String.valueOf(getNewestRowId(firstUnchangedRow)));
+        }
+        database.delete(
+                CoalescedAnnotatedCallLog.TABLE,
+                clauses.isEmpty() ? null : TextUtils.join(" AND ", clauses),
+                selectionArgs.toArray(new String[0]));
+    }
+
+    private static void insertGroups(SQLiteDatabase database, List<CoalescedRow> coalescedRows) {
+        if (coalescedRows.isEmpty()) {
+            return;
+        }
+        SQLiteStatement insert =
+                database.compileStatement(
+                        "INSERT INTO "
+                                + CoalescedAnnotatedCallLog.TABLE
+                                + " ("
+                                + CoalescedAnnotatedCallLog.TIMESTAMP
+                                + ", "
+                                + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                                + ", "
+                                + CoalescedAnnotatedCallLog.COALESCED_ROW
+                                + ") VALUES (?, ?, ?)");
+        try {
+            for (CoalescedRow coalescedRow : coalescedRows) {
+                insert.clearBindings();
+                insert.bindLong(1, coalescedRow.getTimestamp());
+                insert.bindLong(2, getNewestRowId(coalescedRow));
+                insert.bindBlob(3, coalescedRow.toBuilder().clearId().build().toByteArray());
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Returns true if {@link CoalescedAnnotatedCallLog} already has a group made of exactly the
+     * same rows as {@code coalescedRow}.
+     */
+    private static boolean isUnchanged(SQLiteDatabase database, CoalescedRow coalescedRow) {
+        try (Cursor cursor =
+                     database.query(
+                             CoalescedAnnotatedCallLog.TABLE,
+                             new String[]{CoalescedAnnotatedCallLog.COALESCED_ROW},
+                             CoalescedAnnotatedCallLog.NEWEST_ROW_ID + " = ?",
+                             new String[]{String.valueOf(getNewestRowId(coalescedRow))},
+                             null,
+                             null,
+                             null)) {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            CoalescedIds existingIds = parseCoalescedRow(cursor.getBlob(0)).getCoalescedIds();
+            return existingIds
+                    .getCoalescedIdList()
+                    .equals(coalescedRow.getCoalescedIds().getCoalescedIdList());
+        }
+    }
+
+    /**
+     * Returns the {@link CoalescedAnnotatedCallLog#TIMESTAMP} and {@link
+     * CoalescedAnnotatedCallLog#NEWEST_ROW_ID} of the oldest group whose most recent row is more
+     * recent than all changed rows, or null if there is none.
+     *
+     * <p>The boundary between that group and the more recent one can't move, as neither the rows of
+     * the more recent group nor the first row of that group have changed.
+     */
+    @Nullable
+    private static long[] getStartRow(SQLiteDatabase database, ChangedRange changedRange) {
+        try (Cursor cursor =
+                     database.query(
+                             CoalescedAnnotatedCallLog.TABLE,
+                             new String[]{
+                                     CoalescedAnnotatedCallLog.TIMESTAMP,
+                                     CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                             },
+                             CoalescedAnnotatedCallLog.TIMESTAMP + " > ?",
+                             new String[]{String.valueOf(changedRange.newestTimestamp)},
+                             null,
+                             null,
+                             CoalescedAnnotatedCallLog.TIMESTAMP
+                                     + " ASC, "
+                                     + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                                     + " ASC",
+                             "1")) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new long[]{cursor.getLong(0), cursor.getLong(1)};
+        }
+    }
+
+    @Nullable
+    private static CoalescedRow getOldestCoalescedRow(SQLiteDatabase database) {
+        try (Cursor cursor =
+                     database.query(
+                             CoalescedAnnotatedCallLog.TABLE,
+                             new String[]{CoalescedAnnotatedCallLog.COALESCED_ROW},
+                             null,
+                             null,
+                             null,
+                             null,
+                             CoalescedAnnotatedCallLog.TIMESTAMP
+                                     + " ASC, "
+                                     + CoalescedAnnotatedCallLog.NEWEST_ROW_ID
+                                     + " ASC",
+                             "1")) {
+            return cursor.moveToFirst() ? parseCoalescedRow(cursor.getBlob(0)) : null;
+        }
+    }
+
+    @Nullable
+    private static Long getOldestAnnotatedCallLogTimestamp(SQLiteDatabase database) {
+        try (Cursor cursor =
+                     database.query(
+                             AnnotatedCallLog.TABLE,
+                             new String[]{"MIN(" + AnnotatedCallLog.TIMESTAMP + ")"},
+                             NOT_VOICEMAIL_SELECTION,
+                             null,
+                             null,
+                             null,
+                             null)) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : null;
+        }
+    }
+
+    private static boolean annotatedCallLogRowExists(SQLiteDatabase database, long id) {
+        return DatabaseUtils.queryNumEntries(
+                database,
+                AnnotatedCallLog.TABLE,
+                AnnotatedCallLog._ID + " = ?",
+                new String[]{String.valueOf(id)})
+                > 0;
+    }
+
+    private static long getNewestRowId(CoalescedRow coalescedRow) {
+        // Rows are merged into a group starting with the most recent one.
+        return coalescedRow.getCoalescedIds().getCoalescedId(0);
+    }
+
+    private static CoalescedRow parseCoalescedRow(byte[] bytes) {
+        try {
+            return CoalescedRow.parseFrom(bytes);
+        } catch (InvalidProtocolBufferException e) {
+            throw Assert.createAssertionFailException("Unable to parse CoalescedRow bytes", e);
+        }
+    }
+
+    /**
+     * The range of timestamps of the {@link AnnotatedCallLog} rows changed by a set of mutations.
+     */
+    static final class ChangedRange {
+
+        private static final ChangedRange ALL = new ChangedRange();
+
+        static {
+            ALL.add(Long.MIN_VALUE);
+            ALL.add(Long.MAX_VALUE);
+        }
+
+        private long newestTimestamp = Long.MIN_VALUE;
+        private long oldestTimestamp = Long.MAX_VALUE;
+        private boolean isRebuildRequired;
+
+        void add(long timestamp) {
+            newestTimestamp = Math.max(newestTimestamp, timestamp);
+            oldestTimestamp = Math.min(oldestTimestamp, timestamp);
+        }
+
+        void requireRebuild() {
+            isRebuildRequired = true;
+        }
+
+        boolean isEmpty() {
+            return newestTimestamp < oldestTimestamp;
+        }
+
+        boolean isRebuildRequired() {
+            return isRebuildRequired;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.fissy.dialer.calllog.database;
+
+import android.content.Context;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class CoalescedAnnotatedCallLogUpdater_Factory
+        implements Factory<CoalescedAnnotatedCallLogUpdater> {
+    private final Provider<Context> appContextProvider;
+
+    private final Provider<AnnotatedCallLogDatabaseHelper> databaseHelperProvider;
+
+    private final Provider<Coalescer> coalescerProvider;
+
+    public CoalescedAnnotatedCallLogUpdater_Factory(
+            Provider<Context> appContextProvider,
+            Provider<AnnotatedCallLogDatabaseHelper> databaseHelperProvider,
+            Provider<Coalescer> coalescerProvider) {
+        assert appContextProvider != null;
+        this.appContextProvider = appContextProvider;
+        assert databaseHelperProvider != null;
+        this.databaseHelperProvider = databaseHelperProvider;
+        assert coalescerProvider != null;
+        this.coalescerProvider = coalescerProvider;
+    }
+
+    public static Factory<CoalescedAnnotatedCallLogUpdater> create(
+            Provider<Context> appContextProvider,
+            Provider<AnnotatedCallLogDatabaseHelper> databaseHelperProvider,
+            Provider<Coalescer> coalescerProvider) {
+        return new CoalescedAnnotatedCallLogUpdater_Factory(
+                appContextProvider, databaseHelperProvider, coalescerProvider);
+    }
+
+    @Override
+    public CoalescedAnnotatedCallLogUpdater get() {
+        return new CoalescedAnnotatedCallLogUpdater(
+                appContextProvider.get(), databaseHelperProvider.get(), coalescerProvider.get());
+    }
+}
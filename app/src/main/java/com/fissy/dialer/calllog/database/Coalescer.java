@@ -22,6 +22,8 @@ import android.telecom.PhoneAccountHandle;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.fissy.dialer.CoalescedIds;
@@ -47,12 +49,26 @@ import javax.inject.Inject;
 
 /**
  * Combines adjacent rows in {@link AnnotatedCallLog}.
+ *
+ * <p>{@link CoalescedAnnotatedCallLogUpdater} coalesces the rows a {@link Page} at a time, so that
+ * it can stop as soon as the groups it builds are unchanged.
  */
 public class Coalescer {
 
+    /**
+     * Passed to {@link #coalescePageInternal} to start at the most recent row.
+     */
+    static final long MOST_RECENT_ROW_ID = -1;
+
+    private static final long NO_ROW_ID = -1;
+
     private final FutureTimer futureTimer;
     private final ListeningExecutorService backgroundExecutorService;
 
+    // DialerPhoneNumberUtil will be created lazily as its instantiation is expensive. It is shared
+    // by all pages instead of being created again for each of them.
+    private DialerPhoneNumberUtil dialerPhoneNumberUtil;
+
     @Inject
     Coalescer(
             @BackgroundExecutor ListeningExecutorService backgroundExecutorService,
@@ -80,8 +96,8 @@ public class Coalescer {
     }
 
     /**
-     * Reads the entire {@link AnnotatedCallLog} into memory from the provided cursor and then builds
-     * and returns a list of {@link CoalescedRow coalesced rows}, which is the result of combining
+     * Reads the entire {@link AnnotatedCallLog} from the provided cursor and then builds and
+     * returns a list of {@link CoalescedRow coalesced rows}, which is the result of combining
      * adjacent rows which should be collapsed for display purposes.
      *
      * @param allAnnotatedCallLogRowsSortedByTimestampDesc {@link AnnotatedCallLog} rows sorted in
@@ -91,21 +107,63 @@ public class Coalescer {
      */
     @WorkerThread
     @NonNull
-    private ImmutableList<CoalescedRow> coalesceInternal(
+    @VisibleForTesting
+    ImmutableList<CoalescedRow> coalesceInternal(
             Cursor allAnnotatedCallLogRowsSortedByTimestampDesc) throws ExpectedCoalescerException {
+        return coalescePageInternal(
+                allAnnotatedCallLogRowsSortedByTimestampDesc,
+                MOST_RECENT_ROW_ID,
+                /* resumeRowNumber = */ null,
+                /* firstCoalescedRowId = */ 0,
+                Integer.MAX_VALUE)
+                .getCoalescedRows();
+    }
+
+    /**
+     * Builds a {@link Page} of at most {@code maxCoalescedRows} {@link CoalescedRow coalesced
+     * rows}, starting at the row with the ID {@code resumeRowId}.
+     *
+     * <p>Only the rows of the page are read from the cursor, and the {@link DialerPhoneNumber} and
+     * {@link NumberAttributes} blobs of each row are parsed at most once.
+     *
+     * @param resumeRowNumber the already parsed {@link DialerPhoneNumber} of the row with the ID
+     *                        {@code resumeRowId}, if any.
+     */
+    @WorkerThread
+    @NonNull
+    @VisibleForTesting
+    Page coalescePageInternal(
+            Cursor allAnnotatedCallLogRowsSortedByTimestampDesc,
+            long resumeRowId,
+            @Nullable DialerPhoneNumber resumeRowNumber,
+            long firstCoalescedRowId,
+            int maxCoalescedRows)
+            throws ExpectedCoalescerException {
         Assert.isWorkerThread();
+        Assert.checkArgument(maxCoalescedRows > 0);
 
         ImmutableList.Builder<CoalescedRow> coalescedRowListBuilder = new ImmutableList.Builder<>();
 
         try {
-            if (!allAnnotatedCallLogRowsSortedByTimestampDesc.moveToFirst()) {
-                return ImmutableList.of();
+            RowCombiner rowCombiner = new RowCombiner(allAnnotatedCallLogRowsSortedByTimestampDesc);
+            if (resumeRowId == MOST_RECENT_ROW_ID) {
+                if (!allAnnotatedCallLogRowsSortedByTimestampDesc.moveToFirst()) {
+                    return new Page(ImmutableList.of(), NO_ROW_ID, null, firstCoalescedRowId);
+                }
+            } else {
+                boolean hasResumeRow =
+                        rowCombiner.moveToRow(allAnnotatedCallLogRowsSortedByTimestampDesc, resumeRowId);
+                Assert.checkArgument(hasResumeRow, "no row with ID %d", resumeRowId);
+                if (resumeRowNumber != null) {
+                    rowCombiner.setRowNumber(
+                            allAnnotatedCallLogRowsSortedByTimestampDesc, resumeRowNumber);
+                }
             }
 
-            RowCombiner rowCombiner = new RowCombiner(allAnnotatedCallLogRowsSortedByTimestampDesc);
             rowCombiner.startNewGroup();
 
-            long coalescedRowId = 0;
+            long coalescedRowId = firstCoalescedRowId;
+            int coalescedRowCount = 0;
             do {
                 boolean isRowMerged = rowCombiner.mergeRow(allAnnotatedCallLogRowsSortedByTimestampDesc);
 
@@ -117,53 +175,136 @@ public class Coalescer {
                     coalescedRowListBuilder.add(
                             rowCombiner.combine().toBuilder().setId(coalescedRowId++).build());
                     rowCombiner.startNewGroup();
+                    coalescedRowCount++;
                 }
-            } while (!allAnnotatedCallLogRowsSortedByTimestampDesc.isAfterLast());
+            } while (!allAnnotatedCallLogRowsSortedByTimestampDesc.isAfterLast()
+                    && coalescedRowCount < maxCoalescedRows);
 
-            return coalescedRowListBuilder.build();
+            if (allAnnotatedCallLogRowsSortedByTimestampDesc.isAfterLast()) {
+                return new Page(coalescedRowListBuilder.build(), NO_ROW_ID, null, coalescedRowId);
+            }
+            // The cursor is at the first row of the next group, which has not been merged yet.
+            return new Page(
+                    coalescedRowListBuilder.build(),
+                    rowCombiner.getRowId(allAnnotatedCallLogRowsSortedByTimestampDesc),
+                    rowCombiner.getParsedRowNumber(allAnnotatedCallLogRowsSortedByTimestampDesc),
+                    coalescedRowId);
 
         } catch (Exception exception) {
-            // Coalescing can fail if cursor "allAnnotatedCallLogRowsSortedByTimestampDesc" is closed by
-            // its loader while the work is still in progress.
-            //
-            // This can happen when the loader restarts and finishes loading data before the coalescing
-            // work is completed.
-            //
-            // This kind of failure doesn't have to crash the app as coalescing will be restarted on the
-            // latest data obtained by the loader. Therefore, we inspect the exception here and throw an
-            // ExpectedCoalescerException if it is the case described above.
-            //
-            // The type of expected exception depends on whether AbstractWindowedCursor#checkPosition() is
-            // called when the cursor is closed.
-            //   (1) If it is called before the cursor is closed, we will get IllegalStateException thrown
-            //       by SQLiteClosable when it attempts to acquire a reference to the database.
-            //   (2) Otherwise, we will get StaleDataException thrown by AbstractWindowedCursor's
-            //       checkPosition() method.
-            //
-            // Note that it would be more accurate to inspect the stack trace to locate the origin of the
-            // exception. However, according to the documentation on Throwable#getStackTrace, "some
-            // virtual machines may, under some circumstances, omit one or more stack frames from the
-            // stack trace". "In the extreme case, a virtual machine that has no stack trace information
-            // concerning this throwable is permitted to return a zero-length array from this method."
-            // Therefore, the best we can do is to inspect the message in the exception.
-            // TODO(linyuh): try to avoid the expected failure.
-            String message = exception.getMessage();
-            if (message != null
-                    && ((exception instanceof StaleDataException
-                    && message.startsWith("Attempting to access a closed CursorWindow"))
-                    || (exception instanceof IllegalStateException
-                    && message.startsWith("attempt to re-open an already-closed object")))) {
+            if (isExpectedFailure(exception)) {
                 throw new ExpectedCoalescerException(exception);
             }
-
             throw exception;
         }
     }
 
+    /**
+     * Returns true if coalescing failed because the cursor was closed while the work was in
+     * progress.
+     */
+    private static boolean isExpectedFailure(Exception exception) {
+        // Coalescing can fail if cursor "allAnnotatedCallLogRowsSortedByTimestampDesc" is closed by
+        // its loader while the work is still in progress.
+        //
+        // This can happen when the loader restarts and finishes loading data before the coalescing
+        // work is completed.
+        //
+        // This kind of failure doesn't have to crash the app as coalescing will be restarted on the
+        // latest data obtained by the loader. Therefore, we inspect the exception here and throw an
+        // ExpectedCoalescerException if it is the case described above.
+        //
+        // The type of expected exception depends on whether AbstractWindowedCursor#checkPosition() is
+        // called when the cursor is closed.
+        //   (1) If it is called before the cursor is closed, we will get IllegalStateException thrown
+        //       by SQLiteClosable when it attempts to acquire a reference to the database.
+        //   (2) Otherwise, we will get StaleDataException thrown by AbstractWindowedCursor's
+        //       checkPosition() method.
+        //
+        // Note that it would be more accurate to inspect the stack trace to locate the origin of the
+        // exception. However, according to the documentation on Throwable#getStackTrace, "some
+        // virtual machines may, under some circumstances, omit one or more stack frames from the
+        // stack trace". "In the extreme case, a virtual machine that has no stack trace information
+        // concerning this throwable is permitted to return a zero-length array from this method."
+        // Therefore, the best we can do is to inspect the message in the exception.
+        // TODO(linyuh): try to avoid the expected failure.
+        String message = exception.getMessage();
+        return message != null
+                && ((exception instanceof StaleDataException
+                && message.startsWith("Attempting to access a closed CursorWindow"))
+                || (exception instanceof IllegalStateException
+                && message.startsWith("attempt to re-open an already-closed object")));
+    }
+
+    @WorkerThread
+    private synchronized DialerPhoneNumberUtil getDialerPhoneNumberUtil() {
+        if (dialerPhoneNumberUtil == null) {
+            dialerPhoneNumberUtil = new DialerPhoneNumberUtil();
+        }
+        return dialerPhoneNumberUtil;
+    }
+
+    /**
+     * A page of {@link CoalescedRow coalesced rows} along with where to resume coalescing for the
+     * next page.
+     */
+    static final class Page {
+        private final ImmutableList<CoalescedRow> coalescedRows;
+        private final long nextRowId;
+        @Nullable
+        private final DialerPhoneNumber nextRowNumber;
+        private final long nextCoalescedRowId;
+
+        Page(
+                ImmutableList<CoalescedRow> coalescedRows,
+                long nextRowId,
+                @Nullable DialerPhoneNumber nextRowNumber,
+                long nextCoalescedRowId) {
+            this.coalescedRows = coalescedRows;
+            this.nextRowId = nextRowId;
+            this.nextRowNumber = nextRowNumber;
+            this.nextCoalescedRowId = nextCoalescedRowId;
+        }
+
+        public ImmutableList<CoalescedRow> getCoalescedRows() {
+            return coalescedRows;
+        }
+
+        /**
+         * Returns true if rows are left after this page.
+         */
+        public boolean hasNextPage() {
+            return nextRowId != NO_ROW_ID;
+        }
+
+        /**
+         * Returns the {@link AnnotatedCallLog#_ID} of the row the next page starts at.
+         */
+        public long getNextRowId() {
+            Assert.checkState(hasNextPage());
+            return nextRowId;
+        }
+
+        /**
+         * Returns the ID to give to the first coalesced row of the next page.
+         */
+        public long getNextCoalescedRowId() {
+            return nextCoalescedRowId;
+        }
+
+        /**
+         * Returns the parsed {@link DialerPhoneNumber} of the row the next page starts at, if it has
+         * already been parsed.
+         */
+        @Nullable
+        DialerPhoneNumber getNextRowNumber() {
+            return nextRowNumber;
+        }
+    }
+
     /**
      * Combines rows from {@link AnnotatedCallLog} into a {@link CoalescedRow}.
      */
-    private static final class RowCombiner {
+    private final class RowCombiner {
         private final CoalescedRow.Builder coalescedRowBuilder = CoalescedRow.newBuilder();
         private final CoalescedIds.Builder coalescedIdsBuilder = CoalescedIds.newBuilder();
 
@@ -182,8 +323,12 @@ public class Coalescer {
         private final int numberAttributesColumn;
         private final int callTypeColumn;
 
-        // DialerPhoneNumberUtil will be created lazily as its instantiation is expensive.
-        private DialerPhoneNumberUtil dialerPhoneNumberUtil = null;
+        // The parsed DialerPhoneNumber of the row at parsedRowPosition. A row which can't be merged
+        // into a group is merged again as the first row of the next group, so its number is kept
+        // here instead of being parsed twice.
+        private int parsedRowPosition = -1;
+        @Nullable
+        private DialerPhoneNumber parsedRowNumber;
 
         RowCombiner(Cursor annotatedCallLogRow) {
             idColumn = annotatedCallLogRow.getColumnIndexOrThrow(AnnotatedCallLog._ID);
@@ -207,6 +352,50 @@ public class Coalescer {
             callTypeColumn = annotatedCallLogRow.getColumnIndexOrThrow(AnnotatedCallLog.CALL_TYPE);
         }
 
+        /**
+         * Moves the cursor to the row with the given {@link AnnotatedCallLog#_ID}.
+         *
+         * @return false if there is no such row.
+         */
+        boolean moveToRow(Cursor annotatedCallLogRows, long rowId) {
+            // Pages are usually coalesced one after another from the same cursor, which is then
+            // already at the row to resume from.
+            if (!annotatedCallLogRows.isBeforeFirst()
+                    && !annotatedCallLogRows.isAfterLast()
+                    && annotatedCallLogRows.getLong(idColumn) == rowId) {
+                return true;
+            }
+            for (boolean hasRow = annotatedCallLogRows.moveToFirst();
+                 hasRow;
+                 hasRow = annotatedCallLogRows.moveToNext()) {
+                if (annotatedCallLogRows.getLong(idColumn) == rowId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long getRowId(Cursor annotatedCallLogRow) {
+            return annotatedCallLogRow.getLong(idColumn);
+        }
+
+        /**
+         * Records the already parsed {@link DialerPhoneNumber} of the row the cursor is at.
+         */
+        void setRowNumber(Cursor annotatedCallLogRow, DialerPhoneNumber rowNumber) {
+            parsedRowPosition = annotatedCallLogRow.getPosition();
+            parsedRowNumber = rowNumber;
+        }
+
+        /**
+         * Returns the {@link DialerPhoneNumber} of the row the cursor is at if it has already been
+         * parsed, or null otherwise.
+         */
+        @Nullable
+        DialerPhoneNumber getParsedRowNumber(Cursor annotatedCallLogRow) {
+            return annotatedCallLogRow.getPosition() == parsedRowPosition ? parsedRowNumber : null;
+        }
+
         /**
          * Prepares {@link RowCombiner} for building a new group of rows by clearing information on all
          * previously merged rows.
@@ -255,12 +444,9 @@ public class Coalescer {
 
             // Two different DialerPhoneNumbers could be combined if they are different but considered
             // to be a match by libphonenumber; in this case we arbitrarily select the most recent one.
-            try {
-                coalescedRowBuilder.setNumber(
-                        DialerPhoneNumber.parseFrom(annotatedCallLogRow.getBlob(numberColumn)));
-            } catch (InvalidProtocolBufferException e) {
-                throw Assert.createAssertionFailException("Unable to parse DialerPhoneNumber bytes", e);
-            }
+            DialerPhoneNumber rowPhoneNumber = getRowNumber(annotatedCallLogRow);
+            coalescedRowBuilder.setNumber(
+                    rowPhoneNumber == null ? DialerPhoneNumber.getDefaultInstance() : rowPhoneNumber);
 
             String formattedNumber = annotatedCallLogRow.getString(formattedNumberColumn);
             if (!TextUtils.isEmpty(formattedNumber)) {
@@ -352,22 +538,48 @@ public class Coalescer {
         private boolean meetsDialerPhoneNumberCriteria(Cursor annotatedCallLogRow) {
             DialerPhoneNumber groupPhoneNumber = coalescedRowBuilder.getNumber();
 
-            DialerPhoneNumber rowPhoneNumber;
-            try {
-                byte[] rowPhoneNumberBytes = annotatedCallLogRow.getBlob(numberColumn);
-                if (rowPhoneNumberBytes == null) {
-                    return false; // Empty numbers should not be combined.
-                }
-                rowPhoneNumber = DialerPhoneNumber.parseFrom(rowPhoneNumberBytes);
-            } catch (InvalidProtocolBufferException e) {
-                throw Assert.createAssertionFailException("Unable to parse DialerPhoneNumber bytes", e);
+            DialerPhoneNumber rowPhoneNumber = getRowNumber(annotatedCallLogRow);
+            if (rowPhoneNumber == null) {
+                return false; // Empty numbers should not be combined.
             }
 
-            if (dialerPhoneNumberUtil == null) {
-                dialerPhoneNumberUtil = new DialerPhoneNumberUtil();
+            // Repeated calls with the same number are the common case. DialerPhoneNumberUtil#isMatch
+            // considers identical non-empty numbers a match, so don't parse them with libphonenumber.
+            String groupNormalizedNumber = groupPhoneNumber.getNormalizedNumber();
+            if (!groupNormalizedNumber.isEmpty()
+                    && groupNormalizedNumber.equals(rowPhoneNumber.getNormalizedNumber())
+                    && groupPhoneNumber.getCountryIso().equals(rowPhoneNumber.getCountryIso())
+                    && groupPhoneNumber
+                    .getPostDialPortion()
+                    .equals(rowPhoneNumber.getPostDialPortion())) {
+                return true;
             }
 
-            return dialerPhoneNumberUtil.isMatch(groupPhoneNumber, rowPhoneNumber);
+            return getDialerPhoneNumberUtil().isMatch(groupPhoneNumber, rowPhoneNumber);
+        }
+
+        /**
+         * Returns the {@link DialerPhoneNumber} of the row the cursor is at, or null if the row has
+         * no number. The blob of each row is parsed only once.
+         */
+        @Nullable
+        private DialerPhoneNumber getRowNumber(Cursor annotatedCallLogRow) {
+            int position = annotatedCallLogRow.getPosition();
+            if (position == parsedRowPosition) {
+                return parsedRowNumber;
+            }
+
+            byte[] rowPhoneNumberBytes = annotatedCallLogRow.getBlob(numberColumn);
+            try {
+                parsedRowNumber =
+                        rowPhoneNumberBytes == null
+                                ? null
+                                : DialerPhoneNumber.parseFrom(rowPhoneNumberBytes);
+            } catch (InvalidProtocolBufferException e) {
+                throw Assert.createAssertionFailException("Unable to parse DialerPhoneNumber bytes", e);
+            }
+            parsedRowPosition = position;
+            return parsedRowNumber;
         }
     }
 
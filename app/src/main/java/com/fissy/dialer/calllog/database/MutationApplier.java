@@ -15,51 +15,52 @@
  */
 package com.fissy.dialer.calllog.database;
 
-import android.content.ContentProviderOperation;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
-import android.os.RemoteException;
-import android.text.TextUtils;
 
 import androidx.annotation.WorkerThread;
 
-import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract;
+import com.fissy.dialer.calllog.database.CoalescedAnnotatedCallLogUpdater.ChangedRange;
+import com.fissy.dialer.calllog.database.Coalescer.ExpectedCoalescerException;
 import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
 import com.fissy.dialer.calllog.datasources.CallLogMutations;
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map.Entry;
-
 import javax.inject.Inject;
 
 /**
  * Applies {@link CallLogMutations} to the annotated call log.
+ *
+ * <p>The mutations are written directly to the database with {@link AnnotatedCallLogBulkWriter}
+ * rather than through {@link AnnotatedCallLogContentProvider}, which remains the way in for other
+ * callers.
  */
 public class MutationApplier {
 
     private final ListeningExecutorService backgroundExecutorService;
+    private final AnnotatedCallLogDatabaseHelper annotatedCallLogDatabaseHelper;
+    private final CoalescedAnnotatedCallLogUpdater coalescedAnnotatedCallLogUpdater;
 
     @Inject
-    public MutationApplier(@BackgroundExecutor ListeningExecutorService backgroundExecutorService) {
+    public MutationApplier(
+            @BackgroundExecutor ListeningExecutorService backgroundExecutorService,
+            AnnotatedCallLogDatabaseHelper annotatedCallLogDatabaseHelper,
+            CoalescedAnnotatedCallLogUpdater coalescedAnnotatedCallLogUpdater) {
         this.backgroundExecutorService = backgroundExecutorService;
+        this.annotatedCallLogDatabaseHelper = annotatedCallLogDatabaseHelper;
+        this.coalescedAnnotatedCallLogUpdater = coalescedAnnotatedCallLogUpdater;
     }
 
     /**
-     * Applies the provided {@link CallLogMutations} to the annotated call log.
+     * Applies the provided {@link CallLogMutations} to the annotated call log, and brings the
+     * coalesced annotated call log up to date.
      */
     public ListenableFuture<Void> applyToDatabase(CallLogMutations mutations, Context appContext) {
-        if (mutations.isEmpty()) {
+        if (mutations.isEmpty() && coalescedAnnotatedCallLogUpdater.isUpToDate()) {
             return Futures.immediateFuture(null);
         }
         return backgroundExecutorService.submit(
@@ -71,65 +72,29 @@ public class MutationApplier {
 
     @WorkerThread
     private void applyToDatabaseInternal(CallLogMutations mutations, Context appContext)
-            throws RemoteException, OperationApplicationException {
+            throws ExpectedCoalescerException {
         Assert.isWorkerThread();
 
-        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
-
-        if (!mutations.getInserts().isEmpty()) {
-            LogUtil.i(
-                    "MutationApplier.applyToDatabase", "inserting %d rows", mutations.getInserts().size());
-            for (Entry<Long, ContentValues> entry : mutations.getInserts().entrySet()) {
-                long id = entry.getKey();
-                ContentValues contentValues = entry.getValue();
-                operations.add(
-                        ContentProviderOperation.newInsert(
-                                        ContentUris.withAppendedId(AnnotatedCallLog.CONTENT_URI, id))
-                                .withValues(contentValues)
-                                .build());
-            }
-        }
-
-        if (!mutations.getUpdates().isEmpty()) {
-            LogUtil.i(
-                    "MutationApplier.applyToDatabase", "updating %d rows", mutations.getUpdates().size());
-            for (Entry<Long, ContentValues> entry : mutations.getUpdates().entrySet()) {
-                long id = entry.getKey();
-                ContentValues contentValues = entry.getValue();
-                operations.add(
-                        ContentProviderOperation.newUpdate(
-                                        ContentUris.withAppendedId(AnnotatedCallLog.CONTENT_URI, id))
-                                .withValues(contentValues)
-                                .build());
-            }
-        }
+        // Must be collected before the mutations are applied, as deleted rows are gone afterwards.
+        ChangedRange changedRange = coalescedAnnotatedCallLogUpdater.getChangedRange(mutations);
 
-        if (!mutations.getDeletes().isEmpty()) {
+        if (!mutations.isEmpty()) {
             LogUtil.i(
-                    "MutationApplier.applyToDatabase", "deleting %d rows", mutations.getDeletes().size());
-
-            // Batch the deletes into chunks of 999, the maximum size for SQLite selection args.
-            Iterable<List<Long>> batches = Iterables.partition(mutations.getDeletes(), 999);
-            for (List<Long> idsInBatch : batches) {
-                String[] questionMarks = new String[idsInBatch.size()];
-                Arrays.fill(questionMarks, "?");
-
-                String whereClause =
-                        (AnnotatedCallLog._ID + " in (") + TextUtils.join(",", questionMarks) + ")";
-
-                String[] whereArgs = new String[idsInBatch.size()];
-                int i = 0;
-                for (long id : idsInBatch) {
-                    whereArgs[i++] = String.valueOf(id);
-                }
-
-                operations.add(
-                        ContentProviderOperation.newDelete(AnnotatedCallLog.CONTENT_URI)
-                                .withSelection(whereClause, whereArgs)
-                                .build());
+                    "MutationApplier.applyToDatabase",
+                    "inserting %d rows, updating %d rows, deleting %d rows",
+                    mutations.getInserts().size(),
+                    mutations.getUpdates().size(),
+                    mutations.getDeletes().size());
+            try (AnnotatedCallLogBulkWriter writer =
+                         new AnnotatedCallLogBulkWriter(
+                                 annotatedCallLogDatabaseHelper.getWritableDatabase())) {
+                writer.write(mutations);
             }
+            appContext
+                    .getContentResolver()
+                    .notifyChange(AnnotatedCallLog.CONTENT_URI, /* observer = */ null);
         }
 
-        appContext.getContentResolver().applyBatch(AnnotatedCallLogContract.AUTHORITY, operations);
+        coalescedAnnotatedCallLogUpdater.update(changedRange);
     }
 }
@@ -14,19 +14,36 @@ import dagger.internal.Factory;
 public final class MutationApplier_Factory implements Factory<MutationApplier> {
     private final Provider<ListeningExecutorService> backgroundExecutorServiceProvider;
 
+    private final Provider<AnnotatedCallLogDatabaseHelper> annotatedCallLogDatabaseHelperProvider;
+    private final Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider;
+
     public MutationApplier_Factory(
-            Provider<ListeningExecutorService> backgroundExecutorServiceProvider) {
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
+            Provider<AnnotatedCallLogDatabaseHelper> annotatedCallLogDatabaseHelperProvider,
+            Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider) {
         assert backgroundExecutorServiceProvider != null;
         this.backgroundExecutorServiceProvider = backgroundExecutorServiceProvider;
+        assert annotatedCallLogDatabaseHelperProvider != null;
+        this.annotatedCallLogDatabaseHelperProvider = annotatedCallLogDatabaseHelperProvider;
+        assert coalescedAnnotatedCallLogUpdaterProvider != null;
+        this.coalescedAnnotatedCallLogUpdaterProvider = coalescedAnnotatedCallLogUpdaterProvider;
     }
 
     public static Factory<MutationApplier> create(
-            Provider<ListeningExecutorService> backgroundExecutorServiceProvider) {
-        return new MutationApplier_Factory(backgroundExecutorServiceProvider);
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
+            Provider<AnnotatedCallLogDatabaseHelper> annotatedCallLogDatabaseHelperProvider,
+            Provider<CoalescedAnnotatedCallLogUpdater> coalescedAnnotatedCallLogUpdaterProvider) {
+        return new MutationApplier_Factory(
+                backgroundExecutorServiceProvider,
+                annotatedCallLogDatabaseHelperProvider,
+                coalescedAnnotatedCallLogUpdaterProvider);
     }
 
     @Override
     public MutationApplier get() {
-        return new MutationApplier(backgroundExecutorServiceProvider.get());
+        return new MutationApplier(
+                backgroundExecutorServiceProvider.get(),
+                annotatedCallLogDatabaseHelperProvider.get(),
+                coalescedAnnotatedCallLogUpdaterProvider.get());
     }
 }
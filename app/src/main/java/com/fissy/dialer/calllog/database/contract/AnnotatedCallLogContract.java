@@ -169,4 +169,57 @@ public class AnnotatedCallLogContract {
          */
         public static final String CALL_MAPPING_ID = "call_mapping_id";
     }
+
+    /**
+     * CoalescedAnnotatedCallLog table.
+     *
+     * <p>Holds the rows of {@link AnnotatedCallLog} (excluding voicemails) combined by {@link
+     * com.fissy.dialer.calllog.database.Coalescer}, kept up to date whenever mutations are applied
+     * to {@link AnnotatedCallLog}. It is emptied by other writes to {@link AnnotatedCallLog}, and
+     * filled again when it is next read with {@link
+     * com.fissy.dialer.calllog.database.CoalescedAnnotatedCallLogReader} or refreshed. Sorting by
+     * {@link #TIMESTAMP} and then {@link #NEWEST_ROW_ID}, both in descending order, gives the order
+     * in which the rows are displayed.
+     *
+     * <p>This table is read only.
+     */
+    public static final class CoalescedAnnotatedCallLog implements BaseColumns {
+
+        public static final String TABLE = "CoalescedAnnotatedCallLog";
+
+        /**
+         * The content URI for this table.
+         */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(AnnotatedCallLogContract.CONTENT_URI, TABLE);
+
+        /**
+         * The MIME type of a {@link android.content.ContentProvider#getType(Uri)} single entry.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                "vnd.android.cursor.item/coalesced_annotated_call_log";
+
+        /**
+         * Timestamp of the most recent {@link AnnotatedCallLog} row in the group, in milliseconds.
+         *
+         * <p>Type: INTEGER (long)
+         */
+        public static final String TIMESTAMP = "timestamp";
+
+        /**
+         * The {@link AnnotatedCallLog#_ID} of the most recent {@link AnnotatedCallLog} row in the
+         * group.
+         *
+         * <p>Type: INTEGER (long)
+         */
+        public static final String NEWEST_ROW_ID = "newest_row_id";
+
+        /**
+         * The group, encoded as a {@link com.fissy.dialer.calllog.model.CoalescedRow} proto. Its ID
+         * is not set, {@link #_ID} is the ID of the group.
+         *
+         * <p>Type: BLOB
+         */
+        public static final String COALESCED_ROW = "coalesced_row";
+    }
 }
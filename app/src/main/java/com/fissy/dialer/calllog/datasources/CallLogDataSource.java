@@ -64,6 +64,10 @@ public interface CallLogDataSource {
      * Computes the set of mutations necessary to update the annotated call log with respect to this
      * data source.
      *
+     * <p>The system call log data source fills the mutations first. The other data sources then fill
+     * them concurrently, each its own copy of them, so they only see the mutations of the system call
+     * log data source and not the ones of each other.
+     *
      * @param mutations the set of mutations which this method should contribute to. Note that it may
      *                  contain inserts from the system call log, and these inserts should be modified by each data
      *                  source.
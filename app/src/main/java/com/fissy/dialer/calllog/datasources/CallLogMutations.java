@@ -20,10 +20,20 @@ import android.content.ContentValues;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 
+import androidx.annotation.Nullable;
+
 import com.fissy.dialer.common.Assert;
 
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+
 /**
  * A collection of mutations to the annotated call log.
+ *
+ * <p>This class is not thread-safe. Data sources which fill mutations concurrently each fill their
+ * own {@link #copy()}, and the copies are then combined with {@link #merge(CallLogMutations,
+ * List)}.
  */
 public final class CallLogMutations {
 
@@ -110,4 +120,105 @@ public final class CallLogMutations {
     public ArraySet<Long> getDeletes() {
         return deletes;
     }
+
+    /**
+     * Returns a copy of these mutations which can be modified without affecting them.
+     */
+    public CallLogMutations copy() {
+        CallLogMutations copy = new CallLogMutations();
+        for (Entry<Long, ContentValues> entry : inserts.entrySet()) {
+            copy.inserts.put(entry.getKey(), new ContentValues(entry.getValue()));
+        }
+        for (Entry<Long, ContentValues> entry : updates.entrySet()) {
+            copy.updates.put(entry.getKey(), new ContentValues(entry.getValue()));
+        }
+        copy.deletes.addAll(deletes);
+        return copy;
+    }
+
+    /**
+     * Combines the changes made to copies of {@code original} into new mutations.
+     *
+     * <p>The changes of each copy are the inserts, updates and deletes it has which {@code original}
+     * doesn't have, and the values of inserts and updates which differ from the ones in {@code
+     * original}. They are applied on top of {@code original} in the order of {@code copies}, so a
+     * value changed by more than one copy is taken from the last one.
+     *
+     * <p>Copies are filled independently, so they may conflict. A delete by any copy wins over the
+     * inserts and updates of the same row by the others, which are dropped. An update of a row
+     * another copy inserts is folded into the insert.
+     *
+     * @param copies copies of {@code original} returned by {@link #copy()}, which have been modified
+     *               since. Removing mutations from a copy is not supported.
+     */
+    public static CallLogMutations merge(CallLogMutations original, List<CallLogMutations> copies) {
+        CallLogMutations merged = original.copy();
+        // The single row mutators assert that there are no such conflicts, so the maps are
+        // modified directly.
+        for (CallLogMutations copy : copies) {
+            for (Long id : copy.deletes) {
+                merged.inserts.remove(id);
+                merged.updates.remove(id);
+                merged.deletes.add(id);
+            }
+        }
+        for (CallLogMutations copy : copies) {
+            for (Entry<Long, ContentValues> entry : copy.inserts.entrySet()) {
+                long id = entry.getKey();
+                if (merged.deletes.contains(id)) {
+                    continue;
+                }
+                ContentValues changedValues =
+                        changedValues(original.inserts.get(id), entry.getValue());
+                ContentValues mergedValues = merged.inserts.get(id);
+                if (mergedValues == null) {
+                    mergedValues = merged.updates.remove(id);
+                    if (mergedValues == null) {
+                        mergedValues = new ContentValues();
+                    }
+                    merged.inserts.put(id, mergedValues);
+                }
+                mergedValues.putAll(changedValues);
+            }
+            for (Entry<Long, ContentValues> entry : copy.updates.entrySet()) {
+                long id = entry.getKey();
+                if (merged.deletes.contains(id)) {
+                    continue;
+                }
+                ContentValues changedValues = changedValues(original.updates.get(id), entry.getValue());
+                if (changedValues.size() == 0) {
+                    continue;
+                }
+                ContentValues mergedValues = merged.inserts.get(id);
+                if (mergedValues == null) {
+                    mergedValues = merged.updates.get(id);
+                }
+                if (mergedValues == null) {
+                    merged.updates.put(id, changedValues);
+                } else {
+                    mergedValues.putAll(changedValues);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the values of {@code values} which are missing from or differ from the ones of {@code
+     * originalValues}.
+     */
+    private static ContentValues changedValues(
+            @Nullable ContentValues originalValues, ContentValues values) {
+        if (originalValues == null) {
+            return new ContentValues(values);
+        }
+        ContentValues changedValues = new ContentValues(values);
+        for (String key : values.keySet()) {
+            if (originalValues.containsKey(key)
+                    && Objects.deepEquals(originalValues.get(key), values.get(key))) {
+                changedValues.remove(key);
+            }
+        }
+        return changedValues;
+    }
 }
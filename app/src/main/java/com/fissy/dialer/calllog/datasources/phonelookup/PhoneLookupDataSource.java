@@ -16,13 +16,9 @@
 
 package com.fissy.dialer.calllog.datasources.phonelookup;
 
-import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
-import android.os.RemoteException;
-import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 
@@ -34,7 +30,6 @@ import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.Annot
 import com.fissy.dialer.calllog.datasources.CallLogDataSource;
 import com.fissy.dialer.calllog.datasources.CallLogMutations;
 import com.fissy.dialer.calllogutils.NumberAttributesBuilder;
-import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
 import com.fissy.dialer.common.concurrent.Annotations.LightweightExecutor;
@@ -42,9 +37,8 @@ import com.fissy.dialer.inject.ApplicationContext;
 import com.fissy.dialer.phonelookup.PhoneLookup;
 import com.fissy.dialer.phonelookup.PhoneLookupInfo;
 import com.fissy.dialer.phonelookup.composite.CompositePhoneLookup;
+import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryCache;
 import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryDatabaseHelper;
-import com.fissy.dialer.phonelookup.database.contract.PhoneLookupHistoryContract;
-import com.fissy.dialer.phonelookup.database.contract.PhoneLookupHistoryContract.PhoneLookupHistory;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
@@ -54,8 +48,6 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.InvalidProtocolBufferException;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
@@ -93,6 +85,7 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
     private final Set<String> phoneLookupHistoryRowsToDelete = new ArraySet<>();
 
     private final PhoneLookupHistoryDatabaseHelper phoneLookupHistoryDatabaseHelper;
+    private final PhoneLookupHistoryCache phoneLookupHistoryCache;
 
     @Inject
     PhoneLookupDataSource(
@@ -100,12 +93,14 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
             CompositePhoneLookup compositePhoneLookup,
             @BackgroundExecutor ListeningExecutorService backgroundExecutorService,
             @LightweightExecutor ListeningExecutorService lightweightExecutorService,
-            PhoneLookupHistoryDatabaseHelper phoneLookupHistoryDatabaseHelper) {
+            PhoneLookupHistoryDatabaseHelper phoneLookupHistoryDatabaseHelper,
+            PhoneLookupHistoryCache phoneLookupHistoryCache) {
         this.appContext = appContext;
         this.compositePhoneLookup = compositePhoneLookup;
         this.backgroundExecutorService = backgroundExecutorService;
         this.lightweightExecutorService = lightweightExecutorService;
         this.phoneLookupHistoryDatabaseHelper = phoneLookupHistoryDatabaseHelper;
+        this.phoneLookupHistoryCache = phoneLookupHistoryCache;
     }
 
     private static ImmutableSet<DialerPhoneNumber>
@@ -209,7 +204,7 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
                 Futures.transform(
                         annotatedCallLogIdsByNumberFuture,
                         annotatedCallLogIdsByNumber ->
-                                queryPhoneLookupHistoryForNumbers(appContext, annotatedCallLogIdsByNumber.keySet()),
+                                queryPhoneLookupHistoryForNumbers(annotatedCallLogIdsByNumber.keySet()),
                         backgroundExecutorService);
 
         // Use the original info map to generate the updated info map by delegating to
@@ -292,8 +287,7 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
     @Override
     public ListenableFuture<Void> onSuccessfulFill() {
         // First update and/or delete the appropriate rows in PhoneLookupHistory.
-        ListenableFuture<Void> writePhoneLookupHistory =
-                backgroundExecutorService.submit(() -> writePhoneLookupHistory(appContext));
+        ListenableFuture<Void> writePhoneLookupHistory = writePhoneLookupHistory();
 
         // If that succeeds, delegate to the composite PhoneLookup to notify all PhoneLookups that both
         // the AnnotatedCallLog and PhoneLookupHistory have been successfully updated.
@@ -303,34 +297,18 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
                 lightweightExecutorService);
     }
 
-    @WorkerThread
-    private Void writePhoneLookupHistory(Context appContext)
-            throws RemoteException, OperationApplicationException {
-        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
-        long currentTimestamp = System.currentTimeMillis();
+    /**
+     * Hands the rows to update and delete over to the cache, and returns a future which completes
+     * once they are written to PhoneLookupHistory.
+     */
+    private ListenableFuture<Void> writePhoneLookupHistory() {
         for (Entry<String, PhoneLookupInfo> entry : phoneLookupHistoryRowsToUpdate.entrySet()) {
-            String normalizedNumber = entry.getKey();
-            PhoneLookupInfo phoneLookupInfo = entry.getValue();
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(PhoneLookupHistory.PHONE_LOOKUP_INFO, phoneLookupInfo.toByteArray());
-            contentValues.put(PhoneLookupHistory.LAST_MODIFIED, currentTimestamp);
-            operations.add(
-                    ContentProviderOperation.newUpdate(
-                                    PhoneLookupHistory.contentUriForNumber(normalizedNumber))
-                            .withValues(contentValues)
-                            .build());
+            phoneLookupHistoryCache.put(entry.getKey(), entry.getValue());
         }
         for (String normalizedNumber : phoneLookupHistoryRowsToDelete) {
-            operations.add(
-                    ContentProviderOperation.newDelete(
-                                    PhoneLookupHistory.contentUriForNumber(normalizedNumber))
-                            .build());
+            phoneLookupHistoryCache.remove(normalizedNumber);
         }
-        Assert.isNotNull(
-                appContext
-                        .getContentResolver()
-                        .applyBatch(PhoneLookupHistoryContract.AUTHORITY, operations));
-        return null;
+        return phoneLookupHistoryCache.flush();
     }
 
     @MainThread
@@ -347,6 +325,7 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
     @Override
     public ListenableFuture<Void> clearData() {
         ListenableFuture<Void> clearDataFuture = compositePhoneLookup.clearData();
+        phoneLookupHistoryCache.clear();
         ListenableFuture<Void> deleteDatabaseFuture = phoneLookupHistoryDatabaseHelper.delete();
 
         return Futures.transform(
@@ -431,66 +410,29 @@ public final class PhoneLookupDataSource implements CallLogDataSource {
     /**
      * Returned map must have same keys as {@code uniqueDialerPhoneNumbers}
      */
+    @WorkerThread
     private ImmutableMap<DialerPhoneNumber, PhoneLookupInfo> queryPhoneLookupHistoryForNumbers(
-            Context appContext, Set<DialerPhoneNumber> uniqueDialerPhoneNumbers) {
+            Set<DialerPhoneNumber> uniqueDialerPhoneNumbers) {
         // Note: This loses country info when number is not valid.
         Map<DialerPhoneNumber, String> dialerPhoneNumberToNormalizedNumbers =
                 Maps.asMap(uniqueDialerPhoneNumbers, DialerPhoneNumber::getNormalizedNumber);
 
         // Convert values to a set to remove any duplicates that are the result of two
         // DialerPhoneNumbers mapping to the same normalized number.
-        String[] normalizedNumbers =
-                dialerPhoneNumberToNormalizedNumbers.values().toArray(new String[]{});
-        String[] questionMarks = new String[normalizedNumbers.length];
-        Arrays.fill(questionMarks, "?");
-        String selection =
-                PhoneLookupHistory.NORMALIZED_NUMBER + " in (" + TextUtils.join(",", questionMarks) + ")";
-
-        Map<String, PhoneLookupInfo> normalizedNumberToInfoMap = new ArrayMap<>();
-        try (Cursor cursor =
-                     appContext
-                             .getContentResolver()
-                             .query(
-                                     PhoneLookupHistory.CONTENT_URI,
-                                     new String[]{
-                                             PhoneLookupHistory.NORMALIZED_NUMBER, PhoneLookupHistory.PHONE_LOOKUP_INFO,
-                                     },
-                                     selection,
-                                     normalizedNumbers,
-                                     null)) {
-            if (cursor == null) {
-                LogUtil.e("PhoneLookupDataSource.queryPhoneLookupHistoryForNumbers", "null cursor");
-            } else if (cursor.moveToFirst()) {
-                int normalizedNumberColumn =
-                        cursor.getColumnIndexOrThrow(PhoneLookupHistory.NORMALIZED_NUMBER);
-                int phoneLookupInfoColumn =
-                        cursor.getColumnIndexOrThrow(PhoneLookupHistory.PHONE_LOOKUP_INFO);
-                do {
-                    String normalizedNumber = cursor.getString(normalizedNumberColumn);
-                    PhoneLookupInfo phoneLookupInfo;
-                    try {
-                        phoneLookupInfo = PhoneLookupInfo.parseFrom(cursor.getBlob(phoneLookupInfoColumn));
-                    } catch (InvalidProtocolBufferException e) {
-                        throw new IllegalStateException(e);
-                    }
-                    normalizedNumberToInfoMap.put(normalizedNumber, phoneLookupInfo);
-                } while (cursor.moveToNext());
-            }
-        }
+        ImmutableMap<String, PhoneLookupInfo> normalizedNumberToInfoMap =
+                phoneLookupHistoryCache.getAll(
+                        ImmutableSet.copyOf(dialerPhoneNumberToNormalizedNumbers.values()));
 
         // We have the required information in normalizedNumberToInfoMap but it's keyed by normalized
         // number instead of DialerPhoneNumber. Build and return a new map keyed by DialerPhoneNumber.
+        // If data is cleared or for other reasons, the PhoneLookupHistory may not contain an entry
+        // for a number, in which case the cache provides an empty value.
         return ImmutableMap.copyOf(
                 Maps.asMap(
                         uniqueDialerPhoneNumbers,
                         (dialerPhoneNumber) -> {
                             String normalizedNumber = dialerPhoneNumberToNormalizedNumbers.get(dialerPhoneNumber);
-                            PhoneLookupInfo phoneLookupInfo = normalizedNumberToInfoMap.get(normalizedNumber);
-                            // If data is cleared or for other reasons, the PhoneLookupHistory may not contain an
-                            // entry for a number. Just use an empty value for that case.
-                            return phoneLookupInfo == null
-                                    ? PhoneLookupInfo.getDefaultInstance()
-                                    : phoneLookupInfo;
+                            return normalizedNumberToInfoMap.get(normalizedNumber);
                         }));
     }
 
@@ -3,6 +3,7 @@ package com.fissy.dialer.calllog.datasources.phonelookup;
 import android.content.Context;
 
 import com.fissy.dialer.phonelookup.composite.CompositePhoneLookup;
+import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryCache;
 import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryDatabaseHelper;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
@@ -26,12 +27,15 @@ public final class PhoneLookupDataSource_Factory implements Factory<PhoneLookupD
 
     private final Provider<PhoneLookupHistoryDatabaseHelper> phoneLookupHistoryDatabaseHelperProvider;
 
+    private final Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider;
+
     public PhoneLookupDataSource_Factory(
             Provider<Context> appContextProvider,
             Provider<CompositePhoneLookup> compositePhoneLookupProvider,
             Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
             Provider<ListeningExecutorService> lightweightExecutorServiceProvider,
-            Provider<PhoneLookupHistoryDatabaseHelper> phoneLookupHistoryDatabaseHelperProvider) {
+            Provider<PhoneLookupHistoryDatabaseHelper> phoneLookupHistoryDatabaseHelperProvider,
+            Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider) {
         assert appContextProvider != null;
         this.appContextProvider = appContextProvider;
         assert compositePhoneLookupProvider != null;
@@ -42,6 +46,8 @@ public final class PhoneLookupDataSource_Factory implements Factory<PhoneLookupD
         this.lightweightExecutorServiceProvider = lightweightExecutorServiceProvider;
         assert phoneLookupHistoryDatabaseHelperProvider != null;
         this.phoneLookupHistoryDatabaseHelperProvider = phoneLookupHistoryDatabaseHelperProvider;
+        assert phoneLookupHistoryCacheProvider != null;
+        this.phoneLookupHistoryCacheProvider = phoneLookupHistoryCacheProvider;
     }
 
     public static Factory<PhoneLookupDataSource> create(
@@ -49,13 +55,15 @@ public final class PhoneLookupDataSource_Factory implements Factory<PhoneLookupD
             Provider<CompositePhoneLookup> compositePhoneLookupProvider,
             Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
             Provider<ListeningExecutorService> lightweightExecutorServiceProvider,
-            Provider<PhoneLookupHistoryDatabaseHelper> phoneLookupHistoryDatabaseHelperProvider) {
+            Provider<PhoneLookupHistoryDatabaseHelper> phoneLookupHistoryDatabaseHelperProvider,
+            Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider) {
         return new PhoneLookupDataSource_Factory(
                 appContextProvider,
                 compositePhoneLookupProvider,
                 backgroundExecutorServiceProvider,
                 lightweightExecutorServiceProvider,
-                phoneLookupHistoryDatabaseHelperProvider);
+                phoneLookupHistoryDatabaseHelperProvider,
+                phoneLookupHistoryCacheProvider);
     }
 
     @Override
@@ -65,6 +73,7 @@ public final class PhoneLookupDataSource_Factory implements Factory<PhoneLookupD
                 compositePhoneLookupProvider.get(),
                 backgroundExecutorServiceProvider.get(),
                 lightweightExecutorServiceProvider.get(),
-                phoneLookupHistoryDatabaseHelperProvider.get());
+                phoneLookupHistoryDatabaseHelperProvider.get(),
+                phoneLookupHistoryCacheProvider.get());
     }
 }
@@ -16,39 +16,24 @@
 
 package com.fissy.dialer.calllog.ui;
 
-import android.content.ContentProviderOperation;
-import android.content.ContentValues;
-import android.content.Context;
 import android.util.ArrayMap;
 
 import androidx.annotation.MainThread;
-import androidx.annotation.NonNull;
-import androidx.annotation.VisibleForTesting;
 
 import com.fissy.dialer.DialerPhoneNumber;
 import com.fissy.dialer.calllog.model.CoalescedRow;
 import com.fissy.dialer.calllogutils.NumberAttributesBuilder;
 import com.fissy.dialer.common.Assert;
-import com.fissy.dialer.common.LogUtil;
-import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
 import com.fissy.dialer.common.concurrent.Annotations.Ui;
-import com.fissy.dialer.common.concurrent.ThreadUtil;
-import com.fissy.dialer.inject.ApplicationContext;
 import com.fissy.dialer.phonelookup.PhoneLookupInfo;
 import com.fissy.dialer.phonelookup.composite.CompositePhoneLookup;
-import com.fissy.dialer.phonelookup.database.contract.PhoneLookupHistoryContract;
+import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryCache;
 import com.fissy.dialer.phonelookup.database.contract.PhoneLookupHistoryContract.PhoneLookupHistory;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -67,33 +52,20 @@ import javax.inject.Inject;
  */
 public final class RealtimeRowProcessor {
 
-    /*
-     * The time to wait between writing batches of records to PhoneLookupHistory.
-     */
-    @VisibleForTesting
-    static final long BATCH_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(3);
-
-    private final Context appContext;
     private final CompositePhoneLookup compositePhoneLookup;
     private final ListeningExecutorService uiExecutor;
-    private final ListeningExecutorService backgroundExecutor;
+    private final PhoneLookupHistoryCache phoneLookupHistoryCache;
 
     private final Map<DialerPhoneNumber, PhoneLookupInfo> cache = new ArrayMap<>();
 
-    private final Map<DialerPhoneNumber, PhoneLookupInfo> queuedPhoneLookupHistoryWrites =
-            new LinkedHashMap<>(); // Keep the order so the most recent looked up value always wins
-    private final Runnable writePhoneLookupHistoryRunnable = this::writePhoneLookupHistory;
-
     @Inject
     RealtimeRowProcessor(
-            @ApplicationContext Context appContext,
             @Ui ListeningExecutorService uiExecutor,
-            @BackgroundExecutor ListeningExecutorService backgroundExecutor,
-            CompositePhoneLookup compositePhoneLookup) {
-        this.appContext = appContext;
+            CompositePhoneLookup compositePhoneLookup,
+            PhoneLookupHistoryCache phoneLookupHistoryCache) {
         this.uiExecutor = uiExecutor;
-        this.backgroundExecutor = backgroundExecutor;
         this.compositePhoneLookup = compositePhoneLookup;
+        this.phoneLookupHistoryCache = phoneLookupHistoryCache;
     }
 
     /**
@@ -133,75 +105,18 @@ public final class RealtimeRowProcessor {
         cache.clear();
     }
 
+    /**
+     * Writes the info to PhoneLookupHistory. {@link PhoneLookupHistoryCache} batches the writes of
+     * all the rows displayed in a short time into a single transaction.
+     */
     @MainThread
     private void queuePhoneLookupHistoryWrite(
             DialerPhoneNumber dialerPhoneNumber, PhoneLookupInfo phoneLookupInfo) {
         Assert.isMainThread();
-        queuedPhoneLookupHistoryWrites.put(dialerPhoneNumber, phoneLookupInfo);
-        ThreadUtil.getUiThreadHandler().removeCallbacks(writePhoneLookupHistoryRunnable);
-        ThreadUtil.getUiThreadHandler().postDelayed(writePhoneLookupHistoryRunnable, BATCH_WAIT_MILLIS);
-    }
-
-    @MainThread
-    private void writePhoneLookupHistory() {
-        Assert.isMainThread();
-
-        // Copy the batch to a new collection that be safely processed on a background thread.
-        ImmutableMap<DialerPhoneNumber, PhoneLookupInfo> currentBatch =
-                ImmutableMap.copyOf(queuedPhoneLookupHistoryWrites);
-
-        // Clear the queue, handing responsibility for its items to the background task.
-        queuedPhoneLookupHistoryWrites.clear();
-
-        // Returns the number of rows updated.
-        ListenableFuture<Integer> applyBatchFuture =
-                backgroundExecutor.submit(
-                        () -> {
-                            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
-                            long currentTimestamp = System.currentTimeMillis();
-                            for (Entry<DialerPhoneNumber, PhoneLookupInfo> entry : currentBatch.entrySet()) {
-                                DialerPhoneNumber dialerPhoneNumber = entry.getKey();
-                                PhoneLookupInfo phoneLookupInfo = entry.getValue();
-
-                                // Note: Multiple DialerPhoneNumbers can map to the same normalized number but we
-                                // just write them all and the value for the last one will arbitrarily win.
-                                // Note: This loses country info when number is not valid.
-                                String normalizedNumber = dialerPhoneNumber.getNormalizedNumber();
-
-                                ContentValues contentValues = new ContentValues();
-                                contentValues.put(
-                                        PhoneLookupHistory.PHONE_LOOKUP_INFO, phoneLookupInfo.toByteArray());
-                                contentValues.put(PhoneLookupHistory.LAST_MODIFIED, currentTimestamp);
-                                operations.add(
-                                        ContentProviderOperation.newUpdate(
-                                                        PhoneLookupHistory.contentUriForNumber(normalizedNumber))
-                                                .withValues(contentValues)
-                                                .build());
-                            }
-                            return Assert.isNotNull(
-                                    appContext
-                                            .getContentResolver()
-                                            .applyBatch(PhoneLookupHistoryContract.AUTHORITY, operations))
-                                    .length;
-                        });
-
-        Futures.addCallback(
-                applyBatchFuture,
-                new FutureCallback<Integer>() {
-                    @Override
-                    public void onSuccess(Integer rowsAffected) {
-                        LogUtil.i(
-                                "RealtimeRowProcessor.onSuccess",
-                                "wrote %d rows to PhoneLookupHistory",
-                                rowsAffected);
-                    }
-
-                    @Override
-                    public void onFailure(@NonNull Throwable throwable) {
-                        throw new RuntimeException(throwable);
-                    }
-                },
-                uiExecutor);
+        // Note: Multiple DialerPhoneNumbers can map to the same normalized number but we just write
+        // them all and the value for the last one will arbitrarily win.
+        // Note: This loses country info when number is not valid.
+        phoneLookupHistoryCache.put(dialerPhoneNumber.getNormalizedNumber(), phoneLookupInfo);
     }
 
     private CoalescedRow applyPhoneLookupInfoToRow(
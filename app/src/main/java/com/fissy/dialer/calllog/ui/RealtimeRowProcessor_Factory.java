@@ -1,8 +1,7 @@
 package com.fissy.dialer.calllog.ui;
 
-import android.content.Context;
-
 import com.fissy.dialer.phonelookup.composite.CompositePhoneLookup;
+import com.fissy.dialer.phonelookup.database.PhoneLookupHistoryCache;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
 import javax.annotation.Generated;
@@ -15,47 +14,37 @@ import dagger.internal.Factory;
         comments = "https://google.github.io/dagger"
 )
 public final class RealtimeRowProcessor_Factory implements Factory<RealtimeRowProcessor> {
-    private final Provider<Context> appContextProvider;
-
     private final Provider<ListeningExecutorService> uiExecutorProvider;
 
-    private final Provider<ListeningExecutorService> backgroundExecutorProvider;
-
     private final Provider<CompositePhoneLookup> compositePhoneLookupProvider;
 
+    private final Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider;
+
     public RealtimeRowProcessor_Factory(
-            Provider<Context> appContextProvider,
             Provider<ListeningExecutorService> uiExecutorProvider,
-            Provider<ListeningExecutorService> backgroundExecutorProvider,
-            Provider<CompositePhoneLookup> compositePhoneLookupProvider) {
-        assert appContextProvider != null;
-        this.appContextProvider = appContextProvider;
+            Provider<CompositePhoneLookup> compositePhoneLookupProvider,
+            Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider) {
         assert uiExecutorProvider != null;
         this.uiExecutorProvider = uiExecutorProvider;
-        assert backgroundExecutorProvider != null;
-        this.backgroundExecutorProvider = backgroundExecutorProvider;
         assert compositePhoneLookupProvider != null;
         this.compositePhoneLookupProvider = compositePhoneLookupProvider;
+        assert phoneLookupHistoryCacheProvider != null;
+        this.phoneLookupHistoryCacheProvider = phoneLookupHistoryCacheProvider;
     }
 
     public static Factory<RealtimeRowProcessor> create(
-            Provider<Context> appContextProvider,
             Provider<ListeningExecutorService> uiExecutorProvider,
-            Provider<ListeningExecutorService> backgroundExecutorProvider,
-            Provider<CompositePhoneLookup> compositePhoneLookupProvider) {
+            Provider<CompositePhoneLookup> compositePhoneLookupProvider,
+            Provider<PhoneLookupHistoryCache> phoneLookupHistoryCacheProvider) {
         return new RealtimeRowProcessor_Factory(
-                appContextProvider,
-                uiExecutorProvider,
-                backgroundExecutorProvider,
-                compositePhoneLookupProvider);
+                uiExecutorProvider, compositePhoneLookupProvider, phoneLookupHistoryCacheProvider);
     }
 
     @Override
     public RealtimeRowProcessor get() {
         return new RealtimeRowProcessor(
-                appContextProvider.get(),
                 uiExecutorProvider.get(),
-                backgroundExecutorProvider.get(),
-                compositePhoneLookupProvider.get());
+                compositePhoneLookupProvider.get(),
+                phoneLookupHistoryCacheProvider.get());
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.callrecord;
+
+import android.content.Context;
+import android.util.Pair;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.concurrent.DialerExecutorComponent;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory cache of the recordings of calls, keyed by phone number and call creation date.
+ *
+ * <p>Recordings are loaded in batches on a background thread by {@link #load(Context, String,
+ * List)}, so that showing them with {@link #get(String, long)} never does I/O.
+ */
+public final class CallRecordingCache {
+
+    private final Map<Pair<String, Long>, List<CallRecording>> recordings =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Returns the recordings of a call, or null if they haven't been loaded yet.
+     */
+    @Nullable
+    public List<CallRecording> get(String phoneNumber, long callCreationDate) {
+        return recordings.get(Pair.create(phoneNumber, callCreationDate));
+    }
+
+    /**
+     * Loads the recordings of the given calls to the same number which aren't cached yet, with one
+     * query.
+     *
+     * @return a future of whether the recordings of any call were loaded, which completes once
+     * {@link #get(String, long)} returns the recordings of all the calls
+     */
+    @MainThread
+    public ListenableFuture<Boolean> load(
+            Context context, String phoneNumber, List<Long> callCreationDates) {
+        Assert.isMainThread();
+        List<Long> missingDates = new ArrayList<>();
+        for (long callCreationDate : callCreationDates) {
+            if (get(phoneNumber, callCreationDate) == null) {
+                missingDates.add(callCreationDate);
+            }
+        }
+        if (missingDates.isEmpty()) {
+            return Futures.immediateFuture(false);
+        }
+        Context appContext = context.getApplicationContext();
+        return DialerExecutorComponent.get(appContext)
+                .backgroundExecutor()
+                .submit(() -> loadInBackground(appContext, phoneNumber, missingDates));
+    }
+
+    private boolean loadInBackground(
+            Context appContext, String phoneNumber, List<Long> callCreationDates) {
+        Assert.isWorkerThread();
+        CallRecordingDataStore dataStore = new CallRecordingDataStore();
+        Map<Long, List<CallRecording>> result;
+        try {
+            dataStore.open(appContext);
+            result = dataStore.getRecordings(phoneNumber, callCreationDates);
+        } finally {
+            dataStore.close();
+        }
+        for (long callCreationDate : callCreationDates) {
+            List<CallRecording> callRecordings = result.get(callCreationDate);
+            recordings.put(
+                    Pair.create(phoneNumber, callCreationDate),
+                    callRecordings != null
+                            ? Collections.unmodifiableList(callRecordings)
+                            : Collections.emptyList());
+        }
+        return true;
+    }
+}
@@ -28,7 +28,9 @@ import android.util.Log;
 import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Persistent data store for call recordings.  Usage:
@@ -38,6 +40,11 @@ import java.util.List;
  */
 public class CallRecordingDataStore {
     private static final String TAG = "CallRecordingStore";
+    /**
+     * The maximum number of calls looked up by one query, below the limit of SQLite on the number
+     * of arguments of a statement.
+     */
+    private static final int MAX_BATCH_SIZE = 500;
     private SQLiteOpenHelper mOpenHelper = null;
     private SQLiteDatabase mDatabase = null;
 
@@ -138,6 +145,65 @@ public class CallRecordingDataStore {
         return resultList;
     }
 
+    /**
+     * Get all recordings associated with several phone calls to the same number, with one query
+     * for up to {@link #MAX_BATCH_SIZE} calls
+     *
+     * @param phoneNumber       phone number no spaces
+     * @param callCreationDates times that the calls were created
+     * @return lists of recordings by call creation date, for the calls which have any
+     */
+    public Map<Long, List<CallRecording>> getRecordings(
+            String phoneNumber, List<Long> callCreationDates) {
+        Map<Long, List<CallRecording>> result = new HashMap<>();
+
+        for (int start = 0; start < callCreationDates.size(); start += MAX_BATCH_SIZE) {
+            List<Long> batch = callCreationDates.subList(
+                    start, Math.min(start + MAX_BATCH_SIZE, callCreationDates.size()));
+            StringBuilder query = new StringBuilder("SELECT " +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + "," +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_RECORDING_FILENAME + "," +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_CREATION_DATE + "," +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_MEDIA_ID +
+                    " FROM " + CallRecordingsContract.CallRecording.TABLE_NAME +
+                    " WHERE " + CallRecordingsContract.CallRecording.COLUMN_NAME_PHONE_NUMBER + " = ?" +
+                    " AND " + CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + " IN (");
+            String[] args = new String[batch.size() + 1];
+            args[0] = phoneNumber;
+            for (int i = 0; i < batch.size(); i++) {
+                query.append(i == 0 ? "?" : ",?");
+                args[i + 1] = String.valueOf(batch.get(i));
+            }
+            query.append(")" +
+                    " AND " + CallRecordingsContract.CallRecording.COLUMN_NAME_MEDIA_ID + " != 0" +
+                    " ORDER BY " + CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + "," +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_CREATION_DATE);
+
+            try {
+                Cursor cursor = mDatabase.rawQuery(query.toString(), args);
+                while (cursor.moveToNext()) {
+                    long callCreationDate = cursor.getLong(0);
+                    String fileName = cursor.getString(1);
+                    long creationDate = cursor.getLong(2);
+                    long mediaId = cursor.getLong(3);
+                    List<CallRecording> recordings = result.get(callCreationDate);
+                    if (recordings == null) {
+                        recordings = new ArrayList<>();
+                        result.put(callCreationDate, recordings);
+                    }
+                    recordings.add(new CallRecording(
+                            phoneNumber, callCreationDate, fileName, creationDate, mediaId));
+                }
+                cursor.close();
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Failed to fetch recordings for number " + phoneNumber +
+                        ", " + batch.size() + " dates", e);
+            }
+        }
+
+        return result;
+    }
+
     public SparseArray<CallRecording> getUnmigratedRecordingData() {
         final String query = "SELECT " +
                 CallRecordingsContract.CallRecording._ID + "," +
@@ -186,7 +252,7 @@ public class CallRecordingDataStore {
     }
 
     static class CallRecordingSQLiteOpenHelper extends SQLiteOpenHelper {
-        private static final int VERSION = 2;
+        private static final int VERSION = 3;
         private static final String DB_NAME = "callrecordings.db";
 
         public CallRecordingSQLiteOpenHelper(Context context) {
@@ -205,11 +271,7 @@ public class CallRecordingDataStore {
                     ");"
             );
 
-            db.execSQL("CREATE INDEX IF NOT EXISTS phone_number_call_date_index ON " +
-                    CallRecordingsContract.CallRecording.TABLE_NAME + " (" +
-                    CallRecordingsContract.CallRecording.COLUMN_NAME_PHONE_NUMBER + ", " +
-                    CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + ");"
-            );
+            createPhoneNumberCallDateIndex(db);
         }
 
         @Override
@@ -219,6 +281,19 @@ public class CallRecordingDataStore {
                         " ADD COLUMN " + CallRecordingsContract.CallRecording.COLUMN_NAME_MEDIA_ID +
                         " INTEGER DEFAULT 0;");
             }
+            if (oldVersion < 3) {
+                // Make sure databases created by earlier versions have the index the lookups of
+                // the recordings of calls rely on, instead of scanning the whole table.
+                createPhoneNumberCallDateIndex(db);
+            }
+        }
+
+        private static void createPhoneNumberCallDateIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS phone_number_call_date_index ON " +
+                    CallRecordingsContract.CallRecording.TABLE_NAME + " (" +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_PHONE_NUMBER + ", " +
+                    CallRecordingsContract.CallRecording.COLUMN_NAME_CALL_DATE + ");"
+            );
         }
     }
 }
@@ -21,6 +21,7 @@ import com.fissy.dialer.commandline.impl.BlockingCommand;
 import com.fissy.dialer.commandline.impl.CallCommand;
 import com.fissy.dialer.commandline.impl.Echo;
 import com.fissy.dialer.commandline.impl.Help;
+import com.fissy.dialer.commandline.impl.MetricsCommand;
 import com.fissy.dialer.commandline.impl.Version;
 import com.fissy.dialer.function.Supplier;
 import com.fissy.dialer.inject.DialerVariant;
@@ -56,6 +57,7 @@ public abstract class CommandLineModule {
         private final BlockingCommand blockingCommand;
         private final CallCommand callCommand;
         private final ActiveCallsCommand activeCallsCommand;
+        private final MetricsCommand metricsCommand;
 
         @Inject
         AospCommandInjector(
@@ -64,13 +66,15 @@ public abstract class CommandLineModule {
                 Echo echo,
                 BlockingCommand blockingCommand,
                 CallCommand callCommand,
-                ActiveCallsCommand activeCallsCommand) {
+                ActiveCallsCommand activeCallsCommand,
+                MetricsCommand metricsCommand) {
             this.help = help;
             this.version = version;
             this.echo = echo;
             this.blockingCommand = blockingCommand;
             this.callCommand = callCommand;
             this.activeCallsCommand = activeCallsCommand;
+            this.metricsCommand = metricsCommand;
         }
 
         public CommandSupplier.Builder inject(CommandSupplier.Builder builder) {
@@ -80,6 +84,7 @@ public abstract class CommandLineModule {
             builder.addCommand("blocking", blockingCommand);
             builder.addCommand("call", callCommand);
             builder.addCommand("activecalls", activeCallsCommand);
+            builder.addCommand("metrics", metricsCommand);
             return builder;
         }
     }
@@ -5,6 +5,7 @@ import com.fissy.dialer.commandline.impl.BlockingCommand;
 import com.fissy.dialer.commandline.impl.CallCommand;
 import com.fissy.dialer.commandline.impl.Echo;
 import com.fissy.dialer.commandline.impl.Help;
+import com.fissy.dialer.commandline.impl.MetricsCommand;
 import com.fissy.dialer.commandline.impl.Version;
 
 import javax.annotation.Generated;
@@ -30,13 +31,16 @@ public final class CommandLineModule_AospCommandInjector_Factory
 
     private final Provider<ActiveCallsCommand> activeCallsCommandProvider;
 
+    private final Provider<MetricsCommand> metricsCommandProvider;
+
     public CommandLineModule_AospCommandInjector_Factory(
             Provider<Help> helpProvider,
             Provider<Version> versionProvider,
             Provider<Echo> echoProvider,
             Provider<BlockingCommand> blockingCommandProvider,
             Provider<CallCommand> callCommandProvider,
-            Provider<ActiveCallsCommand> activeCallsCommandProvider) {
+            Provider<ActiveCallsCommand> activeCallsCommandProvider,
+            Provider<MetricsCommand> metricsCommandProvider) {
         assert helpProvider != null;
         this.helpProvider = helpProvider;
         assert versionProvider != null;
@@ -49,6 +53,8 @@ public final class CommandLineModule_AospCommandInjector_Factory
         this.callCommandProvider = callCommandProvider;
         assert activeCallsCommandProvider != null;
         this.activeCallsCommandProvider = activeCallsCommandProvider;
+        assert metricsCommandProvider != null;
+        this.metricsCommandProvider = metricsCommandProvider;
     }
 
     public static Factory<CommandLineModule.AospCommandInjector> create(
@@ -57,14 +63,16 @@ public final class CommandLineModule_AospCommandInjector_Factory
             Provider<Echo> echoProvider,
             Provider<BlockingCommand> blockingCommandProvider,
             Provider<CallCommand> callCommandProvider,
-            Provider<ActiveCallsCommand> activeCallsCommandProvider) {
+            Provider<ActiveCallsCommand> activeCallsCommandProvider,
+            Provider<MetricsCommand> metricsCommandProvider) {
         return new CommandLineModule_AospCommandInjector_Factory(
                 helpProvider,
                 versionProvider,
                 echoProvider,
                 blockingCommandProvider,
                 callCommandProvider,
-                activeCallsCommandProvider);
+                activeCallsCommandProvider,
+                metricsCommandProvider);
     }
 
     @Override
@@ -75,6 +83,7 @@ public final class CommandLineModule_AospCommandInjector_Factory
                 echoProvider.get(),
                 blockingCommandProvider.get(),
                 callCommandProvider.get(),
-                activeCallsCommandProvider.get());
+                activeCallsCommandProvider.get(),
+                metricsCommandProvider.get());
     }
 }
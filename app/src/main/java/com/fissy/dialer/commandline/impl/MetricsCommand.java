@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.commandline.impl;
+
+import androidx.annotation.NonNull;
+
+import com.fissy.dialer.commandline.Arguments;
+import com.fissy.dialer.commandline.Command;
+import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
+import com.fissy.dialer.metrics.local.LocalMetrics;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import javax.inject.Inject;
+
+/**
+ * Dump or reset the latency histograms recorded by {@link LocalMetrics}.
+ */
+public class MetricsCommand implements Command {
+
+    private final LocalMetrics localMetrics;
+    private final ListeningExecutorService executorService;
+
+    @Inject
+    MetricsCommand(
+            LocalMetrics localMetrics,
+            @BackgroundExecutor ListeningExecutorService executorService) {
+        this.localMetrics = localMetrics;
+        this.executorService = executorService;
+    }
+
+    @NonNull
+    @Override
+    public String getShortDescription() {
+        return "dump or reset latency metrics";
+    }
+
+    @NonNull
+    @Override
+    public String getUsage() {
+        return "metrics dump|reset\n\n"
+                + "dump prints the p50, p95, p99 and max latency of every event in milliseconds";
+    }
+
+    @Override
+    public ListenableFuture<String> run(Arguments args) throws IllegalCommandLineArgumentException {
+        if (args.getPositionals().isEmpty()) {
+            return Futures.immediateFuture(getUsage());
+        }
+
+        String command = args.getPositionals().get(0);
+
+        if ("dump".equals(command)) {
+            return executorService.submit(localMetrics::dump);
+        }
+
+        if ("reset".equals(command)) {
+            return executorService.submit(
+                    () -> {
+                        localMetrics.reset();
+                        return "reset metrics";
+                    });
+        }
+
+        return Futures.immediateFuture(getUsage());
+    }
+}
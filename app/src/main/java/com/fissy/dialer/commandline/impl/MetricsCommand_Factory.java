@@ -0,0 +1,39 @@
+package com.fissy.dialer.commandline.impl;
+
+import com.fissy.dialer.metrics.local.LocalMetrics;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class MetricsCommand_Factory implements Factory<MetricsCommand> {
+    private final Provider<LocalMetrics> localMetricsProvider;
+
+    private final Provider<ListeningExecutorService> executorServiceProvider;
+
+    public MetricsCommand_Factory(
+            Provider<LocalMetrics> localMetricsProvider,
+            Provider<ListeningExecutorService> executorServiceProvider) {
+        assert localMetricsProvider != null;
+        this.localMetricsProvider = localMetricsProvider;
+        assert executorServiceProvider != null;
+        this.executorServiceProvider = executorServiceProvider;
+    }
+
+    public static Factory<MetricsCommand> create(
+            Provider<LocalMetrics> localMetricsProvider,
+            Provider<ListeningExecutorService> executorServiceProvider) {
+        return new MetricsCommand_Factory(localMetricsProvider, executorServiceProvider);
+    }
+
+    @Override
+    public MetricsCommand get() {
+        return new MetricsCommand(localMetricsProvider.get(), executorServiceProvider.get());
+    }
+}
@@ -21,11 +21,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
@@ -34,6 +36,7 @@ import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.Directory;
 import android.text.TextUtils;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
@@ -46,6 +49,8 @@ import com.fissy.dialer.common.concurrent.DialerFutureSerializer;
 import com.fissy.dialer.common.database.Selection;
 import com.fissy.dialer.configprovider.ConfigProviderComponent;
 import com.fissy.dialer.database.FilteredNumberContract.FilteredNumberColumns;
+import com.fissy.dialer.metrics.Metrics;
+import com.fissy.dialer.metrics.MetricsComponent;
 import com.fissy.dialer.smartdial.util.SmartDialNameMatcher;
 import com.fissy.dialer.smartdial.util.SmartDialPrefix;
 import com.fissy.dialer.util.PermissionsUtil;
@@ -53,7 +58,10 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -88,8 +96,32 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_VERSION_PROPERTY = "database_version";
     private static final int MAX_ENTRIES = 20;
 
+    /**
+     * Row counts of the smart dial tables when their statistics were last updated with {@code
+     * ANALYZE}.
+     */
+    private static final String ANALYZED_SMARTDIAL_ROWS_PROPERTY = "analyzed_smartdial_rows";
+    private static final String ANALYZED_PREFIX_ROWS_PROPERTY = "analyzed_prefix_rows";
+    /**
+     * An incremental update only runs {@code ANALYZE} after a table grew or shrank by more than this
+     * percentage of its rows, and by more than {@link #ANALYZE_MIN_ROW_DRIFT} rows.
+     */
+    private static final int ANALYZE_DRIFT_PERCENT = 10;
+    private static final int ANALYZE_MIN_ROW_DRIFT = 100;
+
+    private static final String SMARTDIAL_INSERT_SQL = smartDialInsertSql(Tables.SMARTDIAL_TABLE);
+    private static final String PREFIX_INSERT_SQL = prefixInsertSql(Tables.PREFIX_TABLE);
+
     private final Context context;
     private final DialerFutureSerializer dialerFutureSerializer = new DialerFutureSerializer();
+    private final Object smartDialIndexLock = new Object();
+    private final SmartDialSearchSession smartDialSearchSession = new SmartDialSearchSession();
+
+    /**
+     * In-memory snapshot of the smart dial tables. Null until first used, and after the tables were
+     * dropped.
+     */
+    private volatile SmartDialIndex smartDialIndex;
 
     private boolean isTestInstance = false;
 
@@ -114,9 +146,59 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
 
     private void setupTables(SQLiteDatabase db) {
         dropTables(db);
+        createSmartDialTable(db, Tables.SMARTDIAL_TABLE);
+        createPrefixTable(db, Tables.PREFIX_TABLE);
+
         db.execSQL(
                 "CREATE TABLE "
-                        + Tables.SMARTDIAL_TABLE
+                        + Tables.PROPERTIES
+                        + " ("
+                        + PropertiesColumns.PROPERTY_KEY
+                        + " TEXT PRIMARY KEY, "
+                        + PropertiesColumns.PROPERTY_VALUE
+                        + " TEXT "
+                        + ");");
+
+        // This will need to also be updated in setupTablesForFilteredNumberTest and onUpgrade.
+        // Hardcoded so we know on glance what columns are updated in setupTables,
+        // and to be able to guarantee the state of the DB at each upgrade step.
+        db.execSQL(
+                "CREATE TABLE "
+                        + Tables.FILTERED_NUMBER_TABLE
+                        + " ("
+                        + FilteredNumberColumns._ID
+                        + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                        + FilteredNumberColumns.NORMALIZED_NUMBER
+                        + " TEXT UNIQUE,"
+                        + FilteredNumberColumns.NUMBER
+                        + " TEXT,"
+                        + FilteredNumberColumns.COUNTRY_ISO
+                        + " TEXT,"
+                        + FilteredNumberColumns.TIMES_FILTERED
+                        + " INTEGER,"
+                        + FilteredNumberColumns.LAST_TIME_FILTERED
+                        + " LONG,"
+                        + FilteredNumberColumns.CREATION_TIME
+                        + " LONG,"
+                        + FilteredNumberColumns.TYPE
+                        + " INTEGER,"
+                        + FilteredNumberColumns.SOURCE
+                        + " INTEGER"
+                        + ");");
+
+        setProperty(db, DATABASE_VERSION_PROPERTY, String.valueOf(DATABASE_VERSION));
+        if (!isTestInstance) {
+            resetSmartDialLastUpdatedTime();
+        }
+    }
+
+    /**
+     * Creates a table with the columns of {@link Tables#SMARTDIAL_TABLE}.
+     */
+    static void createSmartDialTable(SQLiteDatabase db, String table) {
+        db.execSQL(
+                "CREATE TABLE "
+                        + table
                         + " ("
                         + SmartDialDbColumns._ID
                         + " INTEGER PRIMARY KEY AUTOINCREMENT,"
@@ -149,10 +231,15 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                         + SmartDialDbColumns.CARRIER_PRESENCE
                         + " INTEGER NOT NULL DEFAULT 0"
                         + ");");
+    }
 
+    /**
+     * Creates a table with the columns of {@link Tables#PREFIX_TABLE}.
+     */
+    static void createPrefixTable(SQLiteDatabase db, String table) {
         db.execSQL(
                 "CREATE TABLE "
-                        + Tables.PREFIX_TABLE
+                        + table
                         + " ("
                         + PrefixColumns._ID
                         + " INTEGER PRIMARY KEY AUTOINCREMENT,"
@@ -161,51 +248,62 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                         + PrefixColumns.CONTACT_ID
                         + " INTEGER"
                         + ");");
+    }
 
-        db.execSQL(
-                "CREATE TABLE "
-                        + Tables.PROPERTIES
-                        + " ("
-                        + PropertiesColumns.PROPERTY_KEY
-                        + " TEXT PRIMARY KEY, "
-                        + PropertiesColumns.PROPERTY_VALUE
-                        + " TEXT "
-                        + ");");
-
-        // This will need to also be updated in setupTablesForFilteredNumberTest and onUpgrade.
-        // Hardcoded so we know on glance what columns are updated in setupTables,
-        // and to be able to guarantee the state of the DB at each upgrade step.
-        db.execSQL(
-                "CREATE TABLE "
-                        + Tables.FILTERED_NUMBER_TABLE
-                        + " ("
-                        + FilteredNumberColumns._ID
-                        + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-                        + FilteredNumberColumns.NORMALIZED_NUMBER
-                        + " TEXT UNIQUE,"
-                        + FilteredNumberColumns.NUMBER
-                        + " TEXT,"
-                        + FilteredNumberColumns.COUNTRY_ISO
-                        + " TEXT,"
-                        + FilteredNumberColumns.TIMES_FILTERED
-                        + " INTEGER,"
-                        + FilteredNumberColumns.LAST_TIME_FILTERED
-                        + " LONG,"
-                        + FilteredNumberColumns.CREATION_TIME
-                        + " LONG,"
-                        + FilteredNumberColumns.TYPE
-                        + " INTEGER,"
-                        + FilteredNumberColumns.SOURCE
-                        + " INTEGER"
-                        + ");");
+    /**
+     * Returns the statement inserting a row into a table created by {@link #createSmartDialTable}.
+     */
+    static String smartDialInsertSql(String table) {
+        return "INSERT INTO "
+                + table
+                + " ("
+                + SmartDialDbColumns.DATA_ID
+                + ", "
+                + SmartDialDbColumns.NUMBER
+                + ", "
+                + SmartDialDbColumns.CONTACT_ID
+                + ", "
+                + SmartDialDbColumns.LOOKUP_KEY
+                + ", "
+                + SmartDialDbColumns.DISPLAY_NAME_PRIMARY
+                + ", "
+                + SmartDialDbColumns.PHOTO_ID
+                + ", "
+                + SmartDialDbColumns.LAST_TIME_USED
+                + ", "
+                + SmartDialDbColumns.TIMES_USED
+                + ", "
+                + SmartDialDbColumns.STARRED
+                + ", "
+                + SmartDialDbColumns.IS_SUPER_PRIMARY
+                + ", "
+                + SmartDialDbColumns.IN_VISIBLE_GROUP
+                + ", "
+                + SmartDialDbColumns.IS_PRIMARY
+                + ", "
+                + SmartDialDbColumns.CARRIER_PRESENCE
+                + ", "
+                + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME
+                + ") "
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
 
-        setProperty(db, DATABASE_VERSION_PROPERTY, String.valueOf(DATABASE_VERSION));
-        if (!isTestInstance) {
-            resetSmartDialLastUpdatedTime();
-        }
+    /**
+     * Returns the statement inserting a row into a table created by {@link #createPrefixTable}.
+     */
+    static String prefixInsertSql(String table) {
+        return "INSERT INTO "
+                + table
+                + " ("
+                + PrefixColumns.CONTACT_ID
+                + ", "
+                + PrefixColumns.PREFIX
+                + ") "
+                + " VALUES (?, ?)";
     }
 
     public void dropTables(SQLiteDatabase db) {
+        smartDialIndex = null;
         db.execSQL("DROP TABLE IF EXISTS " + Tables.PREFIX_TABLE);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.SMARTDIAL_TABLE);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.PROPERTIES);
@@ -377,21 +475,21 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      * @param db                    Database to operate on.
      * @param lastUpdatedTimeMillis the last time at which an update to the smart dial database was
      *                              run.
+     * @return The number of smart dial rows removed.
      */
-    private void removeDeletedContacts(SQLiteDatabase db, String lastUpdatedTimeMillis) {
+    private int removeDeletedContacts(SQLiteDatabase db, String lastUpdatedTimeMillis) {
         Cursor deletedContactCursor = getDeletedContactCursor(lastUpdatedTimeMillis);
 
         if (deletedContactCursor == null) {
-            return;
+            return 0;
         }
 
+        int removedRows = 0;
         db.beginTransaction();
         try {
-            if (!deletedContactCursor.moveToFirst()) {
-                return;
-            }
-
-            do {
+            // Always mark the transaction successful, an early return would roll back the
+            // enclosing transaction of an incremental update.
+            while (deletedContactCursor.moveToNext()) {
                 if (deletedContactCursor.isNull(DeleteContactQuery.DELETED_CONTACT_ID)) {
                     LogUtil.i(
                             "DialerDatabaseHelper.removeDeletedContacts",
@@ -403,10 +501,11 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
 
                 Selection smartDialSelection =
                         Selection.column(SmartDialDbColumns.CONTACT_ID).is("=", deleteContactId);
-                db.delete(
-                        Tables.SMARTDIAL_TABLE,
-                        smartDialSelection.getSelection(),
-                        smartDialSelection.getSelectionArgs());
+                removedRows +=
+                        db.delete(
+                                Tables.SMARTDIAL_TABLE,
+                                smartDialSelection.getSelection(),
+                                smartDialSelection.getSelectionArgs());
 
                 Selection prefixSelection =
                         Selection.column(PrefixColumns.CONTACT_ID).is("=", deleteContactId);
@@ -414,13 +513,14 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                         Tables.PREFIX_TABLE,
                         prefixSelection.getSelection(),
                         prefixSelection.getSelectionArgs());
-            } while (deletedContactCursor.moveToNext());
+            }
 
             db.setTransactionSuccessful();
         } finally {
             deletedContactCursor.close();
             db.endTransaction();
         }
+        return removedRows;
     }
 
     private Cursor getDeletedContactCursor(String lastUpdateMillis) {
@@ -441,8 +541,9 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      *
      * @param db               Database pointer to the dialer database.
      * @param last_update_time Time stamp of last successful update of the dialer database.
+     * @return The number of smart dial rows removed.
      */
-    private void removePotentiallyCorruptedContacts(SQLiteDatabase db, String last_update_time) {
+    private int removePotentiallyCorruptedContacts(SQLiteDatabase db, String last_update_time) {
         db.delete(
                 Tables.PREFIX_TABLE,
                 PrefixColumns.CONTACT_ID
@@ -457,220 +558,24 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                         + last_update_time
                         + ")",
                 null);
-        db.delete(
+        return db.delete(
                 Tables.SMARTDIAL_TABLE,
                 SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + " > " + last_update_time,
                 null);
     }
 
-    /**
-     * Removes rows in the smartdial database that matches updated contacts.
-     *
-     * @param db                   Database pointer to the smartdial database
-     * @param updatedContactCursor Cursor pointing to the list of recently updated contacts.
-     */
-    @VisibleForTesting
-    void removeUpdatedContacts(SQLiteDatabase db, Cursor updatedContactCursor) {
-        db.beginTransaction();
-        try {
-            updatedContactCursor.moveToPosition(-1);
-            while (updatedContactCursor.moveToNext()) {
-                if (updatedContactCursor.isNull(UpdatedContactQuery.UPDATED_CONTACT_ID)) {
-                    LogUtil.i(
-                            "DialerDatabaseHelper.removeUpdatedContacts",
-                            "contact_id column null. Row was deleted during iteration, skipping");
-                    continue;
-                }
-
-                final long contactId = updatedContactCursor.getLong(UpdatedContactQuery.UPDATED_CONTACT_ID);
-
-                db.delete(Tables.SMARTDIAL_TABLE, SmartDialDbColumns.CONTACT_ID + "=" + contactId, null);
-                db.delete(Tables.PREFIX_TABLE, PrefixColumns.CONTACT_ID + "=" + contactId, null);
-            }
-
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
-        }
-    }
-
-    /**
-     * Inserts updated contacts as rows to the smartdial table.
-     *
-     * @param db                   Database pointer to the smartdial database.
-     * @param updatedContactCursor Cursor pointing to the list of recently updated contacts.
-     * @param currentMillis        Current time to be recorded in the smartdial table as update timestamp.
-     */
-    @VisibleForTesting
-    protected void insertUpdatedContactsAndNumberPrefix(
-            SQLiteDatabase db, Cursor updatedContactCursor, Long currentMillis) {
-        db.beginTransaction();
-        try {
-            final String sqlInsert =
-                    "INSERT INTO "
-                            + Tables.SMARTDIAL_TABLE
-                            + " ("
-                            + SmartDialDbColumns.DATA_ID
-                            + ", "
-                            + SmartDialDbColumns.NUMBER
-                            + ", "
-                            + SmartDialDbColumns.CONTACT_ID
-                            + ", "
-                            + SmartDialDbColumns.LOOKUP_KEY
-                            + ", "
-                            + SmartDialDbColumns.DISPLAY_NAME_PRIMARY
-                            + ", "
-                            + SmartDialDbColumns.PHOTO_ID
-                            + ", "
-                            + SmartDialDbColumns.LAST_TIME_USED
-                            + ", "
-                            + SmartDialDbColumns.TIMES_USED
-                            + ", "
-                            + SmartDialDbColumns.STARRED
-                            + ", "
-                            + SmartDialDbColumns.IS_SUPER_PRIMARY
-                            + ", "
-                            + SmartDialDbColumns.IN_VISIBLE_GROUP
-                            + ", "
-                            + SmartDialDbColumns.IS_PRIMARY
-                            + ", "
-                            + SmartDialDbColumns.CARRIER_PRESENCE
-                            + ", "
-                            + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME
-                            + ") "
-                            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            final SQLiteStatement insert = db.compileStatement(sqlInsert);
-
-            final String numberSqlInsert =
-                    "INSERT INTO "
-                            + Tables.PREFIX_TABLE
-                            + " ("
-                            + PrefixColumns.CONTACT_ID
-                            + ", "
-                            + PrefixColumns.PREFIX
-                            + ") "
-                            + " VALUES (?, ?)";
-            final SQLiteStatement numberInsert = db.compileStatement(numberSqlInsert);
-
-            updatedContactCursor.moveToPosition(-1);
-            while (updatedContactCursor.moveToNext()) {
-                insert.clearBindings();
-
-                if (updatedContactCursor.isNull(PhoneQuery.PHONE_ID)) {
-                    LogUtil.i(
-                            "DialerDatabaseHelper.insertUpdatedContactsAndNumberPrefix",
-                            "_id column null. Row was deleted during iteration, skipping");
-                    continue;
-                }
-
-                // Handle string columns which can possibly be null first. In the case of certain
-                // null columns (due to malformed rows possibly inserted by third-party apps
-                // or sync adapters), skip the phone number row.
-                final String number = updatedContactCursor.getString(PhoneQuery.PHONE_NUMBER);
-                if (TextUtils.isEmpty(number)) {
-                    continue;
-                } else {
-                    insert.bindString(2, number);
-                }
-
-                final String lookupKey = updatedContactCursor.getString(PhoneQuery.PHONE_LOOKUP_KEY);
-                if (TextUtils.isEmpty(lookupKey)) {
-                    continue;
-                } else {
-                    insert.bindString(4, lookupKey);
-                }
-
-                final String displayName = updatedContactCursor.getString(PhoneQuery.PHONE_DISPLAY_NAME);
-                if (displayName == null) {
-                    insert.bindString(5, context.getResources().getString(R.string.missing_name));
-                } else {
-                    insert.bindString(5, displayName);
-                }
-                insert.bindLong(1, updatedContactCursor.getLong(PhoneQuery.PHONE_ID));
-                insert.bindLong(3, updatedContactCursor.getLong(PhoneQuery.PHONE_CONTACT_ID));
-                insert.bindLong(6, updatedContactCursor.getLong(PhoneQuery.PHONE_PHOTO_ID));
-                insert.bindLong(7, updatedContactCursor.getLong(PhoneQuery.PHONE_LAST_TIME_USED));
-                insert.bindLong(8, updatedContactCursor.getInt(PhoneQuery.PHONE_TIMES_USED));
-                insert.bindLong(9, updatedContactCursor.getInt(PhoneQuery.PHONE_STARRED));
-                insert.bindLong(10, updatedContactCursor.getInt(PhoneQuery.PHONE_IS_SUPER_PRIMARY));
-                insert.bindLong(11, updatedContactCursor.getInt(PhoneQuery.PHONE_IN_VISIBLE_GROUP));
-                insert.bindLong(12, updatedContactCursor.getInt(PhoneQuery.PHONE_IS_PRIMARY));
-                insert.bindLong(13, updatedContactCursor.getInt(PhoneQuery.PHONE_CARRIER_PRESENCE));
-                insert.bindLong(14, currentMillis);
-                insert.executeInsert();
-                final String contactPhoneNumber = updatedContactCursor.getString(PhoneQuery.PHONE_NUMBER);
-                final ArrayList<String> numberPrefixes =
-                        SmartDialPrefix.parseToNumberTokens(context, contactPhoneNumber);
-
-                for (String numberPrefix : numberPrefixes) {
-                    numberInsert.bindLong(1, updatedContactCursor.getLong(PhoneQuery.PHONE_CONTACT_ID));
-                    numberInsert.bindString(2, numberPrefix);
-                    numberInsert.executeInsert();
-                    numberInsert.clearBindings();
-                }
-            }
-
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
-        }
-    }
-
-    /**
-     * Inserts prefixes of contact names to the prefix table.
-     *
-     * @param db         Database pointer to the smartdial database.
-     * @param nameCursor Cursor pointing to the list of distinct updated contacts.
-     */
-    @VisibleForTesting
-    void insertNamePrefixes(SQLiteDatabase db, Cursor nameCursor) {
-        final int columnIndexName = nameCursor.getColumnIndex(SmartDialDbColumns.DISPLAY_NAME_PRIMARY);
-        final int columnIndexContactId = nameCursor.getColumnIndex(SmartDialDbColumns.CONTACT_ID);
-
-        db.beginTransaction();
-        try {
-            final String sqlInsert =
-                    "INSERT INTO "
-                            + Tables.PREFIX_TABLE
-                            + " ("
-                            + PrefixColumns.CONTACT_ID
-                            + ", "
-                            + PrefixColumns.PREFIX
-                            + ") "
-                            + " VALUES (?, ?)";
-            final SQLiteStatement insert = db.compileStatement(sqlInsert);
-
-            while (nameCursor.moveToNext()) {
-                if (nameCursor.isNull(columnIndexContactId)) {
-                    LogUtil.i(
-                            "DialerDatabaseHelper.insertNamePrefixes",
-                            "contact_id column null. Row was deleted during iteration, skipping");
-                    continue;
-                }
-
-                final ArrayList<String> namePrefixes =
-                        SmartDialPrefix.generateNamePrefixes(context, nameCursor.getString(columnIndexName));
-
-                for (String namePrefix : namePrefixes) {
-                    insert.bindLong(1, nameCursor.getLong(columnIndexContactId));
-                    insert.bindString(2, namePrefix);
-                    insert.executeInsert();
-                    insert.clearBindings();
-                }
-            }
-
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
-        }
-    }
-
     /**
      * Updates the smart dial and prefix database. This method queries the Delta API to get changed
      * contacts since last update, and updates the records in smartdial database and prefix database
      * accordingly. It also queries the deleted contact database to remove newly deleted contacts
      * since last update.
      *
+     * <p>The first update, and any update with {@code forceUpdate} set, reloads all contacts and
+     * rebuilds the indexes. Later updates only rewrite the rows of contacts that actually changed,
+     * inside a single transaction, and leave the indexes in place. Each phase is timed through
+     * {@link Metrics} with the {@link Metrics#SMART_DIAL_FULL_UPDATE_TEMPLATE} and {@link
+     * Metrics#SMART_DIAL_INCREMENTAL_UPDATE_TEMPLATE} event names.
+     *
      * @param forceUpdate If set to true, update the database by reloading all contacts.
      */
     @WorkerThread
@@ -680,7 +585,6 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         final SQLiteDatabase db = getWritableDatabase();
 
         LogUtil.v("DialerDatabaseHelper.updateSmartDialDatabase", "starting to update database");
-        final StopWatch stopWatch = DEBUG ? StopWatch.start("Updating databases") : null;
 
         final SharedPreferences databaseLastUpdateSharedPref =
                 context.getSharedPreferences(DATABASE_LAST_CREATED_SHARED_PREF, Context.MODE_PRIVATE);
@@ -699,19 +603,120 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 "DialerDatabaseHelper.updateSmartDialDatabase", "last updated at %s", lastUpdateMillis);
 
         final long currentMillis = System.currentTimeMillis();
+        final boolean incremental = !lastUpdateMillis.equals("0");
+        final UpdateTimer timer =
+                new UpdateTimer(
+                        MetricsComponent.get(context).metrics(),
+                        incremental
+                                ? Metrics.SMART_DIAL_INCREMENTAL_UPDATE_TEMPLATE
+                                : Metrics.SMART_DIAL_FULL_UPDATE_TEMPLATE);
+
+        final int changedRows;
+        if (incremental) {
+            changedRows = updateSmartDialDatabaseIncrementally(db, lastUpdateMillis, currentMillis, timer);
+        } else {
+            changedRows = rebuildSmartDialDatabase(db, currentMillis, timer);
+        }
+        if (changedRows < 0) {
+            timer.stop();
+            return;
+        }
 
-        if (DEBUG) {
-            stopWatch.lap("Queried the Contacts database");
+        final boolean changed = !incremental || changedRows > 0;
+        if (changed || smartDialIndex == null) {
+            timer.startPhase("BuildIndex");
+            synchronized (smartDialIndexLock) {
+                smartDialIndex = loadSmartDialIndex(db);
+            }
         }
+        timer.stop();
+        LogUtil.i(
+                "DialerDatabaseHelper.updateSmartDialDatabase",
+                "%s update changed %d rows: %s",
+                incremental ? "incremental" : "full",
+                changedRows,
+                timer.getSummary());
 
-        removeDeletedContacts(db, lastUpdateMillis);
-        removePotentiallyCorruptedContacts(db, lastUpdateMillis);
+        final SharedPreferences.Editor editor = databaseLastUpdateSharedPref.edit();
+        editor.putLong(LAST_UPDATED_MILLIS, currentMillis);
+        editor.apply();
 
-        if (DEBUG) {
-            stopWatch.lap("Finished deleting deleted entries");
+        if (!changed) {
+            LogUtil.i("DialerDatabaseHelper.updateSmartDialDatabase", "no changes to broadcast");
+            return;
+        }
+
+        LogUtil.i("DialerDatabaseHelper.updateSmartDialDatabase", "broadcasting smart dial update");
+
+        // Notify content observers that smart dial database has been updated.
+        Intent intent = new Intent(ACTION_SMART_DIAL_UPDATED);
+        intent.setPackage(context.getPackageName());
+        context.sendBroadcast(intent);
+    }
+
+    /**
+     * Reloads all contacts into the smart dial tables, recreates the indexes and updates their
+     * statistics. The tables are built next to the current ones by {@link SmartDialTableRebuilder}
+     * and swapped in atomically.
+     *
+     * @return The number of smart dial rows written, or -1 if the contacts could not be queried.
+     */
+    private int rebuildSmartDialDatabase(SQLiteDatabase db, long currentMillis, UpdateTimer timer) {
+        timer.startPhase("QueryContacts");
+        final Cursor phoneCursor =
+                context
+                        .getContentResolver()
+                        .query(
+                                PhoneQuery.URI,
+                                PhoneQuery.PROJECTION,
+                                PhoneQuery.SELECTION,
+                                new String[]{"0"},
+                                null);
+        if (phoneCursor == null) {
+            LogUtil.e(
+                    "DialerDatabaseHelper.rebuildSmartDialDatabase",
+                    "smartDial query received null for cursor");
+            return -1;
         }
 
-        if (!lastUpdateMillis.equals("0")) {
+        final int rows;
+        final SmartDialTableRebuilder rebuilder = new SmartDialTableRebuilder(context, this);
+        try {
+            timer.startPhase("BuildTables");
+            rows = rebuilder.buildTables(db, phoneCursor, currentMillis);
+        } finally {
+            phoneCursor.close();
+        }
+
+        timer.startPhase("SwapTables");
+        rebuilder.swapTables(db);
+
+        timer.startPhase("Analyze");
+        analyzeSmartDialTables(db);
+
+        return rows;
+    }
+
+    /**
+     * Applies the contacts changed since {@code lastUpdateMillis} to the smart dial tables in a
+     * single transaction. Rows of updated contacts are only rewritten if they changed, and prefixes
+     * are only regenerated if the numbers or names of a contact changed. Indexes are left in place,
+     * and statistics are only updated once the row counts drifted away from the last {@code ANALYZE}.
+     *
+     * @return The number of smart dial rows removed, updated or inserted, or -1 if the contacts
+     * could not be queried.
+     */
+    private int updateSmartDialDatabaseIncrementally(
+            SQLiteDatabase db, String lastUpdateMillis, long currentMillis, UpdateTimer timer) {
+        int changedRows = 0;
+        db.beginTransaction();
+        try {
+            timer.startPhase("RemoveContacts");
+            changedRows += removeDeletedContacts(db, lastUpdateMillis);
+            changedRows += removePotentiallyCorruptedContacts(db, lastUpdateMillis);
+
+            timer.startPhase("QueryContacts");
+            final Set<Long> updatedContactIds = new HashSet<>();
             final Cursor updatedContactCursor =
                     context
                             .getContentResolver()
@@ -723,73 +728,295 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                                     null);
             if (updatedContactCursor == null) {
                 LogUtil.e(
-                        "DialerDatabaseHelper.updateSmartDialDatabase",
+                        "DialerDatabaseHelper.updateSmartDialDatabaseIncrementally",
                         "smartDial query received null for cursor");
-                return;
+                return -1;
             }
             try {
-                removeUpdatedContacts(db, updatedContactCursor);
+                while (updatedContactCursor.moveToNext()) {
+                    if (!updatedContactCursor.isNull(UpdatedContactQuery.UPDATED_CONTACT_ID)) {
+                        updatedContactIds.add(
+                                updatedContactCursor.getLong(UpdatedContactQuery.UPDATED_CONTACT_ID));
+                    }
+                }
             } finally {
                 updatedContactCursor.close();
             }
-            if (DEBUG) {
-                stopWatch.lap("Finished deleting entries belonging to updated contacts");
+
+            final Cursor updatedPhoneCursor =
+                    context
+                            .getContentResolver()
+                            .query(
+                                    PhoneQuery.URI,
+                                    PhoneQuery.PROJECTION,
+                                    PhoneQuery.SELECTION,
+                                    new String[]{lastUpdateMillis},
+                                    null);
+            if (updatedPhoneCursor == null) {
+                LogUtil.e(
+                        "DialerDatabaseHelper.updateSmartDialDatabaseIncrementally",
+                        "smartDial query received null for cursor");
+                return -1;
+            }
+            final Map<Long, List<PhoneRow>> updatedPhoneRows;
+            try {
+                updatedPhoneRows = readPhoneRows(updatedPhoneCursor);
+            } finally {
+                updatedPhoneCursor.close();
             }
+            updatedContactIds.addAll(updatedPhoneRows.keySet());
+
+            timer.startPhase("ApplyContacts");
+            changedRows += applyUpdatedContacts(db, updatedContactIds, updatedPhoneRows, currentMillis);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
-        final Cursor updatedPhoneCursor =
-                context
-                        .getContentResolver()
-                        .query(
-                                PhoneQuery.URI,
-                                PhoneQuery.PROJECTION,
-                                PhoneQuery.SELECTION,
-                                new String[]{lastUpdateMillis},
-                                null);
-        if (updatedPhoneCursor == null) {
-            LogUtil.e(
-                    "DialerDatabaseHelper.updateSmartDialDatabase",
-                    "smartDial query received null for cursor");
-            return;
+        timer.startPhase("Analyze");
+        if (changedRows > 0) {
+            analyzeSmartDialTablesIfDrifted(db);
         }
+        return changedRows;
+    }
 
-        try {
-            insertUpdatedContactsAndNumberPrefix(db, updatedPhoneCursor, currentMillis);
-            if (DEBUG) {
-                stopWatch.lap("Finished building the smart dial table");
+    /**
+     * Reads the rows of a {@link PhoneQuery} cursor, grouped by contact id.
+     */
+    private Map<Long, List<PhoneRow>> readPhoneRows(Cursor phoneCursor) {
+        final Map<Long, List<PhoneRow>> rows = new HashMap<>();
+        while (phoneCursor.moveToNext()) {
+            final PhoneRow row = readPhoneRow(phoneCursor);
+            if (row == null) {
+                continue;
             }
-        } finally {
-            updatedPhoneCursor.close();
+            List<PhoneRow> contactRows = rows.get(row.contactId);
+            if (contactRows == null) {
+                contactRows = new ArrayList<>();
+                rows.put(row.contactId, contactRows);
+            }
+            contactRows.add(row);
         }
+        return rows;
+    }
 
-        final Cursor nameCursor =
-                db.rawQuery(
-                        "SELECT DISTINCT "
-                                + SmartDialDbColumns.DISPLAY_NAME_PRIMARY
-                                + ", "
-                                + SmartDialDbColumns.CONTACT_ID
-                                + " FROM "
+    /**
+     * Reads the current row of a {@link PhoneQuery} cursor.
+     *
+     * @return The row, or null if the row was deleted during iteration or is malformed (e.g. was
+     * inserted by third-party apps or sync adapters without a number or lookup key).
+     */
+    @Nullable
+    PhoneRow readPhoneRow(Cursor phoneCursor) {
+        if (phoneCursor.isNull(PhoneQuery.PHONE_ID)) {
+            LogUtil.i(
+                    "DialerDatabaseHelper.readPhoneRow",
+                    "_id column null. Row was deleted during iteration, skipping");
+            return null;
+        }
+        final String number = phoneCursor.getString(PhoneQuery.PHONE_NUMBER);
+        final String lookupKey = phoneCursor.getString(PhoneQuery.PHONE_LOOKUP_KEY);
+        if (TextUtils.isEmpty(number) || TextUtils.isEmpty(lookupKey)) {
+            return null;
+        }
+        final String displayName = phoneCursor.getString(PhoneQuery.PHONE_DISPLAY_NAME);
+
+        final PhoneRow row = new PhoneRow();
+        row.dataId = phoneCursor.getLong(PhoneQuery.PHONE_ID);
+        row.number = number;
+        row.contactId = phoneCursor.getLong(PhoneQuery.PHONE_CONTACT_ID);
+        row.lookupKey = lookupKey;
+        row.displayName =
+                displayName == null
+                        ? context.getResources().getString(R.string.missing_name)
+                        : displayName;
+        row.photoId = phoneCursor.getLong(PhoneQuery.PHONE_PHOTO_ID);
+        row.lastTimeUsed = phoneCursor.getLong(PhoneQuery.PHONE_LAST_TIME_USED);
+        row.timesUsed = phoneCursor.getInt(PhoneQuery.PHONE_TIMES_USED);
+        row.starred = phoneCursor.getInt(PhoneQuery.PHONE_STARRED);
+        row.isSuperPrimary = phoneCursor.getInt(PhoneQuery.PHONE_IS_SUPER_PRIMARY);
+        row.inVisibleGroup = phoneCursor.getInt(PhoneQuery.PHONE_IN_VISIBLE_GROUP);
+        row.isPrimary = phoneCursor.getInt(PhoneQuery.PHONE_IS_PRIMARY);
+        row.carrierPresence = phoneCursor.getInt(PhoneQuery.PHONE_CARRIER_PRESENCE);
+        return row;
+    }
+
+    /**
+     * Brings the smart dial rows of the given contacts in line with {@code updatedPhoneRows}.
+     *
+     * <p>If the numbers, lookup keys and names of a contact are unchanged, only the ranking columns
+     * of rows that differ are updated and the prefixes are kept. Otherwise the rows and prefixes of
+     * the contact are replaced.
+     *
+     * @return The number of smart dial rows removed, updated or inserted.
+     */
+    private int applyUpdatedContacts(
+            SQLiteDatabase db,
+            Set<Long> contactIds,
+            Map<Long, List<PhoneRow>> updatedPhoneRows,
+            long currentMillis) {
+        final SQLiteStatement rowInsert = db.compileStatement(SMARTDIAL_INSERT_SQL);
+        final SQLiteStatement prefixInsert = db.compileStatement(PREFIX_INSERT_SQL);
+        final SQLiteStatement rowUpdate =
+                db.compileStatement(
+                        "UPDATE "
                                 + Tables.SMARTDIAL_TABLE
-                                + " WHERE "
+                                + " SET "
+                                + SmartDialDbColumns.PHOTO_ID
+                                + " = ?, "
+                                + SmartDialDbColumns.LAST_TIME_USED
+                                + " = ?, "
+                                + SmartDialDbColumns.TIMES_USED
+                                + " = ?, "
+                                + SmartDialDbColumns.STARRED
+                                + " = ?, "
+                                + SmartDialDbColumns.IS_SUPER_PRIMARY
+                                + " = ?, "
+                                + SmartDialDbColumns.IN_VISIBLE_GROUP
+                                + " = ?, "
+                                + SmartDialDbColumns.IS_PRIMARY
+                                + " = ?, "
+                                + SmartDialDbColumns.CARRIER_PRESENCE
+                                + " = ?, "
                                 + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME
-                                + " = "
-                                + currentMillis,
-                        new String[]{});
-        if (nameCursor != null) {
-            try {
-                if (DEBUG) {
-                    stopWatch.lap("Queried the smart dial table for contact names");
+                                + " = ? WHERE "
+                                + SmartDialDbColumns.DATA_ID
+                                + " = ? AND "
+                                + SmartDialDbColumns.CONTACT_ID
+                                + " = ?");
+
+        int changedRows = 0;
+        for (long contactId : contactIds) {
+            List<PhoneRow> newRows = updatedPhoneRows.get(contactId);
+            if (newRows == null) {
+                newRows = new ArrayList<>();
+            }
+            final Map<Long, PhoneRow> oldRows = readSmartDialRows(db, contactId);
+
+            if (hasSameIdentity(oldRows, newRows)) {
+                for (PhoneRow newRow : newRows) {
+                    if (newRow.hasSameRanking(oldRows.get(newRow.dataId))) {
+                        continue;
+                    }
+                    rowUpdate.clearBindings();
+                    rowUpdate.bindLong(1, newRow.photoId);
+                    rowUpdate.bindLong(2, newRow.lastTimeUsed);
+                    rowUpdate.bindLong(3, newRow.timesUsed);
+                    rowUpdate.bindLong(4, newRow.starred);
+                    rowUpdate.bindLong(5, newRow.isSuperPrimary);
+                    rowUpdate.bindLong(6, newRow.inVisibleGroup);
+                    rowUpdate.bindLong(7, newRow.isPrimary);
+                    rowUpdate.bindLong(8, newRow.carrierPresence);
+                    rowUpdate.bindLong(9, currentMillis);
+                    rowUpdate.bindLong(10, newRow.dataId);
+                    rowUpdate.bindLong(11, contactId);
+                    changedRows += rowUpdate.executeUpdateDelete();
                 }
+                continue;
+            }
 
-                insertNamePrefixes(db, nameCursor);
-                if (DEBUG) {
-                    stopWatch.lap("Finished building the name prefix table");
+            changedRows +=
+                    db.delete(Tables.SMARTDIAL_TABLE, SmartDialDbColumns.CONTACT_ID + "=" + contactId, null);
+            db.delete(Tables.PREFIX_TABLE, PrefixColumns.CONTACT_ID + "=" + contactId, null);
+
+            final Set<String> displayNames = new HashSet<>();
+            for (PhoneRow newRow : newRows) {
+                newRow.bindInsert(rowInsert, currentMillis);
+                rowInsert.executeInsert();
+                changedRows++;
+                for (String numberPrefix : SmartDialPrefix.parseToNumberTokens(context, newRow.number)) {
+                    insertPrefix(prefixInsert, contactId, numberPrefix);
                 }
-            } finally {
-                nameCursor.close();
+                displayNames.add(newRow.displayName);
+            }
+            for (String displayName : displayNames) {
+                for (String namePrefix : SmartDialPrefix.generateNamePrefixes(context, displayName)) {
+                    insertPrefix(prefixInsert, contactId, namePrefix);
+                }
+            }
+        }
+        return changedRows;
+    }
+
+    static void insertPrefix(SQLiteStatement prefixInsert, long contactId, String prefix) {
+        prefixInsert.bindLong(1, contactId);
+        prefixInsert.bindString(2, prefix);
+        prefixInsert.executeInsert();
+        prefixInsert.clearBindings();
+    }
+
+    /**
+     * Returns whether the rows of a contact have the same numbers, lookup keys and names, so that
+     * its prefixes are still valid.
+     */
+    private static boolean hasSameIdentity(Map<Long, PhoneRow> oldRows, List<PhoneRow> newRows) {
+        if (oldRows.size() != newRows.size()) {
+            return false;
+        }
+        for (PhoneRow newRow : newRows) {
+            if (!newRow.hasSameIdentity(oldRows.get(newRow.dataId))) {
+                return false;
             }
         }
+        return true;
+    }
 
+    /**
+     * Returns the smart dial rows of a contact keyed by data id.
+     */
+    private Map<Long, PhoneRow> readSmartDialRows(SQLiteDatabase db, long contactId) {
+        final Map<Long, PhoneRow> rows = new HashMap<>();
+        final Cursor cursor =
+                db.query(
+                        Tables.SMARTDIAL_TABLE,
+                        new String[]{
+                                SmartDialDbColumns.DATA_ID,
+                                SmartDialDbColumns.NUMBER,
+                                SmartDialDbColumns.LOOKUP_KEY,
+                                SmartDialDbColumns.DISPLAY_NAME_PRIMARY,
+                                SmartDialDbColumns.PHOTO_ID,
+                                SmartDialDbColumns.LAST_TIME_USED,
+                                SmartDialDbColumns.TIMES_USED,
+                                SmartDialDbColumns.STARRED,
+                                SmartDialDbColumns.IS_SUPER_PRIMARY,
+                                SmartDialDbColumns.IN_VISIBLE_GROUP,
+                                SmartDialDbColumns.IS_PRIMARY,
+                                SmartDialDbColumns.CARRIER_PRESENCE
+                        },
+                        SmartDialDbColumns.CONTACT_ID + " = ?",
+                        new String[]{String.valueOf(contactId)},
+                        null,
+                        null,
+                        null);
+        if (cursor == null) {
+            return rows;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final PhoneRow row = new PhoneRow();
+                row.dataId = cursor.getLong(0);
+                row.number = cursor.getString(1);
+                row.contactId = contactId;
+                row.lookupKey = cursor.getString(2);
+                row.displayName = cursor.getString(3);
+                row.photoId = cursor.getLong(4);
+                row.lastTimeUsed = cursor.getLong(5);
+                row.timesUsed = cursor.getInt(6);
+                row.starred = cursor.getInt(7);
+                row.isSuperPrimary = cursor.getInt(8);
+                row.inVisibleGroup = cursor.getInt(9);
+                row.isPrimary = cursor.getInt(10);
+                row.carrierPresence = cursor.getInt(11);
+                rows.put(row.dataId, row);
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    static void createSmartDialIndexes(SQLiteDatabase db) {
         db.execSQL(
                 "CREATE INDEX IF NOT EXISTS smartdial_contact_id_index ON "
                         + Tables.SMARTDIAL_TABLE
@@ -834,154 +1061,250 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                         + " ("
                         + PrefixColumns.CONTACT_ID
                         + ");");
+    }
 
-        if (DEBUG) {
-            stopWatch.lap(TAG + "Finished recreating index");
-        }
-
+    /**
+     * Updates the statistics of the smart dial tables and remembers their row counts, see {@link
+     * #analyzeSmartDialTablesIfDrifted}.
+     */
+    private void analyzeSmartDialTables(SQLiteDatabase db) {
         db.execSQL("ANALYZE " + Tables.SMARTDIAL_TABLE);
         db.execSQL("ANALYZE " + Tables.PREFIX_TABLE);
         db.execSQL("ANALYZE smartdial_contact_id_index");
         db.execSQL("ANALYZE smartdial_last_update_index");
         db.execSQL("ANALYZE nameprefix_index");
         db.execSQL("ANALYZE nameprefix_contact_id_index");
-        if (DEBUG) {
-            stopWatch.stopAndLog(TAG + "Finished updating index stats", 0);
-        }
+        setProperty(
+                db,
+                ANALYZED_SMARTDIAL_ROWS_PROPERTY,
+                String.valueOf(DatabaseUtils.queryNumEntries(db, Tables.SMARTDIAL_TABLE)));
+        setProperty(
+                db,
+                ANALYZED_PREFIX_ROWS_PROPERTY,
+                String.valueOf(DatabaseUtils.queryNumEntries(db, Tables.PREFIX_TABLE)));
+    }
 
-        final SharedPreferences.Editor editor = databaseLastUpdateSharedPref.edit();
-        editor.putLong(LAST_UPDATED_MILLIS, currentMillis);
-        editor.apply();
+    /**
+     * Runs {@link #analyzeSmartDialTables} only if the row count of one of the smart dial tables
+     * moved by more than {@link #ANALYZE_DRIFT_PERCENT} percent since the statistics were updated.
+     */
+    private void analyzeSmartDialTablesIfDrifted(SQLiteDatabase db) {
+        if (hasDrifted(db, Tables.SMARTDIAL_TABLE, ANALYZED_SMARTDIAL_ROWS_PROPERTY)
+                || hasDrifted(db, Tables.PREFIX_TABLE, ANALYZED_PREFIX_ROWS_PROPERTY)) {
+            analyzeSmartDialTables(db);
+        }
+    }
 
-        LogUtil.i("DialerDatabaseHelper.updateSmartDialDatabase", "broadcasting smart dial update");
+    private boolean hasDrifted(SQLiteDatabase db, String table, String analyzedRowsProperty) {
+        final long analyzedRows = getPropertyAsInt(db, analyzedRowsProperty, -1);
+        if (analyzedRows < 0) {
+            return true;
+        }
+        final long rows = DatabaseUtils.queryNumEntries(db, table);
+        final long allowedDrift = Math.max(ANALYZE_MIN_ROW_DRIFT, analyzedRows * ANALYZE_DRIFT_PERCENT / 100);
+        return Math.abs(rows - analyzedRows) > allowedDrift;
+    }
 
-        // Notify content observers that smart dial database has been updated.
-        Intent intent = new Intent(ACTION_SMART_DIAL_UPDATED);
-        intent.setPackage(context.getPackageName());
-        context.sendBroadcast(intent);
+    /**
+     * Drops the candidates cached for the previous dialpad queries, once the query they refine is
+     * gone.
+     */
+    public void resetSmartDialSearchSession() {
+        smartDialSearchSession.reset();
     }
 
     /**
      * Returns a list of candidate contacts where the query is a prefix of the dialpad index of the
      * contact's name or phone number.
      *
+     * <p>Candidates come from the in-memory {@link SmartDialIndex}, which is rebuilt whenever the
+     * smart dial tables are updated, so no SQLite query is run per keystroke. Consecutive queries
+     * share a {@link SmartDialSearchSession}, so typing or deleting a digit only refines the
+     * candidates of the previous query.
+     *
      * @param query The prefix of a contact's dialpad index.
      * @return A list of top candidate contacts that will be suggested to user to match their input.
      */
     @WorkerThread
-    public synchronized ArrayList<ContactNumber> getLooseMatches(
-            String query, SmartDialNameMatcher nameMatcher) {
-        final SQLiteDatabase db = getReadableDatabase();
-
-        final String looseQuery = query + "%";
-
+    public ArrayList<ContactNumber> getLooseMatches(String query, SmartDialNameMatcher nameMatcher) {
         final ArrayList<ContactNumber> result = new ArrayList<>();
 
         final StopWatch stopWatch = DEBUG ? StopWatch.start(":Name Prefix query") : null;
 
-        final String currentTimeStamp = Long.toString(System.currentTimeMillis());
+        final SmartDialIndex index = getSmartDialIndex();
+        final int[] rows =
+                smartDialSearchSession.getCandidates(index, query, System.currentTimeMillis());
+        if (DEBUG) {
+            stopWatch.lap("Prefix query completed");
+        }
 
-        final Cursor cursor =
+        final Set<ContactMatch> duplicates = new HashSet<>();
+        int counter = 0;
+        for (int i = 0; i < rows.length && counter < MAX_ENTRIES; i++) {
+            final int row = rows[i];
+            final String displayName = index.getDisplayName(row);
+            final String phoneNumber = index.getNumber(row);
+            final long id = index.getContactId(row);
+            final String lookupKey = index.getLookupKey(row);
+
+            final ContactMatch contactMatch = new ContactMatch(lookupKey, id);
+            if (duplicates.contains(contactMatch)) {
+                continue;
+            }
+
+            final boolean nameMatches = nameMatcher.matchesNameKeys(index.getNameKeys(row));
+            final boolean numberMatches = nameMatcher.matchesNumberKeys(index.getNumberKeys(row));
+            if (nameMatches || numberMatches) {
+                duplicates.add(contactMatch);
+                result.add(
+                        new ContactNumber(
+                                id,
+                                index.getDataId(row),
+                                displayName,
+                                phoneNumber,
+                                lookupKey,
+                                index.getPhotoId(row),
+                                index.getCarrierPresence(row)));
+                counter++;
+                if (DEBUG) {
+                    stopWatch.lap("Added one result: Name: " + displayName);
+                }
+            }
+        }
+
+        if (DEBUG) {
+            stopWatch.stopAndLog(TAG + "Finished loading cursor", 0);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the in-memory index of the smart dial tables, loading it from the database if it has
+     * not been built yet.
+     */
+    @WorkerThread
+    public SmartDialIndex getSmartDialIndex() {
+        SmartDialIndex index = smartDialIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (smartDialIndexLock) {
+            if (smartDialIndex == null) {
+                smartDialIndex = loadSmartDialIndex(getReadableDatabase());
+            }
+            return smartDialIndex;
+        }
+    }
+
+    /**
+     * Builds a {@link SmartDialIndex} from the current content of {@link Tables#SMARTDIAL_TABLE} and
+     * {@link Tables#PREFIX_TABLE}.
+     */
+    private SmartDialIndex loadSmartDialIndex(SQLiteDatabase db) {
+        final StopWatch stopWatch = DEBUG ? StopWatch.start("Building smart dial index") : null;
+        final SmartDialIndex.Builder builder = new SmartDialIndex.Builder();
+
+        final Cursor rowCursor =
                 db.rawQuery(
                         "SELECT "
                                 + SmartDialDbColumns.DATA_ID
                                 + ", "
-                                + SmartDialDbColumns.DISPLAY_NAME_PRIMARY
+                                + SmartDialDbColumns.CONTACT_ID
                                 + ", "
-                                + SmartDialDbColumns.PHOTO_ID
+                                + SmartDialDbColumns.DISPLAY_NAME_PRIMARY
                                 + ", "
                                 + SmartDialDbColumns.NUMBER
                                 + ", "
-                                + SmartDialDbColumns.CONTACT_ID
-                                + ", "
                                 + SmartDialDbColumns.LOOKUP_KEY
                                 + ", "
+                                + SmartDialDbColumns.PHOTO_ID
+                                + ", "
                                 + SmartDialDbColumns.CARRIER_PRESENCE
+                                + ", "
+                                + SmartDialDbColumns.STARRED
+                                + ", "
+                                + SmartDialDbColumns.IS_SUPER_PRIMARY
+                                + ", "
+                                + SmartDialDbColumns.LAST_TIME_USED
+                                + ", "
+                                + SmartDialDbColumns.TIMES_USED
+                                + ", "
+                                + SmartDialDbColumns.IN_VISIBLE_GROUP
+                                + ", "
+                                + SmartDialDbColumns.IS_PRIMARY
                                 + " FROM "
-                                + Tables.SMARTDIAL_TABLE
-                                + " WHERE "
-                                + SmartDialDbColumns.CONTACT_ID
-                                + " IN "
-                                + " (SELECT "
-                                + PrefixColumns.CONTACT_ID
-                                + " FROM "
-                                + Tables.PREFIX_TABLE
-                                + " WHERE "
-                                + Tables.PREFIX_TABLE
-                                + "."
-                                + PrefixColumns.PREFIX
-                                + " LIKE '"
-                                + looseQuery
-                                + "')"
-                                + " ORDER BY "
-                                + SmartDialSortingOrder.SORT_ORDER,
-                        new String[]{currentTimeStamp});
-        if (cursor == null) {
-            return result;
-        }
-        try {
-            if (DEBUG) {
-                stopWatch.lap("Prefix query completed");
-            }
-
-            final int columnDataId = 0;
-            final int columnDisplayNamePrimary = 1;
-            final int columnPhotoId = 2;
-            final int columnNumber = 3;
-            final int columnId = 4;
-            final int columnLookupKey = 5;
-            final int columnCarrierPresence = 6;
-            if (DEBUG) {
-                stopWatch.lap("Found column IDs");
-            }
-
-            final Set<ContactMatch> duplicates = new HashSet<>();
-            int counter = 0;
-            if (DEBUG) {
-                stopWatch.lap("Moved cursor to start");
-            }
-            while ((cursor.moveToNext()) && (counter < MAX_ENTRIES)) {
-                if (cursor.isNull(columnDataId)) {
-                    LogUtil.i(
-                            "DialerDatabaseHelper.getLooseMatches",
-                            "_id column null. Row was deleted during iteration, skipping");
-                    continue;
-                }
-                final long dataID = cursor.getLong(columnDataId);
-                final String displayName = cursor.getString(columnDisplayNamePrimary);
-                final String phoneNumber = cursor.getString(columnNumber);
-                final long id = cursor.getLong(columnId);
-                final long photoId = cursor.getLong(columnPhotoId);
-                final String lookupKey = cursor.getString(columnLookupKey);
-                final int carrierPresence = cursor.getInt(columnCarrierPresence);
-
-                final ContactMatch contactMatch = new ContactMatch(lookupKey, id);
-                if (duplicates.contains(contactMatch)) {
-                    continue;
+                                + Tables.SMARTDIAL_TABLE,
+                        null);
+        if (rowCursor != null) {
+            try {
+                while (rowCursor.moveToNext()) {
+                    if (rowCursor.isNull(0)) {
+                        continue;
+                    }
+                    final String displayName = rowCursor.getString(2);
+                    final String number = rowCursor.getString(3);
+                    builder.addRow(
+                            rowCursor.getLong(0),
+                            rowCursor.getLong(1),
+                            displayName,
+                            SmartDialNameMatcher.toNameKeys(context, displayName),
+                            number,
+                            SmartDialNameMatcher.toNumberKeys(context, number),
+                            rowCursor.getString(4),
+                            rowCursor.getLong(5),
+                            rowCursor.getInt(6),
+                            rowCursor.getInt(7) != 0,
+                            rowCursor.getInt(8) != 0,
+                            rowCursor.getLong(9),
+                            rowCursor.getInt(10),
+                            rowCursor.getInt(11) != 0,
+                            rowCursor.getInt(12) != 0);
                 }
+            } finally {
+                rowCursor.close();
+            }
+        }
+        if (DEBUG) {
+            stopWatch.lap("Loaded smart dial rows");
+        }
 
-                final boolean nameMatches = nameMatcher.matches(context, displayName);
-                final boolean numberMatches =
-                        (nameMatcher.matchesNumber(context, phoneNumber, query) != null);
-                if (nameMatches || numberMatches) {
-                    duplicates.add(contactMatch);
-                    result.add(
-                            new ContactNumber(
-                                    id, dataID, displayName, phoneNumber, lookupKey, photoId, carrierPresence));
-                    counter++;
-                    if (DEBUG) {
-                        stopWatch.lap("Added one result: Name: " + displayName);
+        final Cursor prefixCursor =
+                db.rawQuery(
+                        "SELECT "
+                                + PrefixColumns.CONTACT_ID
+                                + ", "
+                                + PrefixColumns.PREFIX
+                                + " FROM "
+                                + Tables.PREFIX_TABLE,
+                        null);
+        if (prefixCursor != null) {
+            try {
+                while (prefixCursor.moveToNext()) {
+                    if (prefixCursor.isNull(0) || prefixCursor.isNull(1)) {
+                        continue;
                     }
+                    builder.addPrefix(prefixCursor.getLong(0), prefixCursor.getString(1));
                 }
+            } finally {
+                prefixCursor.close();
             }
+        }
+        if (DEBUG) {
+            stopWatch.lap("Loaded prefixes");
+        }
 
-            if (DEBUG) {
-                stopWatch.stopAndLog(TAG + "Finished loading cursor", 0);
-            }
-        } finally {
-            cursor.close();
+        final SmartDialIndex index = builder.build();
+        if (DEBUG) {
+            stopWatch.stopAndLog(TAG + "Finished building smart dial index", 0);
         }
-        return result;
+        LogUtil.i(
+                "DialerDatabaseHelper.loadSmartDialIndex",
+                "%d rows, %d contacts, %d prefixes, %d nodes",
+                index.getRowCount(),
+                index.getContactCount(),
+                index.getPrefixCount(),
+                index.getNodeCount());
+        return index;
     }
 
     public interface Tables {
@@ -1149,7 +1472,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      * Gets the sorting order for the smartdial table. This computes a SQL "ORDER BY" argument by
      * composing contact status and recent contact details together.
      */
-    private interface SmartDialSortingOrder {
+    interface SmartDialSortingOrder {
 
         /**
          * Current contacts - those contacted within the last 3 days (in milliseconds)
@@ -1307,4 +1630,117 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             return false;
         }
     }
+
+    /**
+     * A row of {@link Tables#SMARTDIAL_TABLE}, used to compare the stored rows of a contact with the
+     * rows returned by {@link PhoneQuery}.
+     */
+    static final class PhoneRow {
+
+        long dataId;
+        String number;
+        long contactId;
+        String lookupKey;
+        String displayName;
+        long photoId;
+        long lastTimeUsed;
+        int timesUsed;
+        int starred;
+        int isSuperPrimary;
+        int inVisibleGroup;
+        int isPrimary;
+        int carrierPresence;
+
+        /**
+         * Returns whether the prefixes generated for {@code other} are valid for this row.
+         */
+        boolean hasSameIdentity(@Nullable PhoneRow other) {
+            return other != null
+                    && Objects.equals(number, other.number)
+                    && Objects.equals(lookupKey, other.lookupKey)
+                    && Objects.equals(displayName, other.displayName);
+        }
+
+        /**
+         * Returns whether the columns used for ranking, and not for prefixes, are the same.
+         */
+        boolean hasSameRanking(PhoneRow other) {
+            return photoId == other.photoId
+                    && lastTimeUsed == other.lastTimeUsed
+                    && timesUsed == other.timesUsed
+                    && starred == other.starred
+                    && isSuperPrimary == other.isSuperPrimary
+                    && inVisibleGroup == other.inVisibleGroup
+                    && isPrimary == other.isPrimary
+                    && carrierPresence == other.carrierPresence;
+        }
+
+        /**
+         * Binds this row to a statement compiled from {@link #SMARTDIAL_INSERT_SQL}.
+         */
+        void bindInsert(SQLiteStatement insert, long currentMillis) {
+            insert.clearBindings();
+            insert.bindLong(1, dataId);
+            insert.bindString(2, number);
+            insert.bindLong(3, contactId);
+            insert.bindString(4, lookupKey);
+            insert.bindString(5, displayName);
+            insert.bindLong(6, photoId);
+            insert.bindLong(7, lastTimeUsed);
+            insert.bindLong(8, timesUsed);
+            insert.bindLong(9, starred);
+            insert.bindLong(10, isSuperPrimary);
+            insert.bindLong(11, inVisibleGroup);
+            insert.bindLong(12, isPrimary);
+            insert.bindLong(13, carrierPresence);
+            insert.bindLong(14, currentMillis);
+        }
+    }
+
+    /**
+     * Times the phases of a smart dial update, reporting each phase to {@link Metrics} and keeping a
+     * summary for the log.
+     */
+    private static final class UpdateTimer {
+
+        private final Metrics metrics;
+        private final String eventNameTemplate;
+        private final StringBuilder summary = new StringBuilder();
+
+        @Nullable
+        private String phase;
+        private long phaseStartMillis;
+
+        UpdateTimer(Metrics metrics, String eventNameTemplate) {
+            this.metrics = metrics;
+            this.eventNameTemplate = eventNameTemplate;
+        }
+
+        /**
+         * Stops the current phase, if any, and starts timing {@code phase}.
+         */
+        void startPhase(String phase) {
+            stop();
+            this.phase = phase;
+            phaseStartMillis = SystemClock.elapsedRealtime();
+            metrics.startTimer(String.format(eventNameTemplate, phase));
+        }
+
+        void stop() {
+            if (phase == null) {
+                return;
+            }
+            metrics.stopTimer(String.format(eventNameTemplate, phase));
+            summary
+                    .append(phase)
+                    .append('=')
+                    .append(SystemClock.elapsedRealtime() - phaseStartMillis)
+                    .append("ms ");
+            phase = null;
+        }
+
+        String getSummary() {
+            return summary.toString().trim();
+        }
+    }
 }
@@ -0,0 +1,546 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory snapshot of the smart dial tables, used to answer prefix queries without
+ * going through SQLite.
+ *
+ * <p>The prefixes stored in {@link DialerDatabaseHelper.Tables#PREFIX_TABLE} are kept in a trie
+ * whose nodes live in primitive arrays. Nodes are numbered in pre-order over the sorted prefixes, so
+ * every node covers a contiguous range of the sorted prefix entries; a prefix query is therefore a
+ * walk down the trie followed by a scan of that range.
+ *
+ * <p>Rows of {@link DialerDatabaseHelper.Tables#SMARTDIAL_TABLE} are grouped by contact and ordered
+ * by the time independent part of {@link DialerDatabaseHelper.SmartDialSortingOrder}, so that the
+ * full ordering can be reproduced at query time by sorting a primitive {@code long[]}.
+ */
+public final class SmartDialIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    static final int NO_NODE = -1;
+
+    private static final int ROOT = 0;
+
+    // Trie nodes in pre-order. Node 0 is the root and every node covers the sorted prefix entries
+    // [nodeEntryStart, nodeEntryEnd).
+    private final char[] nodeLabel;
+    private final int[] nodeFirstChild;
+    private final int[] nodeNextSibling;
+    private final int[] nodeEntryStart;
+    private final int[] nodeEntryEnd;
+
+    // Sorted prefix entries, each pointing at a contact.
+    private final int[] entryContact;
+
+    // Contact c owns the rows listed in contactRows[contactRowStart[c]:contactRowStart[c + 1]].
+    private final int[] contactRowStart;
+    private final int[] contactRows;
+    private final int[] rowContact;
+
+    // Rows, numbered by their rank in the time independent part of the smart dial sort order.
+    private final long[] rowDataId;
+    private final long[] rowContactId;
+    private final long[] rowPhotoId;
+    private final long[] rowLastTimeUsed;
+    private final int[] rowCarrierPresence;
+    private final byte[] rowStatusRank;
+    private final String[] rowDisplayName;
+    private final String[] rowNumber;
+    private final String[] rowLookupKey;
+
+    // Dialpad keys of the display name and number of each row, computed once so that matching a row
+    // against a query does not allocate. See SmartDialNameMatcher#toNameKeys and #toNumberKeys.
+    private final char[][] rowNameKeys;
+    private final char[][] rowNumberKeys;
+
+    private SmartDialIndex(Builder builder, Row[] rows) {
+        this.nodeLabel = Arrays.copyOf(builder.nodeLabel, builder.nodeCount);
+        this.nodeFirstChild = Arrays.copyOf(builder.nodeFirstChild, builder.nodeCount);
+        this.nodeNextSibling = Arrays.copyOf(builder.nodeNextSibling, builder.nodeCount);
+        this.nodeEntryStart = Arrays.copyOf(builder.nodeEntryStart, builder.nodeCount);
+        this.nodeEntryEnd = Arrays.copyOf(builder.nodeEntryEnd, builder.nodeCount);
+        this.entryContact = builder.entryContact;
+        this.contactRowStart = builder.contactRowStart;
+        this.contactRows = builder.contactRows;
+        this.rowContact = builder.rowContact;
+
+        int rowCount = rows.length;
+        rowDataId = new long[rowCount];
+        rowContactId = new long[rowCount];
+        rowPhotoId = new long[rowCount];
+        rowLastTimeUsed = new long[rowCount];
+        rowCarrierPresence = new int[rowCount];
+        rowStatusRank = new byte[rowCount];
+        rowDisplayName = new String[rowCount];
+        rowNumber = new String[rowCount];
+        rowLookupKey = new String[rowCount];
+        rowNameKeys = new char[rowCount][];
+        rowNumberKeys = new char[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            Row row = rows[i];
+            rowDataId[i] = row.dataId;
+            rowContactId[i] = row.contactId;
+            rowPhotoId[i] = row.photoId;
+            rowLastTimeUsed[i] = row.lastTimeUsed;
+            rowCarrierPresence[i] = row.carrierPresence;
+            rowStatusRank[i] = (byte) ((row.starred ? 0 : 2) + (row.superPrimary ? 0 : 1));
+            rowDisplayName[i] = row.displayName;
+            rowNumber[i] = row.number;
+            rowLookupKey[i] = row.lookupKey;
+            rowNameKeys[i] = row.nameKeys;
+            rowNumberKeys[i] = row.numberKeys;
+        }
+    }
+
+    /**
+     * Returns the rows of all contacts having a prefix that starts with {@code query}, ordered the
+     * same way as {@link DialerDatabaseHelper.SmartDialSortingOrder#SORT_ORDER}.
+     *
+     * @param query         The prefix of a contact's dialpad index.
+     * @param currentMillis The current time, used to rank recently contacted rows higher.
+     * @return Indices of the matching rows, to be used with the row accessors of this class.
+     */
+    public int[] query(String query, long currentMillis) {
+        int node = findNode(query);
+        if (node == NO_NODE) {
+            return EMPTY;
+        }
+
+        boolean[] seenContacts = new boolean[getContactCount()];
+        int[] contacts =
+                new int[Math.min(nodeEntryEnd[node] - nodeEntryStart[node], seenContacts.length)];
+        int contactCount = 0;
+        for (int entry = nodeEntryStart[node]; entry < nodeEntryEnd[node]; entry++) {
+            int contact = entryContact[entry];
+            if (!seenContacts[contact]) {
+                seenContacts[contact] = true;
+                contacts[contactCount++] = contact;
+            }
+        }
+        return sortRows(contacts, contactCount, currentMillis);
+    }
+
+    /**
+     * Returns all rows of the given contacts in smart dial order. Row ids already follow the time
+     * independent part of the order, so each row is encoded as {@code (group << 32) | row} where the
+     * group is the starred/super primary/data usage rank, and sorted as a primitive.
+     */
+    private int[] sortRows(int[] contacts, int contactCount, long currentMillis) {
+        int rowCount = 0;
+        for (int i = 0; i < contactCount; i++) {
+            rowCount += contactRowStart[contacts[i] + 1] - contactRowStart[contacts[i]];
+        }
+        long[] keys = new long[rowCount];
+        int k = 0;
+        for (int i = 0; i < contactCount; i++) {
+            int contact = contacts[i];
+            for (int j = contactRowStart[contact]; j < contactRowStart[contact + 1]; j++) {
+                int row = contactRows[j];
+                long group = rowStatusRank[row] * 3L + usageRank(rowLastTimeUsed[row], currentMillis);
+                keys[k++] = (group << 32) | row;
+            }
+        }
+        Arrays.sort(keys);
+        int[] result = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first time after {@code currentMillis} at which one of {@code rows} moves to
+     * another usage rank, until which the order returned by {@link #query} for them holds.
+     */
+    long getOrderExpiryMillis(int[] rows, long currentMillis) {
+        long expiryMillis = Long.MAX_VALUE;
+        for (int row : rows) {
+            long currentUntilMillis =
+                    rowLastTimeUsed[row]
+                            + DialerDatabaseHelper.SmartDialSortingOrder.LAST_TIME_USED_CURRENT_MS;
+            long recentUntilMillis =
+                    rowLastTimeUsed[row]
+                            + DialerDatabaseHelper.SmartDialSortingOrder.LAST_TIME_USED_RECENT_MS;
+            if (currentUntilMillis > currentMillis) {
+                expiryMillis = Math.min(expiryMillis, currentUntilMillis);
+            } else if (recentUntilMillis > currentMillis) {
+                expiryMillis = Math.min(expiryMillis, recentUntilMillis);
+            }
+        }
+        return expiryMillis;
+    }
+
+    /**
+     * Mirrors {@link DialerDatabaseHelper.SmartDialSortingOrder#SORT_BY_DATA_USAGE}.
+     */
+    private static int usageRank(long lastTimeUsed, long currentMillis) {
+        long timeSinceLastUsed = currentMillis - lastTimeUsed;
+        if (timeSinceLastUsed < DialerDatabaseHelper.SmartDialSortingOrder.LAST_TIME_USED_CURRENT_MS) {
+            return 0;
+        }
+        if (timeSinceLastUsed < DialerDatabaseHelper.SmartDialSortingOrder.LAST_TIME_USED_RECENT_MS) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Returns the trie node for {@code query}, or {@link #NO_NODE} if no prefix starts with it.
+     */
+    int findNode(String query) {
+        int node = ROOT;
+        for (int i = 0; i < query.length() && node != NO_NODE; i++) {
+            node = findChild(node, query.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Returns the child of {@code node} labeled {@code ch}, or {@link #NO_NODE} if there is none.
+     */
+    int findChild(int node, char ch) {
+        ch = Character.toLowerCase(ch);
+        int child = nodeFirstChild[node];
+        while (child != NO_NODE && nodeLabel[child] < ch) {
+            child = nodeNextSibling[child];
+        }
+        return child != NO_NODE && nodeLabel[child] == ch ? child : NO_NODE;
+    }
+
+    int getEntryStart(int node) {
+        return nodeEntryStart[node];
+    }
+
+    int getEntryEnd(int node) {
+        return nodeEntryEnd[node];
+    }
+
+    int getEntryContact(int entry) {
+        return entryContact[entry];
+    }
+
+    int getRowContact(int row) {
+        return rowContact[row];
+    }
+
+    public int getRowCount() {
+        return rowDataId.length;
+    }
+
+    public int getContactCount() {
+        return contactRowStart.length - 1;
+    }
+
+    public int getPrefixCount() {
+        return entryContact.length;
+    }
+
+    public int getNodeCount() {
+        return nodeLabel.length;
+    }
+
+    public long getDataId(int row) {
+        return rowDataId[row];
+    }
+
+    public long getContactId(int row) {
+        return rowContactId[row];
+    }
+
+    public long getPhotoId(int row) {
+        return rowPhotoId[row];
+    }
+
+    public int getCarrierPresence(int row) {
+        return rowCarrierPresence[row];
+    }
+
+    public String getDisplayName(int row) {
+        return rowDisplayName[row];
+    }
+
+    public String getNumber(int row) {
+        return rowNumber[row];
+    }
+
+    public String getLookupKey(int row) {
+        return rowLookupKey[row];
+    }
+
+    /**
+     * Returns the dialpad keys of the display name of a row, for {@link
+     * com.fissy.dialer.smartdial.util.SmartDialNameMatcher#matchesNameKeys}.
+     */
+    public char[] getNameKeys(int row) {
+        return rowNameKeys[row];
+    }
+
+    /**
+     * Returns the dialpad keys of the number of a row, for {@link
+     * com.fissy.dialer.smartdial.util.SmartDialNameMatcher#matchesNumberKeys}.
+     */
+    public char[] getNumberKeys(int row) {
+        return rowNumberKeys[row];
+    }
+
+    /**
+     * Collects rows of the smart dial table and prefixes of the prefix table, and builds a {@link
+     * SmartDialIndex} out of them. Not thread safe.
+     */
+    public static final class Builder {
+
+        private final List<Row> rows = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<Long> prefixContactIds = new ArrayList<>();
+
+        private int nodeCount;
+        private char[] nodeLabel;
+        private int[] nodeFirstChild;
+        private int[] nodeNextSibling;
+        private int[] nodeEntryStart;
+        private int[] nodeEntryEnd;
+        private int[] lastChild;
+        private int[] entryContact;
+        private int[] contactRowStart;
+        private int[] contactRows;
+        private int[] rowContact;
+
+        /**
+         * Adds a row of {@link DialerDatabaseHelper.Tables#SMARTDIAL_TABLE}, along with the dialpad
+         * keys of its display name and number.
+         */
+        public Builder addRow(
+                long dataId,
+                long contactId,
+                String displayName,
+                char[] nameKeys,
+                String number,
+                char[] numberKeys,
+                String lookupKey,
+                long photoId,
+                int carrierPresence,
+                boolean starred,
+                boolean superPrimary,
+                long lastTimeUsed,
+                int timesUsed,
+                boolean inVisibleGroup,
+                boolean primary) {
+            Row row = new Row();
+            row.dataId = dataId;
+            row.contactId = contactId;
+            row.displayName = displayName;
+            row.nameKeys = nameKeys;
+            row.number = number;
+            row.numberKeys = numberKeys;
+            row.lookupKey = lookupKey;
+            row.photoId = photoId;
+            row.carrierPresence = carrierPresence;
+            row.starred = starred;
+            row.superPrimary = superPrimary;
+            row.lastTimeUsed = lastTimeUsed;
+            row.timesUsed = timesUsed;
+            row.inVisibleGroup = inVisibleGroup;
+            row.primary = primary;
+            rows.add(row);
+            return this;
+        }
+
+        /**
+         * Adds a row of {@link DialerDatabaseHelper.Tables#PREFIX_TABLE}. Prefixes are matched case
+         * insensitively, like the {@code COLLATE NOCASE} prefix column.
+         */
+        public Builder addPrefix(long contactId, String prefix) {
+            prefixes.add(prefix.toLowerCase());
+            prefixContactIds.add(contactId);
+            return this;
+        }
+
+        public SmartDialIndex build() {
+            Row[] sortedRows = rows.toArray(new Row[0]);
+            Arrays.sort(sortedRows, ROW_ORDER);
+
+            // Group rows by contact. Contacts are numbered in order of their best ranked row, and
+            // rows keep their rank order inside a contact.
+            Map<Long, Integer> contactIndices = new HashMap<>();
+            List<Integer> contactOfRow = new ArrayList<>(sortedRows.length);
+            List<Integer> rowsPerContact = new ArrayList<>();
+            for (Row row : sortedRows) {
+                Integer contact = contactIndices.get(row.contactId);
+                if (contact == null) {
+                    contact = rowsPerContact.size();
+                    contactIndices.put(row.contactId, contact);
+                    rowsPerContact.add(0);
+                }
+                rowsPerContact.set(contact, rowsPerContact.get(contact) + 1);
+                contactOfRow.add(contact);
+            }
+            int contactCount = rowsPerContact.size();
+            contactRowStart = new int[contactCount + 1];
+            for (int contact = 0; contact < contactCount; contact++) {
+                contactRowStart[contact + 1] = contactRowStart[contact] + rowsPerContact.get(contact);
+            }
+            contactRows = new int[sortedRows.length];
+            rowContact = new int[sortedRows.length];
+            int[] next = Arrays.copyOf(contactRowStart, contactCount);
+            for (int row = 0; row < sortedRows.length; row++) {
+                rowContact[row] = contactOfRow.get(row);
+                contactRows[next[rowContact[row]]++] = row;
+            }
+
+            buildTrie(contactIndices);
+            return new SmartDialIndex(this, sortedRows);
+        }
+
+        private void buildTrie(Map<Long, Integer> contactIndices) {
+            Integer[] sortedEntries = new Integer[prefixes.size()];
+            for (int i = 0; i < sortedEntries.length; i++) {
+                sortedEntries[i] = i;
+            }
+            Arrays.sort(sortedEntries, Comparator.comparing(prefixes::get));
+
+            nodeCount = 0;
+            nodeLabel = new char[16];
+            nodeFirstChild = new int[16];
+            nodeNextSibling = new int[16];
+            nodeEntryStart = new int[16];
+            nodeEntryEnd = new int[16];
+            lastChild = new int[16];
+            int root = newNode((char) 0, 0);
+
+            int[] entries = new int[sortedEntries.length];
+            int entryCount = 0;
+            // path[depth] is the node of the previous prefix at that depth.
+            int[] path = new int[16];
+            path[0] = root;
+            String previous = "";
+            for (int sorted : sortedEntries) {
+                Integer contact = contactIndices.get(prefixContactIds.get(sorted));
+                if (contact == null) {
+                    // The prefix belongs to a contact without smart dial rows, it can never be shown.
+                    continue;
+                }
+                String prefix = prefixes.get(sorted);
+                int entry = entryCount++;
+                entries[entry] = contact;
+
+                int common = 0;
+                int max = Math.min(previous.length(), prefix.length());
+                while (common < max && previous.charAt(common) == prefix.charAt(common)) {
+                    common++;
+                }
+                if (path.length <= prefix.length()) {
+                    path = Arrays.copyOf(path, prefix.length() * 2);
+                }
+                for (int depth = common; depth < prefix.length(); depth++) {
+                    int parent = path[depth];
+                    int node = newNode(prefix.charAt(depth), entry);
+                    if (lastChild[parent] == NO_NODE) {
+                        nodeFirstChild[parent] = node;
+                    } else {
+                        nodeNextSibling[lastChild[parent]] = node;
+                    }
+                    lastChild[parent] = node;
+                    path[depth + 1] = node;
+                }
+                for (int depth = 0; depth <= prefix.length(); depth++) {
+                    nodeEntryEnd[path[depth]] = entry + 1;
+                }
+                previous = prefix;
+            }
+            entryContact = Arrays.copyOf(entries, entryCount);
+            lastChild = null;
+        }
+
+        private int newNode(char label, int entryStart) {
+            if (nodeCount == nodeLabel.length) {
+                int capacity = nodeCount * 2;
+                nodeLabel = Arrays.copyOf(nodeLabel, capacity);
+                nodeFirstChild = Arrays.copyOf(nodeFirstChild, capacity);
+                nodeNextSibling = Arrays.copyOf(nodeNextSibling, capacity);
+                nodeEntryStart = Arrays.copyOf(nodeEntryStart, capacity);
+                nodeEntryEnd = Arrays.copyOf(nodeEntryEnd, capacity);
+                lastChild = Arrays.copyOf(lastChild, capacity);
+            }
+            int node = nodeCount++;
+            nodeLabel[node] = label;
+            nodeFirstChild[node] = NO_NODE;
+            nodeNextSibling[node] = NO_NODE;
+            nodeEntryStart[node] = entryStart;
+            nodeEntryEnd[node] = entryStart;
+            lastChild[node] = NO_NODE;
+            return node;
+        }
+
+        /**
+         * Time independent tail of {@link DialerDatabaseHelper.SmartDialSortingOrder#SORT_ORDER}.
+         */
+        private static final Comparator<Row> ROW_ORDER =
+                (a, b) -> {
+                    int result = Integer.compare(b.timesUsed, a.timesUsed);
+                    if (result != 0) {
+                        return result;
+                    }
+                    result = Boolean.compare(b.inVisibleGroup, a.inVisibleGroup);
+                    if (result != 0) {
+                        return result;
+                    }
+                    result = compareNullable(a.displayName, b.displayName);
+                    if (result != 0) {
+                        return result;
+                    }
+                    result = Long.compare(a.contactId, b.contactId);
+                    if (result != 0) {
+                        return result;
+                    }
+                    return Boolean.compare(b.primary, a.primary);
+                };
+
+        private static int compareNullable(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+    }
+
+    private static final class Row {
+        long dataId;
+        long contactId;
+        String displayName;
+        char[] nameKeys;
+        String number;
+        char[] numberKeys;
+        String lookupKey;
+        long photoId;
+        int carrierPresence;
+        boolean starred;
+        boolean superPrimary;
+        long lastTimeUsed;
+        int timesUsed;
+        boolean inVisibleGroup;
+        boolean primary;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the candidate rows of the previous smart dial queries so that typing on the dialpad only
+ * narrows down the last result instead of querying the whole {@link SmartDialIndex} again.
+ *
+ * <p>The session keeps one frame per character of the current query. Appending a digit filters the
+ * rows of the last frame by the contacts of the trie node of the new query, which costs time
+ * proportional to the size of the result rather than the size of the contact book. Removing a digit
+ * pops back to the cached frame of the shorter query. Any other edit drops the frames that are no
+ * longer a prefix of the query. The session starts over when the index is rebuilt, and when time
+ * has moved a row to another usage rank, as the order of the cached rows depends on it.
+ */
+public final class SmartDialSearchSession {
+
+    private final List<Frame> frames = new ArrayList<>();
+
+    private SmartDialIndex index;
+
+    // The frames keep their order from framesMillis (inclusive) to framesExpiryMillis (exclusive).
+    private long framesMillis;
+    private long framesExpiryMillis;
+
+    // contactMarks[c] == mark means contact c is part of the trie node being narrowed to.
+    private int[] contactMarks;
+    private int mark;
+
+    /**
+     * Returns the candidate rows for {@code query} in smart dial order, reusing the rows of earlier
+     * queries of this session where possible.
+     *
+     * @param index         The current snapshot of the smart dial tables.
+     * @param query         The prefix of a contact's dialpad index.
+     * @param currentMillis The current time, used to rank recently contacted rows higher.
+     */
+    public synchronized int[] getCandidates(SmartDialIndex index, String query, long currentMillis) {
+        if (this.index != index) {
+            this.index = index;
+            frames.clear();
+            contactMarks = new int[index.getContactCount()];
+            mark = 0;
+        }
+
+        if (currentMillis < framesMillis || currentMillis >= framesExpiryMillis) {
+            frames.clear();
+        }
+
+        while (!frames.isEmpty() && !query.startsWith(frames.get(frames.size() - 1).query)) {
+            frames.remove(frames.size() - 1);
+        }
+
+        if (frames.isEmpty()) {
+            // Start from the first character, so that backspacing can fall back to shorter queries.
+            String first = query.isEmpty() ? query : query.substring(0, 1);
+            int node = index.findNode(first);
+            int[] rows = index.query(first, currentMillis);
+            frames.add(new Frame(first, node, rows));
+            // The rows of the later frames are a subset of these rows.
+            framesMillis = currentMillis;
+            framesExpiryMillis = index.getOrderExpiryMillis(rows, currentMillis);
+        }
+
+        Frame frame = frames.get(frames.size() - 1);
+        for (int i = frame.query.length(); i < query.length(); i++) {
+            int node =
+                    frame.node == SmartDialIndex.NO_NODE
+                            ? SmartDialIndex.NO_NODE
+                            : index.findChild(frame.node, query.charAt(i));
+            frame = new Frame(query.substring(0, i + 1), node, narrow(frame.rows, node));
+            frames.add(frame);
+        }
+        return frame.rows;
+    }
+
+    /**
+     * Drops all cached frames, e.g. when the dialpad is cleared.
+     */
+    public synchronized void reset() {
+        frames.clear();
+        index = null;
+        contactMarks = null;
+    }
+
+    /**
+     * Keeps the rows of {@code parentRows} whose contact has a prefix under {@code node}. The order
+     * of the parent rows is preserved, so no sorting is needed.
+     */
+    private int[] narrow(int[] parentRows, int node) {
+        if (node == SmartDialIndex.NO_NODE || parentRows.length == 0) {
+            return new int[0];
+        }
+
+        if (++mark == 0) {
+            Arrays.fill(contactMarks, 0);
+            mark = 1;
+        }
+        for (int entry = index.getEntryStart(node); entry < index.getEntryEnd(node); entry++) {
+            contactMarks[index.getEntryContact(entry)] = mark;
+        }
+
+        int[] rows = new int[parentRows.length];
+        int count = 0;
+        for (int row : parentRows) {
+            if (contactMarks[index.getRowContact(row)] == mark) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static final class Frame {
+        final String query;
+        final int node;
+        final int[] rows;
+
+        Frame(String query, int node, int[] rows) {
+            this.query = query;
+            this.node = node;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.database.DialerDatabaseHelper.PhoneRow;
+import com.fissy.dialer.database.DialerDatabaseHelper.Tables;
+import com.fissy.dialer.smartdial.util.SmartDialPrefix;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rebuilds the smart dial tables from a full {@link DialerDatabaseHelper.PhoneQuery} cursor.
+ *
+ * <p>Rows are read on the calling thread and handed out in chunks of {@link #CHUNK_SIZE} to a pool
+ * of worker threads, which compute the number and name prefixes. The calling thread is the only
+ * writer: it takes the computed chunks back in order and inserts them with compiled statements in a
+ * single transaction. The rows go into new tables next to the current ones, which {@link
+ * #swapTables} then replaces in one transaction, so readers never see a half built table.
+ */
+final class SmartDialTableRebuilder {
+
+    static final String SMARTDIAL_TABLE_NEW = Tables.SMARTDIAL_TABLE + "_new";
+    static final String PREFIX_TABLE_NEW = Tables.PREFIX_TABLE + "_new";
+
+    /**
+     * Number of phone rows whose prefixes are computed by one task.
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     * Maximum number of worker threads. One core is left for the writer.
+     */
+    private static final int MAX_WORKERS = 4;
+
+    /**
+     * Number of chunks per worker that may be computed ahead of the writer, bounding the memory held
+     * by computed but not yet written chunks.
+     */
+    private static final int CHUNKS_IN_FLIGHT_PER_WORKER = 2;
+
+    private final Context context;
+    private final DialerDatabaseHelper databaseHelper;
+
+    SmartDialTableRebuilder(Context context, DialerDatabaseHelper databaseHelper) {
+        this.context = context;
+        this.databaseHelper = databaseHelper;
+    }
+
+    /**
+     * Fills {@link #SMARTDIAL_TABLE_NEW} and {@link #PREFIX_TABLE_NEW} with the rows of {@code
+     * phoneCursor} and their prefixes.
+     *
+     * @return The number of smart dial rows written.
+     */
+    @WorkerThread
+    int buildTables(SQLiteDatabase db, Cursor phoneCursor, long currentMillis) {
+        int workers =
+                Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        // A dedicated pool: the rebuild itself runs on the background executor, so waiting on tasks
+        // queued there could starve it.
+        ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        workers,
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "SmartDialTableRebuilder");
+                            // Java thread priority 4 corresponds to Process.THREAD_PRIORITY_BACKGROUND (10)
+                            thread.setPriority(4);
+                            return thread;
+                        });
+
+        // The country code set of SmartDialPrefix is initialized lazily and without
+        // synchronization, make sure that happens before the workers start.
+        SmartDialPrefix.parseToNumberTokens(context, "+1");
+
+        int rows = 0;
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + PREFIX_TABLE_NEW);
+            db.execSQL("DROP TABLE IF EXISTS " + SMARTDIAL_TABLE_NEW);
+            DialerDatabaseHelper.createSmartDialTable(db, SMARTDIAL_TABLE_NEW);
+            DialerDatabaseHelper.createPrefixTable(db, PREFIX_TABLE_NEW);
+
+            Writer writer =
+                    new Writer(
+                            db.compileStatement(DialerDatabaseHelper.smartDialInsertSql(SMARTDIAL_TABLE_NEW)),
+                            db.compileStatement(DialerDatabaseHelper.prefixInsertSql(PREFIX_TABLE_NEW)),
+                            currentMillis);
+            ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+            int maxInFlight = workers * CHUNKS_IN_FLIGHT_PER_WORKER;
+
+            List<PhoneRow> chunkRows = new ArrayList<>(CHUNK_SIZE);
+            phoneCursor.moveToPosition(-1);
+            while (phoneCursor.moveToNext()) {
+                PhoneRow row = databaseHelper.readPhoneRow(phoneCursor);
+                if (row == null) {
+                    continue;
+                }
+                chunkRows.add(row);
+                if (chunkRows.size() == CHUNK_SIZE) {
+                    inFlight.add(executor.submit(newChunkTask(chunkRows)));
+                    chunkRows = new ArrayList<>(CHUNK_SIZE);
+                    if (inFlight.size() >= maxInFlight) {
+                        rows += writer.write(getChunk(inFlight.remove()));
+                    }
+                }
+            }
+            if (!chunkRows.isEmpty()) {
+                inFlight.add(executor.submit(newChunkTask(chunkRows)));
+            }
+            while (!inFlight.isEmpty()) {
+                rows += writer.write(getChunk(inFlight.remove()));
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            executor.shutdownNow();
+        }
+        LogUtil.i(
+                "SmartDialTableRebuilder.buildTables", "wrote %d rows using %d workers", rows, workers);
+        return rows;
+    }
+
+    /**
+     * Replaces the smart dial tables with the ones filled by {@link #buildTables}, and creates the
+     * indexes on them.
+     */
+    @WorkerThread
+    void swapTables(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.PREFIX_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.SMARTDIAL_TABLE);
+            db.execSQL("ALTER TABLE " + SMARTDIAL_TABLE_NEW + " RENAME TO " + Tables.SMARTDIAL_TABLE);
+            db.execSQL("ALTER TABLE " + PREFIX_TABLE_NEW + " RENAME TO " + Tables.PREFIX_TABLE);
+            DialerDatabaseHelper.createSmartDialIndexes(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private Callable<Chunk> newChunkTask(List<PhoneRow> rows) {
+        return () -> computePrefixes(rows);
+    }
+
+    /**
+     * Computes the prefixes of a chunk of rows. Runs on a worker thread.
+     */
+    private Chunk computePrefixes(List<PhoneRow> rows) {
+        Chunk chunk = new Chunk(rows);
+        Map<Long, Set<String>> namesPerContact = new HashMap<>();
+        for (PhoneRow row : rows) {
+            chunk.numberPrefixes.add(SmartDialPrefix.parseToNumberTokens(context, row.number));
+
+            Set<String> names = namesPerContact.get(row.contactId);
+            if (names == null) {
+                names = new HashSet<>();
+                namesPerContact.put(row.contactId, names);
+            }
+            if (names.add(row.displayName)) {
+                chunk.nameRows.add(row);
+                chunk.namePrefixes.add(SmartDialPrefix.generateNamePrefixes(context, row.displayName));
+            }
+        }
+        return chunk;
+    }
+
+    private static Chunk getChunk(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while rebuilding smart dial tables", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to compute smart dial prefixes", e.getCause());
+        }
+    }
+
+    /**
+     * Rows of a chunk with the prefixes computed for them.
+     */
+    private static final class Chunk {
+        final List<PhoneRow> rows;
+        /**
+         * Number prefixes of each row of {@link #rows}.
+         */
+        final List<ArrayList<String>> numberPrefixes;
+        /**
+         * The first row of every distinct contact and display name pair in the chunk.
+         */
+        final List<PhoneRow> nameRows = new ArrayList<>();
+        /**
+         * Name prefixes of each row of {@link #nameRows}.
+         */
+        final List<ArrayList<String>> namePrefixes = new ArrayList<>();
+
+        Chunk(List<PhoneRow> rows) {
+            this.rows = rows;
+            this.numberPrefixes = new ArrayList<>(rows.size());
+        }
+    }
+
+    /**
+     * Inserts computed chunks. Name prefixes are only written once per contact and display name, as
+     * rows of the same contact may be spread over several chunks.
+     */
+    private static final class Writer {
+        private final SQLiteStatement rowInsert;
+        private final SQLiteStatement prefixInsert;
+        private final long currentMillis;
+        private final Map<Long, Set<String>> writtenNames = new HashMap<>();
+
+        Writer(SQLiteStatement rowInsert, SQLiteStatement prefixInsert, long currentMillis) {
+            this.rowInsert = rowInsert;
+            this.prefixInsert = prefixInsert;
+            this.currentMillis = currentMillis;
+        }
+
+        int write(Chunk chunk) {
+            for (int i = 0; i < chunk.rows.size(); i++) {
+                PhoneRow row = chunk.rows.get(i);
+                row.bindInsert(rowInsert, currentMillis);
+                rowInsert.executeInsert();
+                for (String numberPrefix : chunk.numberPrefixes.get(i)) {
+                    DialerDatabaseHelper.insertPrefix(prefixInsert, row.contactId, numberPrefix);
+                }
+            }
+            for (int i = 0; i < chunk.nameRows.size(); i++) {
+                PhoneRow row = chunk.nameRows.get(i);
+                Set<String> names = writtenNames.get(row.contactId);
+                if (names == null) {
+                    names = new HashSet<>();
+                    writtenNames.put(row.contactId, names);
+                }
+                if (!names.add(row.displayName)) {
+                    continue;
+                }
+                for (String namePrefix : chunk.namePrefixes.get(i)) {
+                    DialerDatabaseHelper.insertPrefix(prefixInsert, row.contactId, namePrefix);
+                }
+            }
+            return chunk.rows.size();
+        }
+    }
+}
@@ -32,9 +32,8 @@ import com.fissy.dialer.util.DialerUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
@@ -52,19 +51,15 @@ public class LookupCache {
     private static final String TAG = LookupCache.class.getSimpleName();
 
     public static void cacheContact(Context context, ContactInfo info) {
-        File file = getFilePath(context, info.normalizedNumber);
-
-        if (file.exists()) {
-            file.delete();
+        if (info.normalizedNumber == null) {
+            return;
         }
 
-        FileOutputStream out = null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
         JsonWriter writer = null;
 
         try {
-            out = new FileOutputStream(file);
             writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
-            writer.setIndent("  ");
 
             writer.beginObject();
             if (info.name != null) {
@@ -94,11 +89,12 @@ public class LookupCache {
             // will be set to null.
 
             writer.endObject();
+            writer.flush();
+            LookupCacheStore.get(context).put(contactKey(info.normalizedNumber), out.toByteArray());
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
             DialerUtils.closeQuietly(writer);
-            DialerUtils.closeQuietly(out);
         }
     }
 
@@ -108,20 +104,21 @@ public class LookupCache {
             return null;
         }
 
-        File file = getFilePath(context, normalizedNumber);
-        if (!file.exists()) {
+        byte[] contact = LookupCacheStore.get(context).get(contactKey(normalizedNumber));
+        if (contact == null) {
             // Whatever is calling this should probably check anyway
             return null;
         }
 
         ContactInfo info = new ContactInfo();
 
-        FileInputStream in = null;
         JsonReader reader = null;
 
         try {
-            in = new FileInputStream(file);
-            reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            reader =
+                    new JsonReader(
+                            new InputStreamReader(
+                                    new ByteArrayInputStream(contact), StandardCharsets.UTF_8));
 
             reader.beginObject();
             while (reader.hasNext()) {
@@ -173,44 +170,19 @@ public class LookupCache {
             e.printStackTrace();
         } finally {
             DialerUtils.closeQuietly(reader);
-            DialerUtils.closeQuietly(in);
         }
 
         return info;
     }
 
     public static void deleteCachedContacts(Context context) {
-        File dir = new File(context.getCacheDir(), "lookup");
-        if (!dir.exists()) {
-            Log.v(TAG, "Lookup cache directory does not exist. Not clearing it.");
-            return;
-        }
-
-        if (!dir.isDirectory()) {
-            Log.e(TAG, "Path " + dir + " is not a directory");
-            return;
-        }
-
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    file.delete();
-                }
-            }
-        }
+        LookupCacheStore.get(context).clear();
     }
 
     public static void deleteCachedContact(Context context, String normalizedNumber) {
-        File f = getFilePath(context, normalizedNumber);
-        if (f.exists()) {
-            f.delete();
-        }
-
-        f = getImagePath(context, normalizedNumber);
-        if (f.exists()) {
-            f.delete();
-        }
+        LookupCacheStore store = LookupCacheStore.get(context);
+        store.remove(contactKey(normalizedNumber));
+        store.remove(imageKey(normalizedNumber));
     }
 
     public static boolean hasCachedImage(Context context, String number) {
@@ -219,8 +191,15 @@ public class LookupCache {
             return false;
         }
 
-        File file = getImagePath(context, normalizedNumber);
-        return file.exists();
+        return LookupCacheStore.get(context).contains(imageKey(normalizedNumber));
+    }
+
+    /**
+     * Returns the cached image of {@code normalizedNumber}, compressed as WEBP, or null if there is
+     * none.
+     */
+    public static byte[] getCachedImage(Context context, String normalizedNumber) {
+        return LookupCacheStore.get(context).get(imageKey(normalizedNumber));
     }
 
     public static Uri cacheImage(Context context, String normalizedNumber, Bitmap bmp) {
@@ -230,19 +209,13 @@ public class LookupCache {
             return null;
         }
 
-        File image = getImagePath(context, normalizedNumber);
-        FileOutputStream out = null;
-
-        try {
-            out = new FileOutputStream(image);
-            bmp.compress(Bitmap.CompressFormat.WEBP, 100, out);
-            return Uri.fromFile(image);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            DialerUtils.closeQuietly(out);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!bmp.compress(Bitmap.CompressFormat.WEBP, 100, out)) {
+            Log.e(TAG, "Failed to compress image");
+            return null;
         }
-        return null;
+        LookupCacheStore.get(context).put(imageKey(normalizedNumber), out.toByteArray());
+        return Uri.withAppendedPath(LookupProvider.IMAGE_CACHE_URI, Uri.encode(normalizedNumber));
     }
 
     private static String formatE164(Context context, String number) {
@@ -251,21 +224,11 @@ public class LookupCache {
         return PhoneNumberUtils.formatNumberToE164(number, countryIso);
     }
 
-    private static File getFilePath(Context context, String normalizedNumber) {
-        File dir = new File(context.getCacheDir(), "lookup");
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-
-        return new File(dir, normalizedNumber + ".json");
+    private static String contactKey(String normalizedNumber) {
+        return "contact:" + normalizedNumber;
     }
 
-    public static File getImagePath(Context context, String normalizedNumber) {
-        File dir = new File(context.getCacheDir(), "lookup");
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-
-        return new File(dir, normalizedNumber + ".webp");
+    private static String imageKey(String normalizedNumber) {
+        return "image:" + normalizedNumber;
     }
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.lookup;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.fissy.dialer.util.DialerUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A key/value store for {@link LookupCache}, kept in a single memory-mapped file.
+ *
+ * <p>Records are only ever appended to the file. Each record holds a key, a value (or none, when
+ * the key was removed), the time it was written and a checksum, so that a record which was only
+ * partly written when the process died ends the log when it is read back. An in-memory index maps
+ * each key to its latest record, in least recently used order:
+ *
+ * <ul>
+ *   <li>Entries older than {@link #TTL_MILLIS} are dropped when they are read.
+ *   <li>The least recently used entries are dropped once the live entries take more than {@link
+ *       #MAX_LIVE_BYTES}.
+ *   <li>When the file is full, the live records are copied to a new file which replaces it.
+ * </ul>
+ *
+ * <p>All methods may block on disk I/O and must not be called on the main thread.
+ */
+final class LookupCacheStore {
+
+    private static final String TAG = LookupCacheStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "lookup.store";
+
+    /**
+     * The directory holding one file per entry, which this store replaces.
+     */
+    private static final String LEGACY_DIRECTORY_NAME = "lookup";
+
+    private static final int FILE_MAGIC = 0x4c4b5550; // "LKUP"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+
+    /**
+     * Key length, value length, timestamp and CRC32 of the rest of the record.
+     */
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    private static final int TOMBSTONE = -1;
+
+    private static final int CAPACITY_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_LIVE_BYTES = CAPACITY_BYTES / 2;
+    private static final int MAX_VALUE_BYTES = 256 * 1024;
+    private static final long TTL_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static LookupCacheStore instance;
+
+    private final File file;
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Null if the file couldn't be opened, in which case nothing is cached.
+     */
+    private MappedByteBuffer buffer;
+
+    private int writePosition;
+    private int liveBytes;
+
+    private LookupCacheStore(File file) {
+        this.file = file;
+    }
+
+    static synchronized LookupCacheStore get(Context context) {
+        if (instance == null) {
+            instance = new LookupCacheStore(new File(context.getCacheDir(), FILE_NAME));
+            instance.open();
+            deleteLegacyDirectory(new File(context.getCacheDir(), LEGACY_DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    private static void deleteLegacyDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File legacyFile : files) {
+            legacyFile.delete();
+        }
+        dir.delete();
+        Log.i(TAG, "Deleted " + files.length + " files of the legacy lookup cache");
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid after the file is closed.
+            return randomAccessFile
+                    .getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, CAPACITY_BYTES);
+        } finally {
+            DialerUtils.closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * Returns the value of {@code key}, or null if there is none or it has expired.
+     */
+    synchronized byte[] get(String key) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return null;
+        }
+        byte[] value = new byte[entry.valueLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(entry.offset + entry.length - entry.valueLength);
+        view.get(value);
+        return value;
+    }
+
+    synchronized boolean contains(String key) {
+        return getEntry(key) != null;
+    }
+
+    synchronized void put(String key, byte[] value) {
+        if (value.length > MAX_VALUE_BYTES) {
+            Log.w(TAG, "Not caching " + value.length + " bytes for " + key);
+            remove(key);
+            return;
+        }
+        Entry entry = append(key, value);
+        if (entry == null) {
+            return;
+        }
+        removeFromIndex(key);
+        index.put(key, entry);
+        liveBytes += entry.length;
+        evictLeastRecentlyUsed();
+    }
+
+    synchronized void remove(String key) {
+        if (removeFromIndex(key)) {
+            // Record the removal, or the entry would come back when the file is read again.
+            append(key, null);
+        }
+    }
+
+    synchronized void clear() {
+        index.clear();
+        liveBytes = 0;
+        if (buffer != null) {
+            writePosition = FILE_HEADER_BYTES;
+            writeEndOfLog();
+        }
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            removeFromIndex(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private static boolean isExpired(Entry entry, long now) {
+        return now - entry.timestamp > TTL_MILLIS;
+    }
+
+    private boolean removeFromIndex(String key) {
+        Entry entry = index.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        liveBytes -= entry.length;
+        return true;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Iterator<Entry> iterator = index.values().iterator();
+        while (liveBytes > MAX_LIVE_BYTES && iterator.hasNext()) {
+            liveBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    private void open() {
+        try {
+            buffer = map(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to map " + file, e);
+            return;
+        }
+        if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+            buffer.putInt(0, FILE_MAGIC);
+            buffer.putInt(4, FILE_VERSION);
+            writePosition = FILE_HEADER_BYTES;
+            writeEndOfLog();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int position = FILE_HEADER_BYTES;
+        Entry entry;
+        while ((entry = readRecord(position)) != null) {
+            removeFromIndex(entry.key);
+            if (entry.valueLength != TOMBSTONE && !isExpired(entry, now)) {
+                index.put(entry.key, entry);
+                liveBytes += entry.length;
+            }
+            position += entry.length;
+        }
+        writePosition = position;
+        evictLeastRecentlyUsed();
+        Log.v(TAG, "Opened with " + index.size() + " entries, " + writePosition + " bytes used");
+    }
+
+    /**
+     * Reads the record at {@code position}, or returns null if the log ends there.
+     */
+    private Entry readRecord(int position) {
+        if (position + RECORD_HEADER_BYTES > CAPACITY_BYTES) {
+            return null;
+        }
+        int keyLength = buffer.getInt(position);
+        int valueLength = buffer.getInt(position + 4);
+        long timestamp = buffer.getLong(position + 8);
+        int checksum = buffer.getInt(position + 16);
+        int dataLength = keyLength + Math.max(valueLength, 0);
+        if (keyLength <= 0
+                || valueLength < TOMBSTONE
+                || dataLength > CAPACITY_BYTES - position - RECORD_HEADER_BYTES) {
+            return null;
+        }
+
+        byte[] data = new byte[dataLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_BYTES);
+        view.get(data);
+        if (checksum(keyLength, valueLength, timestamp, data) != checksum) {
+            Log.w(TAG, "Ignoring corrupt record at " + position);
+            return null;
+        }
+        return new Entry(
+                new String(data, 0, keyLength, StandardCharsets.UTF_8),
+                position,
+                RECORD_HEADER_BYTES + dataLength,
+                valueLength,
+                timestamp);
+    }
+
+    /**
+     * Appends a record for {@code key}, compacting the file first if it is full.
+     *
+     * @param value the value, or null to record that the key was removed
+     * @return the entry for the new record, or null if it couldn't be written
+     */
+    private Entry append(String key, byte[] value) {
+        if (buffer == null) {
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        int length = RECORD_HEADER_BYTES + keyBytes.length + Math.max(valueLength, 0);
+        if (writePosition + length > CAPACITY_BYTES) {
+            compact();
+            if (buffer == null || writePosition + length > CAPACITY_BYTES) {
+                return null;
+            }
+        }
+
+        long timestamp = System.currentTimeMillis();
+        crc.reset();
+        crc.update(header(keyBytes.length, valueLength, timestamp));
+        crc.update(keyBytes);
+        if (value != null) {
+            crc.update(value);
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(writePosition);
+        view.putInt(keyBytes.length)
+                .putInt(valueLength)
+                .putLong(timestamp)
+                .putInt((int) crc.getValue())
+                .put(keyBytes);
+        if (value != null) {
+            view.put(value);
+        }
+        Entry entry = new Entry(key, writePosition, length, valueLength, timestamp);
+        writePosition += length;
+        writeEndOfLog();
+        return entry;
+    }
+
+    /**
+     * Marks the end of the log, so that older records after it aren't read back.
+     */
+    private void writeEndOfLog() {
+        if (writePosition + 4 <= CAPACITY_BYTES) {
+            buffer.putInt(writePosition, 0);
+        }
+    }
+
+    private int checksum(int keyLength, int valueLength, long timestamp, byte[] data) {
+        crc.reset();
+        crc.update(header(keyLength, valueLength, timestamp));
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] header(int keyLength, int valueLength, long timestamp) {
+        return ByteBuffer.allocate(16)
+                .putInt(keyLength)
+                .putInt(valueLength)
+                .putLong(timestamp)
+                .array();
+    }
+
+    /**
+     * Copies the live records, least recently used first, to a new file which replaces the
+     * current one.
+     */
+    private void compact() {
+        File compactedFile = new File(file.getPath() + ".tmp");
+        MappedByteBuffer compacted;
+        try {
+            compacted = map(compactedFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to map " + compactedFile, e);
+            compactedFile.delete();
+            return;
+        }
+        compacted.putInt(0, FILE_MAGIC);
+        compacted.putInt(4, FILE_VERSION);
+
+        long now = System.currentTimeMillis();
+        List<Entry> liveEntries = new ArrayList<>(index.size());
+        ByteBuffer source = buffer.duplicate();
+        ByteBuffer destination = compacted.duplicate();
+        destination.position(FILE_HEADER_BYTES);
+        for (Entry entry : index.values()) {
+            if (isExpired(entry, now)) {
+                continue;
+            }
+            source.limit(entry.offset + entry.length).position(entry.offset);
+            liveEntries.add(entry.movedTo(destination.position()));
+            destination.put(source);
+        }
+        compacted.force();
+
+        if (!compactedFile.renameTo(file)) {
+            // Start over in the current file instead, so that there is room for new records.
+            Log.e(TAG, "Failed to replace " + file);
+            compactedFile.delete();
+            clear();
+            return;
+        }
+        int previousWritePosition = writePosition;
+        buffer = compacted;
+        writePosition = destination.position();
+        writeEndOfLog();
+        index.clear();
+        liveBytes = 0;
+        for (Entry entry : liveEntries) {
+            index.put(entry.key, entry);
+            liveBytes += entry.length;
+        }
+        Log.v(TAG, "Compacted " + previousWritePosition + " bytes to " + writePosition);
+    }
+
+    /**
+     * The location of the latest record of a key.
+     */
+    private static final class Entry {
+        final String key;
+        final int offset;
+        final int length;
+        final int valueLength;
+        final long timestamp;
+
+        Entry(String key, int offset, int length, int valueLength, long timestamp) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.valueLength = valueLength;
+            this.timestamp = timestamp;
+        }
+
+        Entry movedTo(int newOffset) {
+            return new Entry(key, newOffset, length, valueLength, timestamp);
+        }
+    }
+}
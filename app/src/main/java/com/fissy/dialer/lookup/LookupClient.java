@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.lookup;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Asynchronous HTTP client for number lookups.
+ *
+ * <p>Requests are identified by a key, such as the number or query being looked up, rather than by
+ * their URL, which may contain noise. The client:
+ *
+ * <ul>
+ *   <li>Shares a request which is still in flight with every caller asking for the same key.
+ *   <li>Cancels the previous request of a tag, such as the dialpad query, when a request with a
+ *       different key is made for that tag, so results of stale queries don't arrive out of order.
+ *   <li>Runs at most {@link #MAX_CONCURRENT_REQUESTS} requests at a time.
+ *   <li>Remembers keys which had no results for {@link #NEGATIVE_RESULT_TTL_MILLIS}.
+ * </ul>
+ */
+public final class LookupClient {
+
+    private static final String TAG = LookupClient.class.getSimpleName();
+
+    private static final int MAX_CONCURRENT_REQUESTS = 3;
+    private static final int MAX_NEGATIVE_RESULTS = 100;
+    private static final long NEGATIVE_RESULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static LookupClient instance;
+
+    private final ListeningExecutorService executor;
+    private final Map<String, ListenableFuture<?>> requestsInFlight = new HashMap<>();
+    private final Map<String, String> latestKeyByTag = new HashMap<>();
+
+    /**
+     * The time, according to {@link SystemClock#elapsedRealtime()}, each key with no results was
+     * looked up.
+     */
+    private final LruCache<String, Long> negativeResults = new LruCache<>(MAX_NEGATIVE_RESULTS);
+
+    @VisibleForTesting
+    LookupClient(ListeningExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public static synchronized LookupClient get() {
+        if (instance == null) {
+            ExecutorService executor =
+                    Executors.newFixedThreadPool(
+                            MAX_CONCURRENT_REQUESTS,
+                            runnable -> {
+                                Thread thread = new Thread(runnable, "LookupClient");
+                                // Java thread priority 4 corresponds to Process.THREAD_PRIORITY_BACKGROUND (10)
+                                thread.setPriority(4);
+                                return thread;
+                            });
+            instance = new LookupClient(MoreExecutors.listeningDecorator(executor));
+        }
+        return instance;
+    }
+
+    /**
+     * Fetches {@code url} and parses the response.
+     *
+     * @param tag the kind of lookup, of which only the latest request is kept; a request made with
+     *     a different key for the same tag cancels this one
+     * @param key identifies what is looked up; requests for the same key share a response
+     * @param parser parses the response, returning null if it holds no results
+     * @return a future of the parsed response, or of null if there are no results; it fails if
+     *     the request fails and is cancelled if the request became stale
+     */
+    public synchronized <T> ListenableFuture<T> fetch(
+            String tag,
+            String key,
+            String url,
+            @Nullable Map<String, String> headers,
+            ResponseParser<T> parser) {
+        String previousKey = latestKeyByTag.put(tag, key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            ListenableFuture<?> staleRequest = requestsInFlight.get(previousKey);
+            if (staleRequest != null) {
+                Log.v(TAG, "Cancelling stale request for " + previousKey);
+                staleRequest.cancel(true);
+            }
+        }
+
+        Long negativeResultTime = negativeResults.get(key);
+        if (negativeResultTime != null) {
+            if (SystemClock.elapsedRealtime() - negativeResultTime < NEGATIVE_RESULT_TTL_MILLIS) {
+                return Futures.immediateFuture(null);
+            }
+            negativeResults.remove(key);
+        }
+
+        @SuppressWarnings("unchecked")
+        ListenableFuture<T> inFlight = (ListenableFuture<T>) requestsInFlight.get(key);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        ListenableFuture<T> request = startRequest(key, url, headers, parser);
+        requestsInFlight.put(key, request);
+        request.addListener(() -> onRequestDone(key, request), MoreExecutors.directExecutor());
+        return request;
+    }
+
+    private <T> ListenableFuture<T> startRequest(
+            String key,
+            String url,
+            @Nullable Map<String, String> headers,
+            ResponseParser<T> parser) {
+        AtomicReference<HttpURLConnection> connection = new AtomicReference<>();
+        ListenableFuture<T> request =
+                executor.submit(
+                        () -> {
+                            connection.set(LookupUtils.prepareHttpConnection(url, headers));
+                            try {
+                                return parser.parse(LookupUtils.httpGet(connection.get()));
+                            } finally {
+                                connection.get().disconnect();
+                            }
+                        });
+        request.addListener(
+                () -> {
+                    // Interrupting the thread doesn't abort blocking network I/O, closing the
+                    // connection does.
+                    HttpURLConnection openConnection = connection.get();
+                    if (request.isCancelled() && openConnection != null) {
+                        openConnection.disconnect();
+                    }
+                },
+                MoreExecutors.directExecutor());
+        return request;
+    }
+
+    private synchronized void onRequestDone(String key, ListenableFuture<?> request) {
+        if (requestsInFlight.get(key) == request) {
+            requestsInFlight.remove(key);
+        }
+        if (request.isCancelled()) {
+            return;
+        }
+        try {
+            if (Futures.getDone(request) == null) {
+                negativeResults.put(key, SystemClock.elapsedRealtime());
+            }
+        } catch (Exception e) {
+            // Failures may be transient, so they aren't remembered.
+            Log.w(TAG, "Request for " + key + " failed", e);
+        }
+    }
+
+    /**
+     * Parses the body of a response.
+     */
+    public interface ResponseParser<T> {
+        /**
+         * Returns the parsed response, or null if it holds no results.
+         */
+        @Nullable
+        T parse(String body) throws Exception;
+    }
+}
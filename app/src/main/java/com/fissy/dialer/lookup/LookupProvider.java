@@ -48,19 +48,13 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 public class LookupProvider extends ContentProvider {
     public static final String AUTHORITY = "com.fissy.dialer.lookup";
@@ -84,7 +78,6 @@ public class LookupProvider extends ContentProvider {
         uriMatcher.addURI(AUTHORITY, "images/*", IMAGE);
     }
 
-    private final LinkedList<FutureTask> activeTasks = new LinkedList<>();
     /**
      * Get location from last location query.
      */
@@ -134,10 +127,9 @@ public class LookupProvider extends ContentProvider {
                     Log.e(TAG, "query: invalid limit parameter: '" + limit + "'");
                 }
 
-                final Location finalLastLocation = lastLocation;
-                final int finalMaxResults = maxResults;
-
-                return execute(() -> handleFilter(match, projection, filter, finalMaxResults, finalLastLocation));
+                // LookupClient bounds the time and the number of concurrent requests, and drops the
+                // requests of queries which became stale.
+                return handleFilter(match, projection, filter, maxResults, lastLocation);
         }
 
         return null;
@@ -177,14 +169,24 @@ public class LookupProvider extends ContentProvider {
     public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
         if (uriMatcher.match(uri) == IMAGE) {
             String number = uri.getLastPathSegment();
-            File image = LookupCache.getImagePath(getContext(), number);
 
             if (mode.equals("r")) {
-                if (!image.exists() || !image.isFile()) {
+                byte[] image = LookupCache.getCachedImage(getContext(), number);
+                if (image == null) {
                     throw new FileNotFoundException("Cached image does not exist");
                 }
 
-                return ParcelFileDescriptor.open(image, ParcelFileDescriptor.MODE_READ_ONLY);
+                // The image is kept in the lookup cache's store rather than in a file of its own,
+                // so stream it through a pipe.
+                return openPipeHelper(uri, null, null, image,
+                        (output, pipeUri, mimeType, opts, bytes) -> {
+                            try (FileOutputStream out =
+                                         new FileOutputStream(output.getFileDescriptor())) {
+                                out.write(bytes);
+                            } catch (IOException e) {
+                                Log.w(TAG, "Failed to write cached image", e);
+                            }
+                        });
             } else {
                 throw new FileNotFoundException("The URI is read only");
             }
@@ -370,77 +372,4 @@ public class LookupProvider extends ContentProvider {
             return city;
         } else return address;
     }
-
-    /**
-     * Execute thread that is killed after a specified amount of time.
-     *
-     * @param callable The thread
-     * @return Instance of the thread
-     */
-    private <T> T execute(Callable<T> callable) {
-        FutureCallable<T> futureCallable = new FutureCallable<>(callable);
-        FutureTask<T> future = new FutureTask<>(futureCallable);
-        futureCallable.setFuture(future);
-
-        synchronized (activeTasks) {
-            activeTasks.addLast(future);
-            Log.v(TAG, "Currently running tasks: " + activeTasks.size());
-
-            while (activeTasks.size() > 8) {
-                Log.w(TAG, "Too many tasks, canceling one");
-                activeTasks.removeFirst().cancel(true);
-            }
-        }
-
-        Log.v(TAG, "Starting task " + "FilterThread");
-
-        new Thread(future, "FilterThread").start();
-
-        try {
-            Log.v(TAG, "Getting future " + "FilterThread");
-            return future.get(10000, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Log.w(TAG, "Task was interrupted: " + "FilterThread");
-            Thread.currentThread().interrupt();
-        } catch (ExecutionException e) {
-            Log.w(TAG, "Task threw an exception: " + "FilterThread", e);
-        } catch (TimeoutException e) {
-            Log.w(TAG, "Task timed out: " + "FilterThread");
-            future.cancel(true);
-        } catch (CancellationException e) {
-            Log.w(TAG, "Task was cancelled: " + "FilterThread");
-        }
-
-        return null;
-    }
-
-    private class FutureCallable<T> implements Callable<T> {
-        private final Callable<T> callable;
-        private volatile FutureTask<T> future;
-
-        public FutureCallable(Callable<T> callable) {
-            future = null;
-            this.callable = callable;
-        }
-
-        public T call() throws Exception {
-            Log.v(TAG, "Future called for " + Thread.currentThread().getName());
-
-            T result = callable.call();
-            if (future == null) {
-                return result;
-            }
-
-            synchronized (activeTasks) {
-                activeTasks.remove(future);
-            }
-
-            future = null;
-            return result;
-        }
-
-        public void setFuture(FutureTask<T> future) {
-            this.future = future;
-        }
-    }
 }
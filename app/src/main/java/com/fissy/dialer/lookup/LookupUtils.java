@@ -32,10 +32,14 @@ public class LookupUtils {
     private static final String USER_AGENT =
             "Mozilla/5.0 (X11; Linux x86_64; rv:42.0) Gecko/20100101 Firefox/42.0";
 
-    private static HttpURLConnection prepareHttpConnection(String url, Map<String, String> headers)
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    static HttpURLConnection prepareHttpConnection(String url, Map<String, String> headers)
             throws IOException {
         // open connection
         HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+        urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(TIMEOUT_MILLIS);
         // set user agent (default value is null)
         urlConnection.setRequestProperty("User-Agent", USER_AGENT);
         // set all other headers if not null
@@ -89,11 +93,19 @@ public class LookupUtils {
     public static String httpGet(String url, Map<String, String> headers) throws IOException {
         HttpURLConnection connection = prepareHttpConnection(url, headers);
         try {
-            byte[] response = httpFetch(connection);
-            return new String(response, determineCharset(connection));
+            return httpGet(connection);
         } finally {
             connection.disconnect();
         }
     }
 
+    /**
+     * Reads the response of a connection from {@link #prepareHttpConnection}, leaving it to the
+     * caller to disconnect it.
+     */
+    static String httpGet(HttpURLConnection connection) throws IOException {
+        byte[] response = httpFetch(connection);
+        return new String(response, determineCharset(connection));
+    }
+
 }
@@ -31,7 +31,7 @@ import android.util.Log;
 import com.fissy.dialer.R;
 import com.fissy.dialer.app.settings.DialerSettingsActivity;
 import com.fissy.dialer.lookup.ContactBuilder;
-import com.fissy.dialer.lookup.LookupUtils;
+import com.fissy.dialer.lookup.LookupClient;
 import com.fissy.dialer.main.impl.MainActivity;
 import com.fissy.dialer.main.impl.MainActivityPeer;
 import com.fissy.dialer.phonenumbercache.ContactInfo;
@@ -40,12 +40,15 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public abstract class GoogleForwardLookup {
     private static final String TAG = GoogleForwardLookup.class.getSimpleName();
@@ -81,6 +84,16 @@ public abstract class GoogleForwardLookup {
      */
     private static final int MAX_QUERY_LEN = 50;
 
+    /**
+     * Tag of the requests made by this class, of which only the latest is kept
+     */
+    private static final String LOOKUP_TAG = "GoogleForwardLookup";
+
+    /**
+     * How long to wait for the results of a query
+     */
+    private static final long LOOKUP_TIMEOUT_MILLIS = 10000;
+
     /**
      * Radius (in miles)
      * (default for dialer_nearby_places_directory_radius_meters)
@@ -136,16 +149,33 @@ public abstract class GoogleForwardLookup {
 
                 Map<String, String> headers = new HashMap<>();
                 headers.put("User-Agent", userAgent);
-                JSONArray results = new JSONArray(
-                        LookupUtils.httpGet(builder.build().toString(), headers));
 
-                if (DEBUG) Log.v(TAG, "Results: " + results);
-
-                return getEntries(results);
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to execute query", e);
-            } catch (JSONException e) {
-                Log.e(TAG, "JSON error", e);
+                // The random string and the location are left out of the key, so that requests for
+                // the same query are shared while the user is typing.
+                String key = filter + "|" + builder.build().getQueryParameter(QUERY_LANGUAGE);
+                return LookupClient.get()
+                        .fetch(
+                                LOOKUP_TAG,
+                                key,
+                                builder.build().toString(),
+                                headers,
+                                body -> {
+                                    JSONArray results = new JSONArray(body);
+
+                                    if (DEBUG) Log.v(TAG, "Results: " + results);
+
+                                    List<ContactInfo> entries = getEntries(results);
+                                    return entries.isEmpty() ? null : entries;
+                                })
+                        .get(LOOKUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (CancellationException e) {
+                if (DEBUG) Log.v(TAG, "Query became stale: " + filter);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Failed to execute query", e.getCause());
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Query timed out: " + filter);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
 
@@ -58,6 +58,11 @@ public interface Metrics {
     String ON_SUCCESSFUL_FILL_EVENT_NAME = "RefreshAnnotatedCallLog.OnSuccessfulFill";
     String APPLY_MUTATIONS_EVENT_NAME = "RefreshAnnotatedCallLog.ApplyMutations";
 
+    // Events related to updating the smart dial database. These templates are suffixed with the
+    // name of the update phase.
+    String SMART_DIAL_FULL_UPDATE_TEMPLATE = "SmartDialDatabase.FullUpdate.%s";
+    String SMART_DIAL_INCREMENTAL_UPDATE_TEMPLATE = "SmartDialDatabase.IncrementalUpdate.%s";
+
     // These templates are prefixed with a CallLogDataSource or PhoneLookup simple class name.
     String INITIAL_FILL_TEMPLATE = "%s.Initial.Fill";
     String INITIAL_GET_MOST_RECENT_INFO_TEMPLATE = "%s.Initial.GetMostRecentInfo";
@@ -70,6 +75,7 @@ public interface Metrics {
     String ON_SUCCESSFUL_FILL_TEMPLATE = "%s.OnSuccessfulFill";
     String ON_SUCCESSFUL_BULK_UPDATE_TEMPLATE = "%s.OnSuccessfulBulkUpdate";
     String LOOKUP_FOR_CALL_TEMPLATE = "%s.LookupForCall";
+    String LOOKUP_FOR_CALL_FIRST_INFO_TEMPLATE = "%s.LookupForCall.FirstInfo";
     String LOOKUP_FOR_NUMBER_TEMPLATE = "%s.LookupForNumber";
 
     /**
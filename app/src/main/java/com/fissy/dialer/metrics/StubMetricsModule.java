@@ -16,16 +16,12 @@
 
 package com.fissy.dialer.metrics;
 
-import com.fissy.dialer.inject.DialerVariant;
-import com.fissy.dialer.inject.InstallIn;
-
 import dagger.Binds;
 import dagger.Module;
 
 /**
- * Binds stub {@link Metrics}.
+ * Binds stub {@link Metrics}, for components which don't record metrics.
  */
-@InstallIn(variants = {DialerVariant.DIALER_TEST})
 @Module
 public interface StubMetricsModule {
 
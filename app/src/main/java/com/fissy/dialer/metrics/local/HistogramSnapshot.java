@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.metrics.local;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the values of a {@link LatencyHistogram}, in microseconds.
+ *
+ * <p>Only the buckets which counted values are kept, since most of them are empty.
+ */
+final class HistogramSnapshot {
+
+    static final HistogramSnapshot EMPTY = new HistogramSnapshot(new int[0], new long[0], 0, 0, 0);
+
+    /**
+     * The indices of the non-empty buckets, in increasing order.
+     */
+    private final int[] buckets;
+    private final long[] counts;
+    private final long totalCount;
+    private final long sum;
+    private final long max;
+
+    private HistogramSnapshot(int[] buckets, long[] counts, long totalCount, long sum, long max) {
+        this.buckets = buckets;
+        this.counts = counts;
+        this.totalCount = totalCount;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @param counts the count of every bucket, indexed like {@link LatencyHistogram#bucketIndex}
+     */
+    static HistogramSnapshot create(long[] counts, long sum, long max) {
+        int size = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                size++;
+            }
+        }
+        int[] buckets = new int[size];
+        long[] bucketCounts = new long[size];
+        long totalCount = 0;
+        int i = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                buckets[i] = bucket;
+                bucketCounts[i] = counts[bucket];
+                totalCount += counts[bucket];
+                i++;
+            }
+        }
+        return new HistogramSnapshot(buckets, bucketCounts, totalCount, sum, max);
+    }
+
+    long totalCount() {
+        return totalCount;
+    }
+
+    long max() {
+        return max;
+    }
+
+    long mean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Returns the value which {@code percentile} percent of the values are less than or equal to,
+     * rounded up to the end of its bucket.
+     */
+    long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.bucketUpperBound(buckets[i]), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns a snapshot with the values of both this snapshot and {@code other}.
+     */
+    HistogramSnapshot merge(HistogramSnapshot other) {
+        if (other.totalCount == 0) {
+            return this;
+        }
+        if (totalCount == 0) {
+            return other;
+        }
+        int[] mergedBuckets = new int[buckets.length + other.buckets.length];
+        long[] mergedCounts = new long[mergedBuckets.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < buckets.length || j < other.buckets.length) {
+            if (j == other.buckets.length
+                    || (i < buckets.length && buckets[i] < other.buckets[j])) {
+                mergedBuckets[size] = buckets[i];
+                mergedCounts[size++] = counts[i++];
+            } else if (i == buckets.length || other.buckets[j] < buckets[i]) {
+                mergedBuckets[size] = other.buckets[j];
+                mergedCounts[size++] = other.counts[j++];
+            } else {
+                mergedBuckets[size] = buckets[i];
+                mergedCounts[size++] = counts[i++] + other.counts[j++];
+            }
+        }
+        return new HistogramSnapshot(
+                Arrays.copyOf(mergedBuckets, size),
+                Arrays.copyOf(mergedCounts, size),
+                totalCount + other.totalCount,
+                sum + other.sum,
+                Math.max(max, other.max));
+    }
+
+    void writeTo(DataOutputStream output) throws IOException {
+        output.writeInt(buckets.length);
+        for (int i = 0; i < buckets.length; i++) {
+            output.writeShort(buckets[i]);
+            output.writeLong(counts[i]);
+        }
+        output.writeLong(sum);
+        output.writeLong(max);
+    }
+
+    static HistogramSnapshot readFrom(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        if (size < 0 || size > LatencyHistogram.BUCKET_COUNT) {
+            throw new IOException("invalid bucket count: " + size);
+        }
+        int[] buckets = new int[size];
+        long[] counts = new long[size];
+        long totalCount = 0;
+        for (int i = 0; i < size; i++) {
+            buckets[i] = input.readUnsignedShort();
+            counts[i] = input.readLong();
+            if (buckets[i] >= LatencyHistogram.BUCKET_COUNT
+                    || (i > 0 && buckets[i] <= buckets[i - 1])
+                    || counts[i] <= 0) {
+                throw new IOException("invalid bucket: " + buckets[i]);
+            }
+            totalCount += counts[i];
+        }
+        long sum = input.readLong();
+        long max = input.readLong();
+        return new HistogramSnapshot(buckets, counts, totalCount, sum, max);
+    }
+}
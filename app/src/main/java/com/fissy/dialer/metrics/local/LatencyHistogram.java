@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.metrics.local;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A histogram of latencies in microseconds which any number of threads can record into without
+ * taking a lock.
+ *
+ * <p>Values are counted in log-linear buckets, like in an HDR histogram: every power of two is
+ * split into {@link #SUB_BUCKET_COUNT} buckets, so a value is known to within about 6% whatever its
+ * magnitude, with a fixed number of counters.
+ *
+ * <p>The counters are split into {@link #STRIPE_COUNT} stripes, picked by the recording thread, so
+ * that threads recording at the same time don't contend on the same counters. A stripe is only
+ * allocated once a thread records into it.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values up to 2^35 microseconds, about 9.5 hours, are counted; longer ones are counted as
+     * that.
+     */
+    private static final int MAX_EXPONENT = 35;
+
+    static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private static final int STRIPE_COUNT = 4;
+
+    private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPE_COUNT);
+
+    /**
+     * Returns the index of the bucket counting a value.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(0, value);
+        }
+        value = Math.min(value, MAX_VALUE);
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the largest value counted by a bucket.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    void record(long valueMicros) {
+        Stripe stripe = getStripe((int) Thread.currentThread().getId() & (STRIPE_COUNT - 1));
+        stripe.counts.incrementAndGet(bucketIndex(valueMicros));
+        stripe.sum.addAndGet(valueMicros);
+        long max = stripe.max.get();
+        while (valueMicros > max && !stripe.max.compareAndSet(max, valueMicros)) {
+            max = stripe.max.get();
+        }
+    }
+
+    /**
+     * Returns the values recorded so far.
+     */
+    HistogramSnapshot snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * Returns the values recorded so far and removes them from this histogram. Each value recorded
+     * concurrently is either in the returned snapshot or stays in this histogram.
+     */
+    HistogramSnapshot snapshotAndReset() {
+        return collect(true);
+    }
+
+    private HistogramSnapshot collect(boolean reset) {
+        long[] counts = new long[BUCKET_COUNT];
+        long sum = 0;
+        long max = 0;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                counts[bucket] +=
+                        reset ? stripe.counts.getAndSet(bucket, 0) : stripe.counts.get(bucket);
+            }
+            sum += reset ? stripe.sum.getAndSet(0) : stripe.sum.get();
+            max = Math.max(max, reset ? stripe.max.getAndSet(0) : stripe.max.get());
+        }
+        return HistogramSnapshot.create(counts, sum, max);
+    }
+
+    private Stripe getStripe(int index) {
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new Stripe());
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    private static final class Stripe {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKET_COUNT);
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.metrics.local;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
+import com.fissy.dialer.inject.ApplicationContext;
+import com.fissy.dialer.metrics.Metrics;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * {@link Metrics} which keeps a latency histogram of every timer and jank event on the device, so
+ * that percentiles can be looked at with the {@code metrics} command line command.
+ *
+ * <p>Timers and frames are recorded into {@link LatencyHistogram}s without taking a lock. Every
+ * {@link #WINDOW_MILLIS} the histograms are moved into a {@link MetricsWindow} which is saved to
+ * disk in the background, and the windows of the last {@link #HISTORY_MILLIS} are kept. Values
+ * recorded in the current window are lost if the process dies.
+ *
+ * <p>Memory and battery are only recorded as the last {@link #MAX_RESOURCE_RECORDS} readings, which
+ * aren't saved.
+ */
+@ThreadSafe
+@Singleton
+public final class LocalMetrics implements Metrics {
+
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long HISTORY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_RESOURCE_RECORDS = 64;
+
+    private static final String WINDOWS_FILE_NAME = "metrics_windows.bin";
+    private static final int FILE_MAGIC = 0x4d455452;
+    private static final int FILE_VERSION = 1;
+
+    private final Context appContext;
+    private final ListeningExecutorService backgroundExecutorService;
+
+    private final ConcurrentMap<String, Long> namedTimerStartNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Long> unnamedTimerStartNanos = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTimerId = new AtomicInteger();
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicBoolean rotationScheduled = new AtomicBoolean();
+    private volatile long windowStartTimeMillis = System.currentTimeMillis();
+
+    /**
+     * Guards {@link #windows} and {@link #windowsLoaded}.
+     */
+    private final Object windowLock = new Object();
+    private final ArrayDeque<MetricsWindow> windows = new ArrayDeque<>();
+    private boolean windowsLoaded;
+
+    /**
+     * Only used on the main thread.
+     */
+    private final Map<String, JankRecorder> jankRecorders = new HashMap<>();
+
+    /**
+     * Guarded by itself.
+     */
+    private final ArrayDeque<String> resourceRecords = new ArrayDeque<>();
+
+    @Inject
+    public LocalMetrics(
+            @ApplicationContext Context appContext,
+            @BackgroundExecutor ListeningExecutorService backgroundExecutorService) {
+        this.appContext = appContext;
+        this.backgroundExecutorService = backgroundExecutorService;
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format(Locale.US, "%.1f", micros / 1000.0);
+    }
+
+    private static String formatTime(long timeMillis) {
+        return new SimpleDateFormat("MM-dd HH:mm:ss", Locale.US).format(new Date(timeMillis));
+    }
+
+    @Override
+    public void startTimer(String timerEventName) {
+        namedTimerStartNanos.put(timerEventName, SystemClock.elapsedRealtimeNanos());
+    }
+
+    @Override
+    public Integer startUnnamedTimer() {
+        int id = nextTimerId.incrementAndGet();
+        unnamedTimerStartNanos.put(id, SystemClock.elapsedRealtimeNanos());
+        return id;
+    }
+
+    @Override
+    public void stopTimer(String timerEventName) {
+        Long startNanos = namedTimerStartNanos.remove(timerEventName);
+        if (startNanos == null) {
+            return;
+        }
+        record(timerEventName, SystemClock.elapsedRealtimeNanos() - startNanos);
+    }
+
+    @Override
+    public void stopUnnamedTimer(int timerId, String timerEventName) {
+        Long startNanos = unnamedTimerStartNanos.remove(timerId);
+        if (startNanos == null) {
+            LogUtil.w(
+                    "LocalMetrics.stopUnnamedTimer",
+                    "no timer found for id: %d (%s)",
+                    timerId,
+                    timerEventName);
+            return;
+        }
+        record(timerEventName, SystemClock.elapsedRealtimeNanos() - startNanos);
+    }
+
+    /**
+     * Records the time between frames while the recorder runs, so that the percentiles of the event
+     * show how many frames were dropped.
+     */
+    @MainThread
+    @Override
+    public void startJankRecorder(String eventName) {
+        Assert.isMainThread();
+        if (jankRecorders.containsKey(eventName)) {
+            return;
+        }
+        JankRecorder recorder = new JankRecorder(eventName);
+        jankRecorders.put(eventName, recorder);
+        Choreographer.getInstance().postFrameCallback(recorder);
+    }
+
+    @MainThread
+    @Override
+    public void stopJankRecorder(String eventName) {
+        Assert.isMainThread();
+        JankRecorder recorder = jankRecorders.remove(eventName);
+        if (recorder != null) {
+            Choreographer.getInstance().removeFrameCallback(recorder);
+        }
+    }
+
+    @Override
+    public void recordMemory(String memoryEventName) {
+        Runtime runtime = Runtime.getRuntime();
+        addResourceRecord(
+                String.format(
+                        Locale.US,
+                        "%s: java heap %d KB, native heap %d KB",
+                        memoryEventName,
+                        (runtime.totalMemory() - runtime.freeMemory()) / 1024,
+                        Debug.getNativeHeapAllocatedSize() / 1024));
+    }
+
+    @Override
+    public void recordBattery(String batteryEventName) {
+        BatteryManager batteryManager = appContext.getSystemService(BatteryManager.class);
+        if (batteryManager == null) {
+            return;
+        }
+        addResourceRecord(
+                String.format(
+                        Locale.US,
+                        "%s: battery %d%%, %d uAh%s",
+                        batteryEventName,
+                        batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY),
+                        batteryManager.getIntProperty(
+                                BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER),
+                        batteryManager.isCharging() ? ", charging" : ""));
+    }
+
+    /**
+     * Loads the windows saved by previous processes.
+     */
+    void loadWindows() {
+        backgroundExecutorService.execute(
+                () -> {
+                    synchronized (windowLock) {
+                        ensureWindowsLoaded();
+                    }
+                });
+    }
+
+    /**
+     * Returns a report of the latency percentiles of every event, in milliseconds, in the current
+     * window and over the last day, followed by the recent memory and battery readings.
+     */
+    @WorkerThread
+    public String dump() {
+        Assert.isWorkerThread();
+        Map<String, HistogramSnapshot> current = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            HistogramSnapshot snapshot = entry.getValue().snapshot();
+            if (snapshot.totalCount() > 0) {
+                current.put(entry.getKey(), snapshot);
+            }
+        }
+        Map<String, HistogramSnapshot> history = new TreeMap<>(current);
+        long historyStartTimeMillis = windowStartTimeMillis;
+        synchronized (windowLock) {
+            ensureWindowsLoaded();
+            for (MetricsWindow window : windows) {
+                historyStartTimeMillis = Math.min(historyStartTimeMillis, window.startTimeMillis());
+                for (Map.Entry<String, HistogramSnapshot> entry : window.histograms().entrySet()) {
+                    HistogramSnapshot snapshot = history.get(entry.getKey());
+                    history.put(
+                            entry.getKey(),
+                            snapshot == null ? entry.getValue() : snapshot.merge(entry.getValue()));
+                }
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        appendHistograms(report, "since " + formatTime(windowStartTimeMillis), current);
+        report.append('\n');
+        appendHistograms(report, "since " + formatTime(historyStartTimeMillis), history);
+        report.append("\nmemory and battery\n");
+        synchronized (resourceRecords) {
+            for (String record : resourceRecords) {
+                report.append(record).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Discards everything recorded so far, including the saved windows.
+     */
+    @WorkerThread
+    public void reset() {
+        Assert.isWorkerThread();
+        synchronized (windowLock) {
+            for (LatencyHistogram histogram : histograms.values()) {
+                histogram.snapshotAndReset();
+            }
+            windowStartTimeMillis = System.currentTimeMillis();
+            windows.clear();
+            windowsLoaded = true;
+            getWindowsFile().delete();
+        }
+        synchronized (resourceRecords) {
+            resourceRecords.clear();
+        }
+    }
+
+    private void appendHistograms(
+            StringBuilder report, String title, Map<String, HistogramSnapshot> snapshots) {
+        report.append("latency in ms ").append(title).append('\n');
+        report.append("event: count p50 p95 p99 max\n");
+        for (Map.Entry<String, HistogramSnapshot> entry : snapshots.entrySet()) {
+            HistogramSnapshot snapshot = entry.getValue();
+            report
+                    .append(entry.getKey())
+                    .append(": ")
+                    .append(snapshot.totalCount())
+                    .append(' ')
+                    .append(formatMillis(snapshot.percentile(50)))
+                    .append(' ')
+                    .append(formatMillis(snapshot.percentile(95)))
+                    .append(' ')
+                    .append(formatMillis(snapshot.percentile(99)))
+                    .append(' ')
+                    .append(formatMillis(snapshot.max()))
+                    .append('\n');
+        }
+    }
+
+    private void record(String eventName, long durationNanos) {
+        LatencyHistogram histogram = histograms.get(eventName);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(eventName, unused -> new LatencyHistogram());
+        }
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+
+        if (System.currentTimeMillis() - windowStartTimeMillis >= WINDOW_MILLIS
+                && rotationScheduled.compareAndSet(false, true)) {
+            backgroundExecutorService.execute(this::rotateWindow);
+        }
+    }
+
+    private void addResourceRecord(String record) {
+        String timedRecord = formatTime(System.currentTimeMillis()) + " " + record;
+        synchronized (resourceRecords) {
+            if (resourceRecords.size() == MAX_RESOURCE_RECORDS) {
+                resourceRecords.removeFirst();
+            }
+            resourceRecords.addLast(timedRecord);
+        }
+    }
+
+    /**
+     * Moves the values recorded in the current window into a new {@link MetricsWindow}, and saves
+     * the windows.
+     */
+    @WorkerThread
+    private void rotateWindow() {
+        synchronized (windowLock) {
+            // Cleared first, so that values recorded after the histograms are read schedule the
+            // next rotation.
+            rotationScheduled.set(false);
+            ensureWindowsLoaded();
+            long now = System.currentTimeMillis();
+            Map<String, HistogramSnapshot> snapshots = new HashMap<>();
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                HistogramSnapshot snapshot = entry.getValue().snapshotAndReset();
+                if (snapshot.totalCount() > 0) {
+                    snapshots.put(entry.getKey(), snapshot);
+                }
+            }
+            if (!snapshots.isEmpty()) {
+                windows.addLast(new MetricsWindow(windowStartTimeMillis, now, snapshots));
+            }
+            windowStartTimeMillis = now;
+            dropExpiredWindows(now);
+            writeWindows();
+        }
+    }
+
+    @WorkerThread
+    private void ensureWindowsLoaded() {
+        if (windowsLoaded) {
+            return;
+        }
+        windowsLoaded = true;
+        ArrayDeque<MetricsWindow> loaded = readWindows();
+        // Windows rotated before loading finished are newer than the saved ones.
+        while (!loaded.isEmpty()) {
+            windows.addFirst(loaded.removeLast());
+        }
+        dropExpiredWindows(System.currentTimeMillis());
+    }
+
+    private void dropExpiredWindows(long now) {
+        while (!windows.isEmpty() && windows.getFirst().endTimeMillis() < now - HISTORY_MILLIS) {
+            windows.removeFirst();
+        }
+    }
+
+    @WorkerThread
+    private ArrayDeque<MetricsWindow> readWindows() {
+        ArrayDeque<MetricsWindow> loaded = new ArrayDeque<>();
+        try (DataInputStream input =
+                     new DataInputStream(
+                             new BufferedInputStream(new FileInputStream(getWindowsFile())))) {
+            if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+                LogUtil.w("LocalMetrics.readWindows", "unknown file format");
+                return loaded;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.addLast(MetricsWindow.readFrom(input));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing was saved yet.
+        } catch (IOException e) {
+            LogUtil.e("LocalMetrics.readWindows", "failed to read metrics", e);
+            loaded.clear();
+        }
+        return loaded;
+    }
+
+    @WorkerThread
+    private void writeWindows() {
+        File file = getWindowsFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output =
+                     new DataOutputStream(
+                             new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(FILE_VERSION);
+            output.writeInt(windows.size());
+            for (MetricsWindow window : windows) {
+                window.writeTo(output);
+            }
+        } catch (IOException e) {
+            LogUtil.e("LocalMetrics.writeWindows", "failed to write metrics", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            LogUtil.e("LocalMetrics.writeWindows", "failed to replace metrics");
+            tempFile.delete();
+        }
+    }
+
+    private File getWindowsFile() {
+        return new File(appContext.getFilesDir(), WINDOWS_FILE_NAME);
+    }
+
+    /**
+     * Records the interval between consecutive frames until it is removed.
+     */
+    private final class JankRecorder implements Choreographer.FrameCallback {
+        private final String eventName;
+        private long lastFrameTimeNanos;
+
+        JankRecorder(String eventName) {
+            this.eventName = eventName;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (lastFrameTimeNanos != 0) {
+                record(eventName, frameTimeNanos - lastFrameTimeNanos);
+            }
+            lastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.metrics.local;
+
+import android.app.Application;
+
+import com.fissy.dialer.metrics.Metrics;
+
+import javax.inject.Inject;
+
+/**
+ * Loads the windows which {@link LocalMetrics} saved in previous processes.
+ */
+public class LocalMetricsInitializer implements Metrics.Initializer {
+
+    private final LocalMetrics localMetrics;
+
+    @Inject
+    LocalMetricsInitializer(LocalMetrics localMetrics) {
+        this.localMetrics = localMetrics;
+    }
+
+    @Override
+    public void initialize(Application application) {
+        localMetrics.loadWindows();
+    }
+}
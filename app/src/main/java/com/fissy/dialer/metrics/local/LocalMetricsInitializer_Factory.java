@@ -0,0 +1,29 @@
+package com.fissy.dialer.metrics.local;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class LocalMetricsInitializer_Factory implements Factory<LocalMetricsInitializer> {
+    private final Provider<LocalMetrics> localMetricsProvider;
+
+    public LocalMetricsInitializer_Factory(Provider<LocalMetrics> localMetricsProvider) {
+        assert localMetricsProvider != null;
+        this.localMetricsProvider = localMetricsProvider;
+    }
+
+    public static Factory<LocalMetricsInitializer> create(
+            Provider<LocalMetrics> localMetricsProvider) {
+        return new LocalMetricsInitializer_Factory(localMetricsProvider);
+    }
+
+    @Override
+    public LocalMetricsInitializer get() {
+        return new LocalMetricsInitializer(localMetricsProvider.get());
+    }
+}
@@ -0,0 +1,40 @@
+package com.fissy.dialer.metrics.local;
+
+import android.content.Context;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class LocalMetrics_Factory implements Factory<LocalMetrics> {
+    private final Provider<Context> appContextProvider;
+
+    private final Provider<ListeningExecutorService> backgroundExecutorServiceProvider;
+
+    public LocalMetrics_Factory(
+            Provider<Context> appContextProvider,
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider) {
+        assert appContextProvider != null;
+        this.appContextProvider = appContextProvider;
+        assert backgroundExecutorServiceProvider != null;
+        this.backgroundExecutorServiceProvider = backgroundExecutorServiceProvider;
+    }
+
+    public static Factory<LocalMetrics> create(
+            Provider<Context> appContextProvider,
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider) {
+        return new LocalMetrics_Factory(appContextProvider, backgroundExecutorServiceProvider);
+    }
+
+    @Override
+    public LocalMetrics get() {
+        return new LocalMetrics(appContextProvider.get(), backgroundExecutorServiceProvider.get());
+    }
+}
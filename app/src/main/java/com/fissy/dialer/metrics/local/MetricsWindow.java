@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.metrics.local;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The latencies recorded for each event during a period of time.
+ */
+final class MetricsWindow {
+
+    private final long startTimeMillis;
+    private final long endTimeMillis;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    MetricsWindow(
+            long startTimeMillis, long endTimeMillis, Map<String, HistogramSnapshot> histograms) {
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    long startTimeMillis() {
+        return startTimeMillis;
+    }
+
+    long endTimeMillis() {
+        return endTimeMillis;
+    }
+
+    Map<String, HistogramSnapshot> histograms() {
+        return histograms;
+    }
+
+    void writeTo(DataOutputStream output) throws IOException {
+        output.writeLong(startTimeMillis);
+        output.writeLong(endTimeMillis);
+        output.writeInt(histograms.size());
+        for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+            output.writeUTF(entry.getKey());
+            entry.getValue().writeTo(output);
+        }
+    }
+
+    static MetricsWindow readFrom(DataInputStream input) throws IOException {
+        long startTimeMillis = input.readLong();
+        long endTimeMillis = input.readLong();
+        int size = input.readInt();
+        if (size < 0) {
+            throw new IOException("invalid event count: " + size);
+        }
+        Map<String, HistogramSnapshot> histograms = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String eventName = input.readUTF();
+            histograms.put(eventName, HistogramSnapshot.readFrom(input));
+        }
+        return new MetricsWindow(startTimeMillis, endTimeMillis, histograms);
+    }
+}
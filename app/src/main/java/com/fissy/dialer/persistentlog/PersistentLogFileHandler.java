@@ -29,27 +29,37 @@ import androidx.preference.PreferenceManager;
 
 import com.fissy.dialer.common.LogUtil;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 /**
- * Handles serialization of byte arrays and read/write them to multiple rotating files. If a logText
- * file exceeds {@code fileSizeLimit} after a write, a new file will be used. if the total number of
- * files exceeds {@code fileCountLimit} the oldest ones will be deleted. The logs are stored in the
- * cache but the file index is stored in the data (clearing data will also clear the cache). The
- * logs will be stored under /cache_dir/persistent_log/{@code subfolder}, so multiple independent
- * logs can be created.
+ * Handles serialization of byte arrays and read/write them to multiple rotating segment files. If a
+ * segment exceeds {@code fileSizeLimit} after a write, a new segment will be used. If the segments
+ * take more than {@code fileSizeLimit} * {@code fileCountLimit} bytes, or there are more than
+ * {@link #MAX_SEGMENT_COUNT} of them, the oldest ones will be deleted. The logs are
+ * stored in the cache but the file index is stored in the data (clearing data will also clear the
+ * cache). The logs will be stored under /cache_dir/persistent_log/{@code subfolder}, so multiple
+ * independent logs can be created.
+ *
+ * <p>Each segment is a single deflate stream, so the limits apply to the compressed size. The
+ * stream is flushed to a byte boundary after every batch, which makes everything written so far
+ * readable even if the app is terminated before the segment is finished. A new segment is started
+ * every time the app starts, as a finished stream can't be appended to.
  *
  * <p>This class is NOT thread safe. All methods expect the constructor must be called on the same
  * worker thread.
@@ -61,12 +71,21 @@ final class PersistentLogFileHandler {
 
     private static final byte[] ENTRY_PREFIX = {'P'};
     private static final byte[] ENTRY_POSTFIX = {'L'};
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+    /**
+     * Short-lived processes each leave a small segment, so segments are mostly limited by size.
+     */
+    private static final int MAX_SEGMENT_COUNT = 64;
     private final String subfolder;
     private final int fileSizeLimit;
     private final int fileCountLimit;
     private File logDirectory;
     private SharedPreferences sharedPreferences;
     private File outputFile;
+    @Nullable
+    private Deflater deflater;
+    @Nullable
+    private DataOutputStream outputStream;
     private Context context;
 
     @MainThread
@@ -76,24 +95,6 @@ final class PersistentLogFileHandler {
         this.fileCountLimit = fileCountLimit;
     }
 
-    private static int getTotalSize(File[] files) {
-        int sum = 0;
-        for (File file : files) {
-            sum += (int) file.length();
-        }
-        return sum;
-    }
-
-    @NonNull
-    @WorkerThread
-    private static byte[] readAllBytes(File file) throws IOException {
-        byte[] result = new byte[(int) file.length()];
-        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
-            randomAccessFile.readFully(result);
-        }
-        return result;
-    }
-
     /**
      * Must be called right after the logger thread is created.
      */
@@ -104,6 +105,22 @@ final class PersistentLogFileHandler {
         initializeSharedPreference(context);
     }
 
+    /**
+     * Deletes the logs of a subfolder which is no longer used.
+     */
+    @WorkerThread
+    static void deleteSubfolder(Context context, String subfolder) {
+        File directory = new File(new File(context.getCacheDir(), LOG_DIRECTORY), subfolder);
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
     @WorkerThread
     private boolean initializeSharedPreference(Context context) {
         if (sharedPreferences == null && UserManagerCompat.isUserUnlocked(context)) {
@@ -114,104 +131,128 @@ final class PersistentLogFileHandler {
     }
 
     /**
-     * Write the list of byte arrays to the current log file, prefixing each entry with its' length. A
-     * new file will only be selected when the batch is completed, so the resulting file might be
-     * larger then {@code fileSizeLimit}
+     * Write the list of byte arrays to the current segment, prefixing each entry with its' length.
+     * A new segment will only be selected when the batch is completed, so the resulting file might
+     * be larger then {@code fileSizeLimit}
      */
     @WorkerThread
     void writeLogs(List<byte[]> logs) throws IOException {
-        if (outputFile == null) {
-            selectNextFileToWrite();
-        }
-        outputFile.createNewFile();
-        try (DataOutputStream outputStream =
-                     new DataOutputStream(new FileOutputStream(outputFile, true))) {
+        DataOutputStream output = getOutputStream();
+        try {
             for (byte[] log : logs) {
-                outputStream.write(ENTRY_PREFIX);
-                outputStream.writeInt(log.length);
-                outputStream.write(log);
-                outputStream.write(ENTRY_POSTFIX);
-            }
-            outputStream.close();
-            if (outputFile.length() > fileSizeLimit) {
-                selectNextFileToWrite();
+                output.write(ENTRY_PREFIX);
+                output.writeInt(log.length);
+                output.write(log);
+                output.write(ENTRY_POSTFIX);
             }
+            output.flush();
+        } catch (IOException e) {
+            closeOutputStream();
+            throw e;
+        }
+        if (outputFile.length() > fileSizeLimit) {
+            closeOutputStream();
         }
     }
 
     void writeRawLogsForTest(byte[] data) throws IOException {
-        if (outputFile == null) {
+        DataOutputStream output = getOutputStream();
+        output.write(data);
+        output.flush();
+        if (outputFile.length() > fileSizeLimit) {
+            closeOutputStream();
+        }
+    }
+
+    /**
+     * Returns the stream writing to the current segment, starting a new segment if there is none.
+     */
+    @WorkerThread
+    private DataOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
             selectNextFileToWrite();
+            outputFile.createNewFile();
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            outputStream =
+                    new DataOutputStream(
+                            new DeflaterOutputStream(
+                                    new FileOutputStream(outputFile, true),
+                                    deflater,
+                                    STREAM_BUFFER_SIZE,
+                                    true /* syncFlush */));
         }
-        outputFile.createNewFile();
-        try (DataOutputStream outputStream =
-                     new DataOutputStream(new FileOutputStream(outputFile, true))) {
-            outputStream.write(data);
-            outputStream.close();
-            if (outputFile.length() > fileSizeLimit) {
-                selectNextFileToWrite();
+        return outputStream;
+    }
+
+    /**
+     * Finishes the current segment, the next write will start a new one.
+     */
+    @WorkerThread
+    private void closeOutputStream() {
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                LogUtil.e("PersistentLogFileHandler.closeOutputStream", "error closing segment", e);
             }
+            outputStream = null;
+        }
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
         }
     }
 
     /**
-     * Concatenate all log files in chronicle order and return a byte array.
+     * Opens a reader of all segments in chronicle order.
      */
     @WorkerThread
     @NonNull
-    private byte[] readBlob() throws IOException {
-        File[] files = getLogFiles();
-
-        ByteBuffer byteBuffer = ByteBuffer.allocate(getTotalSize(files));
-        for (File file : files) {
-            byteBuffer.put(readAllBytes(file));
-        }
-        return byteBuffer.array();
+    LogReader openReader() {
+        return new LogReader(getLogFiles());
     }
 
     /**
-     * Parses the content of all files back to individual byte arrays.
+     * Parses the content of all segments back to individual byte arrays.
      */
     @WorkerThread
     @NonNull
     List<byte[]> getLogs() throws IOException {
-        byte[] blob = readBlob();
         List<byte[]> logs = new ArrayList<>();
-        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(blob))) {
-            byte[] log = readLog(input);
+        try (LogReader reader = openReader()) {
+            byte[] log = reader.next();
             while (log != null) {
                 logs.add(log);
-                log = readLog(input);
+                log = reader.next();
             }
-        } catch (LogCorruptionException e) {
-            LogUtil.e("PersistentLogFileHandler.getLogs", "logs corrupted, deleting", e);
-            deleteLogs();
-            return new ArrayList<>();
         }
         return logs;
     }
 
-    private void deleteLogs() throws IOException {
-        for (File file : getLogFiles()) {
-            file.delete();
-        }
-        selectNextFileToWrite();
-    }
-
     @WorkerThread
     private void selectNextFileToWrite() throws IOException {
         File[] files = getLogFiles();
 
-        if (files.length == 0 || files[files.length - 1].length() > fileSizeLimit) {
-            if (files.length >= fileCountLimit) {
-                for (int i = 0; i <= files.length - fileCountLimit; i++) {
-                    files[i].delete();
-                }
-            }
-            outputFile = new File(logDirectory, String.valueOf(getAndIncrementNextFileIndex()));
-        } else {
+        if (files.length > 0 && files[files.length - 1].length() == 0) {
             outputFile = files[files.length - 1];
+            return;
+        }
+        // Leaves room for a full segment.
+        long sizeBudget = (long) fileSizeLimit * (fileCountLimit - 1);
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+        int remaining = files.length;
+        for (File file : files) {
+            if (remaining < MAX_SEGMENT_COUNT && totalSize <= sizeBudget) {
+                break;
+            }
+            totalSize -= file.length();
+            file.delete();
+            remaining--;
         }
+        outputFile = new File(logDirectory, String.valueOf(getAndIncrementNextFileIndex()));
     }
 
     @NonNull
@@ -241,20 +282,23 @@ final class PersistentLogFileHandler {
                 throw new LogCorruptionException("entry prefix mismatch");
             }
             int dataLength = inputStream.readInt();
-            if (dataLength > fileSizeLimit) {
+            if (dataLength < 0 || dataLength > fileSizeLimit) {
                 throw new LogCorruptionException("data length over max size");
             }
             byte[] data = new byte[dataLength];
-            inputStream.read(data);
+            inputStream.readFully(data);
 
             byte[] postfix = new byte[ENTRY_POSTFIX.length];
-            inputStream.read(postfix);
+            inputStream.readFully(postfix);
             if (!Arrays.equals(postfix, ENTRY_POSTFIX)) {
                 throw new LogCorruptionException("entry postfix mismatch");
             }
             return data;
         } catch (EOFException e) {
+            // The end of a segment which wasn't finished.
             return null;
+        } catch (ZipException e) {
+            throw new LogCorruptionException("segment corrupted", e);
         }
     }
 
@@ -279,5 +323,63 @@ final class PersistentLogFileHandler {
         public LogCorruptionException(String message) {
             super(message);
         }
+
+        public LogCorruptionException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Reads the entries of the segments one at a time, so that only one entry and the buffers of
+     * one segment are held in memory. A corrupted segment is skipped from the point of corruption.
+     */
+    final class LogReader implements Closeable {
+        private final File[] files;
+        private int nextFileIndex;
+        @Nullable
+        private DataInputStream input;
+
+        private LogReader(File[] files) {
+            this.files = files;
+        }
+
+        /**
+         * Returns the next entry, or null if all entries have been read.
+         */
+        @WorkerThread
+        @Nullable
+        byte[] next() throws IOException {
+            while (true) {
+                if (input == null) {
+                    if (nextFileIndex == files.length) {
+                        return null;
+                    }
+                    File file = files[nextFileIndex++];
+                    input =
+                            new DataInputStream(
+                                    new BufferedInputStream(
+                                            new InflaterInputStream(new FileInputStream(file)),
+                                            STREAM_BUFFER_SIZE));
+                }
+                try {
+                    byte[] log = readLog(input);
+                    if (log != null) {
+                        return log;
+                    }
+                } catch (LogCorruptionException e) {
+                    LogUtil.e("PersistentLogFileHandler.LogReader.next", "corrupted segment", e);
+                }
+                input.close();
+                input = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (input != null) {
+                input.close();
+                input = null;
+            }
+        }
     }
 }
@@ -21,32 +21,40 @@ import android.os.Handler;
 import android.os.HandlerThread;
 
 import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.core.os.UserManagerCompat;
 
 import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.persistentlog.PersistentLogFileHandler.LogReader;
 import com.fissy.dialer.strictmode.StrictModeUtils;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
 
 /**
  * Logs data that is persisted across app termination and device reboot. The logs are stored as
- * rolling files in cache with a limit of {@link #LOG_FILE_SIZE_LIMIT} * {@link
- * #LOG_FILE_COUNT_LIMIT}. The log writing is batched and there is a {@link #FLUSH_DELAY_MILLIS}
- * delay before the logs are committed to disk to avoid excessive IO. If the app is terminated
- * before the logs are committed it will be lost. {@link
- *
+ * rolling deflate-compressed segments in cache with a limit of about {@link #LOG_FILE_SIZE_LIMIT} *
+ * {@link #LOG_FILE_COUNT_LIMIT} compressed bytes. The log writing is batched and there is a {@link
+ * #FLUSH_DELAY_MILLIS} delay before the logs are committed to disk to avoid excessive IO, or less
+ * once {@link #FLUSH_THRESHOLD} messages are waiting. If the app is terminated before the logs are
+ * committed it will be lost.
  *
+ * <p>Messages wait in a ring buffer of {@link #QUEUE_CAPACITY} messages. Logging never blocks the
+ * caller: if the buffer is full because the disk can't keep up, the oldest waiting message is
+ * dropped and counted as lost, see {@link #getStats()}.
  *
  * <p>{@link #logText(String, String)} should be used to log ad-hoc text logs. TODO(twyen): switch
  * to structured logging
@@ -57,18 +65,52 @@ public final class PersistentLogger {
     static final int LOG_FILE_SIZE_LIMIT = 64 * 1024;
     @VisibleForTesting
     static final int LOG_FILE_COUNT_LIMIT = 8;
+    @VisibleForTesting
+    static final int QUEUE_CAPACITY = 1024;
+    private static final int FLUSH_THRESHOLD = QUEUE_CAPACITY / 4;
     private static final int FLUSH_DELAY_MILLIS = 200;
-    private static final String LOG_FOLDER = "plain_text";
+    private static final String LOG_FOLDER = "deflate";
+    /**
+     * The folder of the uncompressed logs written by earlier versions.
+     */
+    private static final String LEGACY_LOG_FOLDER = "plain_text";
     private static final int MESSAGE_FLUSH = 1;
-    private static final LinkedBlockingQueue<byte[]> messageQueue = new LinkedBlockingQueue<>();
+
+    private static final Object queueLock = new Object();
+
+    @GuardedBy("queueLock")
+    private static final byte[][] messageQueue = new byte[QUEUE_CAPACITY][];
+
+    @GuardedBy("queueLock")
+    private static int queueHead;
+
+    @GuardedBy("queueLock")
+    private static int queueSize;
+
+    @GuardedBy("queueLock")
+    private static boolean flushScheduled;
+
+    @GuardedBy("queueLock")
+    private static long loggedMessageCount;
+
+    @GuardedBy("queueLock")
+    private static long droppedMessageCount;
+
+    // Only written on the logger thread, so they don't need to be atomic.
+    private static volatile long writtenMessageCount;
+    private static volatile long writtenByteCount;
+    private static volatile long failedMessageCount;
+
     private static PersistentLogFileHandler fileHandler;
     private static HandlerThread loggerThread;
     private static Handler loggerThreadHandler;
+    private static Context appContext;
 
     private PersistentLogger() {
     }
 
     public static void initialize(Context context) {
+        appContext = context.getApplicationContext();
         fileHandler =
                 new PersistentLogFileHandler(LOG_FOLDER, LOG_FILE_SIZE_LIMIT, LOG_FILE_COUNT_LIMIT);
         loggerThread = new HandlerThread("PersistentLogger");
@@ -78,24 +120,15 @@ public final class PersistentLogger {
                         loggerThread.getLooper(),
                         (message) -> {
                             if (message.what == MESSAGE_FLUSH) {
-                                if (messageQueue.isEmpty()) {
-                                    return true;
-                                }
-                                loggerThreadHandler.removeMessages(MESSAGE_FLUSH);
-                                List<byte[]> messages = new ArrayList<>();
-                                messageQueue.drainTo(messages);
-                                if (!UserManagerCompat.isUserUnlocked(context)) {
-                                    return true;
-                                }
-                                try {
-                                    fileHandler.writeLogs(messages);
-                                } catch (IOException e) {
-                                    LogUtil.e("PersistentLogger.MESSAGE_FLUSH", "error writing message", e);
-                                }
+                                flush();
                             }
                             return true;
                         });
-        loggerThreadHandler.post(() -> fileHandler.initialize(context));
+        loggerThreadHandler.post(
+                () -> {
+                    fileHandler.initialize(appContext);
+                    PersistentLogFileHandler.deleteSubfolder(appContext, LEGACY_LOG_FOLDER);
+                });
     }
 
     static HandlerThread getLoggerThread() {
@@ -110,8 +143,66 @@ public final class PersistentLogger {
     @VisibleForTesting
     @AnyThread
     static void log(byte[] data) {
-        messageQueue.add(data);
-        loggerThreadHandler.sendEmptyMessageDelayed(MESSAGE_FLUSH, FLUSH_DELAY_MILLIS);
+        boolean flushNow;
+        boolean scheduleFlush;
+        synchronized (queueLock) {
+            if (queueSize == QUEUE_CAPACITY) {
+                messageQueue[queueHead] = null;
+                queueHead = (queueHead + 1) % QUEUE_CAPACITY;
+                queueSize--;
+                droppedMessageCount++;
+            }
+            messageQueue[(queueHead + queueSize) % QUEUE_CAPACITY] = data;
+            queueSize++;
+            loggedMessageCount++;
+            flushNow = queueSize == FLUSH_THRESHOLD;
+            scheduleFlush = !flushScheduled;
+            flushScheduled = true;
+        }
+        if (flushNow) {
+            loggerThreadHandler.sendEmptyMessage(MESSAGE_FLUSH);
+        } else if (scheduleFlush) {
+            loggerThreadHandler.sendEmptyMessageDelayed(MESSAGE_FLUSH, FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Writes the waiting messages to disk. Must be called on the logger thread.
+     */
+    @WorkerThread
+    private static void flush() {
+        // Removed before draining, so that a flush requested by a message logged from now on isn't
+        // lost.
+        loggerThreadHandler.removeMessages(MESSAGE_FLUSH);
+        List<byte[]> messages;
+        synchronized (queueLock) {
+            flushScheduled = false;
+            if (queueSize == 0) {
+                return;
+            }
+            messages = new ArrayList<>(queueSize);
+            for (int i = 0; i < queueSize; i++) {
+                int index = (queueHead + i) % QUEUE_CAPACITY;
+                messages.add(messageQueue[index]);
+                messageQueue[index] = null;
+            }
+            queueHead = 0;
+            queueSize = 0;
+        }
+        if (!UserManagerCompat.isUserUnlocked(appContext)) {
+            failedMessageCount += messages.size();
+            return;
+        }
+        try {
+            fileHandler.writeLogs(messages);
+            writtenMessageCount += messages.size();
+            for (byte[] message : messages) {
+                writtenByteCount += message.length;
+            }
+        } catch (IOException e) {
+            failedMessageCount += messages.size();
+            LogUtil.e("PersistentLogger.flush", "error writing message", e);
+        }
     }
 
     @VisibleForTesting
@@ -123,38 +214,82 @@ public final class PersistentLogger {
         }
     }
 
+    /**
+     * Returns the counters of the messages logged since the process started, as a human readable
+     * string.
+     *
+     * <p>Messages are lost when they are dropped because the queue is full, or when they can't be
+     * written because the device is locked or the write failed.
+     */
+    @AnyThread
+    public static String getStats() {
+        long logged;
+        long dropped;
+        int queued;
+        synchronized (queueLock) {
+            logged = loggedMessageCount;
+            dropped = droppedMessageCount;
+            queued = queueSize;
+        }
+        return String.format(
+                Locale.US,
+                "logged: %d, written: %d (%d bytes), queued: %d, dropped: %d, failed: %d",
+                logged,
+                writtenMessageCount,
+                writtenByteCount,
+                queued,
+                dropped,
+                failedMessageCount);
+    }
+
     /**
      * Dump the log as human readable string. Blocks until the dump is finished.
      */
     @NonNull
     @WorkerThread
     public static String dumpLogToString() {
-        Assert.isWorkerThread();
-        DumpStringRunnable dumpStringRunnable = new DumpStringRunnable();
-        loggerThreadHandler.post(dumpStringRunnable);
+        StringWriter writer = new StringWriter();
         try {
-            return dumpStringRunnable.get();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            dumpLog(writer, null);
+        } catch (IOException e) {
             return "Cannot dump logText: " + e;
         }
+        return writer.toString();
     }
 
-    @NonNull
+    /**
+     * Writes the log to {@code writer} as human readable text, one message per line, reading one
+     * message at a time. Messages waiting to be written are flushed first. Blocks until the dump is
+     * finished.
+     *
+     * @param filter if not null, only messages for which it returns true are written
+     */
     @WorkerThread
-    private static String dumpLogToStringInternal() {
-        StringBuilder result = new StringBuilder();
-        List<byte[]> logs;
+    public static void dumpLog(Writer writer, @Nullable Predicate<String> filter)
+            throws IOException {
+        Assert.isWorkerThread();
+        DumpRunnable dumpRunnable = new DumpRunnable(writer, filter);
+        loggerThreadHandler.post(dumpRunnable);
         try {
-            logs = readLogs();
-        } catch (IOException e) {
-            return "Cannot dump logText: " + e;
+            dumpRunnable.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Cannot dump logText", e);
         }
+    }
 
-        for (byte[] log : logs) {
-            result.append(new String(log, StandardCharsets.UTF_8)).append("\n");
+    @WorkerThread
+    private static void dumpLogInternal(Writer writer, @Nullable Predicate<String> filter)
+            throws IOException {
+        flush();
+        try (LogReader reader = fileHandler.openReader()) {
+            for (byte[] log = reader.next(); log != null; log = reader.next()) {
+                String text = new String(log, StandardCharsets.UTF_8);
+                if (filter == null || filter.test(text)) {
+                    writer.append(text).append('\n');
+                }
+            }
         }
-        return result.toString();
     }
 
     @NonNull
@@ -171,19 +306,34 @@ public final class PersistentLogger {
                 .getBytes(StandardCharsets.UTF_8);
     }
 
-    private static class DumpStringRunnable implements Runnable {
+    private static class DumpRunnable implements Runnable {
         private final CountDownLatch latch = new CountDownLatch(1);
-        private String result;
+        private final Writer writer;
+        @Nullable
+        private final Predicate<String> filter;
+        private IOException exception;
+
+        DumpRunnable(Writer writer, @Nullable Predicate<String> filter) {
+            this.writer = writer;
+            this.filter = filter;
+        }
 
         @Override
         public void run() {
-            result = dumpLogToStringInternal();
-            latch.countDown();
+            try {
+                dumpLogInternal(writer, filter);
+            } catch (IOException e) {
+                exception = e;
+            } finally {
+                latch.countDown();
+            }
         }
 
-        public String get() throws InterruptedException {
+        public void await() throws InterruptedException, IOException {
             latch.await();
-            return result;
+            if (exception != null) {
+                throw exception;
+            }
         }
     }
 }
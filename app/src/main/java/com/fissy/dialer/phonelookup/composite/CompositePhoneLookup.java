@@ -21,13 +21,17 @@ import android.telecom.Call;
 
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.fissy.dialer.DialerPhoneNumber;
 import com.fissy.dialer.calllog.CallLogState;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.Annotations.LightweightExecutor;
+import com.fissy.dialer.common.concurrent.Annotations.NonUiSerial;
 import com.fissy.dialer.common.concurrent.DialerFutures;
+import com.fissy.dialer.common.concurrent.ThreadUtil;
+import com.fissy.dialer.configprovider.ConfigProvider;
 import com.fissy.dialer.inject.ApplicationContext;
 import com.fissy.dialer.metrics.FutureTimer;
 import com.fissy.dialer.metrics.FutureTimer.LogCatMode;
@@ -35,19 +39,25 @@ import com.fissy.dialer.metrics.Metrics;
 import com.fissy.dialer.phonelookup.PhoneLookup;
 import com.fissy.dialer.phonelookup.PhoneLookupInfo;
 import com.fissy.dialer.phonelookup.PhoneLookupInfo.Builder;
+import com.fissy.dialer.phonelookup.cp2.Cp2DefaultDirectoryPhoneLookup;
+import com.fissy.dialer.phonelookup.emergency.EmergencyPhoneLookup;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -59,11 +69,23 @@ import javax.inject.Inject;
  */
 public final class CompositePhoneLookup {
 
+    /**
+     * Config flag prefix for the deadline (in ms) of a sub-lookup in {@link #lookup(Call,
+     * Listener)}. The flag is the prefix followed by {@link PhoneLookup#getLoggingName()}.
+     */
+    @VisibleForTesting
+    static final String LOOKUP_FOR_CALL_DEADLINE_MILLIS_PREFIX =
+            "composite_phone_lookup_for_call_deadline_millis_";
+
+    private static final long DEFAULT_LOOKUP_FOR_CALL_DEADLINE_MILLIS = 3000;
+
     private final Context appContext;
     private final ImmutableList<PhoneLookup> phoneLookups;
     private final FutureTimer futureTimer;
     private final CallLogState callLogState;
+    private final ConfigProvider configProvider;
     private final ListeningExecutorService lightweightExecutorService;
+    private final ScheduledExecutorService scheduledExecutorService;
 
     @VisibleForTesting
     @Inject
@@ -72,12 +94,16 @@ public final class CompositePhoneLookup {
             ImmutableList<PhoneLookup> phoneLookups,
             FutureTimer futureTimer,
             CallLogState callLogState,
-            @LightweightExecutor ListeningExecutorService lightweightExecutorService) {
+            ConfigProvider configProvider,
+            @LightweightExecutor ListeningExecutorService lightweightExecutorService,
+            @NonUiSerial ScheduledExecutorService scheduledExecutorService) {
         this.appContext = appContext;
         this.phoneLookups = phoneLookups;
         this.futureTimer = futureTimer;
         this.callLogState = callLogState;
+        this.configProvider = configProvider;
         this.lightweightExecutorService = lightweightExecutorService;
+        this.scheduledExecutorService = scheduledExecutorService;
     }
 
     private static String getMostRecentInfoEventName(String loggingName, boolean isBuilt) {
@@ -101,11 +127,10 @@ public final class CompositePhoneLookup {
      * number associated with the provided call.
      *
      * <p>Note: If any of the dependent lookups fails, the returned future will also fail. If any of
-     * the dependent lookups does not complete, the returned future will also not complete.
+     * the dependent lookups does not complete, the returned future will also not complete. See
+     * {@link #lookup(Call, Listener)} for a lookup which is not blocked on the slowest one.
      */
     public ListenableFuture<PhoneLookupInfo> lookup(Call call) {
-        // TODO(zachh): Add short-circuiting logic so that this call is not blocked on low-priority
-        // lookups finishing when a higher-priority one has already finished.
         List<ListenableFuture<?>> futures = new ArrayList<>();
         for (PhoneLookup<?> phoneLookup : phoneLookups) {
             ListenableFuture<?> lookupFuture = phoneLookup.lookup(appContext, call);
@@ -120,6 +145,62 @@ public final class CompositePhoneLookup {
         return combinedFuture;
     }
 
+    /**
+     * Delegates to a set of dependent lookups to build a {@link PhoneLookupInfo} for the number
+     * associated with the provided call, which is passed to the provided listener as it is refined.
+     *
+     * <p>Info from the high priority lookups (see {@link #isHighPriority(PhoneLookup)}) is passed
+     * on as soon as it arrives. Info from the other lookups is held back until every high priority
+     * lookup has completed, so that a name from a lower priority source is never shown and then
+     * replaced. A dependent lookup which fails or misses its deadline is left out, rather than
+     * failing the whole lookup.
+     *
+     * @return a future which completes with the info passed to the last call to the listener.
+     */
+    public ListenableFuture<PhoneLookupInfo> lookup(Call call, Listener listener) {
+        List<ListenableFuture<?>> futures = new ArrayList<>();
+        for (PhoneLookup<?> phoneLookup : phoneLookups) {
+            ListenableFuture<?> lookupFuture = phoneLookup.lookup(appContext, call);
+            String eventName =
+                    String.format(Metrics.LOOKUP_FOR_CALL_TEMPLATE, phoneLookup.getLoggingName());
+            futureTimer.applyTiming(lookupFuture, eventName);
+            futures.add(withDeadline(phoneLookup, lookupFuture));
+        }
+        IncrementalLookup incrementalLookup = new IncrementalLookup(listener);
+        incrementalLookup.start(futures);
+        futureTimer.applyTiming(
+                incrementalLookup.firstInfoFuture,
+                String.format(Metrics.LOOKUP_FOR_CALL_FIRST_INFO_TEMPLATE, getLoggingName()));
+        futureTimer.applyTiming(
+                incrementalLookup.completeInfoFuture,
+                String.format(Metrics.LOOKUP_FOR_CALL_TEMPLATE, getLoggingName()));
+        return incrementalLookup.completeInfoFuture;
+    }
+
+    /**
+     * Returns true if the info from the provided lookup identifies the caller in preference to the
+     * info from any other lookup: a contact in the default directory, or an emergency number.
+     */
+    private static boolean isHighPriority(PhoneLookup<?> phoneLookup) {
+        return phoneLookup instanceof Cp2DefaultDirectoryPhoneLookup
+                || phoneLookup instanceof EmergencyPhoneLookup;
+    }
+
+    private ListenableFuture<?> withDeadline(
+            PhoneLookup<?> phoneLookup, ListenableFuture<?> lookupFuture) {
+        long deadlineMillis =
+                configProvider.getLong(
+                        LOOKUP_FOR_CALL_DEADLINE_MILLIS_PREFIX + phoneLookup.getLoggingName(),
+                        DEFAULT_LOOKUP_FOR_CALL_DEADLINE_MILLIS);
+        // Long.MAX_VALUE, 0 and negative values disable the deadline. See
+        // Cp2ExtendedDirectoryPhoneLookup#lookup for why they must not be passed to withTimeout.
+        if (deadlineMillis == Long.MAX_VALUE || deadlineMillis <= 0) {
+            return lookupFuture;
+        }
+        return Futures.withTimeout(
+                lookupFuture, deadlineMillis, TimeUnit.MILLISECONDS, scheduledExecutorService);
+    }
+
     /**
      * Delegates to a set of dependent lookups to build a complete {@link PhoneLookupInfo} for the
      * provided number.
@@ -314,4 +395,104 @@ public final class CompositePhoneLookup {
     private String getLoggingName() {
         return "CompositePhoneLookup";
     }
+
+    /**
+     * Receives the {@link PhoneLookupInfo} built by {@link #lookup(Call, Listener)}.
+     */
+    public interface Listener {
+
+        /**
+         * Called with the info from the dependent lookups which have completed so far.
+         *
+         * @param isComplete whether every dependent lookup has completed, so that this is the last
+         *     call
+         */
+        @MainThread
+        void onPhoneLookupInfo(PhoneLookupInfo phoneLookupInfo, boolean isComplete);
+    }
+
+    /**
+     * Merges the info from the dependent lookups of {@link #lookup(Call, Listener)} as they
+     * complete.
+     */
+    private final class IncrementalLookup {
+
+        private final Listener listener;
+        private final PhoneLookupInfo.Builder mergedInfo = PhoneLookupInfo.newBuilder();
+        private final SettableFuture<PhoneLookupInfo> firstInfoFuture = SettableFuture.create();
+        private final SettableFuture<PhoneLookupInfo> completeInfoFuture = SettableFuture.create();
+
+        private int pendingLookups;
+        private int pendingHighPriorityLookups;
+
+        IncrementalLookup(Listener listener) {
+            this.listener = listener;
+        }
+
+        synchronized void start(List<ListenableFuture<?>> futures) {
+            pendingLookups = futures.size();
+            for (PhoneLookup<?> phoneLookup : phoneLookups) {
+                if (isHighPriority(phoneLookup)) {
+                    pendingHighPriorityLookups++;
+                }
+            }
+            if (futures.isEmpty()) {
+                publish(/* isComplete = */ true);
+                return;
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                PhoneLookup<?> phoneLookup = phoneLookups.get(i);
+                Futures.addCallback(
+                        futures.get(i),
+                        new FutureCallback<Object>() {
+                            @Override
+                            public void onSuccess(@Nullable Object subMessage) {
+                                onLookupDone(phoneLookup, subMessage);
+                            }
+
+                            @Override
+                            public void onFailure(@NonNull Throwable throwable) {
+                                LogUtil.w(
+                                        "CompositePhoneLookup.IncrementalLookup.onFailure",
+                                        "%s failed or missed its deadline: %s",
+                                        phoneLookup.getLoggingName(),
+                                        throwable);
+                                onLookupDone(phoneLookup, /* subMessage = */ null);
+                            }
+                        },
+                        lightweightExecutorService);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized void onLookupDone(
+                PhoneLookup phoneLookup, @Nullable Object subMessage) {
+            if (subMessage != null) {
+                phoneLookup.setSubMessage(mergedInfo, subMessage);
+            }
+            pendingLookups--;
+            boolean isHighPriority = isHighPriority(phoneLookup);
+            if (isHighPriority) {
+                pendingHighPriorityLookups--;
+            }
+
+            boolean isComplete = pendingLookups == 0;
+            // The completion of a high priority lookup may also release info held back before.
+            boolean canPublish = isHighPriority || pendingHighPriorityLookups == 0;
+            if (isComplete || (canPublish && (subMessage != null || isHighPriority))) {
+                publish(isComplete);
+            }
+        }
+
+        private void publish(boolean isComplete) {
+            PhoneLookupInfo phoneLookupInfo = mergedInfo.build();
+            firstInfoFuture.set(phoneLookupInfo);
+            if (isComplete) {
+                completeInfoFuture.set(phoneLookupInfo);
+            }
+            // Posted while holding the lock, so the listener receives the info in order.
+            ThreadUtil.postOnUiThread(
+                    () -> listener.onPhoneLookupInfo(phoneLookupInfo, isComplete));
+        }
+    }
 }
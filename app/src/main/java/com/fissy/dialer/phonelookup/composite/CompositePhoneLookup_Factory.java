@@ -3,11 +3,14 @@ package com.fissy.dialer.phonelookup.composite;
 import android.content.Context;
 
 import com.fissy.dialer.calllog.CallLogState;
+import com.fissy.dialer.configprovider.ConfigProvider;
 import com.fissy.dialer.metrics.FutureTimer;
 import com.fissy.dialer.phonelookup.PhoneLookup;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
+import java.util.concurrent.ScheduledExecutorService;
+
 import javax.annotation.Generated;
 import javax.inject.Provider;
 
@@ -26,14 +29,20 @@ public final class CompositePhoneLookup_Factory implements Factory<CompositePhon
 
     private final Provider<CallLogState> callLogStateProvider;
 
+    private final Provider<ConfigProvider> configProvider;
+
     private final Provider<ListeningExecutorService> lightweightExecutorServiceProvider;
 
+    private final Provider<ScheduledExecutorService> scheduledExecutorServiceProvider;
+
     public CompositePhoneLookup_Factory(
             Provider<Context> appContextProvider,
             Provider<ImmutableList<PhoneLookup>> phoneLookupsProvider,
             Provider<FutureTimer> futureTimerProvider,
             Provider<CallLogState> callLogStateProvider,
-            Provider<ListeningExecutorService> lightweightExecutorServiceProvider) {
+            Provider<ConfigProvider> configProvider,
+            Provider<ListeningExecutorService> lightweightExecutorServiceProvider,
+            Provider<ScheduledExecutorService> scheduledExecutorServiceProvider) {
         assert appContextProvider != null;
         this.appContextProvider = appContextProvider;
         assert phoneLookupsProvider != null;
@@ -42,8 +51,12 @@ public final class CompositePhoneLookup_Factory implements Factory<CompositePhon
         this.futureTimerProvider = futureTimerProvider;
         assert callLogStateProvider != null;
         this.callLogStateProvider = callLogStateProvider;
+        assert configProvider != null;
+        this.configProvider = configProvider;
         assert lightweightExecutorServiceProvider != null;
         this.lightweightExecutorServiceProvider = lightweightExecutorServiceProvider;
+        assert scheduledExecutorServiceProvider != null;
+        this.scheduledExecutorServiceProvider = scheduledExecutorServiceProvider;
     }
 
     public static Factory<CompositePhoneLookup> create(
@@ -51,13 +64,17 @@ public final class CompositePhoneLookup_Factory implements Factory<CompositePhon
             Provider<ImmutableList<PhoneLookup>> phoneLookupsProvider,
             Provider<FutureTimer> futureTimerProvider,
             Provider<CallLogState> callLogStateProvider,
-            Provider<ListeningExecutorService> lightweightExecutorServiceProvider) {
+            Provider<ConfigProvider> configProvider,
+            Provider<ListeningExecutorService> lightweightExecutorServiceProvider,
+            Provider<ScheduledExecutorService> scheduledExecutorServiceProvider) {
         return new CompositePhoneLookup_Factory(
                 appContextProvider,
                 phoneLookupsProvider,
                 futureTimerProvider,
                 callLogStateProvider,
-                lightweightExecutorServiceProvider);
+                configProvider,
+                lightweightExecutorServiceProvider,
+                scheduledExecutorServiceProvider);
     }
 
     @Override
@@ -67,6 +84,8 @@ public final class CompositePhoneLookup_Factory implements Factory<CompositePhon
                 phoneLookupsProvider.get(),
                 futureTimerProvider.get(),
                 callLogStateProvider.get(),
-                lightweightExecutorServiceProvider.get());
+                configProvider.get(),
+                lightweightExecutorServiceProvider.get(),
+                scheduledExecutorServiceProvider.get());
     }
 }
@@ -28,6 +28,7 @@ import android.provider.ContactsContract.Directory;
 import android.text.TextUtils;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.collection.ArrayMap;
 import androidx.collection.ArraySet;
 
@@ -50,7 +51,6 @@ import com.fissy.dialer.util.PermissionsUtil;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -75,6 +75,11 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
     private static final String PREF_LAST_TIMESTAMP_PROCESSED =
             "cp2DefaultDirectoryPhoneLookupLastTimestampProcessed";
 
+    /**
+     * The largest number of IDs queried at once, well below SQLite's limit of 999 arguments.
+     */
+    private static final int MAX_SELECTION_ARGS = 500;
+
     private final Context appContext;
     private final SharedPreferences sharedPreferences;
     private final ListeningExecutorService backgroundExecutorService;
@@ -85,6 +90,11 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
     @Nullable
     private Long currentLastTimestampProcessed;
 
+    // The last index built, which isDirty and getMostRecentInfo share until contacts change.
+    @Nullable
+    private Cp2PhoneNumberIndex phoneNumberIndex;
+    private long phoneNumberIndexBuildTimeMillis;
+
     @Inject
     Cp2DefaultDirectoryPhoneLookup(
             @ApplicationContext Context appContext,
@@ -207,19 +217,6 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                     phoneNumbers, phoneLookupInfoIsDirtyFn);
         }
 
-        PartitionedNumbers partitionedNumbers = new PartitionedNumbers(phoneNumbers);
-        if (partitionedNumbers.invalidNumbers().size() > getMaxSupportedInvalidNumbers()) {
-            // If there are N invalid numbers, we can't determine determine dirtiness without running N
-            // queries; since running this many queries is not feasible for the (lightweight) isDirty
-            // check, simply return true. The expectation is that this should rarely be the case as the
-            // vast majority of numbers in call logs should be valid.
-            LogUtil.v(
-                    "Cp2DefaultDirectoryPhoneLookup.isDirty",
-                    "returning true because too many invalid numbers (%d)",
-                    partitionedNumbers.invalidNumbers().size());
-            return Futures.immediateFuture(true);
-        }
-
         ListenableFuture<Long> lastModifiedFuture =
                 backgroundExecutorService.submit(
                         () -> sharedPreferences.getLong(PREF_LAST_TIMESTAMP_PROCESSED, 0L));
@@ -302,12 +299,19 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
         queryFutures.add(
                 queryPhoneTableForContactIdsBasedOnE164(partitionedNumbers.validE164Numbers()));
 
-        // Then run a separate query for each invalid number. Separate queries are done to accomplish
-        // loose matching which couldn't be accomplished with a batch query.
-        Assert.checkState(
-                partitionedNumbers.invalidNumbers().size() <= getMaxSupportedInvalidNumbers());
-        for (String invalidNumber : partitionedNumbers.invalidNumbers()) {
-            queryFutures.add(queryPhoneLookupTableForContactIdsBasedOnRawNumber(invalidNumber));
+        // Then loosely match the invalid numbers, which can't be accomplished with a batch query of
+        // the PHONE table. A few of them are matched with a separate query each, but when there are
+        // many, it is cheaper to match all of them against an index of the PHONE table.
+        if (partitionedNumbers.invalidNumbers().size() > getMaxSupportedInvalidNumbers()) {
+            queryFutures.add(
+                    backgroundExecutorService.submit(
+                            () ->
+                                    getPhoneNumberIndex()
+                                            .findContactIds(partitionedNumbers.invalidNumbers())));
+        } else {
+            for (String invalidNumber : partitionedNumbers.invalidNumbers()) {
+                queryFutures.add(queryPhoneLookupTableForContactIdsBasedOnRawNumber(invalidNumber));
+            }
         }
         return Futures.transform(
                 Futures.allAsList(queryFutures),
@@ -458,48 +462,71 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
     }
 
     private ListenableFuture<Boolean> noContactsModifiedSince(long lastModified) {
-        return backgroundExecutorService.submit(
-                () -> {
-                    try (Cursor cursor =
-                                 appContext
-                                         .getContentResolver()
-                                         .query(
-                                                 Contacts.CONTENT_URI,
-                                                 new String[]{Contacts._ID},
-                                                 Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
-                                                 new String[]{Long.toString(lastModified)},
-                                                 Contacts._ID + " limit 1")) {
-                        if (cursor == null) {
-                            LogUtil.w("Cp2DefaultDirectoryPhoneLookup.noContactsModifiedSince", "null cursor");
-                            return false;
-                        }
-                        return cursor.getCount() == 0;
-                    }
-                });
+        return backgroundExecutorService.submit(() -> noContactsModifiedSinceInternal(lastModified));
+    }
+
+    @WorkerThread
+    private boolean noContactsModifiedSinceInternal(long lastModified) {
+        try (Cursor cursor =
+                     appContext
+                             .getContentResolver()
+                             .query(
+                                     Contacts.CONTENT_URI,
+                                     new String[]{Contacts._ID},
+                                     Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
+                                     new String[]{Long.toString(lastModified)},
+                                     Contacts._ID + " limit 1")) {
+            if (cursor == null) {
+                LogUtil.w("Cp2DefaultDirectoryPhoneLookup.noContactsModifiedSince", "null cursor");
+                return false;
+            }
+            return cursor.getCount() == 0;
+        }
     }
 
     /**
      * Returns true if any contacts were deleted after {@code lastModified}.
      */
     private ListenableFuture<Boolean> anyContactsDeletedSince(long lastModified) {
-        return backgroundExecutorService.submit(
-                () -> {
-                    try (Cursor cursor =
-                                 appContext
-                                         .getContentResolver()
-                                         .query(
-                                                 DeletedContacts.CONTENT_URI,
-                                                 new String[]{DeletedContacts.CONTACT_DELETED_TIMESTAMP},
-                                                 DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
-                                                 new String[]{Long.toString(lastModified)},
-                                                 DeletedContacts.CONTACT_DELETED_TIMESTAMP + " limit 1")) {
-                        if (cursor == null) {
-                            LogUtil.w("Cp2DefaultDirectoryPhoneLookup.anyContactsDeletedSince", "null cursor");
-                            return false;
-                        }
-                        return cursor.getCount() > 0;
-                    }
-                });
+        return backgroundExecutorService.submit(() -> anyContactsDeletedSinceInternal(lastModified));
+    }
+
+    @WorkerThread
+    private boolean anyContactsDeletedSinceInternal(long lastModified) {
+        try (Cursor cursor =
+                     appContext
+                             .getContentResolver()
+                             .query(
+                                     DeletedContacts.CONTENT_URI,
+                                     new String[]{DeletedContacts.CONTACT_DELETED_TIMESTAMP},
+                                     DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+                                     new String[]{Long.toString(lastModified)},
+                                     DeletedContacts.CONTACT_DELETED_TIMESTAMP + " limit 1")) {
+            if (cursor == null) {
+                LogUtil.w("Cp2DefaultDirectoryPhoneLookup.anyContactsDeletedSince", "null cursor");
+                return false;
+            }
+            return cursor.getCount() > 0;
+        }
+    }
+
+    /**
+     * Returns an index of the PHONE table, building it again only if a contact was modified or
+     * deleted since it was last built, so that a refresh reads the whole table at most once.
+     */
+    @WorkerThread
+    private synchronized Cp2PhoneNumberIndex getPhoneNumberIndex() {
+        Assert.isWorkerThread();
+        if (phoneNumberIndex != null
+                && noContactsModifiedSinceInternal(phoneNumberIndexBuildTimeMillis)
+                && !anyContactsDeletedSinceInternal(phoneNumberIndexBuildTimeMillis)) {
+            return phoneNumberIndex;
+        }
+        // Contacts modified while the table is read are newer than this, so they rebuild it again.
+        long buildTimeMillis = System.currentTimeMillis();
+        phoneNumberIndex = Cp2PhoneNumberIndex.build(appContext);
+        phoneNumberIndexBuildTimeMillis = buildTimeMillis;
+        return phoneNumberIndex;
     }
 
     @Override
@@ -537,15 +564,7 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                             deletedPhoneNumbersFuture,
                             deletedPhoneNumbers -> {
 
-                                // If there are too many invalid numbers, just defer the work to render time.
-                                ArraySet<DialerPhoneNumber> unprocessableNumbers =
-                                        findUnprocessableNumbers(existingInfoMap);
-                                Map<DialerPhoneNumber, Cp2Info> existingInfoMapToProcess = existingInfoMap;
-                                if (!unprocessableNumbers.isEmpty()) {
-                                    existingInfoMapToProcess =
-                                            Maps.filterKeys(
-                                                    existingInfoMap, number -> !unprocessableNumbers.contains(number));
-                                }
+                                logInvalidNumberCount(existingInfoMap);
 
                                 // For each DialerPhoneNumber that was associated with a contact or added to a
                                 // contact, build a map of those DialerPhoneNumbers to a set Cp2ContactInfos, where
@@ -553,7 +572,7 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                                 ListenableFuture<Map<DialerPhoneNumber, Set<Cp2ContactInfo>>>
                                         updatedContactsFuture =
                                         buildMapForUpdatedOrAddedContacts(
-                                                existingInfoMapToProcess, lastModified, deletedPhoneNumbers);
+                                                existingInfoMap, lastModified, deletedPhoneNumbers);
 
                                 return Futures.transform(
                                         updatedContactsFuture,
@@ -580,21 +599,13 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                                                     // information.
                                                 } else if (deletedPhoneNumbers.contains(dialerPhoneNumber)) {
                                                     infoBuilder.clear();
-                                                } else if (unprocessableNumbers.contains(dialerPhoneNumber)) {
-                                                    // Don't ever set the "incomplete" bit for numbers which are empty; this
-                                                    // causes unnecessary render time work because there will never be contact
-                                                    // information for an empty number. It is also required to pass the
-                                                    // assertion check in the new voicemail fragment, which verifies that no
-                                                    // voicemails rows are considered "incomplete" (the voicemail fragment
-                                                    // does not have the ability to fetch information at render time).
-                                                    if (!dialerPhoneNumber.getNormalizedNumber().isEmpty()) {
-                                                        // Don't clear the existing info when the number is unprocessable. It's
-                                                        // likely that the existing info is up-to-date so keep it in place so
-                                                        // that the UI doesn't pop when the query is completed at display time.
-                                                        infoBuilder.setIsIncomplete(true);
-                                                    }
                                                 }
 
+                                                // Every number is processed now, so clear the "incomplete" bit set
+                                                // by earlier versions, which deferred the lookup of numbers to render
+                                                // time when there were too many invalid numbers.
+                                                infoBuilder.clearIsIncomplete();
+
                                                 // If the DialerPhoneNumber didn't change, add the unchanged existing info.
                                                 newInfoMapBuilder.put(dialerPhoneNumber, infoBuilder.build());
                                             }
@@ -607,20 +618,10 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                 lightweightExecutorService);
     }
 
-    private ArraySet<DialerPhoneNumber> findUnprocessableNumbers(
-            ImmutableMap<DialerPhoneNumber, Cp2Info> existingInfoMap) {
-        ArraySet<DialerPhoneNumber> unprocessableNumbers = new ArraySet<>();
+    private void logInvalidNumberCount(ImmutableMap<DialerPhoneNumber, Cp2Info> existingInfoMap) {
         PartitionedNumbers partitionedNumbers = new PartitionedNumbers(existingInfoMap.keySet());
-
-        int invalidNumberCount = partitionedNumbers.invalidNumbers().size();
-        Logger.get(appContext).logAnnotatedCallLogMetrics(invalidNumberCount);
-
-        if (invalidNumberCount > getMaxSupportedInvalidNumbers()) {
-            for (String invalidNumber : partitionedNumbers.invalidNumbers()) {
-                unprocessableNumbers.addAll(partitionedNumbers.dialerPhoneNumbersForInvalid(invalidNumber));
-            }
-        }
-        return unprocessableNumbers;
+        Logger.get(appContext)
+                .logAnnotatedCallLogMetrics(partitionedNumbers.invalidNumbers().size());
     }
 
     @Override
@@ -722,6 +723,9 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
         return backgroundExecutorService.submit(
                 () -> {
                     sharedPreferences.edit().remove(PREF_LAST_TIMESTAMP_PROCESSED).apply();
+                    synchronized (this) {
+                        phoneNumberIndex = null;
+                    }
                     return null;
                 });
     }
@@ -757,8 +761,9 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                     }
 
                     // Divide the numbers into those that are valid and those that are not. Issue a single
-                    // batch query for the valid numbers against the PHONE table, and in parallel issue
-                    // individual queries against PHONE_LOOKUP for each invalid number.
+                    // batch query for the valid numbers against the PHONE table, and in parallel loosely
+                    // match the invalid numbers, either with individual queries against PHONE_LOOKUP or,
+                    // when there are many of them, against an index of the PHONE table.
                     // TODO(zachh): These queries are inefficient without a lastModified column to filter on.
                     PartitionedNumbers partitionedNumbers =
                             new PartitionedNumbers(ImmutableSet.copyOf(updatedNumbers));
@@ -766,19 +771,18 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                     ListenableFuture<Map<String, Set<Cp2ContactInfo>>> validNumbersFuture =
                             batchQueryForValidNumbers(partitionedNumbers.validE164Numbers());
 
-                    List<ListenableFuture<Set<Cp2ContactInfo>>> invalidNumbersFuturesList = new ArrayList<>();
-                    for (String invalidNumber : partitionedNumbers.invalidNumbers()) {
-                        invalidNumbersFuturesList.add(individualQueryForInvalidNumber(invalidNumber));
-                    }
-
-                    ListenableFuture<List<Set<Cp2ContactInfo>>> invalidNumbersFuture =
-                            Futures.allAsList(invalidNumbersFuturesList);
+                    ListenableFuture<Map<String, Set<Cp2ContactInfo>>> invalidNumbersFuture =
+                            partitionedNumbers.invalidNumbers().size() > getMaxSupportedInvalidNumbers()
+                                    ? batchQueryForInvalidNumbers(partitionedNumbers.invalidNumbers())
+                                    : individualQueriesForInvalidNumbers(
+                                            partitionedNumbers.invalidNumbers());
 
                     Callable<Map<DialerPhoneNumber, Set<Cp2ContactInfo>>> computeMap =
                             () -> {
                                 // These get() calls are safe because we are using whenAllSucceed below.
                                 Map<String, Set<Cp2ContactInfo>> validNumbersResult = validNumbersFuture.get();
-                                List<Set<Cp2ContactInfo>> invalidNumbersResult = invalidNumbersFuture.get();
+                                Map<String, Set<Cp2ContactInfo>> invalidNumbersResult =
+                                        invalidNumbersFuture.get();
 
                                 Map<DialerPhoneNumber, Set<Cp2ContactInfo>> map = new ArrayMap<>();
 
@@ -799,9 +803,11 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                                 }
 
                                 // Next update the map with the invalid results.
-                                int i = 0;
                                 for (String invalidNumber : partitionedNumbers.invalidNumbers()) {
-                                    Set<Cp2ContactInfo> cp2Infos = invalidNumbersResult.get(i++);
+                                    Set<Cp2ContactInfo> cp2Infos = invalidNumbersResult.get(invalidNumber);
+                                    if (cp2Infos == null) {
+                                        cp2Infos = ImmutableSet.of();
+                                    }
                                     Set<DialerPhoneNumber> dialerPhoneNumbers =
                                             partitionedNumbers.dialerPhoneNumbersForInvalid(invalidNumber);
 
@@ -862,6 +868,96 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
                 });
     }
 
+    private ListenableFuture<Map<String, Set<Cp2ContactInfo>>> individualQueriesForInvalidNumbers(
+            Set<String> invalidNumbers) {
+        List<String> invalidNumbersList = new ArrayList<>(invalidNumbers);
+        List<ListenableFuture<Set<Cp2ContactInfo>>> futures = new ArrayList<>();
+        for (String invalidNumber : invalidNumbersList) {
+            futures.add(individualQueryForInvalidNumber(invalidNumber));
+        }
+        return Futures.transform(
+                Futures.allAsList(futures),
+                results -> {
+                    Map<String, Set<Cp2ContactInfo>> cp2ContactInfosByNumber = new ArrayMap<>();
+                    for (int i = 0; i < invalidNumbersList.size(); i++) {
+                        cp2ContactInfosByNumber.put(invalidNumbersList.get(i), results.get(i));
+                    }
+                    return cp2ContactInfosByNumber;
+                },
+                lightweightExecutorService);
+    }
+
+    /**
+     * Loosely matches all of {@code invalidNumbers} with one read of the PHONE table to build a
+     * {@link Cp2PhoneNumberIndex}, and one batch query for the matched rows, instead of a
+     * PHONE_LOOKUP query per number.
+     */
+    private ListenableFuture<Map<String, Set<Cp2ContactInfo>>> batchQueryForInvalidNumbers(
+            Set<String> invalidNumbers) {
+        return backgroundExecutorService.submit(
+                () -> {
+                    Map<String, Set<Long>> dataIdsByNumber =
+                            getPhoneNumberIndex().findDataIds(invalidNumbers);
+                    Set<Long> dataIds = new ArraySet<>();
+                    for (Set<Long> ids : dataIdsByNumber.values()) {
+                        dataIds.addAll(ids);
+                    }
+                    Map<Long, Cp2ContactInfo> cp2ContactInfosByDataId =
+                            queryPhoneTableBasedOnDataIds(dataIds);
+
+                    Map<String, Set<Cp2ContactInfo>> cp2ContactInfosByNumber = new ArrayMap<>();
+                    for (Entry<String, Set<Long>> entry : dataIdsByNumber.entrySet()) {
+                        Set<Cp2ContactInfo> cp2ContactInfos = new ArraySet<>();
+                        for (long dataId : entry.getValue()) {
+                            // The row may have been deleted since the index was built.
+                            Cp2ContactInfo cp2ContactInfo = cp2ContactInfosByDataId.get(dataId);
+                            if (cp2ContactInfo != null) {
+                                cp2ContactInfos.add(cp2ContactInfo);
+                            }
+                        }
+                        cp2ContactInfosByNumber.put(entry.getKey(), cp2ContactInfos);
+                    }
+                    LogUtil.v(
+                            "Cp2DefaultDirectoryPhoneLookup.batchQueryForInvalidNumbers",
+                            "matched %d of %d invalid numbers",
+                            dataIdsByNumber.size(),
+                            invalidNumbers.size());
+                    return cp2ContactInfosByNumber;
+                });
+    }
+
+    private Map<Long, Cp2ContactInfo> queryPhoneTableBasedOnDataIds(Set<Long> dataIds) {
+        Map<Long, Cp2ContactInfo> cp2ContactInfosByDataId = new ArrayMap<>();
+        for (List<Long> batch : Iterables.partition(dataIds, MAX_SELECTION_ARGS)) {
+            String[] args = new String[batch.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = Long.toString(batch.get(i));
+            }
+            try (Cursor cursor =
+                         appContext
+                                 .getContentResolver()
+                                 .query(
+                                         Phone.CONTENT_URI,
+                                         Cp2Projections.getProjectionForPhoneTableWithDataId(),
+                                         Phone._ID + " IN (" + questionMarks(args.length) + ")",
+                                         args,
+                                         null)) {
+                if (cursor == null) {
+                    LogUtil.w(
+                            "Cp2DefaultDirectoryPhoneLookup.queryPhoneTableBasedOnDataIds", "null cursor");
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    cp2ContactInfosByDataId.put(
+                            Cp2Projections.getDataIdFromCursor(cursor),
+                            Cp2Projections.buildCp2ContactInfoFromCursor(
+                                    appContext, cursor, Directory.DEFAULT));
+                }
+            }
+        }
+        return cp2ContactInfosByDataId;
+    }
+
     private ListenableFuture<Set<Cp2ContactInfo>> individualQueryForInvalidNumber(
             String invalidNumber) {
         return backgroundExecutorService.submit(
@@ -984,9 +1080,9 @@ public final class Cp2DefaultDirectoryPhoneLookup implements PhoneLookup<Cp2Info
     }
 
     /**
-     * We cannot efficiently process invalid numbers because batch queries cannot be constructed which
-     * accomplish the necessary loose matching. We'll attempt to process a limited number of them, but
-     * if there are too many we fall back to querying CP2 at render time.
+     * Batch queries cannot be constructed which accomplish the loose matching needed for invalid
+     * numbers. Up to this many of them are matched with a query each; beyond that, reading the whole
+     * PHONE table once into a {@link Cp2PhoneNumberIndex} is cheaper.
      */
     private long getMaxSupportedInvalidNumbers() {
         return configProvider.getLong("cp2_phone_lookup_max_invalid_numbers", 5);
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.fissy.dialer.phonelookup.cp2;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.collection.ArrayMap;
+import androidx.collection.ArraySet;
+
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of the numbers in the CP2 PHONE table of the default directory, which
+ * loosely matches any number of numbers after reading the table once.
+ *
+ * <p>CP2 only supports loose matching through PHONE_LOOKUP, which takes a single number per query.
+ * The index files each PHONE row under the last {@link #MIN_MATCH} digits of its number, the same
+ * key CP2 uses for loose matching, and confirms the rows which share a key with a number using
+ * {@link PhoneNumberUtils#compare(Context, String, String)}. Numbers shorter than {@link
+ * #MIN_MATCH} digits, such as short codes and PBX extensions, only match rows with the same digits.
+ */
+final class Cp2PhoneNumberIndex {
+
+    /**
+     * The number of trailing digits compared when loosely matching numbers.
+     */
+    private static final int MIN_MATCH = 7;
+
+    private static final String[] PROJECTION =
+            new String[]{
+                    Phone._ID, // 0
+                    Phone.CONTACT_ID, // 1
+                    Phone.NUMBER // 2
+            };
+
+    private final Context appContext;
+    private final Map<String, List<PhoneRow>> rowsByMinMatch;
+
+    private Cp2PhoneNumberIndex(Context appContext, Map<String, List<PhoneRow>> rowsByMinMatch) {
+        this.appContext = appContext;
+        this.rowsByMinMatch = rowsByMinMatch;
+    }
+
+    /**
+     * Builds an index of the current contents of the PHONE table.
+     */
+    @WorkerThread
+    static Cp2PhoneNumberIndex build(Context appContext) {
+        Assert.isWorkerThread();
+        Map<String, List<PhoneRow>> rowsByMinMatch = new HashMap<>();
+        try (Cursor cursor =
+                     appContext
+                             .getContentResolver()
+                             .query(Phone.CONTENT_URI, PROJECTION, null, null, null)) {
+            if (cursor == null) {
+                LogUtil.w("Cp2PhoneNumberIndex.build", "null cursor");
+            } else {
+                while (cursor.moveToNext()) {
+                    String number = cursor.getString(2);
+                    String minMatch = minMatch(number);
+                    if (minMatch == null) {
+                        continue;
+                    }
+                    List<PhoneRow> rows = rowsByMinMatch.get(minMatch);
+                    if (rows == null) {
+                        rows = new ArrayList<>(1);
+                        rowsByMinMatch.put(minMatch, rows);
+                    }
+                    rows.add(new PhoneRow(cursor.getLong(0), cursor.getLong(1), number));
+                }
+            }
+        }
+        LogUtil.v("Cp2PhoneNumberIndex.build", "indexed %d keys", rowsByMinMatch.size());
+        return new Cp2PhoneNumberIndex(appContext, rowsByMinMatch);
+    }
+
+    /**
+     * Returns the key a number is indexed under, or null if the number has no digits.
+     */
+    @Nullable
+    private static String minMatch(@Nullable String number) {
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        String digits =
+                PhoneNumberUtils.normalizeNumber(PhoneNumberUtils.extractNetworkPortion(number));
+        if (digits.startsWith("+")) {
+            digits = digits.substring(1);
+        }
+        if (digits.isEmpty()) {
+            return null;
+        }
+        return digits.length() <= MIN_MATCH ? digits : digits.substring(digits.length() - MIN_MATCH);
+    }
+
+    /**
+     * Returns the IDs of the PHONE rows which loosely match each of the provided numbers. Numbers
+     * which match no row are omitted.
+     */
+    Map<String, Set<Long>> findDataIds(Set<String> numbers) {
+        Map<String, Set<Long>> dataIdsByNumber = new ArrayMap<>();
+        for (String number : numbers) {
+            List<PhoneRow> matches = findMatches(number);
+            if (matches.isEmpty()) {
+                continue;
+            }
+            Set<Long> dataIds = new ArraySet<>(matches.size());
+            for (PhoneRow row : matches) {
+                dataIds.add(row.dataId);
+            }
+            dataIdsByNumber.put(number, dataIds);
+        }
+        return dataIdsByNumber;
+    }
+
+    /**
+     * Returns the IDs of the contacts with a number which loosely matches any of the provided
+     * numbers.
+     */
+    Set<Long> findContactIds(Set<String> numbers) {
+        Set<Long> contactIds = new ArraySet<>();
+        for (String number : numbers) {
+            for (PhoneRow row : findMatches(number)) {
+                contactIds.add(row.contactId);
+            }
+        }
+        return contactIds;
+    }
+
+    private List<PhoneRow> findMatches(String number) {
+        String minMatch = minMatch(number);
+        List<PhoneRow> candidates = minMatch == null ? null : rowsByMinMatch.get(minMatch);
+        if (candidates == null) {
+            return new ArrayList<>();
+        }
+        List<PhoneRow> matches = new ArrayList<>(candidates.size());
+        for (PhoneRow row : candidates) {
+            if (PhoneNumberUtils.compare(appContext, number, row.number)) {
+                matches.add(row);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * The columns of a PHONE row needed to match it and look it up again.
+     */
+    private static final class PhoneRow {
+        final long dataId;
+        final long contactId;
+        final String number;
+
+        PhoneRow(long dataId, long contactId, String number) {
+            this.dataId = dataId;
+            this.contactId = contactId;
+            this.number = number;
+        }
+    }
+}
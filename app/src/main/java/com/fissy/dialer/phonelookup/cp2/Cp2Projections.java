@@ -25,6 +25,7 @@ import android.provider.ContactsContract.PhoneLookup;
 import android.text.TextUtils;
 
 import com.fissy.dialer.phonelookup.PhoneLookupInfo.Cp2Info.Cp2ContactInfo;
+import com.google.common.collect.ObjectArrays;
 
 /**
  * A class providing projection-related functionality for {@link
@@ -47,6 +48,10 @@ final class Cp2Projections {
                     Phone.CARRIER_PRESENCE
             };
 
+    // Projection for performing lookups of rows of the PHONE table by their IDs
+    private static final String[] PHONE_PROJECTION_WITH_DATA_ID =
+            ObjectArrays.concat(PHONE_PROJECTION, Phone._ID);
+
     // Projection for performing lookups using the PHONE_LOOKUP table
     private static final String[] PHONE_LOOKUP_PROJECTION =
             new String[]{
@@ -80,6 +85,14 @@ final class Cp2Projections {
         return PHONE_PROJECTION;
     }
 
+    /**
+     * Returns {@link #getProjectionForPhoneTable()} followed by {@link Phone#_ID}, which is read with
+     * {@link #getDataIdFromCursor(Cursor)}.
+     */
+    static String[] getProjectionForPhoneTableWithDataId() {
+        return PHONE_PROJECTION_WITH_DATA_ID;
+    }
+
     static String[] getProjectionForPhoneLookupTable() {
         return PHONE_LOOKUP_PROJECTION;
     }
@@ -147,4 +160,12 @@ final class Cp2Projections {
     static String getNormalizedNumberFromCursor(Cursor cursor) {
         return cursor.getString(CP2_INFO_NORMALIZED_NUMBER_INDEX);
     }
+
+    /**
+     * Returns the ID of the PHONE row in the current row of {@code cursor}, of which the projection
+     * is {@link #PHONE_PROJECTION_WITH_DATA_ID}.
+     */
+    static long getDataIdFromCursor(Cursor cursor) {
+        return cursor.getLong(PHONE_PROJECTION_WITH_DATA_ID.length - 1);
+    }
 }
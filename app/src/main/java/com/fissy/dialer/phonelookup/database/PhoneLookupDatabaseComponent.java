@@ -36,6 +36,8 @@ public abstract class PhoneLookupDatabaseComponent {
 
     public abstract PhoneLookupHistoryDatabaseHelper phoneLookupHistoryDatabaseHelper();
 
+    public abstract PhoneLookupHistoryCache phoneLookupHistoryCache();
+
     /**
      * Used to refer to the root application component.
      */
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.fissy.dialer.phonelookup.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
+import com.fissy.dialer.common.concurrent.Annotations.NonUiSerial;
+import com.fissy.dialer.common.concurrent.DefaultFutureCallback;
+import com.fissy.dialer.inject.ApplicationContext;
+import com.fissy.dialer.phonelookup.PhoneLookupInfo;
+import com.fissy.dialer.phonelookup.database.contract.PhoneLookupHistoryContract.PhoneLookupHistory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * In-memory cache in front of PhoneLookupHistory, keyed by normalized number.
+ *
+ * <p>Reads are served from a least recently used cache bounded by the serialized size of the
+ * {@link PhoneLookupInfo PhoneLookupInfos} it holds, and only the numbers missing from it are
+ * queried. Writes update the cache right away and are written to the database in a single
+ * transaction {@link #WRITE_DELAY_MILLIS} after the first of them, or when {@link #flush()} is
+ * called, so that later writes of the same number replace earlier ones instead of adding to them.
+ *
+ * <p>Writes made through {@link PhoneLookupHistoryContentProvider} bypass the cache, so code
+ * running in this process should write PhoneLookupHistory through this class.
+ */
+@Singleton
+public class PhoneLookupHistoryCache {
+
+    @VisibleForTesting
+    static final long WRITE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final int MAX_SIZE_BYTES = 512 * 1024;
+
+    /**
+     * Rough size of an entry besides its number and info, so that entries with an empty info
+     * aren't free.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private static final String REPLACE_SQL =
+            "insert or replace into "
+                    + PhoneLookupHistory.TABLE
+                    + " ("
+                    + PhoneLookupHistory.NORMALIZED_NUMBER
+                    + ", "
+                    + PhoneLookupHistory.PHONE_LOOKUP_INFO
+                    + ", "
+                    + PhoneLookupHistory.LAST_MODIFIED
+                    + ") values (?, ?, ?)";
+
+    private static final String DELETE_SQL =
+            "delete from "
+                    + PhoneLookupHistory.TABLE
+                    + " where "
+                    + PhoneLookupHistory.NORMALIZED_NUMBER
+                    + " = ?";
+
+    private final Context appContext;
+    private final PhoneLookupHistoryDatabaseHelper databaseHelper;
+    private final ListeningExecutorService backgroundExecutor;
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    private final LruCache<String, PhoneLookupInfo> cache =
+            new LruCache<String, PhoneLookupInfo>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(String normalizedNumber, PhoneLookupInfo phoneLookupInfo) {
+                    return 2 * normalizedNumber.length()
+                            + phoneLookupInfo.getSerializedSize()
+                            + ENTRY_OVERHEAD_BYTES;
+                }
+            };
+
+    /**
+     * Writes not in the database yet, in the order they were made. A null info is a deletion.
+     * Guarded by this.
+     */
+    private final Map<String, PhoneLookupInfo> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * Ensures that pending writes are written to the database one batch at a time, in order.
+     */
+    private final Object writeLock = new Object();
+
+    // Guarded by this.
+    private boolean isWriteScheduled;
+    // Incremented by every write. Guarded by this.
+    private long writeCount;
+
+    @Inject
+    PhoneLookupHistoryCache(
+            @ApplicationContext Context appContext,
+            PhoneLookupHistoryDatabaseHelper databaseHelper,
+            @BackgroundExecutor ListeningExecutorService backgroundExecutor,
+            @NonUiSerial ScheduledExecutorService scheduledExecutorService) {
+        this.appContext = appContext;
+        this.databaseHelper = databaseHelper;
+        this.backgroundExecutor = backgroundExecutor;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    private static PhoneLookupInfo orDefault(@Nullable PhoneLookupInfo phoneLookupInfo) {
+        return phoneLookupInfo == null ? PhoneLookupInfo.getDefaultInstance() : phoneLookupInfo;
+    }
+
+    /**
+     * Returns the info of each of the provided normalized numbers. Numbers with no row in
+     * PhoneLookupHistory are mapped to {@link PhoneLookupInfo#getDefaultInstance()}.
+     */
+    @WorkerThread
+    public ImmutableMap<String, PhoneLookupInfo> getAll(Set<String> normalizedNumbers) {
+        Assert.isWorkerThread();
+        Map<String, PhoneLookupInfo> infos = new ArrayMap<>(normalizedNumbers.size());
+        List<String> missingNumbers = new ArrayList<>();
+        long writeCountBeforeQuery;
+        synchronized (this) {
+            for (String normalizedNumber : normalizedNumbers) {
+                PhoneLookupInfo phoneLookupInfo = getCached(normalizedNumber);
+                if (phoneLookupInfo == null) {
+                    missingNumbers.add(normalizedNumber);
+                } else {
+                    infos.put(normalizedNumber, phoneLookupInfo);
+                }
+            }
+            writeCountBeforeQuery = writeCount;
+        }
+
+        if (!missingNumbers.isEmpty()) {
+            Map<String, PhoneLookupInfo> queriedInfos = query(missingNumbers);
+            synchronized (this) {
+                // If the numbers were written while they were queried, the query may have returned
+                // the info from before the writes, so it is only cached when there were no writes.
+                boolean isQueryCurrent = writeCount == writeCountBeforeQuery;
+                for (String normalizedNumber : missingNumbers) {
+                    PhoneLookupInfo phoneLookupInfo =
+                            isQueryCurrent ? null : getCached(normalizedNumber);
+                    if (phoneLookupInfo == null) {
+                        phoneLookupInfo = orDefault(queriedInfos.get(normalizedNumber));
+                        if (isQueryCurrent) {
+                            cache.put(normalizedNumber, phoneLookupInfo);
+                        }
+                    }
+                    infos.put(normalizedNumber, phoneLookupInfo);
+                }
+            }
+        }
+
+        LogUtil.i(
+                "PhoneLookupHistoryCache.getAll",
+                "%d numbers, %d queried (hits: %d, misses: %d, evictions: %d)",
+                normalizedNumbers.size(),
+                missingNumbers.size(),
+                hitCount(),
+                missCount(),
+                evictionCount());
+        return ImmutableMap.copyOf(infos);
+    }
+
+    /**
+     * Sets the info of the provided normalized number, replacing its row in PhoneLookupHistory.
+     */
+    public synchronized void put(String normalizedNumber, PhoneLookupInfo phoneLookupInfo) {
+        cache.put(normalizedNumber, phoneLookupInfo);
+        pendingWrites.put(normalizedNumber, phoneLookupInfo);
+        onWrite();
+    }
+
+    /**
+     * Removes the provided normalized number from PhoneLookupHistory.
+     */
+    public synchronized void remove(String normalizedNumber) {
+        cache.remove(normalizedNumber);
+        pendingWrites.put(normalizedNumber, null);
+        onWrite();
+    }
+
+    /**
+     * Drops the cached infos and the writes not in the database yet, for when PhoneLookupHistory
+     * is deleted.
+     */
+    public synchronized void clear() {
+        cache.evictAll();
+        pendingWrites.clear();
+        writeCount++;
+    }
+
+    /**
+     * Writes the pending writes to the database now rather than after {@link #WRITE_DELAY_MILLIS}.
+     * The returned future completes once every write made before this call is in the database.
+     */
+    public ListenableFuture<Void> flush() {
+        return backgroundExecutor.submit(
+                () -> {
+                    writePendingWrites();
+                    return null;
+                });
+    }
+
+    /**
+     * The number of times an info was read from the cache rather than queried.
+     */
+    public int hitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * The number of times an info had to be queried as it wasn't in the cache.
+     */
+    public int missCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * The number of infos dropped from the cache to make room for others.
+     */
+    public int evictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * Returns the info of a number from the pending writes or the cache, or null if it has to be
+     * queried. Must be called holding the lock.
+     */
+    @Nullable
+    private PhoneLookupInfo getCached(String normalizedNumber) {
+        // Pending writes may have been evicted from the cache.
+        if (pendingWrites.containsKey(normalizedNumber)) {
+            return orDefault(pendingWrites.get(normalizedNumber));
+        }
+        return cache.get(normalizedNumber);
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void onWrite() {
+        writeCount++;
+        if (isWriteScheduled) {
+            return;
+        }
+        isWriteScheduled = true;
+        scheduledExecutorService.schedule(
+                () ->
+                        Futures.addCallback(
+                                flush(),
+                                new DefaultFutureCallback<>(),
+                                MoreExecutors.directExecutor()),
+                WRITE_DELAY_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @WorkerThread
+    private Map<String, PhoneLookupInfo> query(List<String> normalizedNumbers) {
+        Map<String, PhoneLookupInfo> queriedInfos = new ArrayMap<>(normalizedNumbers.size());
+        SQLiteDatabase database = databaseHelper.getReadableDatabase();
+        // Batch the numbers into chunks of 999, the maximum size for SQLite selection args.
+        for (List<String> numbersInBatch : Iterables.partition(normalizedNumbers, 999)) {
+            String[] questionMarks = new String[numbersInBatch.size()];
+            Arrays.fill(questionMarks, "?");
+            String selection =
+                    PhoneLookupHistory.NORMALIZED_NUMBER
+                            + " in ("
+                            + TextUtils.join(",", questionMarks)
+                            + ")";
+            try (Cursor cursor =
+                         database.query(
+                                 PhoneLookupHistory.TABLE,
+                                 new String[]{
+                                         PhoneLookupHistory.NORMALIZED_NUMBER,
+                                         PhoneLookupHistory.PHONE_LOOKUP_INFO
+                                 },
+                                 selection,
+                                 numbersInBatch.toArray(new String[0]),
+                                 null,
+                                 null,
+                                 null)) {
+                while (cursor.moveToNext()) {
+                    try {
+                        queriedInfos.put(
+                                cursor.getString(0), PhoneLookupInfo.parseFrom(cursor.getBlob(1)));
+                    } catch (InvalidProtocolBufferException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return queriedInfos;
+    }
+
+    @WorkerThread
+    private void writePendingWrites() {
+        Assert.isWorkerThread();
+        synchronized (writeLock) {
+            Map<String, PhoneLookupInfo> writes;
+            synchronized (this) {
+                isWriteScheduled = false;
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                // The writes stay pending until they are in the database, so that they can still be
+                // read if they are evicted from the cache meanwhile.
+                writes = new LinkedHashMap<>(pendingWrites);
+            }
+
+            long currentTimestamp = System.currentTimeMillis();
+            SQLiteDatabase database = databaseHelper.getWritableDatabase();
+            SQLiteStatement replaceStatement = database.compileStatement(REPLACE_SQL);
+            SQLiteStatement deleteStatement = database.compileStatement(DELETE_SQL);
+            database.beginTransaction();
+            try {
+                for (Entry<String, PhoneLookupInfo> entry : writes.entrySet()) {
+                    if (entry.getValue() == null) {
+                        deleteStatement.bindString(1, entry.getKey());
+                        deleteStatement.executeUpdateDelete();
+                    } else {
+                        replaceStatement.bindString(1, entry.getKey());
+                        replaceStatement.bindBlob(2, entry.getValue().toByteArray());
+                        replaceStatement.bindLong(3, currentTimestamp);
+                        replaceStatement.executeInsert();
+                    }
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+                replaceStatement.close();
+                deleteStatement.close();
+            }
+
+            synchronized (this) {
+                for (Entry<String, PhoneLookupInfo> entry : writes.entrySet()) {
+                    // Unless the number was written again meanwhile.
+                    if (pendingWrites.containsKey(entry.getKey())
+                            && pendingWrites.get(entry.getKey()) == entry.getValue()) {
+                        pendingWrites.remove(entry.getKey());
+                    }
+                }
+            }
+            LogUtil.i(
+                    "PhoneLookupHistoryCache.writePendingWrites",
+                    "wrote %d rows to PhoneLookupHistory",
+                    writes.size());
+        }
+        appContext.getContentResolver().notifyChange(PhoneLookupHistory.CONTENT_URI, null);
+    }
+}
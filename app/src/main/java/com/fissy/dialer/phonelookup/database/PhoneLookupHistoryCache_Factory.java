@@ -0,0 +1,62 @@
+package com.fissy.dialer.phonelookup.database;
+
+import android.content.Context;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class PhoneLookupHistoryCache_Factory implements Factory<PhoneLookupHistoryCache> {
+    private final Provider<Context> appContextProvider;
+
+    private final Provider<PhoneLookupHistoryDatabaseHelper> databaseHelperProvider;
+
+    private final Provider<ListeningExecutorService> backgroundExecutorProvider;
+
+    private final Provider<ScheduledExecutorService> scheduledExecutorServiceProvider;
+
+    public PhoneLookupHistoryCache_Factory(
+            Provider<Context> appContextProvider,
+            Provider<PhoneLookupHistoryDatabaseHelper> databaseHelperProvider,
+            Provider<ListeningExecutorService> backgroundExecutorProvider,
+            Provider<ScheduledExecutorService> scheduledExecutorServiceProvider) {
+        assert appContextProvider != null;
+        this.appContextProvider = appContextProvider;
+        assert databaseHelperProvider != null;
+        this.databaseHelperProvider = databaseHelperProvider;
+        assert backgroundExecutorProvider != null;
+        this.backgroundExecutorProvider = backgroundExecutorProvider;
+        assert scheduledExecutorServiceProvider != null;
+        this.scheduledExecutorServiceProvider = scheduledExecutorServiceProvider;
+    }
+
+    public static Factory<PhoneLookupHistoryCache> create(
+            Provider<Context> appContextProvider,
+            Provider<PhoneLookupHistoryDatabaseHelper> databaseHelperProvider,
+            Provider<ListeningExecutorService> backgroundExecutorProvider,
+            Provider<ScheduledExecutorService> scheduledExecutorServiceProvider) {
+        return new PhoneLookupHistoryCache_Factory(
+                appContextProvider,
+                databaseHelperProvider,
+                backgroundExecutorProvider,
+                scheduledExecutorServiceProvider);
+    }
+
+    @Override
+    public PhoneLookupHistoryCache get() {
+        return new PhoneLookupHistoryCache(
+                appContextProvider.get(),
+                databaseHelperProvider.get(),
+                backgroundExecutorProvider.get(),
+                scheduledExecutorServiceProvider.get());
+    }
+}
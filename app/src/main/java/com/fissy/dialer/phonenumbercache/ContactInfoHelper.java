@@ -50,7 +50,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utility class to look up the contact information for a given number.
@@ -245,6 +247,91 @@ public class ContactInfoHelper {
         return updatedInfo;
     }
 
+    /**
+     * Looks up the contacts of several numbers in the default directory with a single query on
+     * their E.164 form, instead of two queries for each number.
+     *
+     * <p>Returns the contact information of each number at the same index, or null where the number
+     * has no E.164 form or no local contact has it. Those numbers must be looked up with {@link
+     * #lookupNumber(String, String)}, which also finds contacts whose number is in another format
+     * or in the work profile.
+     *
+     * @param numbers     the numbers to look up
+     * @param countryIsos the country associated with each number
+     */
+    @WorkerThread
+    public ContactInfo[] lookupNumbersByE164(List<String> numbers, List<String> countryIsos) {
+        Assert.isWorkerThread();
+        ContactInfo[] infos = new ContactInfo[numbers.size()];
+        if (!PermissionsUtil.hasContactsReadPermissions(context)) {
+            return infos;
+        }
+
+        Map<String, List<Integer>> indicesByE164Number = new HashMap<>();
+        for (int i = 0; i < numbers.size(); i++) {
+            String number = numbers.get(i);
+            if (TextUtils.isEmpty(number) || PhoneNumberHelper.isUriNumber(number)) {
+                continue;
+            }
+            String countryIso = countryIsos.get(i);
+            String e164Number =
+                    PhoneNumberUtils.formatNumberToE164(
+                            number, TextUtils.isEmpty(countryIso) ? currentCountryIso : countryIso);
+            if (e164Number == null) {
+                continue;
+            }
+            List<Integer> indices = indicesByE164Number.get(e164Number);
+            if (indices == null) {
+                indices = new ArrayList<>();
+                indicesByE164Number.put(e164Number, indices);
+            }
+            indices.add(i);
+        }
+        if (indicesByE164Number.isEmpty()) {
+            return infos;
+        }
+
+        StringBuilder selection = new StringBuilder(Phone.NORMALIZED_NUMBER).append(" IN (");
+        for (int i = 0; i < indicesByE164Number.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(")");
+        try (Cursor cursor =
+                     context
+                             .getContentResolver()
+                             .query(
+                                     Phone.CONTENT_URI,
+                                     PhoneQuery.PHONE_BATCH_LOOKUP_PROJECTION,
+                                     selection.toString(),
+                                     indicesByE164Number.keySet().toArray(new String[0]),
+                                     null /* sortOrder */)) {
+            if (cursor == null) {
+                LogUtil.d("ContactInfoHelper.lookupNumbersByE164", "cursor is null");
+                return infos;
+            }
+            while (cursor.moveToNext()) {
+                // Like a PhoneLookup, use the first contact with the number.
+                List<Integer> indices =
+                        indicesByE164Number.remove(cursor.getString(PhoneQuery.NORMALIZED_NUMBER));
+                if (indices == null) {
+                    continue;
+                }
+                String lookupKey = cursor.getString(PhoneQuery.LOOKUP_KEY);
+                for (int index : indices) {
+                    ContactInfo info = createPhoneLookupContactInfo(cursor, lookupKey);
+                    info.nameAlternative =
+                            cursor.getString(PhoneQuery.BATCH_LOOKUP_DISPLAY_NAME_ALTERNATIVE);
+                    info.carrierPresence = cursor.getInt(PhoneQuery.BATCH_LOOKUP_CARRIER_PRESENCE);
+                    info.formattedNumber =
+                            formatPhoneNumber(numbers.get(index), countryIsos.get(index));
+                    info.sourceType = ContactSource.Type.SOURCE_TYPE_DIRECTORY;
+                    infos[index] = info;
+                }
+            }
+        }
+        return infos;
+    }
+
     private ContactInfo createEmptyContactInfoForNumber(String number, String countryIso) {
         ContactInfo contactInfo = new ContactInfo();
         contactInfo.number = number;
@@ -1,11 +1,11 @@
 package com.fissy.dialer.rootcomponentgenerator.metadata;
 
 import com.fissy.dialer.inject.RootComponentGeneratorMetadata;
-import com.fissy.dialer.spam.stub.StubSpamModule;
+import com.fissy.dialer.metrics.local.LocalMetricsModule;
 
 @RootComponentGeneratorMetadata(
         tag = "InstallIn",
-        annotatedClass = StubSpamModule.class
+        annotatedClass = LocalMetricsModule.class
 )
-class com_fissy_dialer_spam_stub_StubSpamModuleMetadata {
+class com_fissy_dialer_metrics_local_LocalMetricsModuleMetadata {
 }
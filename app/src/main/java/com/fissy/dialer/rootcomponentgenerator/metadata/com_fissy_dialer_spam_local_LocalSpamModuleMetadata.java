@@ -1,11 +1,11 @@
 package com.fissy.dialer.rootcomponentgenerator.metadata;
 
 import com.fissy.dialer.inject.RootComponentGeneratorMetadata;
-import com.fissy.dialer.metrics.StubMetricsModule;
+import com.fissy.dialer.spam.local.LocalSpamModule;
 
 @RootComponentGeneratorMetadata(
         tag = "InstallIn",
-        annotatedClass = StubMetricsModule.class
+        annotatedClass = LocalSpamModule.class
 )
-class com_fissy_dialer_metrics_StubMetricsModuleMetadata {
+class com_fissy_dialer_spam_local_LocalSpamModuleMetadata {
 }
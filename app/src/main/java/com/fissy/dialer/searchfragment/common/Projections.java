@@ -16,6 +16,8 @@
 
 package com.fissy.dialer.searchfragment.common;
 
+import android.provider.ContactsContract.CommonDataKinds.Nickname;
+import android.provider.ContactsContract.CommonDataKinds.Organization;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.Data;
 
@@ -35,7 +37,6 @@ public class Projections {
     public static final int CARRIER_PRESENCE = 8;
     public static final int CONTACT_ID = 9;
 
-    @SuppressWarnings("unused")
     public static final int SORT_KEY = 10;
 
     public static final int SORT_ALTERNATIVE = 11;
@@ -82,6 +83,47 @@ public class Projections {
                     // Nickname.NAME // 14
             };
 
+    // Data rows of the on device search index, which also reads the company names and nicknames
+    // contacts are searched by.
+    public static final String[] CP2_INDEX_PROJECTION =
+            new String[]{
+                    Data._ID, // 0
+                    Phone.TYPE, // 1
+                    Phone.LABEL, // 2
+                    Phone.NUMBER, // 3
+                    Data.DISPLAY_NAME_PRIMARY, // 4
+                    Data.PHOTO_ID, // 5
+                    Data.PHOTO_THUMBNAIL_URI, // 6
+                    Data.LOOKUP_KEY, // 7
+                    Data.CARRIER_PRESENCE, // 8
+                    Data.CONTACT_ID, // 9
+                    Data.SORT_KEY_PRIMARY, // 10
+                    Data.SORT_KEY_ALTERNATIVE, // 11
+                    Data.MIMETYPE, // 12
+                    Organization.COMPANY, // 13
+                    Nickname.NAME // 14
+            };
+
+    // Same as CP2_INDEX_PROJECTION, but with alternative display names.
+    public static final String[] CP2_INDEX_PROJECTION_ALTERNATIVE =
+            new String[]{
+                    Data._ID, // 0
+                    Phone.TYPE, // 1
+                    Phone.LABEL, // 2
+                    Phone.NUMBER, // 3
+                    Data.DISPLAY_NAME_ALTERNATIVE, // 4
+                    Data.PHOTO_ID, // 5
+                    Data.PHOTO_THUMBNAIL_URI, // 6
+                    Data.LOOKUP_KEY, // 7
+                    Data.CARRIER_PRESENCE, // 8
+                    Data.CONTACT_ID, // 9
+                    Data.SORT_KEY_PRIMARY, // 10
+                    Data.SORT_KEY_ALTERNATIVE, // 11
+                    Data.MIMETYPE, // 12
+                    Organization.COMPANY, // 13
+                    Nickname.NAME // 14
+            };
+
     public static final String[] DATA_PROJECTION =
             new String[]{
                     Data._ID, // 0
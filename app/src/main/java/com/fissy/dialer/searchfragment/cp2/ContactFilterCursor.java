@@ -29,11 +29,9 @@ import android.provider.ContactsContract.CommonDataKinds.Nickname;
 import android.provider.ContactsContract.CommonDataKinds.Organization;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.text.TextUtils;
-import android.util.ArrayMap;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
-import androidx.collection.ArraySet;
 
 import com.fissy.dialer.searchfragment.common.Projections;
 import com.fissy.dialer.searchfragment.common.QueryFilteringUtil;
@@ -41,7 +39,8 @@ import com.fissy.dialer.searchfragment.common.QueryFilteringUtil;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -56,20 +55,42 @@ import java.util.Set;
 final class ContactFilterCursor implements Cursor {
 
     private final Cursor cursor;
-    // List of cursor ids that are valid for displaying after filtering.
-    private final List<Integer> queryFilteredPositions = new ArrayList<>();
-    private final ContactTernarySearchTree contactTree;
+    // Cursor ids that are valid for displaying after filtering, in increasing order. Only the first
+    // queryFilteredCount are valid.
+    private final int[] queryFilteredPositions;
+    private final ContactSearchIndex contactIndex;
+
+    private int queryFilteredCount;
 
     private int currentPosition = 0;
 
     /**
-     * @param cursor  with projection {@link Projections#CP2_PROJECTION}.
+     * @param cursor  with projection {@link Projections#CP2_INDEX_PROJECTION}.
      * @param query   to filter cursor results.
      * @param context of the app.
      */
     ContactFilterCursor(Cursor cursor, @Nullable String query, Context context) {
         this.cursor = createCursor(cursor);
-        contactTree = buildContactSearchTree(context, this.cursor);
+        queryFilteredPositions = new int[this.cursor.getCount()];
+        contactIndex = buildContactSearchIndex(context, this.cursor);
+        filter(query, context);
+    }
+
+    /**
+     * @param coalescedCursor with contact information already coalesced.
+     * @param contactIndex    built from {@code coalescedCursor} by {@link
+     *                        #buildContactSearchIndex(Context, Cursor)}.
+     * @param query           to filter cursor results.
+     * @param context         of the app.
+     */
+    ContactFilterCursor(
+            Cursor coalescedCursor,
+            ContactSearchIndex contactIndex,
+            @Nullable String query,
+            Context context) {
+        this.cursor = coalescedCursor;
+        queryFilteredPositions = new int[coalescedCursor.getCount()];
+        this.contactIndex = contactIndex;
         filter(query, context);
     }
 
@@ -96,34 +117,40 @@ final class ContactFilterCursor implements Cursor {
      * </ul>
      */
     private static Cursor createCursor(Cursor cursor) {
-        // Convert cursor rows into Cp2Contacts
-        List<Cp2Contact> cp2Contacts = new ArrayList<>();
-        Map<Integer, Integer> contactIdsToPosition = new ArrayMap<>();
+        // Convert cursor rows into Cp2Contacts, grouped by contact id
+        Cp2Contact[] rows = new Cp2Contact[cursor.getCount()];
+        Map<Integer, List<Cp2Contact>> contactsById = new HashMap<>();
         cursor.moveToPosition(-1);
         while (cursor.moveToNext()) {
             Cp2Contact contact = Cp2Contact.fromCursor(cursor);
-            cp2Contacts.add(contact);
-            contactIdsToPosition.put(contact.contactId(), cursor.getPosition());
+            rows[cursor.getPosition()] = contact;
+            List<Cp2Contact> contacts = contactsById.get(contact.contactId());
+            if (contacts == null) {
+                contacts = new ArrayList<>();
+                contactsById.put(contact.contactId(), contacts);
+            }
+            contacts.add(contact);
         }
         cursor.close();
 
-        // Group then combine contact data
+        // Combine contact data, keeping the contacts in the order of their last row inside of
+        // {@code cursor}
         List<Cp2Contact> coalescedContacts = new ArrayList<>();
-        for (Integer contactId : contactIdsToPosition.keySet()) {
-            List<Cp2Contact> duplicateContacts = getAllContactsWithContactId(contactId, cp2Contacts);
-            coalescedContacts.addAll(coalesceContacts(duplicateContacts));
+        for (Cp2Contact row : rows) {
+            List<Cp2Contact> contacts = contactsById.get(row.contactId());
+            if (contacts.get(contacts.size() - 1) == row) {
+                coalescedContacts.addAll(coalesceContacts(contacts));
+            }
         }
 
-        // Sort the contacts back into the exact same order they were inside of {@code cursor}
-        coalescedContacts.sort((o1, o2) -> compare(contactIdsToPosition, o1, o2));
-        MatrixCursor newCursor = new MatrixCursor(Projections.CP2_PROJECTION, coalescedContacts.size());
+        MatrixCursor newCursor = new MatrixCursor(Projections.CP2_INDEX_PROJECTION, coalescedContacts.size());
         for (Cp2Contact contact : coalescedContacts) {
             newCursor.addRow(contact.toCursorRow());
         }
         return newCursor;
     }
 
-    private static List<Cp2Contact> coalesceContacts(List<Cp2Contact> contactsWithSameContactId) {
+    static List<Cp2Contact> coalesceContacts(List<Cp2Contact> contactsWithSameContactId) {
         StringBuilder companyName = new StringBuilder();
         StringBuilder nickName = new StringBuilder();
         List<Cp2Contact> phoneContacts = new ArrayList<>();
@@ -155,13 +182,6 @@ final class ContactFilterCursor implements Cursor {
         return coalescedContacts;
     }
 
-    private static int compare(
-            Map<Integer, Integer> contactIdsToPosition, Cp2Contact o1, Cp2Contact o2) {
-        int position1 = contactIdsToPosition.get(o1.contactId());
-        int position2 = contactIdsToPosition.get(o2.contactId());
-        return Integer.compare(position1, position2);
-    }
-
     private static void removeDuplicatePhoneNumbers(List<Cp2Contact> phoneContacts) {
         for (int i = 0; i < phoneContacts.size(); i++) {
             Cp2Contact contact1 = phoneContacts.get(i);
@@ -213,20 +233,8 @@ final class ContactFilterCursor implements Cursor {
         return Qualification.NUMBERS_ARE_NOT_DUPLICATES;
     }
 
-    private static List<Cp2Contact> getAllContactsWithContactId(
-            int contactId, List<Cp2Contact> contacts) {
-        List<Cp2Contact> contactIdContacts = new ArrayList<>();
-        for (Cp2Contact contact : contacts) {
-            if (contact.contactId() == contactId) {
-                contactIdContacts.add(contact);
-            }
-        }
-        return contactIdContacts;
-    }
-
     /**
-     * Returns a ternary search trie based on the contact at the cursor's current position with the
-     * following terms inserted:
+     * Returns a search index of the contacts in the cursor, each with the following terms:
      *
      * <ul>
      *   <li>Contact's whole display name, company name and nickname.
@@ -235,29 +243,23 @@ final class ContactFilterCursor implements Cursor {
      *   <li>All possible substrings a contact's phone number
      * </ul>
      */
-    private static ContactTernarySearchTree buildContactSearchTree(Context context, Cursor cursor) {
-        ContactTernarySearchTree tree = new ContactTernarySearchTree();
+    static ContactSearchIndex buildContactSearchIndex(Context context, Cursor cursor) {
+        ContactSearchIndex.Builder builder = new ContactSearchIndex.Builder(cursor.getCount());
+        Set<String> queryMatches = new HashSet<>();
         cursor.moveToPosition(-1);
         while (cursor.moveToNext()) {
             int position = cursor.getPosition();
-            Set<String> queryMatches = new ArraySet<>();
+            queryMatches.clear();
             addMatches(context, queryMatches, cursor.getString(Projections.DISPLAY_NAME));
             addMatches(context, queryMatches, cursor.getString(Projections.COMPANY_NAME));
             addMatches(context, queryMatches, cursor.getString(Projections.NICKNAME));
             for (String query : queryMatches) {
-                tree.put(query, position);
+                builder.addTerm(query, position);
             }
             String number = QueryFilteringUtil.digitsOnly(cursor.getString(Projections.PHONE_NUMBER));
-            Set<String> numberSubstrings = new ArraySet<>();
-            numberSubstrings.add(number);
-            for (int start = 0; start < number.length(); start++) {
-                numberSubstrings.add(number.substring(start));
-            }
-            for (String substring : numberSubstrings) {
-                tree.put(substring, position);
-            }
+            builder.addSuffixes(number, position);
         }
-        return tree;
+        return builder.build();
     }
 
     /**
@@ -311,15 +313,22 @@ final class ContactFilterCursor implements Cursor {
         if (query == null) {
             query = "";
         }
-        queryFilteredPositions.clear();
+        queryFilteredCount = 0;
         if (TextUtils.isEmpty(query)) {
             for (int i = 0; i < cursor.getCount(); i++) {
-                queryFilteredPositions.add(i);
+                queryFilteredPositions[queryFilteredCount++] = i;
             }
         } else {
-            queryFilteredPositions.addAll(contactTree.get(query.toLowerCase(Locale.getDefault())));
+            int[] matches = contactIndex.get(query.toLowerCase(Locale.getDefault()));
+            for (int word = 0; word < matches.length; word++) {
+                int bits = matches[word];
+                while (bits != 0) {
+                    queryFilteredPositions[queryFilteredCount++] =
+                            (word << 5) + Integer.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
         }
-        Collections.sort(queryFilteredPositions);
         currentPosition = 0;
         cursor.moveToFirst();
     }
@@ -327,8 +336,9 @@ final class ContactFilterCursor implements Cursor {
     @Override
     public boolean moveToPosition(int position) {
         currentPosition = position;
-        return currentPosition < getCount()
-                && cursor.moveToPosition(queryFilteredPositions.get(currentPosition));
+        return currentPosition >= 0
+                && currentPosition < getCount()
+                && cursor.moveToPosition(queryFilteredPositions[currentPosition]);
     }
 
     @Override
@@ -339,7 +349,7 @@ final class ContactFilterCursor implements Cursor {
 
     @Override
     public int getCount() {
-        return queryFilteredPositions.size();
+        return queryFilteredCount;
     }
 
     @Override
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.searchfragment.cp2;
+
+import android.text.TextUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact index of the terms contacts can be searched by, which finds the contacts having a term
+ * that starts with a query.
+ *
+ * <p>The characters of all terms are stored once in a single array, each term followed by a NUL.
+ * An entry of the index is the offset of a term in that array and the position of its contact, so
+ * the suffixes of a phone number share its characters. Entries are sorted by term, so the entries
+ * whose term starts with a query are a contiguous range, found with a binary search.
+ */
+final class ContactSearchIndex {
+
+    private static final char TERMINATOR = '\0';
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final char[] chars;
+    /**
+     * The offsets of the terms in {@link #chars}, sorted by term.
+     */
+    private final int[] termOffsets;
+    /**
+     * The position of the contact of each entry of {@link #termOffsets}.
+     */
+    private final int[] positions;
+    private final int positionCount;
+
+    private ContactSearchIndex(
+            char[] chars, int[] termOffsets, int[] positions, int positionCount) {
+        this.chars = chars;
+        this.termOffsets = termOffsets;
+        this.positions = positions;
+        this.positionCount = positionCount;
+    }
+
+    /**
+     * Returns a bitmap of the positions of the contacts with a term starting with {@code prefix}:
+     * position {@code p} is set if bit {@code p % 32} of {@code bitmap[p / 32]} is.
+     */
+    int[] get(String prefix) {
+        int[] bitmap = new int[(positionCount + 31) >>> 5];
+        for (int i = lowerBound(prefix);
+                i < termOffsets.length && comparePrefix(termOffsets[i], prefix) == 0;
+                i++) {
+            int position = positions[i];
+            bitmap[position >>> 5] |= 1 << (position & 31);
+        }
+        return bitmap;
+    }
+
+    int getPositionCount() {
+        return positionCount;
+    }
+
+    void writeTo(DataOutputStream output) throws IOException {
+        output.writeInt(positionCount);
+        output.writeInt(chars.length);
+        for (char c : chars) {
+            output.writeChar(c);
+        }
+        output.writeInt(termOffsets.length);
+        for (int i = 0; i < termOffsets.length; i++) {
+            output.writeInt(termOffsets[i]);
+            output.writeInt(positions[i]);
+        }
+    }
+
+    static ContactSearchIndex readFrom(DataInputStream input) throws IOException {
+        int positionCount = input.readInt();
+        int charCount = input.readInt();
+        if (positionCount < 0 || charCount < 0) {
+            throw new IOException("invalid index size: " + positionCount + ", " + charCount);
+        }
+        char[] chars = new char[charCount];
+        for (int i = 0; i < charCount; i++) {
+            chars[i] = input.readChar();
+        }
+        int entryCount = input.readInt();
+        if (entryCount < 0) {
+            throw new IOException("invalid entry count: " + entryCount);
+        }
+        int[] termOffsets = new int[entryCount];
+        int[] positions = new int[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            termOffsets[i] = input.readInt();
+            positions[i] = input.readInt();
+            if (termOffsets[i] < 0
+                    || termOffsets[i] >= charCount
+                    || positions[i] < 0
+                    || positions[i] >= positionCount) {
+                throw new IOException("invalid entry: " + termOffsets[i] + ", " + positions[i]);
+            }
+        }
+        if (charCount > 0 && chars[charCount - 1] != TERMINATOR) {
+            throw new IOException("unterminated term");
+        }
+        return new ContactSearchIndex(chars, termOffsets, positions, positionCount);
+    }
+
+    /**
+     * Returns the index of the first entry whose term isn't before the terms starting with {@code
+     * prefix}.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = termOffsets.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(termOffsets[mid], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns 0 if the term at {@code offset} starts with {@code prefix}, or else a negative or
+     * positive value if the term is before or after the terms which do.
+     */
+    private int comparePrefix(int offset, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = chars[offset + i];
+            if (c == TERMINATOR) {
+                // The term is a strict prefix of the query.
+                return -1;
+            }
+            char p = prefix.charAt(i);
+            if (c != p) {
+                return c < p ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builder for {@link ContactSearchIndex}.
+     */
+    static final class Builder {
+        private final int positionCount;
+        private char[] chars = new char[1024];
+        private int charCount;
+        /**
+         * Each entry is the offset of its term in the high 32 bits, and its position in the low 32
+         * bits, so that entries are sorted as a single array.
+         */
+        private long[] entries = new long[256];
+        private int entryCount;
+
+        /**
+         * @param positionCount the number of contacts, whose positions are from 0 to {@code
+         *     positionCount - 1}
+         */
+        Builder(int positionCount) {
+            this.positionCount = positionCount;
+        }
+
+        /**
+         * Adds a term, so that the contact at {@code position} is found by any prefix of it.
+         */
+        Builder addTerm(String term, int position) {
+            if (!TextUtils.isEmpty(term)) {
+                addEntry(append(term), position);
+            }
+            return this;
+        }
+
+        /**
+         * Adds every suffix of a term, so that the contact at {@code position} is found by any
+         * substring of it.
+         */
+        Builder addSuffixes(String term, int position) {
+            if (!TextUtils.isEmpty(term)) {
+                int offset = append(term);
+                for (int i = 0; i < term.length(); i++) {
+                    addEntry(offset + i, position);
+                }
+            }
+            return this;
+        }
+
+        ContactSearchIndex build() {
+            sort(entries, new long[entryCount], 0, entryCount);
+            int[] termOffsets = new int[entryCount];
+            int[] positions = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                termOffsets[i] = (int) (entries[i] >>> 32);
+                positions[i] = (int) entries[i];
+            }
+            return new ContactSearchIndex(
+                    Arrays.copyOf(chars, charCount), termOffsets, positions, positionCount);
+        }
+
+        private int append(String term) {
+            int required = charCount + term.length() + 1;
+            if (required > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, required));
+            }
+            int offset = charCount;
+            term.getChars(0, term.length(), chars, offset);
+            charCount += term.length();
+            chars[charCount++] = TERMINATOR;
+            return offset;
+        }
+
+        private void addEntry(int offset, int position) {
+            if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, entryCount * 2);
+            }
+            entries[entryCount++] = ((long) offset << 32) | position;
+        }
+
+        /**
+         * Merge sorts {@code entries} from {@code from} to {@code to} by term, without boxing them.
+         */
+        private void sort(long[] entries, long[] buffer, int from, int to) {
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                for (int i = from + 1; i < to; i++) {
+                    long entry = entries[i];
+                    int j = i;
+                    while (j > from && compareTerms(entries[j - 1], entry) > 0) {
+                        entries[j] = entries[j - 1];
+                        j--;
+                    }
+                    entries[j] = entry;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sort(entries, buffer, from, mid);
+            sort(entries, buffer, mid, to);
+            if (compareTerms(entries[mid - 1], entries[mid]) <= 0) {
+                return;
+            }
+            System.arraycopy(entries, from, buffer, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && compareTerms(buffer[i], buffer[j]) <= 0)) {
+                    entries[k] = buffer[i++];
+                } else {
+                    entries[k] = buffer[j++];
+                }
+            }
+        }
+
+        private int compareTerms(long entry1, long entry2) {
+            int offset1 = (int) (entry1 >>> 32);
+            int offset2 = (int) (entry2 >>> 32);
+            while (true) {
+                char c1 = chars[offset1++];
+                char c2 = chars[offset2++];
+                if (c1 != c2) {
+                    return c1 < c2 ? -1 : 1;
+                }
+                if (c1 == TERMINATOR) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
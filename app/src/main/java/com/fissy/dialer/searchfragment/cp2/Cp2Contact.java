@@ -83,7 +83,7 @@ public abstract class Cp2Contact {
     public abstract String mimeType();
 
     public Object[] toCursorRow() {
-        Object[] row = new Object[Projections.CP2_PROJECTION.length];
+        Object[] row = new Object[Projections.CP2_INDEX_PROJECTION.length];
         row[Projections.ID] = phoneId();
         row[Projections.PHONE_TYPE] = phoneType();
         row[Projections.PHONE_LABEL] = phoneLabel();
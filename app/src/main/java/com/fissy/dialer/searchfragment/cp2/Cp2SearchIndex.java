@@ -0,0 +1,686 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.searchfragment.cp2;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract.CommonDataKinds.Nickname;
+import android.provider.ContactsContract.CommonDataKinds.Organization;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Data;
+import android.provider.ContactsContract.DeletedContacts;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.os.UserManagerCompat;
+
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.common.concurrent.DialerExecutorComponent;
+import com.fissy.dialer.contacts.ContactsComponent;
+import com.fissy.dialer.contacts.displaypreference.ContactDisplayPreferences;
+import com.fissy.dialer.contacts.displaypreference.ContactDisplayPreferences.DisplayOrder;
+import com.fissy.dialer.contacts.displaypreference.ContactDisplayPreferences.SortOrder;
+import com.fissy.dialer.searchfragment.common.Projections;
+import com.fissy.dialer.util.PermissionsUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent search index of the on device contacts, so that opening search neither queries CP2
+ * nor indexes the contacts.
+ *
+ * <p>The coalesced contacts and their {@link ContactSearchIndex} are kept in an immutable {@link
+ * Snapshot}, which is saved to a file and read back when the process starts. When contacts change,
+ * only the contacts changed or deleted since the last update are read from CP2 and merged into a
+ * new snapshot; while it is being built, the previous one keeps answering.
+ */
+public final class Cp2SearchIndex {
+
+    private static final String FILE_NAME = "cp2_search_index.bin";
+    private static final int FILE_VERSION = 1;
+
+    private static final String SELECTION =
+            Data.MIMETYPE
+                    + " IN (?, ?, ?) AND "
+                    + Data.DATA1
+                    + " IS NOT NULL AND %s IS NOT NULL";
+    private static final String[] SELECTION_ARGS =
+            new String[]{
+                    Phone.CONTENT_ITEM_TYPE,
+                    Organization.CONTENT_ITEM_TYPE,
+                    Nickname.CONTENT_ITEM_TYPE
+            };
+
+    @SuppressLint("StaticFieldLeak") // Only holds the application context.
+    private static Cp2SearchIndex instance;
+
+    private final Context appContext;
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+    private final ContentObserver observer =
+            new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    update();
+                }
+            };
+
+    @Nullable
+    private volatile Snapshot snapshot;
+
+    private boolean observerRegistered;
+
+    private Cp2SearchIndex(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    public static synchronized Cp2SearchIndex get(Context context) {
+        if (instance == null) {
+            instance = new Cp2SearchIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts reading the saved index and applying the contacts changed since it was saved, if that
+     * hasn't been done yet.
+     */
+    public void preload() {
+        if (snapshot == null) {
+            update();
+        }
+    }
+
+    /**
+     * Returns the current snapshot, or null if it hasn't been loaded yet or was built for other
+     * display preferences, in which case it starts updating it.
+     */
+    @Nullable
+    Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || !current.isFor(newConfig(appContext))) {
+            update();
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * Applies the contacts changed since the last update in the background. Calls made while an
+     * update is scheduled but hasn't started yet are coalesced into it.
+     */
+    void update() {
+        if (updateScheduled.compareAndSet(false, true)) {
+            DialerExecutorComponent.get(appContext)
+                    .backgroundExecutor()
+                    .execute(this::updateSnapshot);
+        }
+    }
+
+    @WorkerThread
+    private synchronized void updateSnapshot() {
+        Assert.isWorkerThread();
+        // Changes made from now on schedule another update.
+        updateScheduled.set(false);
+        if (!PermissionsUtil.hasContactsReadPermissions(appContext)
+                || !UserManagerCompat.isUserUnlocked(appContext)) {
+            LogUtil.i("Cp2SearchIndex.updateSnapshot", "can't read contacts");
+            return;
+        }
+        if (!observerRegistered) {
+            appContext
+                    .getContentResolver()
+                    .registerContentObserver(Contacts.CONTENT_URI, true, observer);
+            observerRegistered = true;
+        }
+
+        Config config = newConfig(appContext);
+        Snapshot current = snapshot != null ? snapshot : readSnapshot();
+        if (current != null && !current.isFor(config)) {
+            LogUtil.i("Cp2SearchIndex.updateSnapshot", "display preferences changed");
+            current = null;
+        }
+
+        // Contacts changed while querying are read again by the next update.
+        long updateTimeMillis = System.currentTimeMillis();
+        if (current != null
+                && updateTimeMillis - current.updateTimeMillis
+                >= DeletedContacts.DAYS_KEPT_MILLISECONDS) {
+            // CP2 forgets deleted contacts after a while, so the ones deleted since the snapshot
+            // was updated may not all be found anymore.
+            LogUtil.i("Cp2SearchIndex.updateSnapshot", "snapshot older than deleted contacts");
+            current = null;
+        }
+        Snapshot updated;
+        try {
+            updated =
+                    current == null
+                            ? queryAllContacts(config, updateTimeMillis)
+                            : queryChangedContacts(current, updateTimeMillis);
+        } catch (SecurityException e) {
+            LogUtil.e("Cp2SearchIndex.updateSnapshot", "failed to read contacts", e);
+            return;
+        }
+        if (updated == null) {
+            return;
+        }
+        if (updated != current) {
+            writeSnapshot(updated);
+        }
+        snapshot = updated;
+    }
+
+    @WorkerThread
+    @Nullable
+    private Snapshot queryAllContacts(Config config, long updateTimeMillis) {
+        Map<Integer, IndexedContact> contacts = queryContactData(config, null);
+        if (contacts == null) {
+            return null;
+        }
+        LogUtil.i("Cp2SearchIndex.queryAllContacts", "indexed %d contacts", contacts.size());
+        return Snapshot.create(
+                appContext, config, updateTimeMillis, new ArrayList<>(contacts.values()));
+    }
+
+    /**
+     * Returns {@code current} with the contacts changed or deleted since it was updated replaced.
+     *
+     * <p>{@code current} must have been updated less than {@link
+     * DeletedContacts#DAYS_KEPT_MILLISECONDS} ago, so that all the contacts deleted since then are
+     * still in {@link DeletedContacts}.
+     */
+    @WorkerThread
+    @Nullable
+    private Snapshot queryChangedContacts(Snapshot current, long updateTimeMillis) {
+        String lastUpdateMillis = Long.toString(current.updateTimeMillis);
+        Set<Integer> removedIds = new HashSet<>();
+        if (!queryContactIds(
+                Contacts.CONTENT_URI,
+                Contacts._ID,
+                Contacts.CONTACT_LAST_UPDATED_TIMESTAMP,
+                lastUpdateMillis,
+                removedIds)) {
+            return null;
+        }
+        if (!queryContactIds(
+                DeletedContacts.CONTENT_URI,
+                DeletedContacts.CONTACT_ID,
+                DeletedContacts.CONTACT_DELETED_TIMESTAMP,
+                lastUpdateMillis,
+                removedIds)) {
+            return null;
+        }
+        if (removedIds.isEmpty()) {
+            return current;
+        }
+        Map<Integer, IndexedContact> changed = queryContactData(current.config, lastUpdateMillis);
+        if (changed == null) {
+            return null;
+        }
+        // Includes the contacts changed after their IDs were read.
+        removedIds.addAll(changed.keySet());
+
+        List<IndexedContact> contacts = new ArrayList<>(current.contacts.size() + changed.size());
+        for (IndexedContact contact : current.contacts) {
+            if (!removedIds.contains(contact.contactId)) {
+                contacts.add(contact);
+            }
+        }
+        if (changed.isEmpty() && contacts.size() == current.contacts.size()) {
+            // None of the changed contacts can be searched, so only the update time changes.
+            return current.withUpdateTime(updateTimeMillis);
+        }
+        // CP2 sorts by the collation of the locale, which Collator follows closely enough to keep
+        // the contacts in order.
+        Comparator<IndexedContact> comparator = bySortKey();
+        for (IndexedContact contact : changed.values()) {
+            int index = Collections.binarySearch(contacts, contact, comparator);
+            contacts.add(index < 0 ? -index - 1 : index, contact);
+        }
+        LogUtil.i(
+                "Cp2SearchIndex.queryChangedContacts",
+                "%d contacts changed, %d indexed",
+                removedIds.size(),
+                contacts.size());
+        return Snapshot.create(appContext, current.config, updateTimeMillis, contacts);
+    }
+
+    /**
+     * Adds the IDs of the contacts whose {@code timestampColumn} is after {@code lastUpdateMillis}
+     * to {@code ids}, returning false if they can't be read.
+     */
+    @WorkerThread
+    private boolean queryContactIds(
+            Uri uri,
+            String idColumn,
+            String timestampColumn,
+            String lastUpdateMillis,
+            Set<Integer> ids) {
+        try (Cursor cursor =
+                     appContext
+                             .getContentResolver()
+                             .query(
+                                     uri,
+                                     new String[]{idColumn},
+                                     timestampColumn + " > ?",
+                                     new String[]{lastUpdateMillis},
+                                     null)) {
+            if (cursor == null) {
+                LogUtil.w("Cp2SearchIndex.queryContactIds", "null cursor for %s", uri);
+                return false;
+            }
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the phone, organization and nickname rows of the contacts into coalesced contacts, in
+     * the order of their sort key.
+     *
+     * @param lastUpdateMillis if not null, only reads the contacts updated after this time
+     */
+    @WorkerThread
+    @Nullable
+    private Map<Integer, IndexedContact> queryContactData(
+            Config config, @Nullable String lastUpdateMillis) {
+        String[] projection =
+                config.displayOrderPrimary
+                        ? Projections.CP2_INDEX_PROJECTION
+                        : Projections.CP2_INDEX_PROJECTION_ALTERNATIVE;
+        String selection = String.format(SELECTION, projection[Projections.DISPLAY_NAME]);
+        String[] selectionArgs = SELECTION_ARGS;
+        if (lastUpdateMillis != null) {
+            selection += " AND " + Data.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?";
+            selectionArgs = new String[SELECTION_ARGS.length + 1];
+            System.arraycopy(SELECTION_ARGS, 0, selectionArgs, 0, SELECTION_ARGS.length);
+            selectionArgs[SELECTION_ARGS.length] = lastUpdateMillis;
+        }
+        int sortKeyColumn =
+                config.sortOrderPrimary ? Projections.SORT_KEY : Projections.SORT_ALTERNATIVE;
+
+        Map<Integer, List<Cp2Contact>> rowsById = new LinkedHashMap<>();
+        Map<Integer, String> sortKeysById = new LinkedHashMap<>();
+        try (Cursor cursor =
+                     appContext
+                             .getContentResolver()
+                             .query(
+                                     Data.CONTENT_URI,
+                                     projection,
+                                     selection,
+                                     selectionArgs,
+                                     projection[sortKeyColumn] + " ASC")) {
+            if (cursor == null) {
+                LogUtil.w("Cp2SearchIndex.queryContactData", "null cursor");
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                Cp2Contact row = Cp2Contact.fromCursor(cursor);
+                List<Cp2Contact> rows = rowsById.get(row.contactId());
+                if (rows == null) {
+                    rows = new ArrayList<>();
+                    rowsById.put(row.contactId(), rows);
+                    sortKeysById.put(row.contactId(), cursor.getString(sortKeyColumn));
+                }
+                rows.add(row);
+            }
+        }
+
+        Map<Integer, IndexedContact> contacts = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Cp2Contact>> entry : rowsById.entrySet()) {
+            List<Cp2Contact> coalesced = ContactFilterCursor.coalesceContacts(entry.getValue());
+            // Contacts without a phone number can't be called, so they aren't searched.
+            if (!coalesced.isEmpty()) {
+                int contactId = entry.getKey();
+                contacts.put(
+                        contactId,
+                        new IndexedContact(contactId, sortKeysById.get(contactId), coalesced));
+            }
+        }
+        return contacts;
+    }
+
+    private static Comparator<IndexedContact> bySortKey() {
+        Collator collator = Collator.getInstance();
+        return (contact1, contact2) -> {
+            if (contact1.sortKey == null || contact2.sortKey == null) {
+                // SQLite sorts nulls first.
+                return Boolean.compare(contact2.sortKey == null, contact1.sortKey == null);
+            }
+            return collator.compare(contact1.sortKey, contact2.sortKey);
+        };
+    }
+
+    private static Config newConfig(Context context) {
+        ContactDisplayPreferences preferences =
+                ContactsComponent.get(context).contactDisplayPreferences();
+        return new Config(
+                preferences.getDisplayOrder() == DisplayOrder.PRIMARY,
+                preferences.getSortOrder() == SortOrder.BY_PRIMARY,
+                Locale.getDefault().toLanguageTag());
+    }
+
+    /**
+     * The index is rebuilt from CP2 when it is missing, so it is kept out of backups, which would
+     * also restore it with contact IDs of another device.
+     */
+    private File getFile() {
+        return new File(appContext.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    @WorkerThread
+    @Nullable
+    private Snapshot readSnapshot() {
+        // Previous versions saved the index where it was backed up.
+        File legacyFile = new File(appContext.getFilesDir(), FILE_NAME);
+        if (legacyFile.exists() && !legacyFile.delete()) {
+            LogUtil.w("Cp2SearchIndex.readSnapshot", "failed to delete legacy index");
+        }
+        try (DataInputStream input =
+                     new DataInputStream(new BufferedInputStream(new FileInputStream(getFile())))) {
+            Snapshot read = Snapshot.readFrom(input);
+            LogUtil.i("Cp2SearchIndex.readSnapshot", "read %d contacts", read.contacts.size());
+            return read;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            LogUtil.e("Cp2SearchIndex.readSnapshot", "failed to read index", e);
+            return null;
+        }
+    }
+
+    @WorkerThread
+    private void writeSnapshot(Snapshot snapshot) {
+        File file = getFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output =
+                     new DataOutputStream(
+                             new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            snapshot.writeTo(output);
+        } catch (IOException e) {
+            LogUtil.e("Cp2SearchIndex.writeSnapshot", "failed to write index", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            LogUtil.e("Cp2SearchIndex.writeSnapshot", "failed to replace index");
+            tempFile.delete();
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream output, @Nullable String value)
+            throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * What the terms and order of a snapshot depend on, besides the contacts.
+     */
+    private static final class Config {
+        private final boolean displayOrderPrimary;
+        private final boolean sortOrderPrimary;
+        /**
+         * The T9 representation of names depends on the locale.
+         */
+        private final String languageTag;
+
+        private Config(boolean displayOrderPrimary, boolean sortOrderPrimary, String languageTag) {
+            this.displayOrderPrimary = displayOrderPrimary;
+            this.sortOrderPrimary = sortOrderPrimary;
+            this.languageTag = languageTag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Config)) {
+                return false;
+            }
+            Config other = (Config) o;
+            return displayOrderPrimary == other.displayOrderPrimary
+                    && sortOrderPrimary == other.sortOrderPrimary
+                    && languageTag.equals(other.languageTag);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(displayOrderPrimary, sortOrderPrimary, languageTag);
+        }
+
+        private void writeTo(DataOutputStream output) throws IOException {
+            output.writeBoolean(displayOrderPrimary);
+            output.writeBoolean(sortOrderPrimary);
+            output.writeUTF(languageTag);
+        }
+
+        private static Config readFrom(DataInputStream input) throws IOException {
+            return new Config(input.readBoolean(), input.readBoolean(), input.readUTF());
+        }
+    }
+
+    /**
+     * The coalesced rows of a contact which can be searched.
+     */
+    private static final class IndexedContact {
+        private final int contactId;
+        @Nullable
+        private final String sortKey;
+        private final List<Cp2Contact> rows;
+
+        private IndexedContact(int contactId, @Nullable String sortKey, List<Cp2Contact> rows) {
+            this.contactId = contactId;
+            this.sortKey = sortKey;
+            this.rows = rows;
+        }
+
+        private void writeTo(DataOutputStream output) throws IOException {
+            output.writeInt(contactId);
+            writeNullableString(output, sortKey);
+            output.writeInt(rows.size());
+            for (Cp2Contact row : rows) {
+                output.writeLong(row.phoneId());
+                output.writeInt(row.phoneType());
+                writeNullableString(output, row.phoneLabel());
+                output.writeUTF(row.phoneNumber());
+                writeNullableString(output, row.displayName());
+                output.writeInt(row.photoId());
+                writeNullableString(output, row.photoUri());
+                output.writeUTF(row.lookupKey());
+                output.writeInt(row.carrierPresence());
+                writeNullableString(output, row.companyName());
+                writeNullableString(output, row.nickName());
+            }
+        }
+
+        private static IndexedContact readFrom(DataInputStream input) throws IOException {
+            int contactId = input.readInt();
+            String sortKey = readNullableString(input);
+            int rowCount = input.readInt();
+            if (rowCount <= 0) {
+                throw new IOException("invalid row count: " + rowCount);
+            }
+            List<Cp2Contact> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                rows.add(
+                        Cp2Contact.builder()
+                                .setPhoneId(input.readLong())
+                                .setPhoneType(input.readInt())
+                                .setPhoneLabel(readNullableString(input))
+                                .setPhoneNumber(input.readUTF())
+                                .setDisplayName(readNullableString(input))
+                                .setPhotoId(input.readInt())
+                                .setPhotoUri(readNullableString(input))
+                                .setLookupKey(input.readUTF())
+                                .setCarrierPresence(input.readInt())
+                                .setContactId(contactId)
+                                .setCompanyName(readNullableString(input))
+                                .setNickName(readNullableString(input))
+                                .setMimeType(Phone.CONTENT_ITEM_TYPE)
+                                .build());
+            }
+            return new IndexedContact(contactId, sortKey, rows);
+        }
+    }
+
+    /**
+     * The searchable contacts at one point in time.
+     */
+    static final class Snapshot {
+        private final Config config;
+        private final long updateTimeMillis;
+        /**
+         * In the order they are displayed.
+         */
+        private final List<IndexedContact> contacts;
+        /**
+         * The rows of {@link #contacts}, with projection {@link Projections#CP2_INDEX_PROJECTION}.
+         */
+        private final Object[][] rows;
+        private final ContactSearchIndex index;
+
+        private Snapshot(
+                Config config,
+                long updateTimeMillis,
+                List<IndexedContact> contacts,
+                Object[][] rows,
+                ContactSearchIndex index) {
+            this.config = config;
+            this.updateTimeMillis = updateTimeMillis;
+            this.contacts = contacts;
+            this.rows = rows;
+            this.index = index;
+        }
+
+        /**
+         * Returns a snapshot of {@code contacts}, indexing their rows.
+         */
+        private static Snapshot create(
+                Context context,
+                Config config,
+                long updateTimeMillis,
+                List<IndexedContact> contacts) {
+            Object[][] rows = toRows(contacts);
+            ContactSearchIndex index =
+                    ContactFilterCursor.buildContactSearchIndex(context, newCursor(rows));
+            return new Snapshot(config, updateTimeMillis, contacts, rows, index);
+        }
+
+        private static Object[][] toRows(List<IndexedContact> contacts) {
+            List<Object[]> rows = new ArrayList<>(contacts.size());
+            for (IndexedContact contact : contacts) {
+                for (Cp2Contact row : contact.rows) {
+                    rows.add(row.toCursorRow());
+                }
+            }
+            return rows.toArray(new Object[0][]);
+        }
+
+        private static Cursor newCursor(Object[][] rows) {
+            MatrixCursor cursor = new MatrixCursor(Projections.CP2_INDEX_PROJECTION, rows.length);
+            for (Object[] row : rows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        private Snapshot withUpdateTime(long updateTimeMillis) {
+            return new Snapshot(config, updateTimeMillis, contacts, rows, index);
+        }
+
+        private boolean isFor(Config config) {
+            return this.config.equals(config);
+        }
+
+        /**
+         * Returns a new cursor of the contacts, filtered by {@code query}.
+         */
+        ContactFilterCursor newContactFilterCursor(Context context, @Nullable String query) {
+            return new ContactFilterCursor(newCursor(rows), index, query, context);
+        }
+
+        private void writeTo(DataOutputStream output) throws IOException {
+            output.writeInt(FILE_VERSION);
+            config.writeTo(output);
+            output.writeLong(updateTimeMillis);
+            output.writeInt(contacts.size());
+            for (IndexedContact contact : contacts) {
+                contact.writeTo(output);
+            }
+            index.writeTo(output);
+        }
+
+        private static Snapshot readFrom(DataInputStream input) throws IOException {
+            int version = input.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("unsupported version: " + version);
+            }
+            Config config = Config.readFrom(input);
+            long updateTimeMillis = input.readLong();
+            int contactCount = input.readInt();
+            if (contactCount < 0) {
+                throw new IOException("invalid contact count: " + contactCount);
+            }
+            List<IndexedContact> contacts = new ArrayList<>(contactCount);
+            for (int i = 0; i < contactCount; i++) {
+                contacts.add(IndexedContact.readFrom(input));
+            }
+            Object[][] rows = toRows(contacts);
+            ContactSearchIndex index = ContactSearchIndex.readFrom(input);
+            if (index.getPositionCount() != rows.length) {
+                throw new IOException("index doesn't match contacts");
+            }
+            return new Snapshot(config, updateTimeMillis, contacts, rows, index);
+        }
+    }
+}
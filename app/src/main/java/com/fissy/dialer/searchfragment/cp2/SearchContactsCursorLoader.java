@@ -41,6 +41,9 @@ import com.fissy.dialer.util.PermissionsUtil;
 
 /**
  * Cursor Loader for CP2 contacts.
+ *
+ * <p>Regular search filters the contacts of {@link Cp2SearchIndex} once it is loaded, so that
+ * neither CP2 is queried nor the contacts indexed when search opens.
  */
 public final class SearchContactsCursorLoader extends CursorLoader {
 
@@ -99,6 +102,12 @@ public final class SearchContactsCursorLoader extends CursorLoader {
     }
 
     private Cursor regularSearchLoadInBackground() {
+        Cp2SearchIndex.Snapshot snapshot = Cp2SearchIndex.get(getContext()).getSnapshot();
+        if (snapshot != null) {
+            return SearchContactsCursor.newInstance(
+                    getContext(), snapshot.newContactFilterCursor(getContext(), query));
+        }
+        // Until the index is loaded, let CP2 filter the contacts.
         return RegularSearchCursor.newInstance(getContext(), super.loadInBackground());
     }
 
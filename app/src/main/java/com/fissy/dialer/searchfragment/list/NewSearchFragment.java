@@ -55,6 +55,7 @@ import com.fissy.dialer.common.Assert;
 import com.fissy.dialer.common.FragmentUtils;
 import com.fissy.dialer.common.LogUtil;
 import com.fissy.dialer.common.concurrent.ThreadUtil;
+import com.fissy.dialer.database.Database;
 import com.fissy.dialer.dialercontact.DialerContact;
 import com.fissy.dialer.enrichedcall.EnrichedCallComponent;
 import com.fissy.dialer.enrichedcall.EnrichedCallManager.CapabilitiesListener;
@@ -276,6 +277,9 @@ public final class NewSearchFragment extends Fragment
     public void setQuery(String query, CallInitiationType.Type callInitiationType) {
         this.query = query;
         this.callInitiationType = callInitiationType;
+        if (!isRegularSearch() && TextUtils.isEmpty(query) && getContext() != null) {
+            resetSmartDialSearchSession();
+        }
         if (adapter != null) {
             adapter.setQuery(query, rawNumber);
             adapter.setSearchActions(getActions());
@@ -484,6 +488,19 @@ public final class NewSearchFragment extends Fragment
                 .unregisterCapabilitiesListener(this);
     }
 
+    @Override
+    public void onStop() {
+        super.onStop();
+        // The next dialpad query starts over.
+        resetSmartDialSearchSession();
+    }
+
+    private void resetSmartDialSearchSession() {
+        Database.get(requireContext())
+                .getDatabaseHelper(requireContext())
+                .resetSmartDialSearchSession();
+    }
+
     @Override
     public void onCapabilitiesUpdated() {
         ThreadUtil.getUiThreadHandler().removeCallbacks(capabilitiesUpdatedRunnable);
@@ -32,8 +32,20 @@ import java.util.ArrayList;
  * contact's display name matches a numeric query. The boolean variable {@link #ALLOW_INITIAL_MATCH}
  * controls the behavior of the matching logic and determines whether we allow matches like 57 -
  * (J)ohn (S)mith.
+ *
+ * <p>Matching works on dialpad keys, see {@link #toNameKeys} and {@link #toNumberKeys}. Callers
+ * that match the same contacts repeatedly should compute the keys once and use {@link
+ * #matchesNameKeys} and {@link #matchesNumberKeys}, which do not allocate. The matcher keeps its
+ * state between calls and is therefore not thread safe.
  */
 public class SmartDialNameMatcher {
+
+    /**
+     * The dialpad key of a character that can't be mapped to the dialpad, e.g. a space. It separates
+     * the tokens of a name, and the numbers in the keys of a phone number.
+     */
+    public static final char SEPARATOR = '\0';
+
     // Whether or not we allow matches like 57 - (J)ohn (S)mith
     private static final boolean ALLOW_INITIAL_MATCH = true;
 
@@ -41,14 +53,24 @@ public class SmartDialNameMatcher {
     // positives
     private static final int INITIAL_LENGTH_LIMIT = 1;
 
-    private final ArrayList<SmartDialMatchPosition> matchPositions = new ArrayList<>();
     private String query;
+    private char[] queryKeys;
 
     // Controls whether to treat an empty query as a match (with anything).
     private boolean shouldMatchEmptyQuery = false;
 
+    // Reused by matches(Context, String) to hold the keys of the display name.
+    private char[] nameKeysBuffer = new char[0];
+
+    // The match positions found by each level of matchesCombination. A level only ever matches the
+    // remainder of the query after the levels above it, so level i holds at most
+    // queryKeys.length - i positions.
+    private int[][] matchStarts;
+    private int[][] matchEnds;
+    private int[] matchCounts;
+
     public SmartDialNameMatcher(String query) {
-        this.query = query;
+        setQuery(query);
     }
 
     /**
@@ -80,27 +102,52 @@ public class SmartDialNameMatcher {
     }
 
     /**
-     * Constructs empty highlight mask. Bit 0 at a position means there is no match, Bit 1 means there
-     * is a match and should be highlighted in the TextView.
+     * Returns the dialpad keys of a display name, to be matched with {@link #matchesNameKeys}.
      *
-     * @param builder StringBuilder object
-     * @param length  Length of the desired mask.
+     * <p>Each character of the name is mapped to the digit of its dialpad key, or to {@link
+     * #SEPARATOR} if it can't be mapped to the dialpad. The keys have the same length as the name,
+     * so match positions apply to both.
      */
-    private void constructEmptyMask(StringBuilder builder, int length) {
-        for (int i = 0; i < length; ++i) {
-            builder.append("0");
+    public static char[] toNameKeys(Context context, @Nullable String displayName) {
+        if (displayName == null) {
+            return new char[0];
         }
+        final char[] keys = new char[displayName.length()];
+        fillNameKeys(context, displayName, keys);
+        return keys;
     }
 
     /**
-     * Replaces the 0-bit at a position with 1-bit, indicating that there is a match.
+     * Returns the dialpad keys of a phone number, to be matched with {@link #matchesNumberKeys}.
      *
-     * @param builder  StringBuilder object.
-     * @param matchPos Match Positions to mask as 1.
+     * <p>These are the digits of the number, followed by the digits after the country code and after
+     * the NANP area code if the number has any, each terminated by {@link #SEPARATOR}. The keys of an
+     * empty number are empty.
      */
-    private void replaceBitInMask(StringBuilder builder, SmartDialMatchPosition matchPos) {
-        for (int i = matchPos.start; i < matchPos.end; ++i) {
-            builder.replace(i, i + 1, "1");
+    public static char[] toNumberKeys(Context context, @Nullable String phoneNumber) {
+        if (TextUtils.isEmpty(phoneNumber)) {
+            return new char[0];
+        }
+        final StringBuilder keys = new StringBuilder();
+        for (String token : SmartDialPrefix.parseToNumberTokens(context, phoneNumber)) {
+            keys.append(token).append(SEPARATOR);
+        }
+        final char[] result = new char[keys.length()];
+        keys.getChars(0, keys.length(), result, 0);
+        return result;
+    }
+
+    private static void fillNameKeys(Context context, String displayName, char[] keys) {
+        for (int i = 0; i < displayName.length(); i++) {
+            // Strip diacritics from accented characters if any
+            char ch = CompositeSmartDialMap.normalizeCharacter(context, displayName.charAt(i));
+            if (!CompositeSmartDialMap.isValidDialpadCharacter(context, ch)) {
+                keys[i] = SEPARATOR;
+            } else if (CompositeSmartDialMap.isValidDialpadAlphabeticChar(context, ch)) {
+                keys[i] = CompositeSmartDialMap.getDialpadNumericCharacter(context, ch);
+            } else {
+                keys[i] = ch;
+            }
         }
     }
 
@@ -117,8 +164,6 @@ public class SmartDialNameMatcher {
         if (TextUtils.isEmpty(phoneNumber)) {
             return shouldMatchEmptyQuery ? new SmartDialMatchPosition(0, 0) : null;
         }
-        StringBuilder builder = new StringBuilder();
-        constructEmptyMask(builder, phoneNumber.length());
 
         // Try matching the number as is
         SmartDialMatchPosition matchPos =
@@ -136,9 +181,6 @@ public class SmartDialNameMatcher {
                         matchesNumberWithOffset(context, phoneNumber, query, phoneNumberTokens.nanpCodeOffset);
             }
         }
-        if (matchPos != null) {
-            replaceBitInMask(builder, matchPos);
-        }
         return matchPos;
     }
 
@@ -154,6 +196,38 @@ public class SmartDialNameMatcher {
         return matchesNumber(context, phoneNumber, query);
     }
 
+    /**
+     * Same as {@link #matchesNumber(Context, String)} != null, for keys computed by {@link
+     * #toNumberKeys}. Does not allocate.
+     *
+     * <p>Like the raw number, a number matches if its digits run out before the query does.
+     */
+    public boolean matchesNumberKeys(char[] numberKeys) {
+        if (numberKeys.length == 0 || queryKeys.length == 0) {
+            return shouldMatchEmptyQuery;
+        }
+        int tokenStart = 0;
+        while (tokenStart < numberKeys.length) {
+            int queryAt = 0;
+            int numberAt = tokenStart;
+            while (queryAt < queryKeys.length
+                    && numberKeys[numberAt] != SEPARATOR
+                    && numberKeys[numberAt] == queryKeys[queryAt]) {
+                queryAt++;
+                numberAt++;
+            }
+            if (queryAt == queryKeys.length || numberKeys[numberAt] == SEPARATOR) {
+                return true;
+            }
+            // Skip to the next number
+            while (numberKeys[numberAt] != SEPARATOR) {
+                numberAt++;
+            }
+            tokenStart = numberAt + 1;
+        }
+        return false;
+    }
+
     /**
      * Matches a phone number against a query, taking care of formatting characters
      *
@@ -220,42 +294,41 @@ public class SmartDialNameMatcher {
      * <p>Also, a match can extend across tokens. For example, typing 37337(FredS) would match (Fred
      * S)mith.
      *
-     * @param displayName The normalized(no accented characters) display name we intend to match
-     *                    against.
-     * @param query       The string of digits that we want to match the display name to.
-     * @param matchList   An array list of {@link SmartDialMatchPosition}s that we add matched positions
-     *                    to.
-     * @return Returns true if a combination of the tokens in displayName match the query string
-     * contained in query. If the function returns true, matchList will contain an ArrayList of
-     * match positions (multiple matches correspond to initial matches).
+     * <p>The name is matched from {@code nameFrom} and the query from {@code queryFrom} rather than on
+     * substrings, so that matching the remaining tokens against the remaining query for initial
+     * matches does not allocate. Positions are relative to the start of the name.
+     *
+     * @param nameKeys   The dialpad keys of the display name, see {@link #toNameKeys}.
+     * @param nameLength The number of keys in nameKeys.
+     * @param nameFrom   The first key of the name to match.
+     * @param queryFrom  The first key of the query to match.
+     * @param level      The level to store the match positions in, one per initial matched.
+     * @return Returns true if a combination of the tokens in the name match the query. If the
+     * function returns true, the match positions are stored at the given level (multiple matches
+     * correspond to initial matches).
      */
     private boolean matchesCombination(
-            Context context,
-            String displayName,
-            String query,
-            ArrayList<SmartDialMatchPosition> matchList) {
-        StringBuilder builder = new StringBuilder();
-        constructEmptyMask(builder, displayName.length());
-        final int nameLength = displayName.length();
-        final int queryLength = query.length();
+            char[] nameKeys, int nameLength, int nameFrom, int queryFrom, int level) {
+        final int queryLength = queryKeys.length;
+        matchCounts[level] = 0;
 
-        if (nameLength < queryLength) {
+        if (nameLength - nameFrom < queryLength - queryFrom) {
             return false;
         }
 
-        if (queryLength == 0) {
+        if (queryLength - queryFrom == 0) {
             return false;
         }
 
-        // The current character index in displayName
+        // The current character index in the name
         // E.g. 3 corresponds to 'd' in "Fred Smith"
-        int nameStart = 0;
+        int nameStart = nameFrom;
 
-        // The current character in the query we are trying to match the displayName against
-        int queryStart = 0;
+        // The current character in the query we are trying to match the name against
+        int queryStart = queryFrom;
 
         // The start position of the current token we are inspecting
-        int tokenStart = 0;
+        int tokenStart = nameFrom;
 
         // The number of non-alphabetic characters we've encountered so far in the current match.
         // E.g. if we've currently matched 3733764849 to (Fred Smith W)illiam, then the
@@ -263,17 +336,11 @@ public class SmartDialNameMatcher {
         // positions
         int seperatorCount = 0;
 
-        ArrayList<SmartDialMatchPosition> partial = new ArrayList<>();
-        // Keep going until we reach the end of displayName
+        // Keep going until we reach the end of the name
         while (nameStart < nameLength && queryStart < queryLength) {
-            char ch = displayName.charAt(nameStart);
-            // Strip diacritics from accented characters if any
-            ch = CompositeSmartDialMap.normalizeCharacter(context, ch);
-            if (CompositeSmartDialMap.isValidDialpadCharacter(context, ch)) {
-                if (CompositeSmartDialMap.isValidDialpadAlphabeticChar(context, ch)) {
-                    ch = CompositeSmartDialMap.getDialpadNumericCharacter(context, ch);
-                }
-                if (ch != query.charAt(queryStart)) {
+            char ch = nameKeys[nameStart];
+            if (ch != SEPARATOR) {
+                if (ch != queryKeys[queryStart]) {
                     // Failed to match the current character in the query.
 
                     // Case 1: Failed to match the first character in the query. Skip to the next
@@ -290,24 +357,16 @@ public class SmartDialNameMatcher {
                     // Yo-Yoghurt because the query match would fail on the 3rd character, and
                     // then skip to the end of the "Yoghurt" token.
 
-                    if (queryStart == 0
-                            || CompositeSmartDialMap.isValidDialpadCharacter(
-                            context,
-                            CompositeSmartDialMap.normalizeCharacter(
-                                    context, displayName.charAt(nameStart - 1)))) {
+                    if (queryStart == queryFrom || nameKeys[nameStart - 1] != SEPARATOR) {
                         // skip to the next token, in the case of 1 or 2.
-                        while (nameStart < nameLength
-                                && CompositeSmartDialMap.isValidDialpadCharacter(
-                                context,
-                                CompositeSmartDialMap.normalizeCharacter(
-                                        context, displayName.charAt(nameStart)))) {
+                        while (nameStart < nameLength && nameKeys[nameStart] != SEPARATOR) {
                             nameStart++;
                         }
                         nameStart++;
                     }
 
                     // Restart the query and set the correct token position
-                    queryStart = 0;
+                    queryStart = queryFrom;
                     seperatorCount = 0;
                     tokenStart = nameStart;
                 } else {
@@ -315,40 +374,32 @@ public class SmartDialNameMatcher {
 
                         // As much as possible, we prioritize a full token match over a sub token
                         // one so if we find a full token match, we can return right away
-                        matchList.add(
-                                new SmartDialMatchPosition(tokenStart, queryLength + tokenStart + seperatorCount));
-                        for (SmartDialMatchPosition match : matchList) {
-                            replaceBitInMask(builder, match);
-                        }
+                        matchStarts[level][0] = tokenStart;
+                        matchEnds[level][0] = queryLength - queryFrom + tokenStart + seperatorCount;
+                        matchCounts[level] = 1;
                         return true;
-                    } else if (ALLOW_INITIAL_MATCH && queryStart < INITIAL_LENGTH_LIMIT) {
+                    } else if (ALLOW_INITIAL_MATCH && queryStart - queryFrom < INITIAL_LENGTH_LIMIT) {
                         // we matched the first character.
                         // branch off and see if we can find another match with the remaining
                         // characters in the query string and the remaining tokens
                         // find the next separator in the query string
                         int j;
                         for (j = nameStart; j < nameLength; j++) {
-                            if (!CompositeSmartDialMap.isValidDialpadCharacter(
-                                    context,
-                                    CompositeSmartDialMap.normalizeCharacter(context, displayName.charAt(j)))) {
+                            if (nameKeys[j] == SEPARATOR) {
                                 break;
                             }
                         }
                         // this means there is at least one character left after the separator
-                        if (j < nameLength - 1) {
-                            final String remainder = displayName.substring(j + 1);
-                            final ArrayList<SmartDialMatchPosition> partialTemp = new ArrayList<>();
-                            if (matchesCombination(
-                                    context, remainder, query.substring(queryStart + 1), partialTemp)) {
-
-                                // store the list of possible match positions
-                                SmartDialMatchPosition.advanceMatchPositions(partialTemp, j + 1);
-                                partialTemp.add(0, new SmartDialMatchPosition(nameStart, nameStart + 1));
-                                // we found a partial token match, store the data in a
-                                // temp buffer and return it if we end up not finding a full
-                                // token match
-                                partial = partialTemp;
-                            }
+                        if (j < nameLength - 1
+                                && matchesCombination(nameKeys, nameLength, j + 1, queryStart + 1, level + 1)) {
+                            // we found a partial token match, store it at this level and return it if
+                            // we end up not finding a full token match
+                            final int count = matchCounts[level + 1];
+                            matchStarts[level][0] = nameStart;
+                            matchEnds[level][0] = nameStart + 1;
+                            System.arraycopy(matchStarts[level + 1], 0, matchStarts[level], 1, count);
+                            System.arraycopy(matchEnds[level + 1], 0, matchEnds[level], 1, count);
+                            matchCounts[level] = count + 1;
                         }
                     }
                     nameStart++;
@@ -359,7 +410,7 @@ public class SmartDialNameMatcher {
             } else {
                 // found a separator, we skip this character and continue to the next one
                 nameStart++;
-                if (queryStart == 0) {
+                if (queryStart == queryFrom) {
                     // This means we found a separator before the start of a token,
                     // so we should increment the token's start position to reflect its true
                     // start position
@@ -373,15 +424,8 @@ public class SmartDialNameMatcher {
         }
         // if we have no complete match at this point, then we attempt to fall back to the partial
         // token match(if any). If we don't allow initial matching (ALLOW_INITIAL_MATCH = false)
-        // then partial will always be empty.
-        if (!partial.isEmpty()) {
-            matchList.addAll(partial);
-            for (SmartDialMatchPosition match : matchList) {
-                replaceBitInMask(builder, match);
-            }
-            return true;
-        }
-        return false;
+        // then there will never be a partial match.
+        return matchCounts[level] > 0;
     }
 
     /**
@@ -405,18 +449,33 @@ public class SmartDialNameMatcher {
      * @param displayName The normalized(no accented characters) display name we intend to match
      *                    against.
      * @return Returns true if a combination of the tokens in displayName match the query string
-     * contained in query. If the function returns true, matchList will contain an ArrayList of
+     * contained in query. If the function returns true, {@link #getMatchPositions} will return the
      * match positions (multiple matches correspond to initial matches).
      */
     public boolean matches(Context context, String displayName) {
-        matchPositions.clear();
-        return matchesCombination(context, displayName, query, matchPositions);
+        final int nameLength = displayName.length();
+        if (nameKeysBuffer.length < nameLength) {
+            nameKeysBuffer = new char[nameLength];
+        }
+        fillNameKeys(context, displayName, nameKeysBuffer);
+        return matchesCombination(nameKeysBuffer, nameLength, 0, 0, 0);
+    }
+
+    /**
+     * Same as {@link #matches(Context, String)}, for keys computed by {@link #toNameKeys}. Does not
+     * allocate.
+     */
+    public boolean matchesNameKeys(char[] nameKeys) {
+        return matchesCombination(nameKeys, nameKeys.length, 0, 0, 0);
     }
 
     public ArrayList<SmartDialMatchPosition> getMatchPositions() {
-        // Return a clone of mMatchPositions so that the caller can use it without
-        // worrying about it changing
-        return new ArrayList<>(matchPositions);
+        // Return new positions so that the caller can use them without worrying about them changing
+        final ArrayList<SmartDialMatchPosition> positions = new ArrayList<>(matchCounts[0]);
+        for (int i = 0; i < matchCounts[0]; i++) {
+            positions.add(new SmartDialMatchPosition(matchStarts[0][i], matchEnds[0][i]));
+        }
+        return positions;
     }
 
     public String getQuery() {
@@ -425,6 +484,20 @@ public class SmartDialNameMatcher {
 
     public void setQuery(String query) {
         this.query = query;
+        queryKeys = query == null ? new char[0] : query.toCharArray();
+
+        final int levels = Math.max(1, queryKeys.length);
+        if (matchCounts == null || matchCounts.length < levels) {
+            matchStarts = new int[levels][];
+            matchEnds = new int[levels][];
+            for (int i = 0; i < levels; i++) {
+                matchStarts[i] = new int[levels - i];
+                matchEnds[i] = new int[levels - i];
+            }
+            matchCounts = new int[levels];
+        } else {
+            matchCounts[0] = 0;
+        }
     }
 
     public void setShouldMatchEmptyQuery(boolean matches) {
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.spam.local;
+
+import android.content.Context;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.fissy.dialer.DialerPhoneNumber;
+import com.fissy.dialer.common.Assert;
+import com.fissy.dialer.common.LogUtil;
+import com.fissy.dialer.common.concurrent.Annotations.BackgroundExecutor;
+import com.fissy.dialer.configprovider.ConfigProvider;
+import com.fissy.dialer.inject.ApplicationContext;
+import com.fissy.dialer.logging.ContactLookupResult;
+import com.fissy.dialer.logging.ContactSource;
+import com.fissy.dialer.logging.ReportingLocation;
+import com.fissy.dialer.spam.Spam;
+import com.fissy.dialer.spam.status.GlobalSpamListStatus;
+import com.fissy.dialer.spam.status.SimpleSpamStatus;
+import com.fissy.dialer.spam.status.SpamMetadata;
+import com.fissy.dialer.spam.status.SpamStatus;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Implementation of {@link Spam} which checks numbers against a list of spam numbers downloaded to
+ * the device.
+ *
+ * <p>The list is downloaded from the URL in the {@link #LIST_URL_FLAG} flag, which may be a
+ * {@code file:} URL for a list pushed to the device, in the format described in {@link
+ * SpamListParser}. When a list was downloaded before and the {@link #DELTA_URL_FLAG} flag is set,
+ * only the changes since the downloaded version are fetched, from that URL with {@code {version}}
+ * replaced by the downloaded version; the full list is fetched again if the delta can't be
+ * fetched or doesn't apply.
+ *
+ * <p>The list is kept in memory, so checks never wait for disk or network: while the list is still
+ * being loaded, for example right after the process started to take an incoming call, numbers are
+ * reported as not spam rather than delaying the call.
+ *
+ * <p>Reports of spam and not spam are not sent anywhere, as there is no server to send them to.
+ */
+@Singleton
+public class LocalSpam implements Spam {
+
+    static final String LIST_URL_FLAG = "local_spam_list_url";
+    static final String DELTA_URL_FLAG = "local_spam_list_delta_url";
+    private static final String UPDATE_INTERVAL_MILLIS_FLAG =
+            "local_spam_list_update_interval_millis";
+
+    private static final String VERSION_PLACEHOLDER = "{version}";
+    private static final String LIST_FILE_NAME = "spam_list.bin";
+    private static final int TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+    private final Context appContext;
+    private final ListeningExecutorService backgroundExecutorService;
+    private final ConfigProvider configProvider;
+
+    /**
+     * The loaded list, or null until the list has been read from disk.
+     */
+    @Nullable
+    private volatile SpamList spamList;
+
+    @Nullable
+    private ListenableFuture<Void> loadFuture;
+
+    /**
+     * Held while updating the list, which may take a while, so it must not be this object's lock.
+     */
+    private final Object updateLock = new Object();
+
+    @Inject
+    public LocalSpam(
+            @ApplicationContext Context appContext,
+            @BackgroundExecutor ListeningExecutorService backgroundExecutorService,
+            ConfigProvider configProvider) {
+        this.appContext = appContext;
+        this.backgroundExecutorService = backgroundExecutorService;
+        this.configProvider = configProvider;
+    }
+
+    private static SpamStatus toSpamStatus(SpamList list, long key) {
+        if (!list.contains(key)) {
+            return SimpleSpamStatus.notSpam();
+        }
+        return SimpleSpamStatus.builder()
+                .setSpam(true)
+                .setTimestampMillis(list.updateTimeMillis())
+                .setSpamMetadata(
+                        SpamMetadata.builder()
+                                .setGlobalSpamListStatus(
+                                        GlobalSpamListStatus.onList(list.updateTimeMillis()))
+                                .build())
+                .build();
+    }
+
+    private static long toKey(@Nullable String number, @Nullable String countryIso) {
+        if (TextUtils.isEmpty(number)) {
+            return -1;
+        }
+        if (number.startsWith("+")) {
+            return SpamList.toKey(PhoneNumberUtils.normalizeNumber(number));
+        }
+        return TextUtils.isEmpty(countryIso)
+                ? -1
+                : SpamList.toKey(PhoneNumberUtils.formatNumberToE164(number, countryIso));
+    }
+
+    private static BufferedReader openUrl(String url) throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        return new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<DialerPhoneNumber, SpamStatus>> batchCheckSpamStatus(
+            ImmutableSet<DialerPhoneNumber> dialerPhoneNumbers) {
+        return Futures.transform(
+                loadSpamList(),
+                list -> {
+                    ImmutableMap.Builder<DialerPhoneNumber, SpamStatus> resultBuilder =
+                            new ImmutableMap.Builder<>();
+                    for (DialerPhoneNumber dialerPhoneNumber : dialerPhoneNumbers) {
+                        long key = SpamList.toKey(dialerPhoneNumber.getNormalizedNumber());
+                        resultBuilder.put(dialerPhoneNumber, toSpamStatus(list, key));
+                    }
+                    return resultBuilder.build();
+                },
+                backgroundExecutorService);
+    }
+
+    @Override
+    public ListenableFuture<SpamStatus> checkSpamStatus(DialerPhoneNumber dialerPhoneNumber) {
+        SpamList list = getSpamListIfLoaded();
+        long key = SpamList.toKey(dialerPhoneNumber.getNormalizedNumber());
+        return Futures.immediateFuture(
+                list == null ? SimpleSpamStatus.notSpam() : toSpamStatus(list, key));
+    }
+
+    @Override
+    public ListenableFuture<SpamStatus> checkSpamStatus(
+            String number, @Nullable String defaultCountryIso) {
+        SpamList list = getSpamListIfLoaded();
+        return Futures.immediateFuture(
+                list == null
+                        ? SimpleSpamStatus.notSpam()
+                        : toSpamStatus(list, toKey(number, defaultCountryIso)));
+    }
+
+    @Override
+    public boolean checkSpamStatusSynchronous(String number, String countryIso) {
+        SpamList list = getSpamListIfLoaded();
+        return list != null && list.contains(toKey(number, countryIso));
+    }
+
+    @Override
+    public ListenableFuture<Void> updateSpamListDownload(boolean isEnabledByUser) {
+        return backgroundExecutorService.submit(
+                () -> {
+                    if (isEnabledByUser) {
+                        updateSpamList();
+                        return null;
+                    }
+                    synchronized (updateLock) {
+                        LogUtil.i("LocalSpam.updateSpamListDownload", "deleting spam list");
+                        getListFile().delete();
+                        spamList = SpamList.empty();
+                    }
+                    return null;
+                });
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<Boolean> dataUpdatedSince(long timestampMillis) {
+        return Futures.transform(
+                loadSpamList(),
+                list -> list.updateTimeMillis() > timestampMillis,
+                MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void reportSpamFromAfterCallNotification(
+            String number,
+            String countryIso,
+            int callType,
+            ReportingLocation.Type from,
+            ContactLookupResult.Type contactLookupResultType) {
+    }
+
+    @Override
+    public void reportSpamFromCallHistory(
+            String number,
+            String countryIso,
+            int callType,
+            ReportingLocation.Type from,
+            ContactSource.Type contactSourceType) {
+    }
+
+    @Override
+    public void reportNotSpamFromAfterCallNotification(
+            String number,
+            String countryIso,
+            int callType,
+            ReportingLocation.Type from,
+            ContactLookupResult.Type contactLookupResultType) {
+    }
+
+    @Override
+    public void reportNotSpamFromCallHistory(
+            String number,
+            String countryIso,
+            int callType,
+            ReportingLocation.Type from,
+            ContactSource.Type contactSourceType) {
+    }
+
+    /**
+     * Returns the list if it's in memory, starting to load it otherwise.
+     */
+    @Nullable
+    private SpamList getSpamListIfLoaded() {
+        SpamList list = spamList;
+        if (list == null) {
+            LogUtil.i("LocalSpam.getSpamListIfLoaded", "spam list not loaded yet");
+            loadSpamList();
+        }
+        return list;
+    }
+
+    /**
+     * Returns the current list once it's in memory. Reads the list from disk the first time it's
+     * called, and starts updating the list if it's stale.
+     */
+    private synchronized ListenableFuture<SpamList> loadSpamList() {
+        if (loadFuture == null) {
+            loadFuture =
+                    backgroundExecutorService.submit(
+                            () -> {
+                                SpamList list = readSpamList();
+                                if (spamList == null) {
+                                    spamList = list;
+                                }
+                                if (isStale(list)) {
+                                    backgroundExecutorService.execute(this::updateSpamList);
+                                }
+                                return null;
+                            });
+        }
+        // The list may have been replaced by an update since it was loaded.
+        return Futures.transform(loadFuture, unused -> spamList, MoreExecutors.directExecutor());
+    }
+
+    private boolean isStale(SpamList list) {
+        long updateIntervalMillis =
+                configProvider.getLong(UPDATE_INTERVAL_MILLIS_FLAG, TimeUnit.DAYS.toMillis(1));
+        return System.currentTimeMillis() - list.updateTimeMillis() > updateIntervalMillis;
+    }
+
+    @WorkerThread
+    private SpamList readSpamList() {
+        Assert.isWorkerThread();
+        try (DataInputStream input =
+                     new DataInputStream(
+                             new BufferedInputStream(new FileInputStream(getListFile())))) {
+            SpamList list = SpamList.readFrom(input);
+            LogUtil.i(
+                    "LocalSpam.readSpamList",
+                    "read version %d with %d numbers",
+                    list.version(),
+                    list.size());
+            return list;
+        } catch (FileNotFoundException e) {
+            return SpamList.empty();
+        } catch (IOException e) {
+            LogUtil.e("LocalSpam.readSpamList", "failed to read spam list", e);
+            return SpamList.empty();
+        }
+    }
+
+    /**
+     * Downloads the changes to the list, or the whole list if they aren't available, and saves the
+     * result.
+     */
+    @WorkerThread
+    private void updateSpamList() {
+        Assert.isWorkerThread();
+        synchronized (updateLock) {
+            updateSpamListLocked();
+        }
+    }
+
+    @WorkerThread
+    private void updateSpamListLocked() {
+        String listUrl = configProvider.getString(LIST_URL_FLAG, "");
+        if (TextUtils.isEmpty(listUrl)) {
+            LogUtil.i("LocalSpam.updateSpamList", "no spam list URL");
+            return;
+        }
+        SpamList current = spamList != null ? spamList : readSpamList();
+        long now = System.currentTimeMillis();
+        SpamList updated = null;
+
+        String deltaUrl = configProvider.getString(DELTA_URL_FLAG, "");
+        if (current.size() > 0 && !TextUtils.isEmpty(deltaUrl)) {
+            String url = deltaUrl.replace(VERSION_PLACEHOLDER, Long.toString(current.version()));
+            try (BufferedReader reader = openUrl(url)) {
+                SpamListDelta delta = SpamListParser.parseDelta(reader);
+                if (delta.fromVersion() == current.version()) {
+                    updated = current.apply(delta, now);
+                    LogUtil.i(
+                            "LocalSpam.updateSpamList",
+                            "applied delta to version %d, %d added, %d removed",
+                            delta.toVersion(),
+                            delta.added().length,
+                            delta.removed().length);
+                } else if (delta.toVersion() == current.version()) {
+                    updated = current.withUpdateTime(now);
+                } else {
+                    LogUtil.i(
+                            "LocalSpam.updateSpamList",
+                            "delta from version %d doesn't apply to version %d",
+                            delta.fromVersion(),
+                            current.version());
+                }
+            } catch (IOException e) {
+                LogUtil.e("LocalSpam.updateSpamList", "failed to fetch delta", e);
+            }
+        }
+
+        if (updated == null) {
+            try (BufferedReader reader = openUrl(listUrl)) {
+                updated = SpamListParser.parseList(reader, now);
+                LogUtil.i(
+                        "LocalSpam.updateSpamList",
+                        "downloaded version %d with %d numbers",
+                        updated.version(),
+                        updated.size());
+            } catch (IOException e) {
+                LogUtil.e("LocalSpam.updateSpamList", "failed to fetch spam list", e);
+                return;
+            }
+        }
+
+        writeSpamList(updated);
+        spamList = updated;
+    }
+
+    @WorkerThread
+    private void writeSpamList(SpamList list) {
+        File file = getListFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output =
+                     new DataOutputStream(
+                             new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            list.writeTo(output);
+        } catch (IOException e) {
+            LogUtil.e("LocalSpam.writeSpamList", "failed to write spam list", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            LogUtil.e("LocalSpam.writeSpamList", "failed to replace spam list");
+            tempFile.delete();
+        }
+    }
+
+    private File getListFile() {
+        return new File(appContext.getFilesDir(), LIST_FILE_NAME);
+    }
+
+}
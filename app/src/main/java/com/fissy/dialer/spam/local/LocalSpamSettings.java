@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.spam.local;
+
+import android.text.TextUtils;
+
+import com.fissy.dialer.configprovider.ConfigProvider;
+import com.fissy.dialer.spam.stub.SpamSettingsStub;
+
+import javax.inject.Inject;
+
+/**
+ * Spam settings for {@link LocalSpam}, which enable spam checks when a spam list is configured.
+ *
+ * <p>Spam notifications and blocking aren't supported and stay disabled.
+ */
+public class LocalSpamSettings extends SpamSettingsStub {
+
+    private final ConfigProvider configProvider;
+
+    @Inject
+    public LocalSpamSettings(ConfigProvider configProvider) {
+        this.configProvider = configProvider;
+    }
+
+    @Override
+    public boolean isSpamEnabled() {
+        return !TextUtils.isEmpty(configProvider.getString(LocalSpam.LIST_URL_FLAG, ""));
+    }
+}
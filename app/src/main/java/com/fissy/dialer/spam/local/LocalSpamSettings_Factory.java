@@ -0,0 +1,30 @@
+package com.fissy.dialer.spam.local;
+
+import com.fissy.dialer.configprovider.ConfigProvider;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class LocalSpamSettings_Factory implements Factory<LocalSpamSettings> {
+    private final Provider<ConfigProvider> configProvider;
+
+    public LocalSpamSettings_Factory(Provider<ConfigProvider> configProvider) {
+        assert configProvider != null;
+        this.configProvider = configProvider;
+    }
+
+    public static Factory<LocalSpamSettings> create(Provider<ConfigProvider> configProvider) {
+        return new LocalSpamSettings_Factory(configProvider);
+    }
+
+    @Override
+    public LocalSpamSettings get() {
+        return new LocalSpamSettings(configProvider.get());
+    }
+}
@@ -0,0 +1,51 @@
+package com.fissy.dialer.spam.local;
+
+import android.content.Context;
+
+import com.fissy.dialer.configprovider.ConfigProvider;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import javax.annotation.Generated;
+import javax.inject.Provider;
+
+import dagger.internal.Factory;
+
+@Generated(
+        value = "dagger.internal.codegen.ComponentProcessor",
+        comments = "https://google.github.io/dagger"
+)
+public final class LocalSpam_Factory implements Factory<LocalSpam> {
+    private final Provider<Context> appContextProvider;
+
+    private final Provider<ListeningExecutorService> backgroundExecutorServiceProvider;
+
+    private final Provider<ConfigProvider> configProvider;
+
+    public LocalSpam_Factory(
+            Provider<Context> appContextProvider,
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
+            Provider<ConfigProvider> configProvider) {
+        assert appContextProvider != null;
+        this.appContextProvider = appContextProvider;
+        assert backgroundExecutorServiceProvider != null;
+        this.backgroundExecutorServiceProvider = backgroundExecutorServiceProvider;
+        assert configProvider != null;
+        this.configProvider = configProvider;
+    }
+
+    public static Factory<LocalSpam> create(
+            Provider<Context> appContextProvider,
+            Provider<ListeningExecutorService> backgroundExecutorServiceProvider,
+            Provider<ConfigProvider> configProvider) {
+        return new LocalSpam_Factory(
+                appContextProvider, backgroundExecutorServiceProvider, configProvider);
+    }
+
+    @Override
+    public LocalSpam get() {
+        return new LocalSpam(
+                appContextProvider.get(),
+                backgroundExecutorServiceProvider.get(),
+                configProvider.get());
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.spam.local;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable list of spam numbers.
+ *
+ * <p>Numbers are kept as the digits of their E.164 form in a sorted {@code long[]}, which takes 8
+ * bytes per number and can be merged with a {@link SpamListDelta} in linear time. A Bloom filter of
+ * about 10 bits per number sits in front of the array, so the common case of a number which is not
+ * on the list is answered with {@link #HASH_COUNT} bit tests, independent of the size of the list.
+ * Numbers which pass the filter, about 1% of the numbers not on the list, are confirmed with a
+ * binary search.
+ */
+final class SpamList {
+
+    private static final int FILE_MAGIC = 0x5350414d; // "SPAM"
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    private static final int BITS_PER_NUMBER = 10;
+    private static final int HASH_COUNT = 7;
+
+    /**
+     * E.164 numbers have at most 15 digits, so their digits always fit in a long.
+     */
+    private static final int MAX_E164_DIGITS = 15;
+
+    private static final SpamList EMPTY = new SpamList(0, 0, new long[0]);
+
+    private final long version;
+    private final long updateTimeMillis;
+    private final long[] numbers;
+    private final long[] filter;
+
+    /**
+     * @param numbers sorted, without duplicates
+     */
+    private SpamList(long version, long updateTimeMillis, long[] numbers) {
+        this(version, updateTimeMillis, numbers, buildFilter(numbers));
+    }
+
+    private SpamList(long version, long updateTimeMillis, long[] numbers, long[] filter) {
+        this.version = version;
+        this.updateTimeMillis = updateTimeMillis;
+        this.numbers = numbers;
+        this.filter = filter;
+    }
+
+    private static long[] buildFilter(long[] numbers) {
+        long[] filter = new long[Math.max(1, (numbers.length * BITS_PER_NUMBER + 63) / 64)];
+        for (long number : numbers) {
+            long hash1 = mix(number);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                long bit = bitIndex(filter, hash1 + i * hash2);
+                filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    static SpamList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a list of the provided numbers, in any order and possibly with duplicates, as
+     * returned by {@link #toKey(String)}.
+     */
+    static SpamList create(long version, long updateTimeMillis, long[] numbers) {
+        long[] sorted = numbers.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new SpamList(version, updateTimeMillis, Arrays.copyOf(sorted, size));
+    }
+
+    /**
+     * Returns the key of an E.164 number, or -1 if the number isn't in E.164 format.
+     */
+    static long toKey(@Nullable String e164Number) {
+        if (e164Number == null
+                || e164Number.length() < 2
+                || e164Number.length() > MAX_E164_DIGITS + 1
+                || e164Number.charAt(0) != '+') {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 1; i < e164Number.length(); i++) {
+            char c = e164Number.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    /**
+     * Reads a list written by {@link #writeTo(DataOutputStream)}.
+     */
+    static SpamList readFrom(DataInputStream input) throws IOException {
+        if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_FORMAT_VERSION) {
+            throw new IOException("not a spam list file");
+        }
+        long version = input.readLong();
+        long updateTimeMillis = input.readLong();
+        int size = input.readInt();
+        if (size < 0) {
+            throw new IOException("invalid size: " + size);
+        }
+        long[] numbers = new long[size];
+        for (int i = 0; i < size; i++) {
+            numbers[i] = input.readLong();
+            if (i > 0 && numbers[i] <= numbers[i - 1]) {
+                throw new IOException("numbers not sorted");
+            }
+        }
+        return new SpamList(version, updateTimeMillis, numbers);
+    }
+
+    /**
+     * Mixes the bits of a number so that numbers which differ in a few digits hash far apart. This
+     * is the finalizer of MurmurHash3.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long bitIndex(long[] filter, long hash) {
+        return (hash & Long.MAX_VALUE) % (filter.length * 64L);
+    }
+
+    void writeTo(DataOutputStream output) throws IOException {
+        output.writeInt(FILE_MAGIC);
+        output.writeInt(FILE_FORMAT_VERSION);
+        output.writeLong(version);
+        output.writeLong(updateTimeMillis);
+        output.writeInt(numbers.length);
+        for (long number : numbers) {
+            output.writeLong(number);
+        }
+    }
+
+    /**
+     * Returns whether the key of a number, as returned by {@link #toKey(String)}, is on the list.
+     */
+    boolean contains(long key) {
+        if (key < 0) {
+            return false;
+        }
+        long hash1 = mix(key);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = bitIndex(filter, hash1 + i * hash2);
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return Arrays.binarySearch(numbers, key) >= 0;
+    }
+
+    /**
+     * Returns a list with the changes of a delta applied, which must start at this list's version.
+     */
+    SpamList apply(SpamListDelta delta, long updateTimeMillis) {
+        if (delta.fromVersion() != version) {
+            throw new IllegalArgumentException(
+                    "delta from version " + delta.fromVersion() + " applied to version " + version);
+        }
+        long[] added = delta.added();
+        long[] removed = delta.removed();
+        long[] merged = new long[numbers.length + added.length];
+        int size = 0;
+        int i = 0;
+        int a = 0;
+        int r = 0;
+        while (i < numbers.length || a < added.length) {
+            long next;
+            if (a == added.length || (i < numbers.length && numbers[i] <= added[a])) {
+                next = numbers[i++];
+            } else {
+                next = added[a++];
+            }
+            while (r < removed.length && removed[r] < next) {
+                r++;
+            }
+            if (r < removed.length && removed[r] == next) {
+                continue;
+            }
+            if (size == 0 || merged[size - 1] != next) {
+                merged[size++] = next;
+            }
+        }
+        return new SpamList(delta.toVersion(), updateTimeMillis, Arrays.copyOf(merged, size));
+    }
+
+    SpamList withUpdateTime(long updateTimeMillis) {
+        return new SpamList(version, updateTimeMillis, numbers, filter);
+    }
+
+    long version() {
+        return version;
+    }
+
+    long updateTimeMillis() {
+        return updateTimeMillis;
+    }
+
+    int size() {
+        return numbers.length;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.spam.local;
+
+/**
+ * The numbers added to and removed from a {@link SpamList} between two versions.
+ */
+final class SpamListDelta {
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final long[] added;
+    private final long[] removed;
+
+    /**
+     * @param added sorted, without duplicates
+     * @param removed sorted, without duplicates
+     */
+    SpamListDelta(long fromVersion, long toVersion, long[] added, long[] removed) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    long fromVersion() {
+        return fromVersion;
+    }
+
+    long toVersion() {
+        return toVersion;
+    }
+
+    long[] added() {
+        return added;
+    }
+
+    long[] removed() {
+        return removed;
+    }
+}
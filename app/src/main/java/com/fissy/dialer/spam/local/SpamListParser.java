@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.spam.local;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Parses the text formats in which spam lists are downloaded.
+ *
+ * <p>A full list has one E.164 number per line, optionally preceded by a {@code #version <n>}
+ * header:
+ *
+ * <pre>
+ * #version 42
+ * +14155550100
+ * +14155550101
+ * </pre>
+ *
+ * <p>A delta starts with a {@code #delta <from> <to>} header followed by one change per line,
+ * {@code A} for a number added to the list and {@code D} for a number removed from it:
+ *
+ * <pre>
+ * #delta 42 43
+ * A +14155550102
+ * D +14155550100
+ * </pre>
+ *
+ * <p>Blank lines and other lines starting with {@code #} are ignored in both formats, and so are
+ * numbers which aren't in E.164 format.
+ */
+final class SpamListParser {
+
+    private static final String VERSION_HEADER = "#version";
+    private static final String DELTA_HEADER = "#delta";
+
+    private SpamListParser() {
+    }
+
+    static SpamList parseList(BufferedReader reader, long updateTimeMillis) throws IOException {
+        long version = 0;
+        LongArray numbers = new LongArray();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith(VERSION_HEADER)) {
+                version = parseLong(line.substring(VERSION_HEADER.length()).trim());
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                numbers.addIfValid(SpamList.toKey(line));
+            }
+        }
+        return SpamList.create(version, updateTimeMillis, numbers.toArray());
+    }
+
+    static SpamListDelta parseDelta(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null || !header.trim().startsWith(DELTA_HEADER)) {
+            throw new IOException("missing delta header");
+        }
+        String[] versions = header.trim().substring(DELTA_HEADER.length()).trim().split("\\s+");
+        if (versions.length != 2) {
+            throw new IOException("invalid delta header: " + header);
+        }
+
+        LongArray added = new LongArray();
+        LongArray removed = new LongArray();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            long key = SpamList.toKey(line.substring(1).trim());
+            switch (line.charAt(0)) {
+                case 'A':
+                    added.addIfValid(key);
+                    break;
+                case 'D':
+                    removed.addIfValid(key);
+                    break;
+                default:
+                    throw new IOException("invalid delta line: " + line);
+            }
+        }
+        return new SpamListDelta(
+                parseLong(versions[0]),
+                parseLong(versions[1]),
+                added.toSortedSet(),
+                removed.toSortedSet());
+    }
+
+    private static long parseLong(String value) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid version: " + value, e);
+        }
+    }
+
+    /**
+     * A growable array of longs, which avoids boxing the up to millions of numbers of a list.
+     */
+    private static final class LongArray {
+        private long[] values = new long[1024];
+        private int size;
+
+        void addIfValid(long key) {
+            if (key < 0) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = key;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        long[] toSortedSet() {
+            long[] sorted = toArray();
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (unique == 0 || sorted[unique - 1] != sorted[i]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+    }
+}
@@ -16,8 +16,6 @@
 
 package com.fissy.dialer.spam.stub;
 
-import com.fissy.dialer.inject.DialerVariant;
-import com.fissy.dialer.inject.InstallIn;
 import com.fissy.dialer.spam.Spam;
 import com.fissy.dialer.spam.SpamSettings;
 
@@ -25,9 +23,8 @@ import dagger.Binds;
 import dagger.Module;
 
 /**
- * Module which binds {@link SpamStub}.
+ * Module which binds {@link SpamStub}, for components which don't need spam checks.
  */
-@InstallIn(variants = {DialerVariant.DIALER_TEST})
 @Module
 public abstract class StubSpamModule {
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.benchmark;
+
+import android.content.ContextWrapper;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.LocaleList;
+
+import java.util.Locale;
+
+/**
+ * A {@link android.content.Context} that only knows its locale, which is all the smart dial code
+ * asks the context for. There is no application to run in on a plain JVM.
+ */
+public final class BenchmarkContext extends ContextWrapper {
+
+    private final Resources resources;
+
+    public BenchmarkContext(Locale locale) {
+        super(null);
+        final Configuration configuration = new Configuration();
+        configuration.setLocales(new LocaleList(locale));
+        resources =
+                new Resources(BenchmarkContext.class.getClassLoader()) {
+                    @Override
+                    public Configuration getConfiguration() {
+                        return configuration;
+                    }
+                };
+    }
+
+    @Override
+    public Resources getResources() {
+        return resources;
+    }
+}
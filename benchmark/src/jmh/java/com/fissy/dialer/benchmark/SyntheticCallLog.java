@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.benchmark;
+
+import android.database.MatrixCursor;
+import android.provider.CallLog.Calls;
+
+import com.fissy.dialer.DialerPhoneNumber;
+import com.fissy.dialer.NumberAttributes;
+import com.fissy.dialer.calllog.database.contract.AnnotatedCallLogContract.AnnotatedCallLog;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A deterministic annotated call log, sorted by descending timestamp like the input of {@link
+ * com.fissy.dialer.calllog.database.Coalescer}.
+ *
+ * <p>Calls come in runs from the same number, as they do on devices, and a run may mix the E.164
+ * and the national format of the number so that coalescing has to ask libphonenumber whether two
+ * numbers match. Runs are also broken up by phone account, presentation and video calls.
+ */
+public final class SyntheticCallLog {
+
+    public static final String[] PROJECTION = {
+            AnnotatedCallLog._ID,
+            AnnotatedCallLog.TIMESTAMP,
+            AnnotatedCallLog.NUMBER,
+            AnnotatedCallLog.FORMATTED_NUMBER,
+            AnnotatedCallLog.NUMBER_PRESENTATION,
+            AnnotatedCallLog.IS_READ,
+            AnnotatedCallLog.NEW,
+            AnnotatedCallLog.GEOCODED_LOCATION,
+            AnnotatedCallLog.PHONE_ACCOUNT_COMPONENT_NAME,
+            AnnotatedCallLog.PHONE_ACCOUNT_ID,
+            AnnotatedCallLog.FEATURES,
+            AnnotatedCallLog.NUMBER_ATTRIBUTES,
+            AnnotatedCallLog.CALL_TYPE,
+    };
+
+    private static final String PHONE_ACCOUNT_COMPONENT_NAME =
+            "com.android.phone/com.android.services.telephony.TelephonyConnectionService";
+
+    private static final int[] CALL_TYPES = {
+            Calls.INCOMING_TYPE, Calls.OUTGOING_TYPE, Calls.MISSED_TYPE,
+    };
+
+    private SyntheticCallLog() {
+    }
+
+    /**
+     * Returns a cursor over {@code count} rows of {@link #PROJECTION}. The same {@code seed} always
+     * generates the same rows.
+     *
+     * @param distinctNumbers The number of distinct numbers the calls are made from or to.
+     */
+    public static MatrixCursor generate(int count, int distinctNumbers, long seed) {
+        final Random random = new Random(seed);
+        final String[] nationalNumbers = new String[distinctNumbers];
+        final byte[][] numberAttributes = new byte[distinctNumbers][];
+        for (int i = 0; i < distinctNumbers; i++) {
+            nationalNumbers[i] =
+                    String.format(
+                            Locale.US,
+                            "%d%09d",
+                            2 + random.nextInt(8),
+                            random.nextInt(1_000_000_000));
+            numberAttributes[i] =
+                    NumberAttributes.newBuilder()
+                            .setName("Contact " + i)
+                            .setNumberTypeLabel("Mobile")
+                            .setPhotoId(i)
+                            .build()
+                            .toByteArray();
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(PROJECTION, count);
+        long timestamp = 1_500_000_000_000L;
+        int number = 0;
+        for (int id = 0; id < count; id++) {
+            // Two thirds of the calls continue the current run.
+            if (id == 0 || random.nextInt(3) == 0) {
+                number = random.nextInt(distinctNumbers);
+            }
+            timestamp -= 1 + random.nextInt(3_600_000);
+
+            final String nationalNumber = nationalNumbers[number];
+            final boolean e164 = random.nextBoolean();
+            final DialerPhoneNumber dialerPhoneNumber =
+                    DialerPhoneNumber.newBuilder()
+                            .setNormalizedNumber(e164 ? "+1" + nationalNumber : nationalNumber)
+                            .setCountryIso("US")
+                            .setIsValid(true)
+                            .build();
+            final String formattedNumber =
+                    String.format(
+                            Locale.US,
+                            "(%s) %s-%s",
+                            nationalNumber.substring(0, 3),
+                            nationalNumber.substring(3, 6),
+                            nationalNumber.substring(6));
+            final int presentation =
+                    random.nextInt(50) == 0
+                            ? Calls.PRESENTATION_RESTRICTED
+                            : Calls.PRESENTATION_ALLOWED;
+
+            cursor.addRow(
+                    new Object[]{
+                            id,
+                            timestamp,
+                            dialerPhoneNumber.toByteArray(),
+                            formattedNumber,
+                            presentation,
+                            random.nextInt(4) == 0 ? 0 : 1,
+                            random.nextInt(10) == 0 ? 1 : 0,
+                            "California",
+                            PHONE_ACCOUNT_COMPONENT_NAME,
+                            random.nextInt(20) == 0 ? "sim2" : "sim1",
+                            random.nextInt(30) == 0 ? Calls.FEATURES_VIDEO : 0,
+                            numberAttributes[number],
+                            CALL_TYPES[random.nextInt(CALL_TYPES.length)],
+                    });
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.benchmark;
+
+import android.content.Context;
+
+import com.fissy.dialer.smartdial.util.SmartDialNameMatcher;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A deterministic contact book of display names and phone numbers, in the shapes the smart dial
+ * code sees on devices: several name tokens, accented and hyphenated names, a share of Cyrillic
+ * names, and numbers with and without country codes and formatting.
+ */
+public final class SyntheticContacts {
+
+    private static final String[] GIVEN_NAMES = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda",
+            "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica",
+            "Thomas", "Sarah", "Min-jun", "Seo-yeon", "José", "Zoë", "François", "Björn",
+            "Ana María", "Jean-Luc",
+    };
+
+    private static final String[] FAMILY_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis",
+            "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Kim",
+            "Lee", "Park", "Müller", "Dupont", "O'Brien", "van der Berg", "Núñez", "Ødegaard",
+    };
+
+    private static final String[] CYRILLIC_GIVEN_NAMES = {
+            "Александр", "Мария", "Дмитрий", "Анна", "Сергей", "Ольга", "Иван", "Елена", "Юлія",
+    };
+
+    private static final String[] CYRILLIC_FAMILY_NAMES = {
+            "Иванов", "Смирнова", "Кузнецов", "Попова", "Соколов", "Петренко", "Шевченко",
+    };
+
+    private static final String[] SUFFIXES = {"Jr.", "(Work)", "Sr", "MD"};
+
+    public final String[] displayNames;
+    public final String[] numbers;
+
+    private SyntheticContacts(int count) {
+        displayNames = new String[count];
+        numbers = new String[count];
+    }
+
+    /**
+     * Generates {@code count} contacts. The same {@code seed} always generates the same contacts.
+     */
+    public static SyntheticContacts generate(int count, long seed) {
+        final Random random = new Random(seed);
+        final SyntheticContacts contacts = new SyntheticContacts(count);
+        for (int i = 0; i < count; i++) {
+            contacts.displayNames[i] = randomName(random);
+            contacts.numbers[i] = randomNumber(random);
+        }
+        return contacts;
+    }
+
+    /**
+     * Returns {@code count} dialpad queries of the given length. Most of them are typed as a user
+     * would to find one of the contacts, by name, by initials or by number, and the others are
+     * random digits that mostly match nothing.
+     */
+    public String[] queries(Context context, int count, int length, long seed) {
+        final Random random = new Random(seed);
+        final String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            final int contact = random.nextInt(displayNames.length);
+            String query;
+            switch (random.nextInt(4)) {
+                case 0:
+                    query = nameQuery(context, displayNames[contact], false);
+                    break;
+                case 1:
+                    query = nameQuery(context, displayNames[contact], true);
+                    break;
+                case 2:
+                    query = SmartDialNameMatcher.normalizeNumber(context, numbers[contact]);
+                    break;
+                default:
+                    query = randomDigits(random, length);
+                    break;
+            }
+            if (query.length() < length) {
+                query += randomDigits(random, length - query.length());
+            }
+            queries[i] = query.substring(0, length);
+        }
+        return queries;
+    }
+
+    private static String nameQuery(Context context, String displayName, boolean initials) {
+        final char[] keys = SmartDialNameMatcher.toNameKeys(context, displayName);
+        final StringBuilder query = new StringBuilder();
+        boolean tokenStart = true;
+        for (char key : keys) {
+            if (key == SmartDialNameMatcher.SEPARATOR) {
+                tokenStart = true;
+                continue;
+            }
+            if (!initials || tokenStart) {
+                query.append(key);
+            }
+            tokenStart = false;
+        }
+        return query.toString();
+    }
+
+    private static String randomName(Random random) {
+        final StringBuilder name = new StringBuilder();
+        if (random.nextInt(10) == 0) {
+            name.append(pick(random, CYRILLIC_GIVEN_NAMES))
+                    .append(' ')
+                    .append(pick(random, CYRILLIC_FAMILY_NAMES));
+        } else {
+            name.append(pick(random, GIVEN_NAMES));
+            if (random.nextInt(4) == 0) {
+                name.append(' ').append(pick(random, GIVEN_NAMES));
+            }
+            name.append(' ').append(pick(random, FAMILY_NAMES));
+        }
+        if (random.nextInt(20) == 0) {
+            name.append(' ').append(pick(random, SUFFIXES));
+        }
+        return name.toString();
+    }
+
+    private static String randomNumber(Random random) {
+        final String areaCode =
+                String.format(Locale.US, "%d%02d", 2 + random.nextInt(8), random.nextInt(100));
+        final String exchange = String.format(Locale.US, "%03d", random.nextInt(1000));
+        final String line = String.format(Locale.US, "%04d", random.nextInt(10000));
+        switch (random.nextInt(6)) {
+            case 0:
+                return "+1 " + areaCode + "-" + exchange + "-" + line;
+            case 1:
+                return "(" + areaCode + ") " + exchange + "-" + line;
+            case 2:
+                return areaCode + exchange + line;
+            case 3:
+                return "1-" + areaCode + "-" + exchange + "-" + line;
+            case 4:
+                return "+44 20 " + exchange + line.substring(0, 1) + " " + line.substring(1);
+            default:
+                return "+49 30 " + exchange + " " + line;
+        }
+    }
+
+    private static String randomDigits(Random random, int length) {
+        final StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.calllog.database;
+
+import android.database.MatrixCursor;
+
+import com.fissy.dialer.benchmark.SyntheticCallLog;
+import com.fissy.dialer.calllog.model.CoalescedRow;
+import com.fissy.dialer.common.Assert;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of coalescing the whole annotated call log, which the new call log pays every time its
+ * loader delivers a cursor, against coalescing only the first page of it. Most of it is spent in
+ * {@code Coalescer.RowCombiner} merging rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CoalescerBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private Coalescer coalescer;
+    private MatrixCursor annotatedCallLog;
+
+    @Setup
+    public void setUp() {
+        // There is no main looper on a plain JVM.
+        Assert.setAreThreadAssertsEnabled(false);
+        // coalesceInternal runs on the calling thread and is not timed, so neither the executor nor
+        // the future timer is used.
+        coalescer =
+                new Coalescer(MoreExecutors.newDirectExecutorService(), /* futureTimer = */ null);
+        annotatedCallLog =
+                SyntheticCallLog.generate(
+                        rows, /* distinctNumbers = */ rows / 10 + 1, /* seed = */ 1);
+    }
+
+    @Benchmark
+    public ImmutableList<CoalescedRow> coalesce() throws Coalescer.ExpectedCoalescerException {
+        return coalescer.coalesceInternal(annotatedCallLog);
+    }
+
+    @Benchmark
+    public Coalescer.Page coalesceFirstPage() throws Coalescer.ExpectedCoalescerException {
+        return coalescer.coalescePageInternal(
+                annotatedCallLog,
+                Coalescer.MOST_RECENT_ROW_ID,
+                /* resumeRowNumber = */ null,
+                /* firstCoalescedRowId = */ 0,
+                PAGE_SIZE);
+    }
+}
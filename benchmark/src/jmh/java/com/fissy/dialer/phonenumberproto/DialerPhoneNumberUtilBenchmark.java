@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.phonenumberproto;
+
+import com.fissy.dialer.DialerPhoneNumber;
+import com.fissy.dialer.common.Assert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link DialerPhoneNumberUtil#isMatch}, which the coalescer asks for every pair of
+ * adjacent call log rows that could be combined.
+ *
+ * <p>A quarter of the pairs are the same number in the same format, a quarter the same number in
+ * E.164 and national format, a quarter different numbers and the rest involve service numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DialerPhoneNumberUtilBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int pairs;
+
+    private DialerPhoneNumberUtil dialerPhoneNumberUtil;
+    private DialerPhoneNumber[] firstNumbers;
+    private DialerPhoneNumber[] secondNumbers;
+    private int pair;
+
+    @Setup
+    public void setUp() {
+        // There is no main looper on a plain JVM.
+        Assert.setAreThreadAssertsEnabled(false);
+        dialerPhoneNumberUtil = new DialerPhoneNumberUtil();
+
+        final Random random = new Random(1);
+        firstNumbers = new DialerPhoneNumber[pairs];
+        secondNumbers = new DialerPhoneNumber[pairs];
+        for (int i = 0; i < pairs; i++) {
+            final String nationalNumber = randomNationalNumber(random);
+            firstNumbers[i] = usNumber("+1" + nationalNumber);
+            switch (i % 4) {
+                case 0:
+                    secondNumbers[i] = usNumber("+1" + nationalNumber);
+                    break;
+                case 1:
+                    secondNumbers[i] = usNumber(nationalNumber);
+                    break;
+                case 2:
+                    secondNumbers[i] = usNumber("+1" + randomNationalNumber(random));
+                    break;
+                default:
+                    firstNumbers[i] = usNumber("*86");
+                    secondNumbers[i] = usNumber(random.nextBoolean() ? "*86" : "#86");
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean isMatch() {
+        if (++pair == pairs) {
+            pair = 0;
+        }
+        return dialerPhoneNumberUtil.isMatch(firstNumbers[pair], secondNumbers[pair]);
+    }
+
+    private static String randomNationalNumber(Random random) {
+        return String.format(
+                Locale.US, "%d%09d", 2 + random.nextInt(8), random.nextInt(1_000_000_000));
+    }
+
+    private static DialerPhoneNumber usNumber(String normalizedNumber) {
+        return DialerPhoneNumber.newBuilder()
+                .setNormalizedNumber(normalizedNumber)
+                .setCountryIso("US")
+                .build();
+    }
+}
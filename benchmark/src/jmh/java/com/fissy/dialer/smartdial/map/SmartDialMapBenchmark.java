@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.smartdial.map;
+
+import android.content.Context;
+
+import com.fissy.dialer.benchmark.BenchmarkContext;
+import com.fissy.dialer.benchmark.SyntheticContacts;
+import com.google.common.base.Optional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping one character of a display name to its dialpad key, directly through {@link
+ * LatinSmartDialMap} and {@link RussianSmartDialMap} and through {@link CompositeSmartDialMap},
+ * which looks up the extra map of the locale of the {@link Context} for characters the Latin map
+ * does not know.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@SuppressWarnings("Guava")
+public class SmartDialMapBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int contacts;
+
+    private final SmartDialMap latinMap = LatinSmartDialMap.getInstance();
+    private final SmartDialMap russianMap = RussianSmartDialMap.getInstance();
+
+    private Context context;
+    private char[] characters;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        context = new BenchmarkContext(new Locale("ru"));
+        final StringBuilder names = new StringBuilder();
+        for (String name : SyntheticContacts.generate(contacts, /* seed = */ 1).displayNames) {
+            names.append(name).append(' ');
+        }
+        characters = names.toString().toCharArray();
+    }
+
+    @Benchmark
+    public char latinMap() {
+        return toKey(latinMap, nextCharacter());
+    }
+
+    @Benchmark
+    public char russianMap() {
+        return toKey(russianMap, nextCharacter());
+    }
+
+    @Benchmark
+    public char compositeMap() {
+        final char ch = CompositeSmartDialMap.normalizeCharacter(context, nextCharacter());
+        return CompositeSmartDialMap.isValidDialpadAlphabeticChar(context, ch)
+                ? CompositeSmartDialMap.getDialpadNumericCharacter(context, ch)
+                : ch;
+    }
+
+    private static char toKey(SmartDialMap map, char ch) {
+        final Optional<Character> normalized = map.normalizeCharacter(ch);
+        if (!normalized.isPresent()) {
+            return ch;
+        }
+        return map.getDialpadNumericCharacter(normalized.get()).or(normalized.get());
+    }
+
+    private char nextCharacter() {
+        if (++index == characters.length) {
+            index = 0;
+        }
+        return characters[index];
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.smartdial.util;
+
+import android.content.Context;
+
+import com.fissy.dialer.benchmark.BenchmarkContext;
+import com.fissy.dialer.benchmark.SyntheticContacts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per candidate cost of {@link SmartDialNameMatcher}, as paid by {@code
+ * DialerDatabaseHelper#getLooseMatches} for every candidate row on every keystroke.
+ *
+ * <p>{@link #matchString} matches the display name and number strings through the {@link Context}
+ * based entry points, {@link #matchKeys} matches the dialpad keys precomputed by the smart dial
+ * index. Run with the gc profiler to compare the allocations per candidate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SmartDialNameMatcherBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int contacts;
+
+    @Param({"1", "3", "6"})
+    public int queryLength;
+
+    private Context context;
+    private SyntheticContacts contactBook;
+    private char[][] nameKeys;
+    private char[][] numberKeys;
+    private SmartDialNameMatcher matcher;
+    private int candidate;
+
+    @Setup
+    public void setUp() {
+        context = new BenchmarkContext(Locale.US);
+        contactBook = SyntheticContacts.generate(contacts, /* seed = */ 1);
+        nameKeys = new char[contacts][];
+        numberKeys = new char[contacts][];
+        for (int i = 0; i < contacts; i++) {
+            nameKeys[i] = SmartDialNameMatcher.toNameKeys(context, contactBook.displayNames[i]);
+            numberKeys[i] = SmartDialNameMatcher.toNumberKeys(context, contactBook.numbers[i]);
+        }
+        final String query =
+                contactBook.queries(context, /* count = */ 1, queryLength, /* seed = */ 2)[0];
+        matcher = new SmartDialNameMatcher(query);
+    }
+
+    @Benchmark
+    public boolean matchString() {
+        final int i = nextCandidate();
+        final String query = matcher.getQuery();
+        return matcher.matches(context, contactBook.displayNames[i])
+                | matcher.matchesNumber(context, contactBook.numbers[i], query) != null;
+    }
+
+    @Benchmark
+    public boolean matchKeys() {
+        final int i = nextCandidate();
+        return matcher.matchesNameKeys(nameKeys[i]) | matcher.matchesNumberKeys(numberKeys[i]);
+    }
+
+    private int nextCandidate() {
+        if (++candidate == contacts) {
+            candidate = 0;
+        }
+        return candidate;
+    }
+}
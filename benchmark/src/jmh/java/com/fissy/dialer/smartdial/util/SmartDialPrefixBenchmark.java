@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fissy.dialer.smartdial.util;
+
+import android.content.Context;
+
+import com.fissy.dialer.benchmark.BenchmarkContext;
+import com.fissy.dialer.benchmark.SyntheticContacts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of computing the prefixes of one contact, which a full smart dial update pays for every row
+ * of the contacts provider.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SmartDialPrefixBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int contacts;
+
+    @Param({"en", "ru"})
+    public String language;
+
+    private Context context;
+    private SyntheticContacts contactBook;
+    private int contact;
+
+    @Setup
+    public void setUp() {
+        context = new BenchmarkContext(new Locale(language));
+        contactBook = SyntheticContacts.generate(contacts, /* seed = */ 1);
+    }
+
+    @Benchmark
+    public List<String> generateNamePrefixes() {
+        final String displayName = contactBook.displayNames[nextContact()];
+        return SmartDialPrefix.generateNamePrefixes(context, displayName);
+    }
+
+    @Benchmark
+    public List<String> parseToNumberTokens() {
+        return SmartDialPrefix.parseToNumberTokens(context, contactBook.numbers[nextContact()]);
+    }
+
+    private int nextContact() {
+        if (++contact == contacts) {
+            contact = 0;
+        }
+        return contact;
+    }
+}